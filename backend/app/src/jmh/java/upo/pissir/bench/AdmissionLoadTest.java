@@ -0,0 +1,165 @@
+package upo.pissir.bench;
+
+import io.javalin.Javalin;
+import upo.pissir.auth.JwtVerifier;
+import upo.pissir.http.HttpServer;
+import upo.pissir.repo.FareRepository;
+import upo.pissir.service.TollQueryService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// End-to-end load test of the admission limit (./gradlew admissionLoadTest), not a JMH benchmark:
+// the real HttpServer (Javalin, auth, routes) on virtual threads, GET /api/toll/calculate backed by
+// a FareRepository on a SlowDataSource sized like the API pool. Virtual-thread clients on
+// java.net.http.HttpClient keep CLIENTS requests in flight; latencies are reported per status
+// (200 vs 503, plus 409 for requests that timed out waiting for a connection), first with the
+// limiter off, then with it sized to the pool.
+// Overrides: -Dloadtest.clients, -Dloadtest.seconds, -Dloadtest.queryMicros, -Dloadtest.admissionTimeoutMs.
+public final class AdmissionLoadTest {
+    private static final int POOL_SIZE = 10;
+    private static final long CONNECTION_TIMEOUT_MS = 5000;
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 200);
+    private static final long SECONDS = Long.getLong("loadtest.seconds", 10);
+    private static final long WARMUP_SECONDS = 3;
+    private static final long QUERY_MICROS = Long.getLong("loadtest.queryMicros", 2000);
+    private static final long ADMISSION_TIMEOUT_MS = Long.getLong("loadtest.admissionTimeoutMs", 5);
+
+    private AdmissionLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        String token = issueToken();
+        JwtVerifier.start();
+        System.out.printf("clients=%d pool=%d query=%dus duration=%ds%n", CLIENTS, POOL_SIZE, QUERY_MICROS, SECONDS);
+        run("limiter off", 0, token);
+        run("limiter on ", POOL_SIZE, token);
+        JwtVerifier.stop();
+    }
+
+    private static void run(String label, int admissionLimit, String token) throws Exception {
+        TollQueryService tollQuery = new TollQueryService(
+                new FareRepository(new SlowDataSource(POOL_SIZE, CONNECTION_TIMEOUT_MS, QUERY_MICROS)));
+        Javalin app = HttpServer.start(0, true, admissionLimit, ADMISSION_TIMEOUT_MS,
+                null, tollQuery, null, null, null, null, null, null);
+        try {
+            URI uri = URI.create("http://localhost:" + app.port() + "/api/toll/calculate?entry=VC_Est&exit=MI_Ovest");
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient http = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .executor(clients)
+                        .build();
+                HttpRequest request = HttpRequest.newBuilder(uri).header("Authorization", "Bearer " + token).GET().build();
+                drive(http, request, clients, WARMUP_SECONDS);
+                Map<Integer, long[]> byStatus = drive(http, request, clients, SECONDS);
+                report(label, byStatus);
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    // CLIENTS closed-loop clients for the given time; latencies in nanos grouped by status (-1 = I/O error)
+    private static Map<Integer, long[]> drive(HttpClient http, HttpRequest request, ExecutorService clients, long seconds)
+            throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<Map<Integer, List<Long>>>> futures = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.add(clients.submit(() -> {
+                Map<Integer, List<Long>> samples = new HashMap<>();
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    int status;
+                    try {
+                        status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException e) {
+                        status = -1;
+                    }
+                    samples.computeIfAbsent(status, s -> new ArrayList<>()).add(System.nanoTime() - start);
+                }
+                return samples;
+            }));
+        }
+        Map<Integer, List<Long>> merged = new TreeMap<>();
+        for (var f : futures) {
+            f.get().forEach((status, l) -> merged.computeIfAbsent(status, s -> new ArrayList<>()).addAll(l));
+        }
+        Map<Integer, long[]> out = new TreeMap<>();
+        merged.forEach((status, l) -> {
+            long[] sorted = l.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            out.put(status, sorted);
+        });
+        return out;
+    }
+
+    private static void report(String label, Map<Integer, long[]> byStatus) {
+        long total = byStatus.values().stream().mapToLong(a -> a.length).sum();
+        System.out.printf("%n%s: %d requests, %.0f req/s%n", label, total, (double) total / SECONDS);
+        System.out.printf("  %6s %9s %7s %9s %9s %9s %9s%n", "status", "count", "share", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        byStatus.forEach((status, l) -> System.out.printf("  %6s %9d %6.1f%% %9.2f %9.2f %9.2f %9.2f%n",
+                status < 0 ? "io" : status.toString(), l.length, 100.0 * l.length / total,
+                ms(l, 0.50), ms(l, 0.99), ms(l, 0.999), l[l.length - 1] / 1e6));
+    }
+
+    private static double ms(long[] sorted, double q) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(q * sorted.length) - 1)] / 1e6;
+    }
+
+    // A fresh RSA key: its JWKS goes where JwtVerifier reads it (KEYCLOAK_JWKS_FILE, set by the
+    // Gradle task) and the returned RS256 token carries the employee role for /api/toll/calculate
+    private static String issueToken() throws Exception {
+        String jwksFile = System.getenv("KEYCLOAK_JWKS_FILE");
+        if (jwksFile == null || jwksFile.isBlank()) {
+            throw new IllegalStateException("KEYCLOAK_JWKS_FILE must point to a writable path");
+        }
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        KeyPair keys = gen.generateKeyPair();
+        RSAPublicKey pub = (RSAPublicKey) keys.getPublic();
+        Path path = Path.of(jwksFile);
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        Files.writeString(path, """
+                {"keys":[{"kty":"RSA","kid":"loadtest","use":"sig","alg":"RS256","n":"%s","e":"%s"}]}
+                """.formatted(b64(unsigned(pub.getModulus().toByteArray())), b64(unsigned(pub.getPublicExponent().toByteArray()))));
+
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        String header = b64("{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"loadtest\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = b64(("{\"sub\":\"loadtest\",\"preferred_username\":\"loadtest\",\"exp\":" + exp
+                + ",\"realm_access\":{\"roles\":[\"employees\"]}}").getBytes(StandardCharsets.UTF_8));
+        Signature rs256 = Signature.getInstance("SHA256withRSA");
+        rs256.initSign(keys.getPrivate());
+        rs256.update((header + "." + payload).getBytes(StandardCharsets.US_ASCII));
+        return header + "." + payload + "." + b64(rs256.sign());
+    }
+
+    // BigInteger.toByteArray() may prepend a sign byte, which JWK values must not carry
+    private static byte[] unsigned(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    private static String b64(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,75 @@
+package upo.pissir.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import upo.pissir.dto.BulkIngestResponse;
+import upo.pissir.repo.BulkIngestRepository;
+import upo.pissir.repo.TollboothGeometry;
+import upo.pissir.service.BulkIngestService;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Java side of POST /api/ingest/events per event: NDJSON decoding, validation and the COPY csv
+// encoding (the repository below writes the rows to a buffer instead of the COPY stream).
+// The SQL side needs a real PostgreSQL: time a request against it to get the end-to-end rate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulkIngestBenchmark {
+    private static final int EVENTS = 10_000;
+
+    private byte[] body;
+    private BulkIngestService service;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        Instant t0 = Instant.parse("2026-03-07T08:00:00Z");
+        for (int i = 0; i < EVENTS / 2; i++) {
+            String ticket = "TCK-" + i;
+            sb.append("{\"type\":\"ENTRY_ACCEPTED\",\"tollboothId\":\"VC_Est\",\"channel\":\"manual\",\"timestamp\":\"")
+                    .append(t0.plusSeconds(i)).append("\",\"plate\":\"AB123CD\",\"ticketId\":\"").append(ticket)
+                    .append("\",\"eventId\":\"in-").append(i).append("\"}\n");
+            sb.append("{\"type\":\"EXIT_COMPLETED\",\"tollboothId\":\"MI_Ovest\",\"channel\":\"manual\",\"timestamp\":\"")
+                    .append(t0.plusSeconds(3600 + i)).append("\",\"entryTollboothId\":\"VC_Est\",\"amountCents\":720,")
+                    .append("\"ticketId\":\"").append(ticket).append("\",\"eventId\":\"out-").append(i).append("\"}\n");
+        }
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        service = new BulkIngestService(new CsvOnlyRepository(),
+                new TollProcessingBenchmark.InMemoryTollbooths(TollboothGeometry.build(TollProcessingBenchmark.TOLLBOOTHS)),
+                null, null, EVENTS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public BulkIngestResponse parseAndEncode() {
+        return service.ingest(new ByteArrayInputStream(body));
+    }
+
+    static final class CsvOnlyRepository extends BulkIngestRepository {
+        private final StringBuilder csv = new StringBuilder(1 << 20);
+
+        CsvOnlyRepository() {
+            super(null);
+        }
+
+        @Override
+        public List<Outcome> ingest(List<StagedEvent> events) {
+            csv.setLength(0);
+            for (StagedEvent e : events) {
+                appendCsvRow(csv, e);
+            }
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package upo.pissir.bench;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.logging.Logger;
+
+// JDBC without a database: every query returns one canned row, every update touches one row.
+// Lets the benchmarks run the real repository code (SQL text, binding, mapping) without I/O.
+public final class FakeDataSource implements DataSource {
+    private static final Timestamp ENTRY_AT = Timestamp.from(Instant.parse("2026-03-07T10:00:00Z"));
+
+    @Override
+    public Connection getConnection() {
+        return proxy(Connection.class, (method, args) -> switch (method) {
+            case "prepareStatement" -> statement();
+            case "getAutoCommit", "isClosed" -> false;
+            default -> null;
+        });
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) {
+        return getConnection();
+    }
+
+    private static PreparedStatement statement() {
+        return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+            case "executeQuery" -> resultSet();
+            case "executeUpdate" -> 1;
+            case "executeBatch" -> new int[0];
+            case "execute" -> false;
+            default -> null;
+        });
+    }
+
+    private static ResultSet resultSet() {
+        boolean[] consumed = {false};
+        return proxy(ResultSet.class, (method, args) -> switch (method) {
+            case "next" -> {
+                boolean has = !consumed[0];
+                consumed[0] = true;
+                yield has;
+            }
+            case "getLong" -> 1L;
+            case "getInt" -> 720;
+            case "getDouble" -> 0d;
+            case "getBoolean" -> false;
+            case "getString" -> "VC_Est";
+            case "getTimestamp" -> ENTRY_AT;
+            case "getBigDecimal" -> BigDecimal.ZERO;
+            case "wasNull" -> false;
+            default -> null;
+        });
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (p, m, args) -> m.getName().equals("unwrap") || m.getName().equals("isWrapperFor")
+                        ? null
+                        : answer.answer(m.getName(), args));
+    }
+
+    @Override public PrintWriter getLogWriter() { return null; }
+    @Override public void setLogWriter(PrintWriter out) {}
+    @Override public void setLoginTimeout(int seconds) {}
+    @Override public int getLoginTimeout() { return 0; }
+    @Override public Logger getParentLogger() { return Logger.getGlobal(); }
+    @Override public <T> T unwrap(Class<T> iface) { return null; }
+    @Override public boolean isWrapperFor(Class<?> iface) { return false; }
+}
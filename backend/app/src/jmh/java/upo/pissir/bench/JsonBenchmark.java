@@ -0,0 +1,61 @@
+package upo.pissir.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import upo.pissir.dto.MqttEvent;
+import upo.pissir.json.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+
+    // as received from Paho: MqttMessage.getPayload()
+    private final byte[] entry = Payloads.bytes(Payloads.ENTRY_MANUAL);
+    private final byte[] exit = Payloads.bytes(Payloads.EXIT_MANUAL);
+    private final byte[] tollPrice = Payloads.bytes(Payloads.TOLLPRICE_REQUEST);
+
+    // previous decoding path: bytes -> String -> Map<String, Object>
+    @Benchmark
+    public Map<String, Object> exitBytesToStringToMap() {
+        return Json.parseToMap(new String(exit, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public MqttEvent readEntryEvent() {
+        return Json.readMqttEvent(entry);
+    }
+
+    @Benchmark
+    public MqttEvent readExitEvent() {
+        return Json.readMqttEvent(exit);
+    }
+
+    @Benchmark
+    public MqttEvent readTollPriceRequestEvent() {
+        return Json.readMqttEvent(tollPrice);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseEntry() {
+        return Json.parseToMap(Payloads.ENTRY_MANUAL);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseExit() {
+        return Json.parseToMap(Payloads.EXIT_MANUAL);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseTollPriceRequest() {
+        return Json.parseToMap(Payloads.TOLLPRICE_REQUEST);
+    }
+}
@@ -0,0 +1,28 @@
+package upo.pissir.bench;
+
+import java.nio.charset.StandardCharsets;
+
+// MQTT payloads as published by toll-service (TollService.publish*)
+public final class Payloads {
+    private Payloads() {}
+
+    public static final String ENTRY_TOPIC = "highway/VC_Est/entry/manual/events";
+    public static final String EXIT_TOPIC = "highway/MI_Ovest/exit/manual/events";
+    public static final String TOLLPRICE_TOPIC = "highway/requests/tollprice";
+
+    public static final String ENTRY_MANUAL = """
+            {"timestamp":"2026-03-07T10:00:00Z","type":"ENTRY_ACCEPTED","plate":"AB123CD","ticketId":"TCK-8f2c41"}""";
+
+    public static final String EXIT_MANUAL = """
+            {"timestamp":"2026-03-07T10:40:00Z","type":"EXIT_COMPLETED","entryTollboothId":"VC_Est",\
+            "amountCents":720,"ticketId":"TCK-8f2c41"}""";
+
+    public static final String TOLLPRICE_REQUEST = """
+            {"timestamp":"2026-03-07T10:39:58Z","type":"TOLLPRICE_REQUEST","correlationId":"c0ffee-42",\
+            "replyTopic":"highway/MI_Ovest/exit/manual/responses/tollprice","exitTollboothId":"MI_Ovest",\
+            "ticketId":"TCK-8f2c41"}""";
+
+    public static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+}
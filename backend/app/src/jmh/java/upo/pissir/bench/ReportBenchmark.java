@@ -0,0 +1,59 @@
+package upo.pissir.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import upo.pissir.dto.ActiveTripResponse;
+import upo.pissir.dto.PageResponse;
+import upo.pissir.repo.TripRepository;
+import upo.pissir.service.ReportService;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReportBenchmark {
+
+    private ReportService reportService;
+
+    @Setup
+    public void setup() {
+        List<TripRepository.ActiveTripReportRow> rows = new ArrayList<>();
+        Instant base = Instant.parse("2026-03-07T10:00:00Z");
+        for (int i = 0; i < 500; i++) {
+            rows.add(new TripRepository.ActiveTripReportRow(
+                    i, "VC_Est", i % 2 == 0 ? "TCK-" + i : null, i % 2 == 0 ? null : "TP-" + i,
+                    "AB" + i + "CD", base.plusSeconds(i)));
+        }
+        reportService = new ReportService(new InMemoryTrips(rows));
+    }
+
+    // row -> DTO mapping of the largest page the API allows
+    @Benchmark
+    public PageResponse<ActiveTripResponse> listActiveTrips500() {
+        return reportService.listActiveTrips(null, null, "500", null);
+    }
+
+    static final class InMemoryTrips extends TripRepository {
+        private final List<ActiveTripReportRow> rows;
+
+        InMemoryTrips(List<ActiveTripReportRow> rows) {
+            super(null);
+            this.rows = rows;
+        }
+
+        @Override
+        public List<ActiveTripReportRow> findActiveTrips(String entryTollboothId, String channel,
+                                                         Instant afterEntryAt, Long afterId, int limit) {
+            return rows;
+        }
+    }
+}
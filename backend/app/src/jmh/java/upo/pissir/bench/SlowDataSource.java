@@ -0,0 +1,89 @@
+package upo.pissir.bench;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+// A bounded pool in front of FakeDataSource: at most poolSize connections are out at once,
+// getConnection waits up to connectionTimeoutMs for one (then fails like Hikari does) and every
+// query holds its connection for queryMicros. Models a DB that is the bottleneck, without a DB.
+public final class SlowDataSource implements DataSource {
+    private final FakeDataSource rows = new FakeDataSource();
+    private final Semaphore connections;
+    private final long connectionTimeoutMs;
+    private final long queryMicros;
+
+    public SlowDataSource(int poolSize, long connectionTimeoutMs, long queryMicros) {
+        this.connections = new Semaphore(poolSize, true);
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.queryMicros = queryMicros;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            if (!connections.tryAcquire(connectionTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Connection is not available, request timed out after "
+                        + connectionTimeoutMs + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a connection", e);
+        }
+        Connection target = rows.getConnection();
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(SlowDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (p, m, args) -> switch (m.getName()) {
+                    case "close" -> {
+                        if (closed.compareAndSet(false, true)) connections.release();
+                        yield null;
+                    }
+                    case "isClosed" -> closed.get();
+                    case "prepareStatement" -> slow((PreparedStatement) invoke(m, target, args));
+                    default -> invoke(m, target, args);
+                });
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    private PreparedStatement slow(PreparedStatement target) {
+        return (PreparedStatement) Proxy.newProxyInstance(SlowDataSource.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (p, m, args) -> {
+                    if (m.getName().startsWith("execute")) {
+                        LockSupport.parkNanos(queryMicros * 1000L);
+                    }
+                    return invoke(m, target, args);
+                });
+    }
+
+    private static Object invoke(Method m, Object target, Object[] args) throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override public PrintWriter getLogWriter() { return null; }
+    @Override public void setLogWriter(PrintWriter out) {}
+    @Override public void setLoginTimeout(int seconds) {}
+    @Override public int getLoginTimeout() { return 0; }
+    @Override public Logger getParentLogger() { return Logger.getGlobal(); }
+    @Override public <T> T unwrap(Class<T> iface) { return null; }
+    @Override public boolean isWrapperFor(Class<?> iface) { return false; }
+}
@@ -0,0 +1,113 @@
+package upo.pissir.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.dto.TollPriceRequestEvent;
+import upo.pissir.json.Json;
+import upo.pissir.repo.FareRepository;
+import upo.pissir.repo.TollboothGeometry;
+import upo.pissir.repo.TollboothRepository;
+import upo.pissir.repo.TripRepository;
+import upo.pissir.service.ActiveTripIndex;
+import upo.pissir.service.TollProcessingService;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TollProcessingBenchmark {
+
+    static final List<TollboothRepository.TollboothRow> TOLLBOOTHS = List.of(
+            new TollboothRepository.TollboothRow("VC_Est", "A4", 53.4, "Piemonte", "Casello Vercelli Est"),
+            new TollboothRepository.TollboothRow("VC_Ovest", "A4", 48.2, "Piemonte", "Casello Vercelli Ovest"),
+            new TollboothRepository.TollboothRow("AT_Est", "A21", 32.7, "Piemonte", "Casello Asti Est"),
+            new TollboothRepository.TollboothRow("AT_Ovest", "A21", 24.1, "Piemonte", "Casello Asti Ovest"),
+            new TollboothRepository.TollboothRow("MI_Est", "A4", 138.6, "Lombardia", "Casello Milano Est"),
+            new TollboothRepository.TollboothRow("MI_Ovest", "A4", 126.1, "Lombardia", "Casello Milano Ovest")
+    );
+
+    private TollboothGeometry geometry;
+    private TollProcessingService indexed;
+    private TollProcessingService sqlOnly;
+    private TollPriceRequestEvent tollPriceRequest;
+    private ExitCompletedEvent exitEvent;
+
+    @Setup
+    public void setup() {
+        geometry = TollboothGeometry.build(TOLLBOOTHS);
+        ActiveTripIndex index = new ActiveTripIndex();
+        index.putTicket("TCK-8f2c41", new ActiveTripIndex.OpenTrip("VC_Est", "AB123CD", Instant.parse("2026-03-07T10:00:00Z")));
+
+        FakeDataSource ds = new FakeDataSource();
+        indexed = new TollProcessingService(new InMemoryFares(), new TripRepository(ds), new InMemoryTollbooths(geometry), index);
+        sqlOnly = new TollProcessingService(new InMemoryFares(), new TripRepository(ds), new InMemoryTollbooths(geometry));
+
+        tollPriceRequest = (TollPriceRequestEvent) Json.readMqttEvent(Payloads.bytes(Payloads.TOLLPRICE_REQUEST));
+        exitEvent = (ExitCompletedEvent) Json.readMqttEvent(Payloads.bytes(Payloads.EXIT_MANUAL));
+    }
+
+    @Benchmark
+    public TollProcessingService.TollPriceResolved resolveTollPriceFromIndex() {
+        return indexed.resolveTollPrice(tollPriceRequest);
+    }
+
+    @Benchmark
+    public TollProcessingService.TollPriceResolved resolveTollPriceFromRepository() {
+        return sqlOnly.resolveTollPrice(tollPriceRequest);
+    }
+
+    // trip metrics are private to the service: measured through the exit they are computed for
+    @Benchmark
+    public void exitWithTripMetrics() {
+        sqlOnly.onExitCompleted("MI_Ovest", "manual", exitEvent);
+    }
+
+    @Benchmark
+    public Double tollboothDistance() {
+        return geometry.distanceKm("VC_Est", "MI_Ovest");
+    }
+
+    static final class InMemoryFares extends FareRepository {
+        InMemoryFares() {
+            super(null);
+        }
+
+        @Override
+        public Integer findFareCents(String entryTollboothId, String exitTollboothId) {
+            return 720;
+        }
+
+        @Override
+        public int fareCents(String entryTollboothId, String exitTollboothId) {
+            return 720;
+        }
+    }
+
+    static final class InMemoryTollbooths extends TollboothRepository {
+        private final TollboothGeometry geometry;
+
+        InMemoryTollbooths(TollboothGeometry geometry) {
+            super(null);
+            this.geometry = geometry;
+        }
+
+        @Override
+        public TollboothGeometry geometry() {
+            return geometry;
+        }
+
+        @Override
+        public Double distanceKm(String fromTollboothId, String toTollboothId) {
+            return geometry.distanceKm(fromTollboothId, toTollboothId);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package upo.pissir.mqtt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import upo.pissir.bench.FakeDataSource;
+import upo.pissir.bench.Payloads;
+import upo.pissir.dto.MqttEvent;
+import upo.pissir.json.Json;
+import upo.pissir.repo.FareRepository;
+import upo.pissir.repo.FaultRepository;
+import upo.pissir.repo.TollboothRepository;
+import upo.pissir.repo.TripRepository;
+import upo.pissir.service.FaultService;
+import upo.pissir.service.TollProcessingService;
+
+import java.util.concurrent.TimeUnit;
+
+// End-to-end handleMessage (topic already routed, payload already decoded by the Paho thread)
+// through the real services and repositories on a FakeDataSource; MQTT publishes are dropped.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MqttBenchmark {
+
+    private MqttListenerService listener;
+    private TopicParser.Parsed entryTopic;
+    private TopicParser.Parsed exitTopic;
+    private TopicParser.Parsed tollPriceTopic;
+    private MqttEvent entry;
+    private MqttEvent exit;
+    private MqttEvent tollPrice;
+
+    @Setup
+    public void setup() {
+        FakeDataSource ds = new FakeDataSource();
+        MqttConfig cfg = MqttConfig.fromEnv();
+        MqttPublisher publisher = new MqttPublisher(cfg) {
+            @Override
+            public void publish(String topic, String jsonPayload, int qos) {
+            }
+        };
+        TollProcessingService processing = new TollProcessingService(
+                new FareRepository(ds), new TripRepository(ds), new TollboothRepository(ds));
+        listener = new MqttListenerService(cfg, new IngestConfig(1, 1, 0, 0, 0), processing,
+                new FaultService(new FaultRepository(ds), null), publisher);
+
+        entryTopic = TopicParser.parse(Payloads.ENTRY_TOPIC);
+        exitTopic = TopicParser.parse(Payloads.EXIT_TOPIC);
+        tollPriceTopic = TopicParser.parse(Payloads.TOLLPRICE_TOPIC);
+        entry = Json.readMqttEvent(Payloads.bytes(Payloads.ENTRY_MANUAL));
+        exit = Json.readMqttEvent(Payloads.bytes(Payloads.EXIT_MANUAL));
+        tollPrice = Json.readMqttEvent(Payloads.bytes(Payloads.TOLLPRICE_REQUEST));
+    }
+
+    @Benchmark
+    public TopicParser.Parsed parseTopic() {
+        return TopicParser.parse(Payloads.EXIT_TOPIC);
+    }
+
+    @Benchmark
+    public void handleEntry() {
+        listener.handleMessage(Payloads.ENTRY_TOPIC, entryTopic, entry);
+    }
+
+    @Benchmark
+    public void handleExit() {
+        listener.handleMessage(Payloads.EXIT_TOPIC, exitTopic, exit);
+    }
+
+    @Benchmark
+    public void handleTollPriceRequest() {
+        listener.handleMessage(Payloads.TOLLPRICE_TOPIC, tollPriceTopic, tollPrice);
+    }
+}
@@ -1,67 +1,189 @@
 package upo.pissir;
 
 import com.zaxxer.hikari.HikariDataSource;
+import upo.pissir.auth.JwtVerifier;
+import upo.pissir.config.AppConfig;
 import upo.pissir.db.SchemaInitializer;
+import upo.pissir.db.PoolMetrics;
+import upo.pissir.db.ReplicaRoutingDataSource;
+import upo.pissir.db.TripPartitionMaintenance;
 import upo.pissir.http.HttpServer;
+import upo.pissir.mqtt.IngestConfig;
 import upo.pissir.mqtt.MqttConfig;
 import upo.pissir.mqtt.MqttListenerService;
 import upo.pissir.mqtt.MqttPublisher;
+import upo.pissir.mqtt.OutboxRelay;
+import upo.pissir.repo.BulkIngestRepository;
+import upo.pissir.repo.CachedFareRepository;
+import upo.pissir.repo.CachedTollboothRepository;
+import upo.pissir.repo.DeadLetterRepository;
 import upo.pissir.repo.FareRepository;
 import upo.pissir.repo.TelepassDebtRepository;
 import upo.pissir.repo.DeviceRepository;
 import upo.pissir.repo.FaultRepository;
+import upo.pissir.repo.OutboxRepository;
+import upo.pissir.repo.PaymentTotalsRepository;
 import upo.pissir.repo.TollboothRepository;
+import upo.pissir.repo.TripBatchWriter;
 import upo.pissir.repo.TripRepository;
+import upo.pissir.service.ActiveTripIndex;
+import upo.pissir.service.BulkIngestService;
+import upo.pissir.service.ExitReorderBuffer;
 import upo.pissir.service.InfrastructureService;
+import upo.pissir.service.JsonSnapshotCache;
+import upo.pissir.service.LiveFeed;
 import upo.pissir.service.FaultService;
 import upo.pissir.service.PaymentService;
+import upo.pissir.service.PaymentTotalsReconciler;
 import upo.pissir.service.ReportService;
 import upo.pissir.service.TollQueryService;
 import upo.pissir.service.TollProcessingService;
 import upo.pissir.db.Db;
 
+import java.nio.file.Path;
+import java.util.List;
+import javax.sql.DataSource;
+
 public class Main {
 
     public static void main(String[] args) {
         System.out.println("Pissir backend starting...");
 
         // 1) DB
-        HikariDataSource ds = (HikariDataSource) Db.createDataSource();
-        SchemaInitializer.init(ds);
+        // one pool per workload (see Db.Pool): schema, jobs and the API on ds
+        PoolMetrics poolMetrics = new PoolMetrics();
+        HikariDataSource ds = Db.createDataSource(Db.Pool.API, 0, poolMetrics);
+        HikariDataSource ingestDs = Db.createDataSource(Db.Pool.INGEST, 0, poolMetrics);
+        HikariDataSource reportDs = Db.createDataSource(Db.Pool.REPORTING, AppConfig.reportStatementTimeoutMs(), poolMetrics);
+        // reports and dashboard listings: the replica when configured and caught up, else the reporting pool
+        HikariDataSource replicaDs = Db.readReplicaConfigured()
+                ? Db.createDataSource(Db.Pool.READ, AppConfig.reportStatementTimeoutMs(), poolMetrics)
+                : null;
+        ReplicaRoutingDataSource replicaReads = replicaDs == null ? null
+                : new ReplicaRoutingDataSource(reportDs, replicaDs, AppConfig.dbReadMaxLagMs(), ReplicaRoutingDataSource.PG_LAG);
+        if (replicaReads != null) {
+            replicaReads.start(AppConfig.dbReadLagCheckMs());
+            poolMetrics.trackReadRouting(replicaReads);
+        }
+        DataSource readDs = replicaReads != null ? replicaReads : reportDs;
+        SchemaInitializer.init(ds, AppConfig.tripPartitionMonthsAhead());
+        TripPartitionMaintenance partitionMaintenance = new TripPartitionMaintenance(
+                ds,
+                AppConfig.tripPartitionMonthsAhead(),
+                AppConfig.tripRetentionMonths(),
+                AppConfig.tripArchiveDir().isBlank() ? null : Path.of(AppConfig.tripArchiveDir()),
+                AppConfig.tripPartitionMaintenanceHours(),
+                AppConfig.ingestEventIdRetentionHours()
+        );
+        partitionMaintenance.start();
 
         // 2) Repos + Service
-        FareRepository fareRepo = new FareRepository(ds);
-        TripRepository tripRepo = new TripRepository(ds);
+        // Bulkheads: ingestDs only serves the MQTT path (trips, faults, dead letters) and the
+        // TripBatchWriter; the HTTP API, admin CRUD and background jobs are on ds.
+        // The fare/tollbooth caches load and write on ds: with them on, the toll gates read memory only.
+        CachedFareRepository fareCache = AppConfig.fareCacheEnabled()
+                ? new CachedFareRepository(ds, AppConfig.fareCacheRefreshSeconds())
+                : null;
+        if (fareCache != null) {
+            fareCache.start();
+        }
+        FareRepository fareRepo = fareCache != null ? fareCache : new FareRepository(ingestDs);
+        FareRepository apiFareRepo = fareCache != null ? fareCache : new FareRepository(ds);
+        TripBatchWriter tripBatchWriter = AppConfig.tripBatchEnabled()
+                ? new TripBatchWriter(ingestDs, AppConfig.tripBatchMaxSize(), AppConfig.tripBatchMaxDelayMs())
+                : null;
+        if (tripBatchWriter != null) {
+            tripBatchWriter.start();
+        }
+        TripRepository tripRepo = new TripRepository(ingestDs, tripBatchWriter);
+        TripRepository apiTripRepo = new TripRepository(ds);
+        TripRepository reportTripRepo = new TripRepository(readDs);
         TelepassDebtRepository debtRepo = new TelepassDebtRepository(ds);
-        TollboothRepository tollboothRepo = new TollboothRepository(ds);
+        CachedTollboothRepository tollboothCache = AppConfig.tollboothCacheEnabled()
+                ? new CachedTollboothRepository(ds, AppConfig.tollboothCacheRefreshSeconds())
+                : null;
+        if (tollboothCache != null) {
+            tollboothCache.start();
+        }
+        TollboothRepository tollboothRepo = tollboothCache != null ? tollboothCache : new TollboothRepository(ingestDs);
+        TollboothRepository apiTollboothRepo = tollboothCache != null ? tollboothCache : new TollboothRepository(ds);
         DeviceRepository deviceRepo = new DeviceRepository(ds);
-        FaultRepository faultRepo = new FaultRepository(ds);
 
-        InfrastructureService infrastructureService = new InfrastructureService(tollboothRepo, fareRepo, deviceRepo);
-        TollQueryService tollQueryService = new TollQueryService(fareRepo);
-        PaymentService paymentService = new PaymentService(debtRepo, tripRepo);
-        ReportService reportService = new ReportService(tripRepo);
-        TollProcessingService processingService = new TollProcessingService(fareRepo, tripRepo, debtRepo, tollboothRepo);
+        InfrastructureService infrastructureService = new InfrastructureService(apiTollboothRepo, apiFareRepo, deviceRepo,
+                new JsonSnapshotCache(AppConfig.infrastructureSnapshotMaxAgeMs()));
+        TollQueryService tollQueryService = new TollQueryService(apiFareRepo);
+        PaymentTotalsRepository totalsRepo = new PaymentTotalsRepository(ds);
+        PaymentTotalsReconciler totalsReconciler = new PaymentTotalsReconciler(totalsRepo, AppConfig.paymentTotalsReconcileSeconds());
+        totalsReconciler.start();
+        PaymentService paymentService = new PaymentService(debtRepo, apiTripRepo, totalsRepo);
+        ReportService reportService = new ReportService(reportTripRepo, AppConfig.reportExportFetchSize());
+        // from the primary: the in-memory views must not start behind a lagging replica
+        List<TripRepository.ActiveTripReportRow> openTrips = apiTripRepo.findActiveTrips(null, null, Integer.MAX_VALUE);
+        ActiveTripIndex activeTrips = null;
+        if (AppConfig.activeTripIndexEnabled()) {
+            activeTrips = new ActiveTripIndex();
+            activeTrips.warmUp(openTrips);
+        }
+        LiveFeed liveFeed = new LiveFeed(AppConfig.liveFeedFlushMs(), AppConfig.liveFeedMaxPending(), AppConfig.liveFeedKeepAliveSeconds());
+        ExitReorderBuffer exitReorder = new ExitReorderBuffer(new DeadLetterRepository(ingestDs),
+                AppConfig.exitReorderWindowMs(), AppConfig.exitReorderTickMs(), AppConfig.exitReorderCapacity());
+        exitReorder.start();
+        TollProcessingService processingService = new TollProcessingService(fareRepo, tripRepo, tollboothRepo, activeTrips,
+                liveFeed, exitReorder);
         MqttConfig mqttConfig = MqttConfig.fromEnv();
         MqttPublisher mqttPublisher = new MqttPublisher(mqttConfig);
-        FaultService faultService = new FaultService(faultRepo, mqttPublisher);
+        OutboxRelay outboxRelay = new OutboxRelay(new OutboxRepository(ds), mqttPublisher,
+                AppConfig.outboxBatchSize(), AppConfig.outboxPollMs(), AppConfig.outboxMaxBackoffSeconds());
+        // HTTP: replies and lookups on the API pool, the dashboard listing on readDs
+        FaultService faultService = new FaultService(new FaultRepository(ds, readDs), outboxRelay, liveFeed);
+        // MQTT faults: ingest pool, primary only (a lagging replica would hide recent faults)
+        FaultService ingestFaultService = new FaultService(new FaultRepository(ingestDs), outboxRelay, liveFeed);
+        // live feed warm-up from the primary, like the open trips above
+        liveFeed.warmUp(openTrips, new FaultService(new FaultRepository(ds), outboxRelay).listFaults());
+        liveFeed.start();
+        // backfill batches: one long transaction at a time on the API pool, away from the toll gate path
+        BulkIngestService bulkIngestService = new BulkIngestService(new BulkIngestRepository(ds), apiTollboothRepo, activeTrips,
+                liveFeed, AppConfig.bulkIngestMaxEvents());
 
         // 3) HTTP
-        int httpPort = upo.pissir.config.AppConfig.httpPort();
-        HttpServer.start(httpPort, infrastructureService, tollQueryService, paymentService, reportService, faultService);
+        int httpPort = AppConfig.httpPort();
+        JwtVerifier.start();
+        HttpServer.start(httpPort, infrastructureService, tollQueryService, paymentService, reportService, faultService, liveFeed,
+                bulkIngestService, poolMetrics);
 
         // 4) MQTT Listener
         mqttPublisher.start();
-        MqttListenerService mqtt = new MqttListenerService(mqttConfig, processingService, faultService, mqttPublisher);
+        outboxRelay.start();
+        MqttListenerService mqtt = new MqttListenerService(mqttConfig, IngestConfig.fromEnv(), processingService, ingestFaultService,
+                mqttPublisher);
+        // the last lookup of an expiring parked exit runs on the pass's ingest worker
+        exitReorder.retryOn(mqtt::submit);
         mqtt.start();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 mqtt.stop();
             } catch (Exception ignored) {}
+            exitReorder.stop();
+            try {
+                outboxRelay.stop();
+            } catch (Exception ignored) {}
             try {
                 mqttPublisher.stop();
             } catch (Exception ignored) {}
+            try {
+                if (tripBatchWriter != null) tripBatchWriter.stop();
+            } catch (Exception ignored) {}
+            liveFeed.stop();
+            JwtVerifier.stop();
+            partitionMaintenance.stop();
+            totalsReconciler.stop();
+            if (fareCache != null) fareCache.stop();
+            if (tollboothCache != null) tollboothCache.stop();
+            if (replicaReads != null) replicaReads.stop();
+            if (replicaDs != null) replicaDs.close();
+            reportDs.close();
+            ingestDs.close();
             ds.close();
         }));
 
@@ -2,12 +2,20 @@ package upo.pissir.auth;
 
 import com.nimbusds.jwt.JWTClaimsSet;
 import io.javalin.http.Context;
+import upo.pissir.config.AppConfig;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 public final class Auth {
+  // Keycloak realm role names, read once at startup
+  private static final String CUSTOMER_ROLE = envOrDefault("KC_ROLE_CUSTOMER", "customers");
+  private static final String EMPLOYEE_ROLE = envOrDefault("KC_ROLE_EMPLOYEE", "employees");
+  private static final String ADMINISTRATOR_ROLE = envOrDefault("KC_ROLE_ADMINISTRATOR", "administrators");
+
+  private static final TokenCache TOKEN_CACHE = new TokenCache(AppConfig.authTokenCacheSize());
+
   private Auth() {}
 
   public static AuthUser requireAuth(Context ctx) {
@@ -19,6 +27,11 @@ public final class Auth {
 
     String token = auth.substring("Bearer ".length()).trim();
 
+    AuthUser cached = TOKEN_CACHE.get(token);
+    if (cached != null) {
+      return cached;
+    }
+
     JWTClaimsSet claims;
     try {
       claims = JwtVerifier.verify(token);
@@ -33,7 +46,13 @@ public final class Auth {
     List<String> realmRoles = extractRealmRoles(claims);
     List<String> roles = mapToAppRoles(realmRoles);
 
-    return new AuthUser(sub, username, roles);
+    AuthUser user = new AuthUser(sub, username, List.copyOf(roles));
+    TOKEN_CACHE.put(token, user, claims.getExpirationTime() == null ? null : claims.getExpirationTime().toInstant());
+    return user;
+  }
+
+  public static TokenCache.Stats tokenCacheStats() {
+    return TOKEN_CACHE.stats();
   }
 
   public static void requireRole(Context ctx, AuthUser user, String role) {
@@ -63,21 +82,17 @@ public final class Auth {
   }
 
   private static List<String> mapToAppRoles(List<String> realmRoles) {
-    String customerRole = envOrDefault("KC_ROLE_CUSTOMER", "customers");
-    String employeeRole = envOrDefault("KC_ROLE_EMPLOYEE", "employees");
-    String administratorRole = envOrDefault("KC_ROLE_ADMINISTRATOR", "administrators");
-
     List<String> out = new ArrayList<>();
     for (String role : realmRoles) {
       if (role == null) continue;
 
-      if (Role.CUSTOMER.name().equalsIgnoreCase(role) || customerRole.equalsIgnoreCase(role)) {
+      if (Role.CUSTOMER.name().equalsIgnoreCase(role) || CUSTOMER_ROLE.equalsIgnoreCase(role)) {
         out.add(Role.CUSTOMER.name());
       }
-      if (Role.EMPLOYEE.name().equalsIgnoreCase(role) || employeeRole.equalsIgnoreCase(role)) {
+      if (Role.EMPLOYEE.name().equalsIgnoreCase(role) || EMPLOYEE_ROLE.equalsIgnoreCase(role)) {
         out.add(Role.EMPLOYEE.name());
       }
-      if (Role.ADMINISTRATOR.name().equalsIgnoreCase(role) || administratorRole.equalsIgnoreCase(role)) {
+      if (Role.ADMINISTRATOR.name().equalsIgnoreCase(role) || ADMINISTRATOR_ROLE.equalsIgnoreCase(role)) {
         out.add(Role.ADMINISTRATOR.name());
       }
     }
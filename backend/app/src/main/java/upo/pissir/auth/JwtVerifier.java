@@ -2,8 +2,6 @@ package upo.pissir.auth;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.jwk.source.RemoteJWKSet;
 import com.nimbusds.jose.proc.BadJOSEException;
 import com.nimbusds.jose.proc.JWSKeySelector;
 import com.nimbusds.jose.proc.JWSVerificationKeySelector;
@@ -13,12 +11,12 @@ import com.nimbusds.jwt.proc.BadJWTException;
 import com.nimbusds.jwt.proc.ConfigurableJWTProcessor;
 import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 
-import java.net.URI;
 import java.text.ParseException;
 
 public final class JwtVerifier {
 
     private static final ConfigurableJWTProcessor<SecurityContext> PROCESSOR;
+    private static final RefreshingJWKSource KEY_SOURCE;
     private static final String ISSUER;   // optional
     private static final String AUDIENCE; // optional
 
@@ -26,20 +24,25 @@ public final class JwtVerifier {
         try {
             ISSUER = trimToNull(System.getenv("KEYCLOAK_ISSUER"));
             AUDIENCE = trimToNull(System.getenv("KEYCLOAK_AUDIENCE"));
-            String jwksUrl = trimToNull(System.getenv("KEYCLOAK_JWKS_URL"));
+            // local JWKS file (offline / tests) wins over the Keycloak endpoint
+            String jwksLocation = trimToNull(System.getenv("KEYCLOAK_JWKS_FILE"));
+            if (jwksLocation == null) {
+                jwksLocation = trimToNull(System.getenv("KEYCLOAK_JWKS_URL"));
+            }
 
-            if (jwksUrl == null) {
+            if (jwksLocation == null) {
                 throw new IllegalStateException("KEYCLOAK_JWKS_URL missing");
             }
 
-            URI jwksUri = URI.create(jwksUrl);
-
-            @SuppressWarnings("deprecation")
-            JWKSource<SecurityContext> keySource = new RemoteJWKSet<>(jwksUri.toURL());
+            KEY_SOURCE = new RefreshingJWKSource(
+                    RefreshingJWKSource.loaderFor(jwksLocation, 2_000, 2_000),
+                    Long.parseLong(System.getenv().getOrDefault("KEYCLOAK_JWKS_REFRESH_SEC", "300")),
+                    Long.parseLong(System.getenv().getOrDefault("KEYCLOAK_JWKS_MIN_REFRESH_MS", "30000"))
+            );
 
             ConfigurableJWTProcessor<SecurityContext> p = new DefaultJWTProcessor<>();
             JWSKeySelector<SecurityContext> keySelector =
-                    new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, keySource);
+                    new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, KEY_SOURCE);
 
             p.setJWSKeySelector(keySelector);
             PROCESSOR = p;
@@ -50,6 +53,16 @@ public final class JwtVerifier {
 
     private JwtVerifier() {}
 
+    // Loads the keys and starts their background refresh; called once at boot so that no
+    // request thread ever fetches the JWKS
+    public static void start() {
+        KEY_SOURCE.start();
+    }
+
+    public static void stop() {
+        KEY_SOURCE.stop();
+    }
+
     public static JWTClaimsSet verify(String token)
             throws ParseException, BadJOSEException, JOSEException {
 
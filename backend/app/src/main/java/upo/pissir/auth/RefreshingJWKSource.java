@@ -0,0 +1,153 @@
+package upo.pissir.auth;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// JWKS held in memory and replaced by a background scheduler: verification never waits on
+// Keycloak. The set is loaded at start (a failure there only delays authentication, it does
+// not stop the backend), then reloaded every refreshSeconds +/- JITTER. A failed reload keeps
+// serving the last good set; a token whose kid is unknown (key rotation) schedules an early
+// reload, at most once per minRefreshIntervalMs, and is rejected meanwhile.
+public final class RefreshingJWKSource implements JWKSource<SecurityContext> {
+    private static final double JITTER = 0.2;
+    private static final long RETRY_SECONDS = 10;
+
+    // Reads the whole key set (file or URL)
+    public interface Loader {
+        JWKSet load() throws Exception;
+    }
+
+    private final Loader loader;
+    private final long refreshSeconds;
+    private final long minRefreshIntervalMs;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // an early reload is queued on the scheduler: a burst of unknown kids queues only one
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private volatile JWKSet current;
+    private volatile long lastAttemptMs;
+    private ScheduledExecutorService scheduler;
+
+    public RefreshingJWKSource(Loader loader, long refreshSeconds, long minRefreshIntervalMs) {
+        if (refreshSeconds < 1) {
+            throw new IllegalArgumentException("refreshSeconds must be >= 1");
+        }
+        this.loader = loader;
+        this.refreshSeconds = refreshSeconds;
+        this.minRefreshIntervalMs = Math.max(0L, minRefreshIntervalMs);
+    }
+
+    // http(s) URL, file: URL or plain path of a JWKS document
+    public static Loader loaderFor(String location, int connectTimeoutMs, int readTimeoutMs) {
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            URI uri = URI.create(location);
+            return () -> JWKSet.load(uri.toURL(), connectTimeoutMs, readTimeoutMs, 512 * 1024);
+        }
+        File file = location.startsWith("file:") ? new File(URI.create(location)) : new File(location);
+        return () -> JWKSet.load(file);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jwks-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        boolean loaded = refresh();
+        scheduleNext(loaded ? jittered(refreshSeconds) : RETRY_SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        JWKSet set = current;
+        if (set == null) {
+            requestRefresh();
+            throw new KeySourceException("JWKS not loaded yet");
+        }
+        List<JWK> keys = jwkSelector.select(set);
+        if (keys.isEmpty()) {
+            requestRefresh();
+        }
+        return keys;
+    }
+
+    // package-private for tests
+    JWKSet current() {
+        return current;
+    }
+
+    // Loads the set on the calling thread; returns false (keeping the old set) on failure
+    boolean refresh() {
+        if (!refreshing.compareAndSet(false, true)) return false;
+        lastAttemptMs = System.currentTimeMillis();
+        try {
+            JWKSet loaded = loader.load();
+            if (loaded == null || loaded.getKeys() == null || loaded.getKeys().isEmpty()) {
+                throw new IllegalStateException("empty key set");
+            }
+            current = loaded;
+            return true;
+        } catch (Exception e) {
+            System.out.println("JWKS refresh failed" + (current == null ? "" : ", keeping previous keys")
+                    + ": " + e.getMessage());
+            return false;
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private void scheduledRefresh() {
+        boolean loaded = refresh();
+        scheduleNext(loaded ? jittered(refreshSeconds) : Math.min(RETRY_SECONDS, refreshSeconds));
+    }
+
+    private void requestRefresh() {
+        ScheduledExecutorService s = scheduler;
+        if (s == null || refreshing.get()) return;
+        if (System.currentTimeMillis() - lastAttemptMs < minRefreshIntervalMs) return;
+        if (!refreshQueued.compareAndSet(false, true)) return;
+        try {
+            s.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    refreshQueued.set(false);
+                }
+            });
+        } catch (Exception ignored) {
+            // scheduler stopped
+            refreshQueued.set(false);
+        }
+    }
+
+    private synchronized void scheduleNext(long delaySeconds) {
+        if (scheduler == null) return;
+        scheduler.schedule(this::scheduledRefresh, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    // spreads the reloads of several backend replicas over +/- JITTER of the period
+    static long jittered(long seconds) {
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * JITTER;
+        return Math.max(1L, Math.round(seconds * factor));
+    }
+}
@@ -0,0 +1,97 @@
+package upo.pissir.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Verified bearer tokens -> AuthUser, so the RS256 check and claim mapping run once per token.
+// Keyed by the SHA-256 of the token (raw tokens are never kept), valid until the token's exp,
+// least recently used entry evicted beyond maxEntries. maxEntries 0 disables the cache.
+public final class TokenCache {
+
+    public record Stats(long hits, long misses, long evictions, int size) {}
+
+    private record Entry(AuthUser user, Instant expiresAt) {}
+
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TokenCache(int maxEntries) {
+        this(maxEntries, Clock.systemUTC());
+    }
+
+    TokenCache(int maxEntries, Clock clock) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must be >= 0");
+        }
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= TokenCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    // null on a miss or when the cached token has expired
+    public AuthUser get(String token) {
+        if (maxEntries == 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+        String key = key(token);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !clock.instant().isBefore(entry.expiresAt())) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.user();
+    }
+
+    // Tokens without exp are not cached: there is no point at which the entry would go stale
+    public void put(String token, AuthUser user, Instant expiresAt) {
+        if (maxEntries == 0 || expiresAt == null || !clock.instant().isBefore(expiresAt)) return;
+        String key = key(token);
+        synchronized (entries) {
+            entries.put(key, new Entry(user, expiresAt));
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    private static String key(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package upo.pissir.config;
 
+import upo.pissir.db.Db;
+
 public final class AppConfig {
   private AppConfig() {}
 
@@ -7,5 +9,168 @@ public final class AppConfig {
     String v = System.getenv().getOrDefault("HTTP_PORT", "7070");
     return Integer.parseInt(v);
   }
-}
 
+  // Group commit of trip inserts/closes (see TripBatchWriter)
+  public static boolean tripBatchEnabled() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("TRIP_BATCH_ENABLED", "true"));
+  }
+
+  public static int tripBatchMaxSize() {
+    return Integer.parseInt(System.getenv().getOrDefault("TRIP_BATCH_MAX_SIZE", "64"));
+  }
+
+  public static long tripBatchMaxDelayMs() {
+    return Long.parseLong(System.getenv().getOrDefault("TRIP_BATCH_MAX_DELAY_MS", "2"));
+  }
+
+  // In-memory fare matrix (see CachedFareRepository); refresh = cache_versions poll period
+  public static boolean fareCacheEnabled() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("FARE_CACHE_ENABLED", "true"));
+  }
+
+  public static long fareCacheRefreshSeconds() {
+    return Long.parseLong(System.getenv().getOrDefault("FARE_CACHE_REFRESH_SEC", "5"));
+  }
+
+  // In-memory tollbooth geometry and distance table (see CachedTollboothRepository)
+  public static boolean tollboothCacheEnabled() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("TOLLBOOTH_CACHE_ENABLED", "true"));
+  }
+
+  public static long tollboothCacheRefreshSeconds() {
+    return Long.parseLong(System.getenv().getOrDefault("TOLLBOOTH_CACHE_REFRESH_SEC", "5"));
+  }
+
+  // In-memory open trips for TOLLPRICE_REQUEST (see ActiveTripIndex); disable when
+  // replicas split the MQTT events between them (shared subscriptions)
+  public static boolean activeTripIndexEnabled() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("ACTIVE_TRIP_INDEX_ENABLED", "true"));
+  }
+
+  // mqtt_outbox relay (see OutboxRelay): poll period, claim size, retry backoff cap
+  public static long outboxPollMs() {
+    return Long.parseLong(System.getenv().getOrDefault("OUTBOX_POLL_MS", "1000"));
+  }
+
+  public static int outboxBatchSize() {
+    return Integer.parseInt(System.getenv().getOrDefault("OUTBOX_BATCH_SIZE", "100"));
+  }
+
+  public static long outboxMaxBackoffSeconds() {
+    return Long.parseLong(System.getenv().getOrDefault("OUTBOX_MAX_BACKOFF_SEC", "60"));
+  }
+
+  // statement_timeout of every query on the reporting pool; 0 = none
+  public static long reportStatementTimeoutMs() {
+    return Long.parseLong(System.getenv().getOrDefault("REPORT_STATEMENT_TIMEOUT_MS", "30000"));
+  }
+
+  // Read replica (DB_READ_URL, see Db.Pool.READ): above this replay lag reads go back to the primary;
+  // lag probe period
+  public static long dbReadMaxLagMs() {
+    return Long.parseLong(System.getenv().getOrDefault("DB_READ_MAX_LAG_MS", "5000"));
+  }
+
+  public static long dbReadLagCheckMs() {
+    return Long.parseLong(System.getenv().getOrDefault("DB_READ_LAG_CHECK_MS", "1000"));
+  }
+
+  // rows per round trip of the server-side cursor behind GET /api/reports/trips/export
+  public static int reportExportFetchSize() {
+    return Integer.parseInt(System.getenv().getOrDefault("REPORT_EXPORT_FETCH_SIZE", "1000"));
+  }
+
+  // Monthly trips partitions (see TripPartitions / TripPartitionMaintenance).
+  // Retention 0 = keep every month; archive dir empty = detach old months instead of exporting them.
+  public static int tripPartitionMonthsAhead() {
+    return Integer.parseInt(System.getenv().getOrDefault("TRIPS_PARTITION_MONTHS_AHEAD", "3"));
+  }
+
+  public static int tripRetentionMonths() {
+    return Integer.parseInt(System.getenv().getOrDefault("TRIPS_RETENTION_MONTHS", "0"));
+  }
+
+  public static String tripArchiveDir() {
+    return System.getenv().getOrDefault("TRIPS_ARCHIVE_DIR", "");
+  }
+
+  public static long tripPartitionMaintenanceHours() {
+    return Long.parseLong(System.getenv().getOrDefault("TRIPS_PARTITION_MAINTENANCE_HOURS", "6"));
+  }
+
+  // EXIT_COMPLETED without an open trip: how long it waits for its entry (0 = dead-letter at once),
+  // timing wheel resolution, max exits parked at once
+  public static long exitReorderWindowMs() {
+    return Long.parseLong(System.getenv().getOrDefault("EXIT_REORDER_WINDOW_MS", "5000"));
+  }
+
+  public static long exitReorderTickMs() {
+    return Long.parseLong(System.getenv().getOrDefault("EXIT_REORDER_TICK_MS", "100"));
+  }
+
+  public static int exitReorderCapacity() {
+    return Integer.parseInt(System.getenv().getOrDefault("EXIT_REORDER_CAPACITY", "10000"));
+  }
+
+  // how long ingested ENTRY_ACCEPTED ids are kept for duplicate detection (pruned by the partition maintenance)
+  public static long ingestEventIdRetentionHours() {
+    return Long.parseLong(System.getenv().getOrDefault("INGEST_EVENT_ID_RETENTION_HOURS", "72"));
+  }
+
+  // max NDJSON lines per POST /api/ingest/events (one transaction each)
+  public static int bulkIngestMaxEvents() {
+    return Integer.parseInt(System.getenv().getOrDefault("BULK_INGEST_MAX_EVENTS", "100000"));
+  }
+
+  // seconds between recomputations of the payment totals from the tables; <= 0 disables
+  public static long paymentTotalsReconcileSeconds() {
+    return Long.parseLong(System.getenv().getOrDefault("PAYMENT_TOTALS_RECONCILE_SEC", "300"));
+  }
+
+  // GET /api/live: delta coalescing window, per-dashboard backlog before disconnecting it,
+  // keep-alive comment period on an idle stream
+  public static long liveFeedFlushMs() {
+    return Long.parseLong(System.getenv().getOrDefault("LIVE_FEED_FLUSH_MS", "250"));
+  }
+
+  public static int liveFeedMaxPending() {
+    return Integer.parseInt(System.getenv().getOrDefault("LIVE_FEED_MAX_PENDING", "256"));
+  }
+
+  public static long liveFeedKeepAliveSeconds() {
+    return Long.parseLong(System.getenv().getOrDefault("LIVE_FEED_KEEPALIVE_SEC", "15"));
+  }
+
+  // verified bearer tokens kept in memory until their exp (see TokenCache); 0 disables
+  public static int authTokenCacheSize() {
+    return Integer.parseInt(System.getenv().getOrDefault("AUTH_TOKEN_CACHE_SIZE", "10000"));
+  }
+
+  // max age of the pre-serialized infrastructure GET bodies, bounding how long a change made
+  // through another backend replica stays invisible here; 0 = only local writes refresh them
+  public static long infrastructureSnapshotMaxAgeMs() {
+    return Long.parseLong(System.getenv().getOrDefault("INFRA_SNAPSHOT_MAX_AGE_MS", "5000"));
+  }
+
+  // Javalin handlers on virtual threads (opt-in)
+  public static boolean httpVirtualThreads() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("HTTP_VIRTUAL_THREADS", "false"));
+  }
+
+  // Max /api requests executing at once (see AdmissionLimiter; export, bulk ingest and the live
+  // feed are not counted): defaults to DB_POOL_MAX with virtual threads, off otherwise; 0 disables
+  public static int httpAdmissionLimit() {
+    String v = System.getenv("HTTP_ADMISSION_LIMIT");
+    if (v != null && !v.isBlank()) return Integer.parseInt(v.trim());
+    return httpVirtualThreads() ? dbPoolMax() : 0;
+  }
+
+  public static long httpAdmissionTimeoutMs() {
+    return Long.parseLong(System.getenv().getOrDefault("HTTP_ADMISSION_TIMEOUT_MS", "1000"));
+  }
+
+  // size of the API pool (DB_POOL_MAX), the one the admitted requests draw from
+  public static int dbPoolMax() {
+    return Db.Pool.API.maxSize();
+  }
+}
@@ -3,18 +3,49 @@ package upo.pissir.db;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
-import javax.sql.DataSource;
-
 public final class Db {
 
+    // Bulkheads: each workload has its own pool, so a burst of slow reports can only exhaust
+    // the reporting pool and never the connections the toll gates (ingest) are waiting for.
+    public enum Pool {
+        // HTTP API and background jobs: DB_POOL_MAX / DB_POOL_MIN (the original single pool)
+        API("api", "DB_POOL_MAX", 10),
+        // MQTT entry/exit processing, fixed size so the gate path never waits for a new connection
+        INGEST("ingest", "DB_POOL_INGEST_MAX", 8),
+        // /api/reports/*: small, every statement capped by REPORT_STATEMENT_TIMEOUT_MS
+        REPORTING("reporting", "DB_POOL_REPORT_MAX", 3),
+        // optional read replica (DB_READ_URL) behind ReplicaRoutingDataSource, read-only sessions
+        READ("read", "DB_POOL_READ_MAX", 3);
+
+        private final String poolName;
+        private final String maxSizeEnv;
+        private final int defaultMaxSize;
+
+        Pool(String poolName, String maxSizeEnv, int defaultMaxSize) {
+            this.poolName = poolName;
+            this.maxSizeEnv = maxSizeEnv;
+            this.defaultMaxSize = defaultMaxSize;
+        }
+
+        public int maxSize() {
+            return Integer.parseInt(env(maxSizeEnv, String.valueOf(defaultMaxSize)));
+        }
+    }
+
     private Db() {
     }
 
-    public static DataSource createDataSource() {
+    public static boolean readReplicaConfigured() {
+        return !env("DB_READ_URL", "").isBlank();
+    }
+
+    // statementTimeoutMs > 0 is set as the session statement_timeout of every connection
+    public static HikariDataSource createDataSource(Pool pool, long statementTimeoutMs, PoolMetrics metrics) {
         // Priority:
         // 1) DB_URL if provided
         // 2) Build from DB_HOST/DB_PORT/DB_NAME
-        String jdbcUrl = env("DB_URL", "");
+        // 3) DB_READ_URL for the READ pool, credentials default to the primary's
+        String jdbcUrl = pool == Pool.READ ? env("DB_READ_URL", "") : env("DB_URL", "");
         if (jdbcUrl.isBlank()) {
             String host = env("DB_HOST", "localhost");
             String port = env("DB_PORT", "5432");
@@ -24,16 +55,36 @@ public final class Db {
 
         String user = env("DB_USER", "admin");
         String pass = env("DB_PASSWORD", "PISSIR");
+        if (pool == Pool.READ) {
+            user = env("DB_READ_USER", user);
+            pass = env("DB_READ_PASSWORD", pass);
+        }
 
         HikariConfig cfg = new HikariConfig();
+        cfg.setPoolName(pool.poolName);
         cfg.setJdbcUrl(jdbcUrl);
         cfg.setUsername(user);
         cfg.setPassword(pass);
 
         // Minimal and robust pool settings
-        cfg.setMaximumPoolSize(Integer.parseInt(env("DB_POOL_MAX", "10")));
-        cfg.setMinimumIdle(Integer.parseInt(env("DB_POOL_MIN", "1")));
+        int maxSize = pool.maxSize();
+        cfg.setMaximumPoolSize(maxSize);
+        cfg.setMinimumIdle(switch (pool) {
+            case API -> Integer.parseInt(env("DB_POOL_MIN", "1"));
+            case INGEST -> maxSize;
+            case REPORTING, READ -> 0;
+        });
         cfg.setConnectionTimeout(Long.parseLong(env("DB_POOL_CONN_TIMEOUT_MS", "5000")));
+        if (pool == Pool.READ) {
+            cfg.setReadOnly(true);
+        }
+        if (statementTimeoutMs > 0) {
+            // applied by the server at session start: no extra round trip per query
+            cfg.addDataSourceProperty("options", "-c statement_timeout=" + statementTimeoutMs);
+        }
+        if (metrics != null) {
+            cfg.setMetricsTrackerFactory(metrics);
+        }
 
         return new HikariDataSource(cfg);
     }
@@ -0,0 +1,109 @@
+package upo.pissir.db;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-pool connection wait metrics, fed by Hikari on every getConnection(): how long callers
+// waited for a connection, how often they timed out and how long connections were held.
+// With a read replica the snapshot also carries where the read-only queries are being routed.
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    public record Stats(
+            String pool,
+            int active,
+            int idle,
+            int pending,
+            int max,
+            long acquired,
+            long timeouts,
+            double avgWaitMicros,
+            double maxWaitMicros,
+            double avgUsageMillis
+    ) {}
+
+    // readRouting is null without DB_READ_URL
+    public record Snapshot(List<Stats> pools, ReplicaRoutingDataSource.Stats readRouting) {}
+
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    private volatile ReplicaRoutingDataSource readRouting;
+
+    public void trackReadRouting(ReplicaRoutingDataSource routing) {
+        this.readRouting = routing;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        Tracker tracker = new Tracker(poolStats);
+        trackers.put(poolName, tracker);
+        return tracker;
+    }
+
+    public List<Stats> stats() {
+        List<Stats> out = new ArrayList<>();
+        trackers.forEach((name, t) -> out.add(t.stats(name)));
+        out.sort((a, b) -> a.pool().compareTo(b.pool()));
+        return out;
+    }
+
+    public Snapshot snapshot() {
+        ReplicaRoutingDataSource routing = readRouting;
+        return new Snapshot(stats(), routing == null ? null : routing.stats());
+    }
+
+    private static final class Tracker implements IMetricsTracker {
+        private final PoolStats pool;
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder usages = new LongAdder();
+        private final LongAdder usageMillis = new LongAdder();
+
+        private Tracker(PoolStats pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquired.increment();
+            waitNanos.add(elapsedAcquiredNanos);
+            maxWaitNanos.accumulate(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usages.increment();
+            usageMillis.add(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+
+        private Stats stats(String name) {
+            long n = acquired.sum();
+            long u = usages.sum();
+            return new Stats(
+                    name,
+                    pool.getActiveConnections(),
+                    pool.getIdleConnections(),
+                    pool.getPendingThreads(),
+                    pool.getMaxConnections(),
+                    n,
+                    timeouts.sum(),
+                    n == 0 ? 0d : waitNanos.sum() / 1000d / n,
+                    maxWaitNanos.get() / 1000d,
+                    u == 0 ? 0d : (double) usageMillis.sum() / u
+            );
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package upo.pissir.db;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Read-only DataSource for reports and listings: connections come from the replica (DB_READ_URL)
+// while its replay lag stays within maxLagMs, from the primary otherwise. The lag is probed in
+// the background every checkIntervalMs, so choosing the target costs nothing per query; an
+// unreachable replica also sends reads to the primary until a probe succeeds again.
+public class ReplicaRoutingDataSource implements DataSource {
+
+    public record Stats(boolean onReplica, long lagMs, long replicaReads, long primaryReads, long fallbacks) {}
+
+    // Replica lag in ms, 0 when caught up
+    public interface LagProbe {
+        long lagMs(DataSource primary, DataSource replica) throws SQLException;
+    }
+
+    static final String PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()::text";
+
+    // Measured against the primary's current WAL position, not the standby's own receive LSN: a
+    // standby whose WAL receiver dropped replays what it has and then looks caught up with itself
+    // while falling behind without bound. Caught up = replayed past the primary's LSN read just
+    // before; otherwise the age of the last replayed transaction. A server that is not in
+    // recovery reports 0, so two independent local instances work too.
+    static final String REPLICA_LAG_SQL = """
+            SELECT pg_is_in_recovery(),
+                   pg_last_wal_replay_lsn() >= ?::pg_lsn,
+                   EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000
+            """;
+
+    public static final LagProbe PG_LAG = (primary, replica) -> {
+        String primaryLsn;
+        try (Connection c = primary.getConnection();
+             PreparedStatement ps = c.prepareStatement(PRIMARY_LSN_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            primaryLsn = rs.next() ? rs.getString(1) : null;
+        }
+        if (primaryLsn == null) {
+            throw new SQLException("primary WAL position unavailable");
+        }
+        try (Connection c = replica.getConnection();
+             PreparedStatement ps = c.prepareStatement(REPLICA_LAG_SQL)) {
+            ps.setString(1, primaryLsn);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("replica lag unavailable");
+                boolean inRecovery = rs.getBoolean(1);
+                boolean caughtUp = rs.getBoolean(2) && !rs.wasNull();
+                double replayAgeMs = rs.getDouble(3);
+                return lagMs(inRecovery, caughtUp, rs.wasNull() ? null : replayAgeMs);
+            }
+        }
+    };
+
+    // package-private for tests; an unknown age while behind is not usable
+    static long lagMs(boolean inRecovery, boolean caughtUp, Double replayAgeMs) throws SQLException {
+        if (!inRecovery || caughtUp) return 0L;
+        if (replayAgeMs == null) {
+            throw new SQLException("replica behind the primary, nothing replayed yet");
+        }
+        return Math.max(0L, Math.round(replayAgeMs));
+    }
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxLagMs;
+    private final LagProbe probe;
+    private volatile boolean onReplica;
+    private volatile long lastLagMs = -1L;
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private ScheduledExecutorService checker;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long maxLagMs, LagProbe probe) {
+        if (maxLagMs < 0) {
+            throw new IllegalArgumentException("maxLagMs must be >= 0");
+        }
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMs = maxLagMs;
+        this.probe = probe;
+    }
+
+    // First probe inline: reads start on the replica only once it is known to be usable
+    public void start(long checkIntervalMs) {
+        check();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-lag");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(100L, checkIntervalMs);
+        checker.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    // package-private for tests
+    void check() {
+        boolean usable;
+        try {
+            long lag = probe.lagMs(primary, replica);
+            lastLagMs = lag;
+            usable = lag <= maxLagMs;
+        } catch (Exception e) {
+            lastLagMs = -1L;
+            usable = false;
+        }
+        route(usable);
+    }
+
+    private void route(boolean toReplica) {
+        if (onReplica == toReplica) return;
+        onReplica = toReplica;
+        System.out.println("Read queries routed to the " + (toReplica ? "replica" : "primary")
+                + " (lagMs=" + lastLagMs + ", maxLagMs=" + maxLagMs + ")");
+    }
+
+    public Stats stats() {
+        return new Stats(onReplica, lastLagMs, replicaReads.get(), primaryReads.get(), fallbacks.get());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (onReplica) {
+            try {
+                Connection c = replica.getConnection();
+                replicaReads.incrementAndGet();
+                return c;
+            } catch (SQLException e) {
+                // replica gone between probes: this read and the next ones go to the primary
+                fallbacks.incrementAndGet();
+                route(false);
+            }
+        }
+        primaryReads.incrementAndGet();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("credentials are set on the pools");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
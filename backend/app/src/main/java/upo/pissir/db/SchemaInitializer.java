@@ -7,12 +7,19 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
 import java.util.stream.Collectors;
 
 public final class SchemaInitializer {
     private SchemaInitializer() {}
 
     public static void init(DataSource ds) {
+        init(ds, 3);
+    }
+
+    // monthsAhead: trips partitions created in advance beyond the current month
+    public static void init(DataSource ds, int monthsAhead) {
         String sql = readResource("/db/schema.sql");
         if (sql == null || sql.isBlank()) {
             throw new IllegalStateException("db/schema.sql not found or empty");
@@ -24,6 +31,7 @@ public final class SchemaInitializer {
                 .split(";");
         try (Connection c = ds.getConnection()) {
             c.setAutoCommit(false);
+            boolean migrating = TripPartitions.renameUnpartitioned(c);
             try (Statement st = c.createStatement()) {
                 for (String raw : statements) {
                     String s = stripComments(raw).trim();
@@ -31,6 +39,11 @@ public final class SchemaInitializer {
                     st.execute(s);
                 }
             }
+            if (migrating) {
+                TripPartitions.copyLegacy(c);
+            }
+            YearMonth now = YearMonth.now(ZoneOffset.UTC);
+            TripPartitions.ensureMonths(c, now, now.plusMonths(monthsAhead));
             c.commit();
         } catch (Exception e) {
             throw new RuntimeException("Schema initialization failed", e);
@@ -0,0 +1,228 @@
+package upo.pissir.db;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Periodic housekeeping of the trips partitions: keeps monthsAhead future months created and,
+// when retentionMonths > 0, removes the months older than that from trips. With an archive
+// directory the month is first exported to <dir>/trips_pYYYYMM.csv.gz, then detached and dropped,
+// otherwise it is only detached (left as a standalone table for manual archival). Old months
+// already detached (a run stopped halfway, or an earlier run without an archive directory)
+// are archived and dropped too once there is an archive directory.
+// Route stats rollups are not touched, so reports over removed months keep working.
+// Each run also prunes the ingested event ids older than eventIdRetentionHours.
+public class TripPartitionMaintenance {
+    // DETACH needs ACCESS EXCLUSIVE on trips (CONCURRENTLY is not allowed next to trips_default):
+    // waiting for it would queue every ingest write behind the ALTER, so give up and retry next run
+    private static final String DETACH_LOCK_TIMEOUT = "2s";
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    private final DataSource ds;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Path archiveDir;
+    private final long intervalHours;
+    private final long eventIdRetentionHours;
+    private ScheduledExecutorService scheduler;
+
+    public TripPartitionMaintenance(
+            DataSource ds,
+            int monthsAhead,
+            int retentionMonths,
+            Path archiveDir,
+            long intervalHours,
+            long eventIdRetentionHours
+    ) {
+        if (monthsAhead < 1) {
+            throw new IllegalArgumentException("monthsAhead must be >= 1");
+        }
+        this.ds = ds;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = Math.max(0, retentionMonths);
+        this.archiveDir = archiveDir;
+        this.intervalHours = Math.max(1L, intervalHours);
+        this.eventIdRetentionHours = Math.max(1L, eventIdRetentionHours);
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "trip-partition-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, intervalHours, intervalHours, TimeUnit.HOURS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            System.out.println("Trip partition maintenance failed: " + e.getMessage());
+        }
+    }
+
+    public void runOnce() throws SQLException, IOException {
+        YearMonth now = YearMonth.now(ZoneOffset.UTC);
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                TripPartitions.ensureMonths(c, now, now.plusMonths(monthsAhead));
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+
+            pruneIngestedEvents(c);
+
+            if (retentionMonths == 0) return;
+            YearMonth oldestKept = now.minusMonths(retentionMonths);
+            for (YearMonth month : TripPartitions.attachedMonths(c)) {
+                if (!month.isBefore(oldestKept)) break;
+                retire(c, month);
+            }
+            if (archiveDir == null) return;
+            for (YearMonth month : TripPartitions.detachedMonths(c)) {
+                if (!month.isBefore(oldestKept)) break;
+                String name = TripPartitions.partitionName(month);
+                Path file = archive(c, name);
+                drop(c, name);
+                System.out.println("Archived detached trips partition " + name + " to " + file);
+            }
+        }
+    }
+
+    private void pruneIngestedEvents(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "DELETE FROM ingested_events WHERE received_at < now() - make_interval(hours => ?)")) {
+            ps.setInt(1, (int) Math.min(Integer.MAX_VALUE, eventIdRetentionHours));
+            int removed = ps.executeUpdate();
+            if (removed > 0) {
+                System.out.println("Pruned " + removed + " ingested event ids");
+            }
+        }
+    }
+
+    private void retire(Connection c, YearMonth month) throws SQLException, IOException {
+        String name = TripPartitions.partitionName(month);
+        if (hasOpenTrips(c, name)) {
+            System.out.println("Keeping trips partition " + name + ": it still has open trips");
+            return;
+        }
+        // archived while still attached: if the export fails the month stays in trips for the next run
+        Path file = archiveDir == null ? null : archive(c, name);
+        if (!detach(c, name)) {
+            System.out.println("Keeping trips partition " + name + ": trips is busy, retrying next run");
+            return;
+        }
+        if (file == null) {
+            System.out.println("Detached trips partition " + name);
+            return;
+        }
+        drop(c, name);
+        System.out.println("Archived trips partition " + name + " to " + file);
+    }
+
+    private static boolean detach(Connection c, String partition) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("SET lock_timeout = '" + DETACH_LOCK_TIMEOUT + "'");
+            try {
+                st.execute("ALTER TABLE trips DETACH PARTITION " + partition);
+                return true;
+            } catch (SQLException e) {
+                if (LOCK_NOT_AVAILABLE.equals(e.getSQLState())) return false;
+                throw e;
+            } finally {
+                st.execute("RESET lock_timeout");
+            }
+        }
+    }
+
+    private static void drop(Connection c, String table) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("DROP TABLE " + table);
+        }
+    }
+
+    private static boolean hasOpenTrips(Connection c, String partition) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE exit_at IS NULL)");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    // All columns as gzip CSV (header row, RFC 4180 quoting), streamed through a cursor;
+    // written to a temp file and renamed so a partial archive never looks complete.
+    private Path archive(Connection c, String table) throws SQLException, IOException {
+        Files.createDirectories(archiveDir);
+        Path file = archiveDir.resolve(table + ".csv.gz");
+        Path tmp = archiveDir.resolve(table + ".csv.gz.tmp");
+
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement("SELECT * FROM " + table + " ORDER BY entry_at, id");
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp));
+             Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int cols = meta.getColumnCount();
+                for (int i = 1; i <= cols; i++) {
+                    if (i > 1) w.write(',');
+                    w.write(meta.getColumnName(i));
+                }
+                w.write("\r\n");
+                while (rs.next()) {
+                    for (int i = 1; i <= cols; i++) {
+                        if (i > 1) w.write(',');
+                        writeCsv(w, rs.getString(i));
+                    }
+                    w.write("\r\n");
+                }
+            }
+            c.commit();
+        } finally {
+            c.setAutoCommit(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private static void writeCsv(Writer w, String value) throws IOException {
+        if (value == null) return;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            w.write(value);
+            return;
+        }
+        w.write('"');
+        w.write(value.replace("\"", "\"\""));
+        w.write('"');
+    }
+}
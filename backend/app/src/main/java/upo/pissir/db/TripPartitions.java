@@ -0,0 +1,197 @@
+package upo.pissir.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Monthly range partitions of trips on entry_at (trips_pYYYYMM), plus trips_default for rows
+// outside the existing months. Report filters on entry_at are pruned to the matching months.
+public final class TripPartitions {
+    private TripPartitions() {}
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    public static String partitionName(YearMonth month) {
+        return "trips_p" + month.format(SUFFIX);
+    }
+
+    static YearMonth monthOf(String partitionName) {
+        if (!partitionName.startsWith("trips_p") || partitionName.length() != "trips_p".length() + 6) return null;
+        try {
+            return YearMonth.parse(partitionName.substring("trips_p".length()), SUFFIX);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Before schema.sql: an unpartitioned trips from an older schema is renamed to trips_legacy
+    // (schema.sql then creates the partitioned table, copyLegacy moves the rows over). Index, key
+    // and sequence names are freed so the new table gets the usual ones. True if it renamed.
+    static boolean renameUnpartitioned(Connection c) throws SQLException {
+        if (!"r".equals(relkind(c, "trips"))) return false;
+        try (Statement st = c.createStatement()) {
+            st.execute("ALTER TABLE telepass_debts DROP CONSTRAINT IF EXISTS telepass_debts_trip_id_fkey");
+            st.execute("ALTER TABLE trips RENAME TO trips_legacy");
+            st.execute("ALTER TABLE trips_legacy RENAME CONSTRAINT trips_pkey TO trips_legacy_pkey");
+            st.execute("ALTER SEQUENCE IF EXISTS trips_id_seq RENAME TO trips_legacy_id_seq");
+            st.execute("""
+                    DROP INDEX IF EXISTS idx_trips_ticket_active, idx_trips_telepass_active, idx_trips_entry_exit,
+                        idx_trips_entry_at_id, idx_trips_tollbooth_entry_at_id, idx_trips_active_entry_at_id
+                    """);
+        }
+        System.out.println("trips is not partitioned: migrating it to monthly partitions");
+        return true;
+    }
+
+    // After schema.sql, only when renameUnpartitioned renamed: copies trips_legacy into the
+    // partitioned trips (trips_default until ensureMonths spreads the rows) and drops it.
+    // The new id sequence starts past the legacy one, so ids are never reused.
+    static void copyLegacy(Connection c) throws SQLException {
+        long lastId = 1L;
+        try (Statement st = c.createStatement()) {
+            int copied = st.executeUpdate("""
+                    INSERT INTO trips(id, entry_tollbooth_id, exit_tollbooth_id, ticket_id, telepass_id, plate, entry_at,
+                                      exit_at, amount_cents, currency, avg_speed_kmh, speeding, paid, created_at)
+                    SELECT id, entry_tollbooth_id, exit_tollbooth_id, ticket_id, telepass_id, plate, entry_at,
+                           exit_at, amount_cents, currency, avg_speed_kmh, speeding, paid, created_at
+                    FROM trips_legacy
+                    """);
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(max(id), 1) FROM trips_legacy")) {
+                if (rs.next()) lastId = rs.getLong(1);
+            }
+            String legacySeq = null;
+            try (ResultSet rs = st.executeQuery("SELECT pg_get_serial_sequence('trips_legacy', 'id')")) {
+                if (rs.next()) legacySeq = rs.getString(1);
+            }
+            if (legacySeq != null) {
+                try (ResultSet rs = st.executeQuery("SELECT last_value FROM " + legacySeq)) {
+                    if (rs.next()) lastId = Math.max(lastId, rs.getLong(1));
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement("SELECT setval(pg_get_serial_sequence('trips', 'id'), ?)")) {
+                ps.setLong(1, lastId);
+                ps.execute();
+            }
+            st.execute("DROP TABLE trips_legacy");
+            System.out.println("Copied " + copied + " trips from trips_legacy");
+        }
+    }
+
+    // Creates the partitions for every month in [from, to] and for the months of rows that
+    // ended up in trips_default (out-of-range timestamps, migrated legacy rows).
+    public static int ensureMonths(Connection c, YearMonth from, YearMonth to) throws SQLException {
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) {
+            months.add(m);
+        }
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("""
+                     SELECT DISTINCT date_trunc('month', entry_at AT TIME ZONE 'UTC') AS month
+                     FROM trips_default
+                     ORDER BY 1
+                     """)) {
+            while (rs.next()) {
+                YearMonth m = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+                if (!months.contains(m)) months.add(m);
+            }
+        }
+        int created = 0;
+        for (YearMonth m : months) {
+            if (createMonth(c, m)) created++;
+        }
+        return created;
+    }
+
+    // Rows of that month already sitting in trips_default are moved into the new partition
+    // before it is attached (attaching would otherwise fail on them).
+    private static boolean createMonth(Connection c, YearMonth month) throws SQLException {
+        String name = partitionName(month);
+        if (relkind(c, name) != null) return false;
+
+        Instant lower = month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant upper = month.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE " + name + " (LIKE trips INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        }
+        String move = "WITH moved AS (DELETE FROM trips_default WHERE entry_at >= ? AND entry_at < ? RETURNING *) "
+                + "INSERT INTO " + name + " SELECT * FROM moved";
+        try (PreparedStatement ps = c.prepareStatement(move)) {
+            ps.setTimestamp(1, Timestamp.from(lower));
+            ps.setTimestamp(2, Timestamp.from(upper));
+            ps.executeUpdate();
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute("ALTER TABLE trips ATTACH PARTITION " + name
+                    + " FOR VALUES FROM ('" + lower + "') TO ('" + upper + "')");
+        }
+        System.out.println("Created trips partition " + name);
+        return true;
+    }
+
+    // Monthly partitions currently attached to trips, oldest first
+    public static List<YearMonth> attachedMonths(Connection c) throws SQLException {
+        String sql = """
+                SELECT child.relname
+                FROM pg_inherits i
+                JOIN pg_class child ON child.oid = i.inhrelid
+                WHERE i.inhparent = 'trips'::regclass
+                """;
+        List<YearMonth> out = new ArrayList<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                YearMonth m = monthOf(rs.getString(1));
+                if (m != null) out.add(m);
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    // trips_pYYYYMM tables no longer attached to trips, oldest first
+    public static List<YearMonth> detachedMonths(Connection c) throws SQLException {
+        String sql = """
+                SELECT c.relname
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE n.nspname = current_schema()
+                  AND c.relkind = 'r'
+                  AND NOT c.relispartition
+                  AND c.relname LIKE 'trips\\_p%'
+                """;
+        List<YearMonth> out = new ArrayList<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                YearMonth m = monthOf(rs.getString(1));
+                if (m != null) out.add(m);
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    private static String relkind(Connection c, String name) throws SQLException {
+        String sql = """
+                SELECT c.relkind
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE c.relname = ? AND n.nspname = current_schema()
+                """;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package upo.pissir.dto;
+
+// One NDJSON line of POST /api/ingest/events: the MQTT payload fields plus the tollbooth and
+// channel that the live path reads from the topic
+public record BulkEventLine(
+        String type,
+        String tollboothId,
+        String channel,
+        String timestamp,
+        String plate,
+        String ticketId,
+        String telepassId,
+        String entryTollboothId,
+        Integer amountCents,
+        String eventId
+) {}
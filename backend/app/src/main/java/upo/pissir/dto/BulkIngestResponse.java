@@ -0,0 +1,17 @@
+package upo.pissir.dto;
+
+import java.util.List;
+
+// outcome: opened | closed | duplicate | unmatched | invalid (error set only when invalid)
+public record BulkIngestResponse(
+        int events,
+        int opened,
+        int closed,
+        int duplicates,
+        int unmatched,
+        int invalid,
+        long elapsedMs,
+        List<Result> results
+) {
+    public record Result(int line, String eventId, String outcome, Long tripId, String error) {}
+}
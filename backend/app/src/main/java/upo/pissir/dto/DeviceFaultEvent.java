@@ -0,0 +1,8 @@
+package upo.pissir.dto;
+
+public record DeviceFaultEvent(
+        String timestamp,
+        String code,
+        String message,
+        String severity
+) implements MqttEvent {}
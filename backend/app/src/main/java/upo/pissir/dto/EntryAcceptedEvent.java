@@ -0,0 +1,19 @@
+package upo.pissir.dto;
+
+public record EntryAcceptedEvent(
+        String timestamp,
+        String plate,
+        String ticketId,
+        String telepassId,
+        String eventId
+) implements MqttEvent {
+    @Override
+    public String passId() {
+        return MqttEvent.firstNonBlank(ticketId, telepassId);
+    }
+
+    @Override
+    public String dedupKey(String topic) {
+        return MqttEvent.dedupKey(eventId, topic, timestamp, passId());
+    }
+}
@@ -0,0 +1,21 @@
+package upo.pissir.dto;
+
+public record ExitCompletedEvent(
+        String timestamp,
+        String entryTollboothId,
+        Integer amountCents,
+        String ticketId,
+        String telepassId,
+        String plate,
+        String eventId
+) implements MqttEvent {
+    @Override
+    public String passId() {
+        return MqttEvent.firstNonBlank(ticketId, telepassId);
+    }
+
+    @Override
+    public String dedupKey(String topic) {
+        return MqttEvent.dedupKey(eventId, topic, timestamp, passId());
+    }
+}
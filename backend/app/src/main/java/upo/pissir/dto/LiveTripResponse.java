@@ -0,0 +1,13 @@
+package upo.pissir.dto;
+
+// Trip as pushed by GET /api/live: exit fields are set only on "trip.closed"
+public record LiveTripResponse(
+        String passId,
+        String channel,
+        String entryTollboothId,
+        String plate,
+        String entryAt,
+        String exitTollboothId,
+        String exitAt,
+        Integer amountCents
+) {}
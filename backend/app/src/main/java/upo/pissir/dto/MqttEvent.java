@@ -0,0 +1,41 @@
+package upo.pissir.dto;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+// Inbound MQTT payloads, decoded in one pass on their "type" field (see Json.readMqttEvent).
+// Anything without a known type becomes an UnknownEvent.
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type", visible = true, defaultImpl = UnknownEvent.class)
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = EntryAcceptedEvent.class, name = "ENTRY_ACCEPTED"),
+        @JsonSubTypes.Type(value = ExitCompletedEvent.class, name = "EXIT_COMPLETED"),
+        @JsonSubTypes.Type(value = TollPriceRequestEvent.class, name = "TOLLPRICE_REQUEST"),
+        @JsonSubTypes.Type(value = DeviceFaultEvent.class, name = "DEVICE_FAULT")
+})
+public sealed interface MqttEvent
+        permits EntryAcceptedEvent, ExitCompletedEvent, TollPriceRequestEvent, DeviceFaultEvent, UnknownEvent {
+
+    // ticketId, else telepassId (null when the event carries neither)
+    default String passId() {
+        return null;
+    }
+
+    // Key for duplicate suppression of QoS1 redeliveries, null = not deduplicated
+    default String dedupKey(String topic) {
+        return null;
+    }
+
+    // The publisher's eventId, else the fields a redelivered copy repeats verbatim (topic,
+    // timestamp, pass id); null when neither identifies the message
+    static String dedupKey(String eventId, String topic, String timestamp, String passId) {
+        if (eventId != null && !eventId.isBlank()) return eventId;
+        if (timestamp == null || passId == null) return null;
+        return topic + "|" + timestamp + "|" + passId;
+    }
+
+    static String firstNonBlank(String a, String b) {
+        if (a != null && !a.isBlank()) return a;
+        if (b != null && !b.isBlank()) return b;
+        return null;
+    }
+}
@@ -0,0 +1,6 @@
+package upo.pissir.dto;
+
+import java.util.List;
+
+// nextCursor is null on the last page
+public record PageResponse<T>(List<T> items, String nextCursor) {}
@@ -0,0 +1,16 @@
+package upo.pissir.dto;
+
+public record TollPriceRequestEvent(
+        String timestamp,
+        String correlationId,
+        String replyTopic,
+        String entryTollboothId,
+        String exitTollboothId,
+        String ticketId,
+        String telepassId
+) implements MqttEvent {
+    @Override
+    public String passId() {
+        return MqttEvent.firstNonBlank(ticketId, telepassId);
+    }
+}
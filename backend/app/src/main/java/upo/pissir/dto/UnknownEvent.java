@@ -0,0 +1,3 @@
+package upo.pissir.dto;
+
+public record UnknownEvent(String type) implements MqttEvent {}
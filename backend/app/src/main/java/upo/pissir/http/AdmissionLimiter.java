@@ -0,0 +1,88 @@
+package upo.pissir.http;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caps the HTTP requests executing at once, sized to the DB pool. With virtual threads the
+// server no longer has a thread ceiling, so without this every excess request would park inside
+// Hikari holding its socket until DB_POOL_CONN_TIMEOUT_MS. Here it waits on a semaphore (cheap
+// for a virtual thread) for at most timeoutMs and is then answered with 503.
+public final class AdmissionLimiter {
+
+    public record Stats(
+            long admitted,
+            long rejected,
+            int inFlight,
+            int waiting,
+            double avgWaitMicros,
+            double maxWaitMicros
+    ) {}
+
+    private final int limit;
+    private final long timeoutMs;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+
+    public AdmissionLimiter(int limit, long timeoutMs) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be >= 1");
+        }
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("timeoutMs must be >= 0");
+        }
+        this.limit = limit;
+        this.timeoutMs = timeoutMs;
+        // fair: under saturation requests are admitted in arrival order, keeping the tail bounded
+        this.permits = new Semaphore(limit, true);
+    }
+
+    // true = admitted, the caller must call leave() exactly once
+    public boolean tryEnter() {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean ok;
+        try {
+            ok = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!ok) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        long waited = System.nanoTime() - start;
+        admitted.incrementAndGet();
+        waitNanosTotal.addAndGet(waited);
+        waitNanosMax.accumulateAndGet(waited, Math::max);
+        return true;
+    }
+
+    public void leave() {
+        permits.release();
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public Stats stats() {
+        long n = admitted.get();
+        return new Stats(
+                n,
+                rejected.get(),
+                limit - permits.availablePermits(),
+                waiting.get(),
+                n == 0 ? 0d : waitNanosTotal.get() / 1000d / n,
+                waitNanosMax.get() / 1000d
+        );
+    }
+}
@@ -5,29 +5,69 @@ import upo.pissir.auth.Auth;
 import upo.pissir.auth.AuthMiddleware;
 import upo.pissir.auth.AuthUser;
 import upo.pissir.auth.Role;
+import upo.pissir.config.AppConfig;
+import upo.pissir.db.PoolMetrics;
 import upo.pissir.dto.ErrorResponse;
+import upo.pissir.routes.InfrastructureRoutes;
+import upo.pissir.routes.ReportRoutes;
 import upo.pissir.routes.Routes;
+import upo.pissir.service.BulkIngestService;
 import upo.pissir.service.FaultService;
 import upo.pissir.service.InfrastructureService;
+import upo.pissir.service.LiveFeed;
 import upo.pissir.service.PaymentService;
 import upo.pissir.service.ReportService;
 import upo.pissir.service.TollQueryService;
 
+import java.util.Set;
+
 
 public final class HttpServer {
+  private static final String ADMITTED = "http.admitted";
+  // Not admission-limited: the limit is sized to the API pool and these would hold a permit for
+  // minutes. The live feed holds no connection, the export streams from the reporting pool and
+  // bulk ingest already runs one batch at a time (BulkIngestService).
+  private static final Set<String> UNLIMITED_PATHS = Set.of(
+      "/api/health", "/api/live", "/api/reports/trips/export", "/api/ingest/events");
+
   private HttpServer() {
   }
 
-  public static void start(
+  public static Javalin start(
       int port,
       InfrastructureService infrastructureService,
       TollQueryService tollQueryService,
       PaymentService paymentService,
       ReportService reportService,
-      FaultService faultService
+      FaultService faultService,
+      LiveFeed liveFeed,
+      BulkIngestService bulkIngestService,
+      PoolMetrics poolMetrics
+  ) {
+    return start(port, AppConfig.httpVirtualThreads(), AppConfig.httpAdmissionLimit(), AppConfig.httpAdmissionTimeoutMs(),
+        infrastructureService, tollQueryService, paymentService, reportService, faultService, liveFeed,
+        bulkIngestService, poolMetrics);
+  }
+
+  // Explicit threading and admission settings (the HTTP load test runs several in one JVM); admissionLimit 0 = off
+  public static Javalin start(
+      int port,
+      boolean virtualThreads,
+      int admissionLimit,
+      long admissionTimeoutMs,
+      InfrastructureService infrastructureService,
+      TollQueryService tollQueryService,
+      PaymentService paymentService,
+      ReportService reportService,
+      FaultService faultService,
+      LiveFeed liveFeed,
+      BulkIngestService bulkIngestService,
+      PoolMetrics poolMetrics
   ) {
     Javalin app = Javalin.create(cfg -> {
       cfg.http.defaultContentType = "application/json";
+      // handlers block on JDBC: on virtual threads a blocked request costs a few KB, not a platform thread
+      cfg.useVirtualThreads = virtualThreads;
     });
 
     app.before(ctx -> {
@@ -36,8 +76,9 @@ public final class HttpServer {
       ctx.header("Access-Control-Allow-Origin", frontendOrigin);
       ctx.header("Vary", "Origin");
       ctx.header("Access-Control-Allow-Credentials", "true");
-      ctx.header("Access-Control-Allow-Headers", "Authorization,Content-Type");
+      ctx.header("Access-Control-Allow-Headers", "Authorization,Content-Type,If-None-Match");
       ctx.header("Access-Control-Allow-Methods", "GET,POST,PUT,DELETE,OPTIONS");
+      ctx.header("Access-Control-Expose-Headers", ReportRoutes.NEXT_CURSOR_HEADER + "," + InfrastructureRoutes.ETAG_HEADER);
     });
 
     // Risponde ai preflight OPTIONS
@@ -46,6 +87,11 @@ public final class HttpServer {
     });
 
     AuthMiddleware.install(app);
+    if (admissionLimit > 0) {
+      installAdmission(app, new AdmissionLimiter(admissionLimit, admissionTimeoutMs));
+    }
+    System.out.println("HTTP handlers on " + (virtualThreads ? "virtual" : "platform") + " threads, admission limit="
+        + (admissionLimit > 0 ? admissionLimit : "off"));
     app.exception(Auth.Halt.class, (e, ctx) -> {});
     app.exception(IllegalArgumentException.class, (e, ctx) ->
         ctx.status(400).json(new ErrorResponse("bad_request", e.getMessage())));
@@ -69,8 +115,50 @@ public final class HttpServer {
       ctx.json(java.util.Map.of("ok", true, "msg", "admin pong"));
     });
 
-    Routes.register(app, infrastructureService, tollQueryService, paymentService, reportService, faultService);
+    app.get("/api/admin/auth-cache", ctx -> {
+      AuthUser user = AuthMiddleware.requireUser(ctx);
+      Auth.requireAnyRole(ctx, user, Role.ADMINISTRATOR);
+      ctx.json(Auth.tokenCacheStats());
+    });
+
+    // connection wait per pool (api / ingest / reporting / read) and replica routing of reads
+    app.get("/api/admin/db-pools", ctx -> {
+      AuthUser user = AuthMiddleware.requireUser(ctx);
+      Auth.requireAnyRole(ctx, user, Role.ADMINISTRATOR);
+      ctx.json(poolMetrics.snapshot());
+    });
+
+    Routes.register(app, infrastructureService, tollQueryService, paymentService, reportService, faultService, liveFeed,
+        bulkIngestService);
     app.start(port);
+    return app;
+  }
+
+  // Requests that hold no DB connection (health, the long-lived SSE stream, preflights) bypass the limit
+  private static void installAdmission(Javalin app, AdmissionLimiter limiter) {
+    app.before("/api/*", ctx -> {
+      if ("OPTIONS".equals(ctx.method().name())) return;
+      if (UNLIMITED_PATHS.contains(ctx.path())) return;
+      if (!limiter.tryEnter()) {
+        ctx.header("Retry-After", "1");
+        ctx.status(503).json(new ErrorResponse("overloaded", "server busy, retry later"));
+        throw new Auth.Halt();
+      }
+      ctx.attribute(ADMITTED, Boolean.TRUE);
+    });
+    // after handlers also run when the endpoint threw
+    app.after("/api/*", ctx -> {
+      if (Boolean.TRUE.equals(ctx.attribute(ADMITTED))) {
+        ctx.attribute(ADMITTED, Boolean.FALSE);
+        limiter.leave();
+      }
+    });
+
+    app.get("/api/admin/http-admission", ctx -> {
+      AuthUser user = AuthMiddleware.requireUser(ctx);
+      Auth.requireAnyRole(ctx, user, Role.ADMINISTRATOR);
+      ctx.json(limiter.stats());
+    });
   }
 
   private record Health(String status) {
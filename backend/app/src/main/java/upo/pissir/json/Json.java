@@ -1,7 +1,10 @@
 package upo.pissir.json;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import upo.pissir.dto.MqttEvent;
 
 import java.util.Map;
 
@@ -10,9 +13,29 @@ public final class Json {
 
     public static final ObjectMapper MAPPER = new ObjectMapper();
 
+    // readers are immutable and thread-safe: build them once instead of per message
+    private static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, Object>>() {});
+    private static final ObjectReader MQTT_EVENT_READER = MAPPER.readerFor(MqttEvent.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
     public static Map<String, Object> parseToMap(String json) {
         try {
-            return MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {});
+            return MAP_READER.readValue(json);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid JSON payload", e);
+        }
+    }
+
+    // Typed decoding straight from the MQTT payload bytes (no intermediate String / Map)
+    public static MqttEvent readMqttEvent(byte[] payload) {
+        try {
+            MqttEvent event = MQTT_EVENT_READER.readValue(payload);
+            if (event == null) {
+                throw new IllegalArgumentException("Invalid JSON payload: empty");
+            }
+            return event;
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             throw new IllegalArgumentException("Invalid JSON payload", e);
         }
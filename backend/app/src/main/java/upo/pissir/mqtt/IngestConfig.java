@@ -0,0 +1,39 @@
+package upo.pissir.mqtt;
+
+public record IngestConfig(
+        int workers,
+        int queueCapacity,
+        long offerTimeoutMs,
+        long metricsLogSeconds,
+        int dedupCapacity
+) {
+    public static IngestConfig fromEnv() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int workers = Integer.parseInt(System.getenv().getOrDefault("INGEST_WORKERS", String.valueOf(cpus)));
+        int capacity = Integer.parseInt(System.getenv().getOrDefault("INGEST_QUEUE_CAPACITY", "1024"));
+
+        // 0 = block the MQTT callback thread until there is room (backpressure towards the broker)
+        long offerTimeoutMs = Long.parseLong(System.getenv().getOrDefault("INGEST_OFFER_TIMEOUT_MS", "0"));
+        long metricsLogSeconds = Long.parseLong(System.getenv().getOrDefault("INGEST_METRICS_LOG_SEC", "60"));
+
+        // recent ENTRY/EXIT event keys remembered to drop QoS1 redeliveries; 0 disables
+        int dedupCapacity = Integer.parseInt(System.getenv().getOrDefault("INGEST_DEDUP_CAPACITY", "65536"));
+
+        return new IngestConfig(workers, capacity, offerTimeoutMs, metricsLogSeconds, dedupCapacity);
+    }
+
+    public IngestConfig {
+        if (workers < 1) {
+            throw new IllegalArgumentException("INGEST_WORKERS must be >= 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("INGEST_QUEUE_CAPACITY must be >= 1");
+        }
+        if (offerTimeoutMs < 0) {
+            throw new IllegalArgumentException("INGEST_OFFER_TIMEOUT_MS must be >= 0");
+        }
+        if (dedupCapacity < 0) {
+            throw new IllegalArgumentException("INGEST_DEDUP_CAPACITY must be >= 0");
+        }
+    }
+}
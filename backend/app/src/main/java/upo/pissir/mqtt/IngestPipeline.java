@@ -0,0 +1,187 @@
+package upo.pissir.mqtt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Moves MQTT message handling off the Paho callback thread.
+// Each worker owns a bounded queue; the same partition key (pass id) always lands
+// on the same worker, so the events of one trip keep their arrival order.
+public class IngestPipeline {
+
+    public record Stats(
+            long submitted,
+            long processed,
+            long failed,
+            long rejected,
+            int queued,
+            double avgQueueWaitMicros,
+            double maxQueueWaitMicros,
+            double avgProcessingMicros,
+            double maxProcessingMicros
+    ) {}
+
+    private record Task(Runnable work, long enqueuedAtNanos) {}
+
+    private static final Task POISON = new Task(() -> {}, 0L);
+
+    private final IngestConfig cfg;
+    private final List<BlockingQueue<Task>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private ScheduledExecutorService metricsLogger;
+    private volatile boolean running;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    private final LongAccumulator maxQueueWaitNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAccumulator maxProcessingNanos = new LongAccumulator(Math::max, 0L);
+    private final AtomicLong sequence = new AtomicLong();
+
+    public IngestPipeline(IngestConfig cfg) {
+        this.cfg = cfg;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        for (int i = 0; i < cfg.workers(); i++) {
+            BlockingQueue<Task> q = new ArrayBlockingQueue<>(cfg.queueCapacity());
+            Thread t = new Thread(() -> runWorker(q), "mqtt-ingest-" + i);
+            queues.add(q);
+            workers.add(t);
+        }
+        running = true;
+        workers.forEach(Thread::start);
+
+        if (cfg.metricsLogSeconds() > 0) {
+            metricsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "mqtt-ingest-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+            metricsLogger.scheduleAtFixedRate(
+                    () -> System.out.println("MQTT ingest " + stats()),
+                    cfg.metricsLogSeconds(),
+                    cfg.metricsLogSeconds(),
+                    TimeUnit.SECONDS
+            );
+        }
+        System.out.println("MQTT ingest started: workers=" + cfg.workers() + " queueCapacity=" + cfg.queueCapacity());
+    }
+
+    // Full queue: the caller blocks (so Paho stops reading from the socket).
+    // With INGEST_OFFER_TIMEOUT_MS > 0 submit gives up once the timeout expires and returns false.
+    public boolean submit(String partitionKey, Runnable work) {
+        if (!running) {
+            rejected.increment();
+            return false;
+        }
+        BlockingQueue<Task> q = queues.get(partitionOf(partitionKey));
+        Task task = new Task(work, System.nanoTime());
+        try {
+            boolean accepted;
+            if (cfg.offerTimeoutMs() == 0) {
+                q.put(task);
+                accepted = true;
+            } else {
+                accepted = q.offer(task, cfg.offerTimeoutMs(), TimeUnit.MILLISECONDS);
+            }
+            if (!accepted) {
+                rejected.increment();
+                return false;
+            }
+            submitted.increment();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            return false;
+        }
+    }
+
+    int partitionOf(String partitionKey) {
+        int n = queues.size();
+        if (partitionKey == null) {
+            // no ordering requirement: round-robin
+            return (int) (sequence.getAndIncrement() % n);
+        }
+        return Math.floorMod(partitionKey.hashCode(), n);
+    }
+
+    // Stops accepting messages and waits up to timeoutMs for the queues to drain
+    public synchronized void stop(long timeoutMs) throws InterruptedException {
+        if (!running) return;
+        running = false;
+        if (metricsLogger != null) {
+            metricsLogger.shutdownNow();
+        }
+        for (BlockingQueue<Task> q : queues) {
+            q.put(POISON);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Thread t : workers) {
+            t.join(Math.max(1L, deadline - System.currentTimeMillis()));
+            if (t.isAlive()) {
+                t.interrupt();
+            }
+        }
+        System.out.println("MQTT ingest stopped " + stats());
+    }
+
+    public Stats stats() {
+        long done = processed.sum() + failed.sum();
+        int queued = 0;
+        for (BlockingQueue<Task> q : queues) {
+            queued += q.size();
+        }
+        return new Stats(
+                submitted.sum(),
+                processed.sum(),
+                failed.sum(),
+                rejected.sum(),
+                queued,
+                done == 0 ? 0d : queueWaitNanos.sum() / 1_000d / done,
+                maxQueueWaitNanos.get() / 1_000d,
+                done == 0 ? 0d : processingNanos.sum() / 1_000d / done,
+                maxProcessingNanos.get() / 1_000d
+        );
+    }
+
+    private void runWorker(BlockingQueue<Task> q) {
+        while (true) {
+            Task task;
+            try {
+                task = q.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == POISON) return;
+
+            long startedAt = System.nanoTime();
+            long waited = startedAt - task.enqueuedAtNanos();
+            queueWaitNanos.add(waited);
+            maxQueueWaitNanos.accumulate(waited);
+            try {
+                task.work().run();
+                processed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                System.out.println("MQTT ingest task failed: " + e.getMessage());
+            } finally {
+                long took = System.nanoTime() - startedAt;
+                processingNanos.add(took);
+                maxProcessingNanos.accumulate(took);
+            }
+        }
+    }
+}
@@ -6,7 +6,8 @@ public record MqttConfig(
         String username,
         String password,
         boolean tlsEnabled,
-        String caCrtPath
+        String caCrtPath,
+        String listenerClientId
 ) {
     public static MqttConfig fromEnv() {
         String host = System.getenv().getOrDefault("MQTT_HOST", "localhost");
@@ -17,7 +18,10 @@ public record MqttConfig(
         boolean tls = Boolean.parseBoolean(System.getenv().getOrDefault("MQTT_TLS", "false"));
         String ca = System.getenv().getOrDefault("MQTT_CA_CRT", "");
 
-        return new MqttConfig(host, port, user, pass, tls, ca);
+        // stable id for the subscriber session: unacked QoS1 messages are redelivered after a restart
+        String listenerClientId = System.getenv().getOrDefault("MQTT_CLIENT_ID", "server-listener");
+
+        return new MqttConfig(host, port, user, pass, tls, ca, listenerClientId);
     }
 }
 
@@ -1,16 +1,20 @@
 package upo.pissir.mqtt;
 
 import org.eclipse.paho.client.mqttv3.*;
+import upo.pissir.dto.DeviceFaultEvent;
+import upo.pissir.dto.EntryAcceptedEvent;
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.dto.MqttEvent;
+import upo.pissir.dto.TollPriceRequestEvent;
+import upo.pissir.dto.UnknownEvent;
 import upo.pissir.json.Json;
 import upo.pissir.service.FaultService;
 import upo.pissir.service.TollProcessingService;
 import javax.net.ssl.SSLSocketFactory;
-import java.nio.charset.StandardCharsets;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 public class MqttListenerService {
 
@@ -18,11 +22,14 @@ public class MqttListenerService {
     private final TollProcessingService processingService;
     private final FaultService faultService;
     private final MqttPublisher publisher;
+    private final IngestPipeline ingest;
+    private final RecentEventIds recentEvents;
 
     private MqttClient client;
 
     public MqttListenerService(
             MqttConfig cfg,
+            IngestConfig ingestCfg,
             TollProcessingService processingService,
             FaultService faultService,
             MqttPublisher publisher
@@ -31,6 +38,8 @@ public class MqttListenerService {
         this.processingService = processingService;
         this.faultService = faultService;
         this.publisher = publisher;
+        this.ingest = new IngestPipeline(ingestCfg);
+        this.recentEvents = new RecentEventIds(ingestCfg.dedupCapacity());
     }
 
     public void start() {
@@ -38,12 +47,14 @@ public class MqttListenerService {
             String protocol = cfg.tlsEnabled() ? "ssl" : "tcp";
             String brokerUri = protocol + "://" + cfg.host() + ":" + cfg.port();
 
-            String clientId = "server-" + UUID.randomUUID();
-            client = new MqttClient(brokerUri, clientId, new MemoryPersistence());
+            client = new MqttClient(brokerUri, cfg.listenerClientId(), new MemoryPersistence());
+            // PUBACK only once a worker has handled the message (see enqueue): with a persistent
+            // session the broker redelivers whatever was queued or in flight when we went down
+            client.setManualAcks(true);
 
             MqttConnectOptions opt = new MqttConnectOptions();
             opt.setAutomaticReconnect(true);
-            opt.setCleanSession(true);
+            opt.setCleanSession(false);
             opt.setUserName(cfg.username());
             opt.setPassword(cfg.password().toCharArray());
             opt.setConnectionTimeout(10);
@@ -54,6 +65,7 @@ public class MqttListenerService {
                 opt.setSocketFactory(sf);
             }
 
+            ingest.start();
             client.setCallback(new MqttCallback() {
                 @Override
                 public void connectionLost(Throwable cause) {
@@ -62,8 +74,7 @@ public class MqttListenerService {
 
                 @Override
                 public void messageArrived(String topic, MqttMessage message) {
-                    String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-                    handleMessage(topic, payload);
+                    enqueue(topic, message);
                 }
 
                 @Override
@@ -86,7 +97,10 @@ public class MqttListenerService {
         }
     }
 
+    // Drains the workers first so their PUBACKs still go out; whatever is left unacked
+    // (rejected while stopping, or not reached before the timeout) is redelivered by the broker
     public void stop() throws Exception {
+        ingest.stop(10_000);
         if (client != null) {
             if (client.isConnected())
                 client.disconnect();
@@ -94,24 +108,89 @@ public class MqttListenerService {
         }
     }
 
-    private void handleMessage(String topic, String payloadJson) {
-        TopicParser.Parsed parsed = TopicParser.parse(topic);
-        Map<String, Object> body = Json.parseToMap(payloadJson);
-        String type = Json.getString(body, "type");
+    // Extra work on the ingest workers, ordered with the MQTT events of the same partition key
+    public boolean submit(String partitionKey, Runnable work) {
+        return ingest.submit(partitionKey, work);
+    }
+
+    public IngestPipeline.Stats ingestStats() {
+        return ingest.stats();
+    }
+
+    public RecentEventIds.Stats dedupStats() {
+        return recentEvents.stats();
+    }
+
+    // Runs on the Paho callback thread: decode only, then hand off to the ingest workers.
+    // The message is acked after handleMessage, or at once when it is discarded for good
+    // (malformed, duplicate); a message the queue refuses is left unacked for redelivery.
+    private void enqueue(String topic, MqttMessage message) {
+        int id = message.getId();
+        int qos = message.getQos();
+        TopicParser.Parsed parsed;
+        MqttEvent event;
+        try {
+            parsed = TopicParser.parse(topic);
+            event = Json.readMqttEvent(message.getPayload());
+        } catch (Exception e) {
+            System.out.println("Ignoring malformed message. Topic=" + topic + " error=" + e.getMessage());
+            ack(id, qos);
+            return;
+        }
+        // QoS1 may redeliver: drop a repeated ENTRY/EXIT before it is queued or written
+        String dedupKey = event.dedupKey(topic);
+        if (!recentEvents.firstSeen(dedupKey)) {
+            System.out.println("Duplicate event dropped. Topic=" + topic + " key=" + dedupKey);
+            ack(id, qos);
+            return;
+        }
+        boolean queued = ingest.submit(partitionKey(parsed, event), () -> {
+            try {
+                handleMessage(topic, parsed, event);
+            } finally {
+                ack(id, qos);
+            }
+        });
+        if (!queued) {
+            recentEvents.forget(dedupKey);
+            System.out.println("MQTT ingest queue full, message left unacked for redelivery. Topic=" + topic);
+        }
+    }
+
+    private void ack(int id, int qos) {
+        try {
+            client.messageArrivedComplete(id, qos);
+        } catch (MqttException e) {
+            // disconnected: the broker redelivers it on the next session
+            System.out.println("MQTT ack failed id=" + id + ": " + e.getMessage());
+        }
+    }
+
+    // Same pass id -> same worker, so ENTRY/TOLLPRICE/EXIT of one trip stay ordered
+    static String partitionKey(TopicParser.Parsed parsed, MqttEvent event) {
+        String passId = event.passId();
+        return passId != null ? passId : parsed.tollboothId();
+    }
 
-        if (type == null || type.isBlank()) {
+    // package-private for the MqttBenchmark (src/jmh)
+    void handleMessage(String topic, TopicParser.Parsed parsed, MqttEvent event) {
+        if (event instanceof UnknownEvent unknown && (unknown.type() == null || unknown.type().isBlank())) {
             System.out.println("Ignoring message without type. Topic=" + topic);
             return;
         }
 
         // Global request
         if ("requests".equals(parsed.channel()) && "tollprice".equals(parsed.leaf())) {
-            handleTollPriceRequest(body);
+            if (event instanceof TollPriceRequestEvent req) {
+                handleTollPriceRequest(req);
+            }
             return;
         }
 
         if ("faults".equals(parsed.leaf())) {
-            handleFault(parsed, body);
+            if (event instanceof DeviceFaultEvent fault) {
+                handleFault(parsed, fault);
+            }
             return;
         }
 
@@ -119,37 +198,38 @@ public class MqttListenerService {
         if (!"events".equals(parsed.leaf()))
             return;
 
-        switch (type) {
-            case "ENTRY_ACCEPTED" -> processingService.onEntryAccepted(parsed.tollboothId(), parsed.channel(), body);
-            case "EXIT_COMPLETED" -> processingService.onExitCompleted(parsed.tollboothId(), parsed.channel(), body);
-
-            default -> System.out.println("Unknown event type=" + type + " topic=" + topic);
+        if (event instanceof EntryAcceptedEvent entry) {
+            processingService.onEntryAccepted(parsed.tollboothId(), parsed.channel(), entry, entry.dedupKey(topic));
+        } else if (event instanceof ExitCompletedEvent exit) {
+            processingService.onExitCompleted(parsed.tollboothId(), parsed.channel(), exit, exit.dedupKey(topic));
+        } else {
+            System.out.println("Unknown event type=" + typeOf(event) + " topic=" + topic);
         }
     }
 
-    private void handleFault(TopicParser.Parsed parsed, Map<String, Object> body) {
-        String type = Json.getString(body, "type");
-        if (!"DEVICE_FAULT".equals(type)) {
-            return;
-        }
+    private static String typeOf(MqttEvent event) {
+        return event instanceof UnknownEvent unknown ? unknown.type() : event.getClass().getSimpleName();
+    }
+
+    private void handleFault(TopicParser.Parsed parsed, DeviceFaultEvent fault) {
         try {
-            long id = faultService.recordFault(parsed.tollboothId(), parsed.direction(), parsed.channel(), body);
+            long id = faultService.recordFault(parsed.tollboothId(), parsed.direction(), parsed.channel(), fault);
             System.out.println("Recorded device fault id=" + id + " tollbooth=" + parsed.tollboothId());
         } catch (Exception e) {
             System.out.println("Ignoring invalid DEVICE_FAULT: " + e.getMessage());
         }
     }
 
-    private void handleTollPriceRequest(Map<String, Object> body) {
-        String correlationId = Json.getString(body, "correlationId");
-        String replyTopic = Json.getString(body, "replyTopic");
+    private void handleTollPriceRequest(TollPriceRequestEvent req) {
+        String correlationId = req.correlationId();
+        String replyTopic = req.replyTopic();
 
         if (correlationId == null || replyTopic == null) {
             System.out.println("Invalid TOLLPRICE_REQUEST: missing correlationId/replyTopic");
             return;
         }
 
-        TollProcessingService.TollPriceResolved resolved = processingService.resolveTollPrice(body);
+        TollProcessingService.TollPriceResolved resolved = processingService.resolveTollPrice(req);
 
         Map<String, Object> resp = new HashMap<>();
         resp.put("timestamp", Instant.now().toString());
@@ -1,27 +1,86 @@
 package upo.pissir.mqtt;
 
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
 import javax.net.ssl.SSLSocketFactory;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
+// Pipelined publisher on MqttAsyncClient: publish() only enqueues, a sender thread keeps
+// up to maxInflight messages on the wire and PUBACKs complete them asynchronously,
+// so callers no longer wait a broker round trip per message.
 public class MqttPublisher {
+
+    public record Stats(
+            long enqueued,
+            long acked,
+            long failed,
+            long dropped,
+            int queued,
+            int inFlight,
+            double avgAckMicros,
+            double maxAckMicros
+    ) {}
+
+    // the part of MqttAsyncClient the sender needs (replaced in tests)
+    interface Transport {
+        boolean isConnected();
+
+        void publish(String topic, MqttMessage message, IMqttActionListener callback) throws MqttException;
+    }
+
+    private record Outbound(String topic, MqttMessage message, CompletableFuture<Void> done) {}
+
+    private static final Outbound POISON = new Outbound(null, null, null);
+
     private final MqttConfig cfg;
-    private MqttClient client;
+    private final PublisherConfig pubCfg;
+    private final BlockingQueue<Outbound> queue;
+    private final Semaphore window;
+    private MqttAsyncClient client;
+    private Transport transport;
+    private Thread sender;
+    private ScheduledExecutorService metricsLogger;
+    private volatile boolean running;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder ackNanos = new LongAdder();
+    private final LongAccumulator maxAckNanos = new LongAccumulator(Math::max, 0L);
 
     public MqttPublisher(MqttConfig cfg) {
+        this(cfg, PublisherConfig.fromEnv());
+    }
+
+    public MqttPublisher(MqttConfig cfg, PublisherConfig pubCfg) {
         this.cfg = cfg;
+        this.pubCfg = pubCfg;
+        this.queue = new ArrayBlockingQueue<>(pubCfg.queueCapacity());
+        this.window = new Semaphore(pubCfg.maxInflight());
     }
 
     public void start() {
         try {
             String protocol = cfg.tlsEnabled() ? "ssl" : "tcp";
             String brokerUri = protocol + "://" + cfg.host() + ":" + cfg.port();
-            client = new MqttClient(brokerUri, "server-publisher-" + UUID.randomUUID(), new MemoryPersistence());
+            client = new MqttAsyncClient(brokerUri, "server-publisher-" + UUID.randomUUID(), new MemoryPersistence());
 
             MqttConnectOptions opt = new MqttConnectOptions();
             opt.setAutomaticReconnect(true);
@@ -30,35 +89,190 @@ public class MqttPublisher {
             opt.setPassword(cfg.password().toCharArray());
             opt.setConnectionTimeout(10);
             opt.setKeepAliveInterval(20);
+            // Paho's own limit (default 10) must not be tighter than our window
+            opt.setMaxInflight(pubCfg.maxInflight());
 
             if (cfg.tlsEnabled()) {
                 SSLSocketFactory sf = MqttSsl.socketFactoryFromCaCrt(cfg.caCrtPath());
                 opt.setSocketFactory(sf);
             }
 
-            client.connect(opt);
+            client.connect(opt).waitForCompletion(15_000);
         } catch (Exception e) {
             throw new IllegalStateException("Failed to start MQTT publisher", e);
         }
+        MqttAsyncClient c = client;
+        start(new Transport() {
+            @Override
+            public boolean isConnected() {
+                return c.isConnected();
+            }
+
+            @Override
+            public void publish(String topic, MqttMessage message, IMqttActionListener callback) throws MqttException {
+                c.publish(topic, message, null, callback);
+            }
+        });
+    }
+
+    synchronized void start(Transport transport) {
+        if (running) return;
+        this.transport = transport;
+        running = true;
+        sender = new Thread(this::runSender, "mqtt-publisher");
+        sender.start();
+
+        if (pubCfg.metricsLogSeconds() > 0) {
+            metricsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "mqtt-publisher-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+            metricsLogger.scheduleAtFixedRate(
+                    () -> System.out.println("MQTT publisher " + stats()),
+                    pubCfg.metricsLogSeconds(),
+                    pubCfg.metricsLogSeconds(),
+                    TimeUnit.SECONDS
+            );
+        }
     }
 
+    // Fire-and-forget: fails immediately only if the message cannot be queued
+    // (not connected, stopped, or queue full under the DROP policy / BLOCK timeout).
     public void publish(String topic, String jsonPayload, int qos) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        IllegalStateException rejected = enqueue(topic, jsonPayload, qos, done);
+        if (rejected != null) {
+            throw new IllegalStateException("MQTT publish failed: " + topic, rejected);
+        }
+    }
+
+    // Completes when the broker acknowledged the message (QoS 1/2) or it was written (QoS 0)
+    public CompletableFuture<Void> publishAsync(String topic, String jsonPayload, int qos) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        IllegalStateException rejected = enqueue(topic, jsonPayload, qos, done);
+        if (rejected != null) {
+            done.completeExceptionally(rejected);
+        }
+        return done;
+    }
+
+    private IllegalStateException enqueue(String topic, String jsonPayload, int qos, CompletableFuture<Void> done) {
+        if (!running || !transport.isConnected()) {
+            return new IllegalStateException("MQTT publisher not connected");
+        }
+        MqttMessage msg = new MqttMessage(jsonPayload.getBytes(StandardCharsets.UTF_8));
+        msg.setQos(qos);
+        Outbound out = new Outbound(topic, msg, done);
+
+        boolean accepted;
         try {
-            if (client == null || !client.isConnected()) {
-                throw new IllegalStateException("MQTT publisher not connected");
+            if (pubCfg.overflow() == PublisherConfig.OverflowPolicy.DROP) {
+                accepted = queue.offer(out);
+            } else if (pubCfg.offerTimeoutMs() == 0) {
+                queue.put(out);
+                accepted = true;
+            } else {
+                accepted = queue.offer(out, pubCfg.offerTimeoutMs(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            dropped.increment();
+            return new IllegalStateException("MQTT publish queue full");
+        }
+        enqueued.increment();
+        return null;
+    }
+
+    private void runSender() {
+        while (true) {
+            Outbound out;
+            try {
+                out = queue.take();
+                if (out == POISON) return;
+                window.acquire();
+            } catch (InterruptedException e) {
+                return;
             }
-            MqttMessage msg = new MqttMessage(jsonPayload.getBytes(StandardCharsets.UTF_8));
-            msg.setQos(qos);
-            client.publish(topic, msg);
+            send(out);
+        }
+    }
+
+    private void send(Outbound out) {
+        long sentAt = System.nanoTime();
+        try {
+            transport.publish(out.topic(), out.message(), new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    long took = System.nanoTime() - sentAt;
+                    ackNanos.add(took);
+                    maxAckNanos.accumulate(took);
+                    acked.increment();
+                    window.release();
+                    out.done().complete(null);
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    fail(out, e);
+                }
+            });
         } catch (Exception e) {
-            throw new IllegalStateException("MQTT publish failed: " + topic, e);
+            fail(out, e);
         }
     }
 
+    private void fail(Outbound out, Throwable cause) {
+        failed.increment();
+        window.release();
+        System.out.println("MQTT publish failed: topic=" + out.topic() + " error=" + (cause == null ? "" : cause.getMessage()));
+        out.done().completeExceptionally(new IllegalStateException("MQTT publish failed: " + out.topic(), cause));
+    }
+
+    public Stats stats() {
+        long ok = acked.sum();
+        return new Stats(
+                enqueued.sum(),
+                ok,
+                failed.sum(),
+                dropped.sum(),
+                queue.size(),
+                pubCfg.maxInflight() - window.availablePermits(),
+                ok == 0 ? 0d : ackNanos.sum() / 1_000d / ok,
+                maxAckNanos.get() / 1_000d
+        );
+    }
+
+    // Sends what is already queued and waits (bounded) for the in-flight acks before disconnecting
     public void stop() throws Exception {
+        synchronized (this) {
+            if (running) {
+                running = false;
+                if (metricsLogger != null) {
+                    metricsLogger.shutdownNow();
+                }
+                if (!queue.offer(POISON, 5, TimeUnit.SECONDS)) {
+                    sender.interrupt();
+                }
+                sender.join(10_000);
+                if (window.tryAcquire(pubCfg.maxInflight(), 5, TimeUnit.SECONDS)) {
+                    window.release(pubCfg.maxInflight());
+                }
+                Outbound late;
+                while ((late = queue.poll()) != null) {
+                    if (late != POISON) {
+                        late.done().completeExceptionally(new IllegalStateException("MQTT publisher stopped"));
+                    }
+                }
+                System.out.println("MQTT publisher stopped " + stats());
+            }
+        }
         if (client != null) {
             if (client.isConnected()) {
-                client.disconnect();
+                client.disconnect().waitForCompletion(5_000);
             }
             client.close();
         }
@@ -0,0 +1,132 @@
+package upo.pissir.mqtt;
+
+import upo.pissir.repo.OutboxRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drains mqtt_outbox: claims due messages in id order, publishes them through the pipelined
+// MqttPublisher and deletes them once the broker acked. Failed messages are retried with
+// exponential backoff, so delivery survives broker outages and backend restarts (at least once).
+public class OutboxRelay {
+    // a claimed batch stays invisible to other replicas this long; must exceed ACK_TIMEOUT_MS
+    private static final long LEASE_SECONDS = 60;
+    private static final long ACK_TIMEOUT_MS = 30_000;
+
+    private final OutboxRepository outboxRepo;
+    private final MqttPublisher publisher;
+    private final int batchSize;
+    private final long pollMs;
+    private final long maxBackoffSeconds;
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private ScheduledExecutorService relay;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public OutboxRelay(OutboxRepository outboxRepo, MqttPublisher publisher, int batchSize, long pollMs, long maxBackoffSeconds) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be >= 1");
+        }
+        this.outboxRepo = outboxRepo;
+        this.publisher = publisher;
+        this.batchSize = batchSize;
+        this.pollMs = Math.max(10L, pollMs);
+        this.maxBackoffSeconds = Math.max(1L, maxBackoffSeconds);
+    }
+
+    public synchronized void start() {
+        if (relay != null) return;
+        relay = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mqtt-outbox-relay");
+            t.setDaemon(true);
+            return t;
+        });
+        relay.scheduleWithFixedDelay(this::drainSafely, 0, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (relay == null) return;
+        relay.shutdown();
+        relay.awaitTermination(ACK_TIMEOUT_MS + 5_000, TimeUnit.MILLISECONDS);
+        relay = null;
+    }
+
+    // Called after a commit that wrote to the outbox: drain now instead of at the next poll
+    public void wakeUp() {
+        ScheduledExecutorService r = relay;
+        if (r != null && wakeUpPending.compareAndSet(false, true)) {
+            try {
+                r.execute(() -> {
+                    wakeUpPending.set(false);
+                    drainSafely();
+                });
+            } catch (Exception e) {
+                wakeUpPending.set(false);
+            }
+        }
+    }
+
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    private void drainSafely() {
+        try {
+            drain();
+        } catch (Exception e) {
+            System.out.println("MQTT outbox relay failed: " + e.getMessage());
+        }
+    }
+
+    // package-private for tests: one pass until the outbox has no due messages
+    void drain() throws InterruptedException {
+        while (true) {
+            List<OutboxRepository.OutboxRow> batch = outboxRepo.claimBatch(batchSize, LEASE_SECONDS);
+            if (batch.isEmpty()) return;
+
+            List<CompletableFuture<Void>> acks = new ArrayList<>(batch.size());
+            for (OutboxRepository.OutboxRow row : batch) {
+                acks.add(publisher.publishAsync(row.topic(), row.payload(), row.qos()));
+            }
+
+            long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MS;
+            List<Long> done = new ArrayList<>(batch.size());
+            boolean anyFailed = false;
+            for (int i = 0; i < batch.size(); i++) {
+                OutboxRepository.OutboxRow row = batch.get(i);
+                try {
+                    acks.get(i).get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    done.add(row.id());
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    anyFailed = true;
+                    failed.increment();
+                    String error = e.getCause() != null ? e.getCause().getMessage() : String.valueOf(e);
+                    outboxRepo.markFailed(row.id(), error, backoffSeconds(row.attempts()));
+                }
+            }
+            outboxRepo.deleteSent(done);
+            sent.add(done.size());
+
+            // broker trouble: leave the rest to the next poll instead of spinning
+            if (anyFailed || batch.size() < batchSize) return;
+        }
+    }
+
+    long backoffSeconds(int attempts) {
+        long delay = 1L << Math.min(attempts, 20);
+        return Math.min(delay, maxBackoffSeconds);
+    }
+}
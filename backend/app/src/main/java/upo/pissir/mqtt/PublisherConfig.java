@@ -0,0 +1,40 @@
+package upo.pissir.mqtt;
+
+public record PublisherConfig(
+        int maxInflight,
+        int queueCapacity,
+        OverflowPolicy overflow,
+        long offerTimeoutMs,
+        long metricsLogSeconds
+) {
+    // what publish() does when the outbound queue is full
+    public enum OverflowPolicy { BLOCK, DROP }
+
+    public static PublisherConfig fromEnv() {
+        int maxInflight = Integer.parseInt(System.getenv().getOrDefault("MQTT_PUB_MAX_INFLIGHT", "64"));
+        int capacity = Integer.parseInt(System.getenv().getOrDefault("MQTT_PUB_QUEUE_CAPACITY", "1024"));
+        OverflowPolicy overflow = OverflowPolicy.valueOf(
+                System.getenv().getOrDefault("MQTT_PUB_OVERFLOW", "BLOCK").trim().toUpperCase());
+
+        // BLOCK only: 0 = wait for room indefinitely, > 0 = drop after waiting this long
+        long offerTimeoutMs = Long.parseLong(System.getenv().getOrDefault("MQTT_PUB_OFFER_TIMEOUT_MS", "0"));
+        long metricsLogSeconds = Long.parseLong(System.getenv().getOrDefault("MQTT_PUB_METRICS_LOG_SEC", "60"));
+
+        return new PublisherConfig(maxInflight, capacity, overflow, offerTimeoutMs, metricsLogSeconds);
+    }
+
+    public PublisherConfig {
+        if (maxInflight < 1) {
+            throw new IllegalArgumentException("MQTT_PUB_MAX_INFLIGHT must be >= 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("MQTT_PUB_QUEUE_CAPACITY must be >= 1");
+        }
+        if (overflow == null) {
+            throw new IllegalArgumentException("MQTT_PUB_OVERFLOW must be BLOCK or DROP");
+        }
+        if (offerTimeoutMs < 0) {
+            throw new IllegalArgumentException("MQTT_PUB_OFFER_TIMEOUT_MS must be >= 0");
+        }
+    }
+}
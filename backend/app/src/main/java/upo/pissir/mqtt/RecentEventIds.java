@@ -0,0 +1,58 @@
+package upo.pissir.mqtt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded set of the event keys seen last, checked on the MQTT callback thread so a QoS1
+// redelivery is dropped before it is queued or touches the DB. Oldest keys are evicted beyond
+// capacity; duplicates older than that (or seen by another replica / before a restart) are
+// still stopped by the ingested_events constraint, claimed by both trip inserts and closes.
+public class RecentEventIds {
+
+    public record Stats(long duplicates, int size) {}
+
+    private final int capacity;
+    private final Map<String, Boolean> seen;
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public RecentEventIds(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must be >= 0");
+        }
+        this.capacity = capacity;
+        this.seen = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > RecentEventIds.this.capacity;
+            }
+        };
+    }
+
+    // true the first time a key is seen; null keys (and capacity 0) are always accepted
+    public boolean firstSeen(String key) {
+        if (key == null || capacity == 0) return true;
+        boolean fresh;
+        synchronized (seen) {
+            fresh = seen.put(key, Boolean.TRUE) == null;
+        }
+        if (!fresh) duplicates.incrementAndGet();
+        return fresh;
+    }
+
+    // The message was not handled after all (e.g. ingest queue full): let a redelivery through
+    public void forget(String key) {
+        if (key == null) return;
+        synchronized (seen) {
+            seen.remove(key);
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (seen) {
+            size = seen.size();
+        }
+        return new Stats(duplicates.get(), size);
+    }
+}
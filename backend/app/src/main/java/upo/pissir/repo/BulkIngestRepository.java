@@ -0,0 +1,334 @@
+package upo.pissir.repo;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bulk load of lane events (POST /api/ingest/events). One transaction per batch: the events are
+// streamed with COPY into a temporary staging table, then a fixed number of set-based statements
+// deduplicate them, open the entries, pair every exit with its trip, close the trips with their
+// rollups, debts and payment totals, and dead-letter the exits left without an entry. The cost
+// per batch is a handful of round trips whatever the number of events.
+public class BulkIngestRepository {
+
+    public static final String ENTRY = "entry";
+    public static final String EXIT = "exit";
+
+    // Outcomes written by the statements below
+    public static final String OPENED = "opened";
+    public static final String CLOSED = "closed";
+    public static final String DUPLICATE = "duplicate";
+    public static final String UNMATCHED = "unmatched";
+
+    // One validated event; passId is the ticket id (manual) or the telepass id, the exit-only
+    // fields are null on entries. eventKey is the same dedup key the MQTT path records.
+    public record StagedEvent(
+            int line,
+            String kind,
+            String tollboothId,
+            String channel,
+            String passId,
+            String plate,
+            Instant timestamp,
+            String entryTollboothId,
+            Integer amountCents,
+            Double distanceKm,
+            String eventKey,
+            String payload
+    ) {}
+
+    public record Outcome(int line, String outcome, Long tripId) {}
+
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    static final String CREATE_STAGING_SQL = """
+            CREATE TEMP TABLE bulk_events (
+                line INTEGER PRIMARY KEY,
+                kind TEXT NOT NULL,
+                tollbooth_id TEXT NOT NULL,
+                channel TEXT NOT NULL,
+                pass_id TEXT NOT NULL,
+                plate TEXT NULL,
+                event_ts TIMESTAMPTZ NOT NULL,
+                entry_tollbooth_id TEXT NULL,
+                amount_cents INTEGER NULL,
+                distance_km DOUBLE PRECISION NULL,
+                event_key TEXT NULL,
+                payload TEXT NOT NULL,
+                outcome TEXT NULL,
+                trip_id BIGINT NULL,
+                trip_entry_at TIMESTAMPTZ NULL
+            ) ON COMMIT DROP
+            """;
+
+    static final String COPY_SQL = "COPY bulk_events(line, kind, tollbooth_id, channel, pass_id, plate, event_ts, "
+            + "entry_tollbooth_id, amount_cents, distance_km, event_key, payload) FROM STDIN WITH (FORMAT csv)";
+
+    // Same key twice in the batch: only the first line is applied
+    static final String DEDUP_BATCH_SQL = """
+            UPDATE bulk_events b SET outcome = 'duplicate'
+            FROM (
+                SELECT line, row_number() OVER (PARTITION BY event_key ORDER BY line) AS rn
+                FROM bulk_events
+                WHERE event_key IS NOT NULL
+            ) d
+            WHERE b.line = d.line AND d.rn > 1
+            """;
+
+    // Keys already in ingested_events (MQTT or an earlier batch) are duplicates; exits are
+    // claimed too, so replaying a whole file is a no-op instead of a flood of dead letters
+    static final String CLAIM_SQL = """
+            WITH claimed AS (
+                INSERT INTO ingested_events(event_id)
+                SELECT event_key FROM bulk_events
+                WHERE outcome IS NULL AND event_key IS NOT NULL
+                ON CONFLICT (event_id) DO NOTHING
+                RETURNING event_id
+            )
+            UPDATE bulk_events b SET outcome = 'duplicate'
+            WHERE b.outcome IS NULL AND b.event_key IS NOT NULL
+              AND NOT EXISTS (SELECT 1 FROM claimed c WHERE c.event_id = b.event_key)
+            """;
+
+    // Trip ids are drawn up front so exits can point at entries of the same batch
+    static final String ALLOCATE_SQL = """
+            UPDATE bulk_events
+            SET trip_id = nextval(pg_get_serial_sequence('trips', 'id')), trip_entry_at = event_ts
+            WHERE kind = 'entry' AND outcome IS NULL
+            """;
+
+    // An exit whose previous event for the same pass (in time order) is an entry of the batch
+    static final String PAIR_IN_BATCH_SQL = """
+            UPDATE bulk_events b SET trip_id = s.prev_trip_id, trip_entry_at = s.prev_ts
+            FROM (
+                SELECT line, kind,
+                       lag(kind) OVER w AS prev_kind,
+                       lag(trip_id) OVER w AS prev_trip_id,
+                       lag(event_ts) OVER w AS prev_ts
+                FROM bulk_events
+                WHERE outcome IS NULL
+                WINDOW w AS (PARTITION BY channel, pass_id ORDER BY event_ts, line)
+            ) s
+            WHERE b.line = s.line AND s.kind = 'exit' AND s.prev_kind = 'entry'
+            """;
+
+    // An exit that is the first event of its pass in the batch closes the latest trip already
+    // open in the DB (entered before the exit); run before the batch entries are inserted, and
+    // once per channel so the lookup uses the partial index on that pass column
+    static final String MATCH_OPEN_SQL = """
+            UPDATE bulk_events b SET trip_id = m.id, trip_entry_at = m.entry_at
+            FROM (
+                SELECT s.line, t.id, t.entry_at
+                FROM (
+                    SELECT line, kind, pass_id, event_ts,
+                           row_number() OVER (PARTITION BY pass_id ORDER BY event_ts, line) AS rn
+                    FROM bulk_events
+                    WHERE outcome IS NULL AND channel = ?
+                ) s
+                CROSS JOIN LATERAL (
+                    SELECT id, entry_at FROM trips
+                    WHERE %s = s.pass_id AND exit_at IS NULL AND entry_at <= s.event_ts
+                    ORDER BY entry_at DESC
+                    LIMIT 1
+                ) t
+                WHERE s.kind = 'exit' AND s.rn = 1
+            ) m
+            WHERE b.line = m.line
+            """;
+
+    static final String INSERT_ENTRIES_SQL = """
+            WITH ins AS (
+                INSERT INTO trips(id, entry_tollbooth_id, ticket_id, telepass_id, plate, entry_at, currency, paid)
+                SELECT trip_id, tollbooth_id,
+                       CASE WHEN channel = 'manual' THEN pass_id END,
+                       CASE WHEN channel = 'telepass' THEN pass_id END,
+                       plate, event_ts, 'EUR', false
+                FROM bulk_events
+                WHERE kind = 'entry' AND outcome IS NULL
+                ORDER BY event_ts
+                RETURNING id
+            )
+            UPDATE bulk_events SET outcome = 'opened'
+            WHERE kind = 'entry' AND outcome IS NULL
+            """;
+
+    // Same effects as TripRepository.CLOSE_TRIP_SQL, for every paired exit at once: manual exits
+    // are paid, telepass exits open a debt. The speed is capped to the column range so one
+    // implausible timestamp cannot fail the whole batch.
+    static final String CLOSE_SQL = """
+            WITH closed AS (
+                UPDATE trips t
+                SET exit_tollbooth_id = x.tollbooth_id,
+                    exit_at = x.event_ts,
+                    amount_cents = x.amount_cents,
+                    currency = 'EUR',
+                    avg_speed_kmh = x.avg_speed_kmh,
+                    speeding = COALESCE(x.avg_speed_kmh > 130, false),
+                    paid = x.channel = 'manual'
+                FROM (
+                    SELECT line, tollbooth_id, channel, event_ts, amount_cents, trip_id, trip_entry_at,
+                           CASE WHEN distance_km IS NOT NULL AND event_ts > trip_entry_at
+                                THEN LEAST(round((distance_km / (EXTRACT(EPOCH FROM event_ts - trip_entry_at) / 3600))::numeric, 2), 999999.99)
+                           END AS avg_speed_kmh
+                    FROM bulk_events
+                    WHERE kind = 'exit' AND outcome IS NULL AND trip_id IS NOT NULL
+                ) x
+                WHERE t.id = x.trip_id AND t.entry_at = x.trip_entry_at AND t.exit_at IS NULL
+                RETURNING t.id, t.telepass_id, t.ticket_id, t.entry_tollbooth_id, t.exit_tollbooth_id, t.entry_at,
+                          t.amount_cents, t.paid, t.exit_at, x.line
+            ), %s,
+            debt AS (
+                INSERT INTO telepass_debts(telepass_id, trip_id, amount_cents, status, created_at)
+                SELECT telepass_id, id, amount_cents, 'OPEN', exit_at
+                FROM closed
+                WHERE NOT paid AND telepass_id IS NOT NULL
+                RETURNING amount_cents
+            ),
+            totals AS (%s)
+            UPDATE bulk_events b SET outcome = 'closed'
+            FROM closed c
+            WHERE b.line = c.line
+            """.formatted(
+            RouteStatsRollup.upsertCtes(RouteStatsRollup.closedDeltas("closed")),
+            PaymentTotalsRepository.addDeltas(
+                    PaymentTotalsRepository.delta(PaymentTotalsRepository.COLLECTED, "amount_cents", "closed", "paid")
+                            + " UNION ALL "
+                            + PaymentTotalsRepository.delta(PaymentTotalsRepository.OPEN_DEBT, "amount_cents", "debt", null)));
+
+    // Exits still without a trip (no entry, or closed meanwhile by the MQTT path)
+    static final String UNMATCHED_SQL = """
+            WITH dl AS (
+                INSERT INTO dead_letter_events(event_type, tollbooth_id, channel, pass_id, payload, reason, received_at)
+                SELECT 'EXIT_COMPLETED', tollbooth_id, channel, pass_id, payload, 'no_entry', now()
+                FROM bulk_events
+                WHERE kind = 'exit' AND outcome IS NULL
+            )
+            UPDATE bulk_events SET outcome = 'unmatched', trip_id = NULL
+            WHERE kind = 'exit' AND outcome IS NULL
+            """;
+
+    static final String OUTCOMES_SQL = "SELECT line, outcome, trip_id FROM bulk_events ORDER BY line";
+
+    private final DataSource ds;
+
+    public BulkIngestRepository(DataSource ds) {
+        this.ds = ds;
+    }
+
+    // Outcomes of every staged event, by line; all or nothing on failure
+    public List<Outcome> ingest(List<StagedEvent> events) {
+        if (events.isEmpty()) return List.of();
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                execute(c, CREATE_STAGING_SQL);
+                copy(c, events);
+                // temp tables are never analyzed by autovacuum: without stats the joins below are guesses
+                execute(c, "ANALYZE bulk_events");
+                execute(c, DEDUP_BATCH_SQL);
+                execute(c, CLAIM_SQL);
+                execute(c, ALLOCATE_SQL);
+                execute(c, PAIR_IN_BATCH_SQL);
+                matchOpen(c, "manual", "ticket_id");
+                matchOpen(c, "telepass", "telepass_id");
+                execute(c, INSERT_ENTRIES_SQL);
+                execute(c, CLOSE_SQL);
+                execute(c, UNMATCHED_SQL);
+                List<Outcome> outcomes = readOutcomes(c, events.size());
+                c.commit();
+                return outcomes;
+            } catch (SQLException | IOException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("DB error (bulk ingest)", e);
+        }
+    }
+
+    private static void copy(Connection c, List<StagedEvent> events) throws SQLException, IOException {
+        PGConnection pg = c.unwrap(PGConnection.class);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(pg, COPY_SQL, COPY_BUFFER_BYTES), StandardCharsets.UTF_8), COPY_BUFFER_BYTES)) {
+            StringBuilder row = new StringBuilder(256);
+            for (StagedEvent e : events) {
+                row.setLength(0);
+                appendCsvRow(row, e);
+                out.append(row);
+            }
+        }
+    }
+
+    private static void matchOpen(Connection c, String channel, String passColumn) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(MATCH_OPEN_SQL.formatted(passColumn))) {
+            ps.setString(1, channel);
+            ps.executeUpdate();
+        }
+    }
+
+    private static List<Outcome> readOutcomes(Connection c, int expected) throws SQLException {
+        List<Outcome> out = new ArrayList<>(expected);
+        try (PreparedStatement ps = c.prepareStatement(OUTCOMES_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                long tripId = rs.getLong(3);
+                out.add(new Outcome(rs.getInt(1), rs.getString(2), rs.wasNull() ? null : tripId));
+            }
+        }
+        return out;
+    }
+
+    private static void execute(Connection c, String sql) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    // One COPY csv row in the column order of COPY_SQL, newline terminated. Every value is
+    // quoted (an empty string stays distinct from NULL, which is an unquoted empty field).
+    public static void appendCsvRow(StringBuilder sb, StagedEvent e) {
+        sb.append(e.line());
+        csv(sb, e.kind());
+        csv(sb, e.tollboothId());
+        csv(sb, e.channel());
+        csv(sb, e.passId());
+        csv(sb, e.plate());
+        csv(sb, e.timestamp() == null ? null : e.timestamp().toString());
+        csv(sb, e.entryTollboothId());
+        sb.append(',');
+        if (e.amountCents() != null) sb.append(e.amountCents().intValue());
+        sb.append(',');
+        if (e.distanceKm() != null) sb.append(e.distanceKm().doubleValue());
+        csv(sb, e.eventKey());
+        csv(sb, e.payload());
+        sb.append('\n');
+    }
+
+    private static void csv(StringBuilder sb, String value) {
+        sb.append(',');
+        if (value == null) return;
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') sb.append('"');
+            sb.append(ch);
+        }
+        sb.append('"');
+    }
+}
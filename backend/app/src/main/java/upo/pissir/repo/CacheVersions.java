@@ -0,0 +1,37 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Row per cached table in cache_versions: writers bump it in the same statement,
+// cached repositories poll it to notice changes made by other backend replicas.
+final class CacheVersions {
+    private CacheVersions() {}
+
+    // data-modifying CTE to append to a write: "WITH x AS (...), <bump> SELECT ..."
+    static String bumpCte(String name) {
+        return "bump AS (UPDATE cache_versions SET version = version + 1 WHERE name = '" + name + "')";
+    }
+
+    static long current(DataSource ds, String name) {
+        String sql = "SELECT version FROM cache_versions WHERE name = ?";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (cache version " + name + ")", e);
+        }
+    }
+
+    static long countOf(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Serves findFareCents and fareCents from an in-memory FareMatrix.
+// The matrix is rebuilt (copy-on-write) after every local fare change and whenever
+// cache_versions.fares moves, so changes made through another backend replica are
+// picked up within one refresh interval.
+public class CachedFareRepository extends FareRepository {
+    private final DataSource ds;
+    private final long refreshSeconds;
+    private volatile FareMatrix matrix;
+    private ScheduledExecutorService refresher;
+
+    public CachedFareRepository(DataSource ds, long refreshSeconds) {
+        super(ds);
+        this.ds = ds;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public void start() {
+        reload();
+        if (refreshSeconds <= 0) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fare-cache-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshIfChanged, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    @Override
+    public Integer findFareCents(String entryTollboothId, String exitTollboothId) {
+        FareMatrix m = matrix;
+        if (m == null) {
+            return super.findFareCents(entryTollboothId, exitTollboothId);
+        }
+        int cents = m.fareCents(entryTollboothId, exitTollboothId);
+        return cents == FareMatrix.NO_FARE ? null : cents;
+    }
+
+    @Override
+    public int fareCents(String entryTollboothId, String exitTollboothId) {
+        FareMatrix m = matrix;
+        if (m == null) {
+            return super.fareCents(entryTollboothId, exitTollboothId);
+        }
+        return m.fareCents(entryTollboothId, exitTollboothId);
+    }
+
+    @Override
+    public long createFare(String entry, String exit, int cents) {
+        long id = super.createFare(entry, exit, cents);
+        reload();
+        return id;
+    }
+
+    @Override
+    public boolean updateFare(long id, int amountCents) {
+        boolean updated = super.updateFare(id, amountCents);
+        if (updated) reload();
+        return updated;
+    }
+
+    @Override
+    public boolean deleteFare(long id) {
+        boolean deleted = super.deleteFare(id);
+        if (deleted) reload();
+        return deleted;
+    }
+
+    @Override
+    public int deleteByTollboothId(String tollboothId) {
+        int removed = super.deleteByTollboothId(tollboothId);
+        if (removed > 0) reload();
+        return removed;
+    }
+
+    // Version first, then rows: a concurrent change can only make the snapshot look older
+    // than it is, which the next refresh corrects.
+    public synchronized void reload() {
+        long version = currentVersion();
+        matrix = FareMatrix.build(findAll(), version);
+    }
+
+    private void refreshIfChanged() {
+        try {
+            FareMatrix m = matrix;
+            if (m == null || currentVersion() != m.version()) {
+                reload();
+            }
+        } catch (Exception e) {
+            System.out.println("Fare cache refresh failed: " + e.getMessage());
+        }
+    }
+
+    private long currentVersion() {
+        return CacheVersions.current(ds, "fares");
+    }
+}
@@ -0,0 +1,87 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the TollboothGeometry snapshot in memory so trip metrics need no DB access.
+// Rebuilt after every local create/update/delete and when cache_versions.tollbooths moves.
+public class CachedTollboothRepository extends TollboothRepository {
+    private final DataSource ds;
+    private final long refreshSeconds;
+    private volatile TollboothGeometry geometry;
+    private volatile long loadedVersion = -1;
+    private ScheduledExecutorService refresher;
+
+    public CachedTollboothRepository(DataSource ds, long refreshSeconds) {
+        super(ds);
+        this.ds = ds;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public void start() {
+        reload();
+        if (refreshSeconds <= 0) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tollbooth-cache-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshIfChanged, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    @Override
+    public TollboothGeometry geometry() {
+        TollboothGeometry g = geometry;
+        return g != null ? g : super.geometry();
+    }
+
+    @Override
+    public Double distanceKm(String fromTollboothId, String toTollboothId) {
+        TollboothGeometry g = geometry;
+        return g != null ? g.distanceKm(fromTollboothId, toTollboothId) : super.distanceKm(fromTollboothId, toTollboothId);
+    }
+
+    @Override
+    public void create(String id, String roadCode, double kmMarker, String region, String description) {
+        super.create(id, roadCode, kmMarker, region, description);
+        reload();
+    }
+
+    @Override
+    public boolean update(String id, String roadCode, double kmMarker, String region, String description) {
+        boolean updated = super.update(id, roadCode, kmMarker, region, description);
+        if (updated) reload();
+        return updated;
+    }
+
+    @Override
+    public boolean delete(String id) {
+        boolean deleted = super.delete(id);
+        if (deleted) reload();
+        return deleted;
+    }
+
+    public synchronized void reload() {
+        long version = CacheVersions.current(ds, "tollbooths");
+        geometry = TollboothGeometry.build(findAll());
+        loadedVersion = version;
+    }
+
+    private void refreshIfChanged() {
+        try {
+            if (CacheVersions.current(ds, "tollbooths") != loadedVersion) {
+                reload();
+            }
+        } catch (Exception e) {
+            System.out.println("Tollbooth cache refresh failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+// Events the ingest path could not apply (e.g. an EXIT_COMPLETED whose entry never arrived),
+// kept with their payload for manual reconciliation
+public class DeadLetterRepository {
+    private final DataSource ds;
+
+    public DeadLetterRepository(DataSource ds) {
+        this.ds = ds;
+    }
+
+    public void insert(
+            String eventType,
+            String tollboothId,
+            String channel,
+            String passId,
+            String payload,
+            String reason,
+            Instant receivedAt
+    ) {
+        String sql = """
+                INSERT INTO dead_letter_events(event_type, tollbooth_id, channel, pass_id, payload, reason, received_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, eventType);
+            ps.setString(2, tollboothId);
+            ps.setString(3, channel);
+            ps.setString(4, passId);
+            ps.setString(5, payload);
+            ps.setString(6, reason);
+            ps.setTimestamp(7, Timestamp.from(receivedAt));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (insert dead letter)", e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package upo.pissir.repo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable snapshot of the fares table: tollbooth id -> ordinal, fares in a dense int matrix.
+// A lookup is two hash probes and an array read, without touching the DB.
+final class FareMatrix {
+    static final int NO_FARE = FareRepository.NO_FARE;
+
+    private final Map<String, Integer> ordinals;
+    private final int[][] cents;
+    private final long version;
+
+    private FareMatrix(Map<String, Integer> ordinals, int[][] cents, long version) {
+        this.ordinals = ordinals;
+        this.cents = cents;
+        this.version = version;
+    }
+
+    static FareMatrix build(List<FareRepository.FareRow> rows, long version) {
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (FareRepository.FareRow row : rows) {
+            ordinals.putIfAbsent(row.entryTollboothId(), ordinals.size());
+            ordinals.putIfAbsent(row.exitTollboothId(), ordinals.size());
+        }
+        int n = ordinals.size();
+        int[][] cents = new int[n][n];
+        for (int[] line : cents) {
+            Arrays.fill(line, NO_FARE);
+        }
+        for (FareRepository.FareRow row : rows) {
+            cents[ordinals.get(row.entryTollboothId())][ordinals.get(row.exitTollboothId())] = row.amountCents();
+        }
+        return new FareMatrix(Map.copyOf(ordinals), cents, version);
+    }
+
+    int fareCents(String entryTollboothId, String exitTollboothId) {
+        if (entryTollboothId == null || exitTollboothId == null) return NO_FARE;
+        Integer i = ordinals.get(entryTollboothId);
+        Integer j = ordinals.get(exitTollboothId);
+        if (i == null || j == null) return NO_FARE;
+        return cents[i][j];
+    }
+
+    long version() {
+        return version;
+    }
+}
@@ -12,10 +12,22 @@ public class FareRepository {
 
     public record FareRow(long id, String entryTollboothId, String exitTollboothId, int amountCents, String currency) {}
 
+    // every fare write also moves cache_versions.fares (see CachedFareRepository)
+    private static final String BUMP_VERSION = CacheVersions.bumpCte("fares");
+
+    // fareCents result when the route has no fare
+    public static final int NO_FARE = -1;
+
     public FareRepository(DataSource ds) {
         this.ds = ds;
     }
 
+    // Unboxed lookup for the per-message paths: the fare, or NO_FARE
+    public int fareCents(String entryTollboothId, String exitTollboothId) {
+        Integer cents = findFareCents(entryTollboothId, exitTollboothId);
+        return cents == null ? NO_FARE : cents;
+    }
+
     public Integer findFareCents(String entryTollboothId, String exitTollboothId) {
         String sql = "SELECT amount_cents FROM fares WHERE entry_tollbooth_id=? AND exit_tollbooth_id=?";
         try (Connection c = ds.getConnection();
@@ -58,10 +70,13 @@ public class FareRepository {
 
     public long createFare(String entry, String exit, int cents) {
         String sql = """
-                INSERT INTO fares(entry_tollbooth_id, exit_tollbooth_id, amount_cents, currency)
-                VALUES (?, ?, ?, 'EUR')
-                RETURNING id
-                """;
+                WITH ins AS (
+                  INSERT INTO fares(entry_tollbooth_id, exit_tollbooth_id, amount_cents, currency)
+                  VALUES (?, ?, ?, 'EUR')
+                  RETURNING id
+                ), %s
+                SELECT id FROM ins
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, entry);
@@ -79,35 +94,46 @@ public class FareRepository {
     }
 
     public boolean updateFare(long id, int amountCents) {
-        String sql = "UPDATE fares SET amount_cents = ? WHERE id = ?";
+        String sql = """
+                WITH upd AS (UPDATE fares SET amount_cents = ? WHERE id = ? RETURNING id), %s
+                SELECT count(*) FROM upd
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setInt(1, amountCents);
             ps.setLong(2, id);
-            return ps.executeUpdate() == 1;
+            return CacheVersions.countOf(ps) == 1;
         } catch (Exception e) {
             throw new IllegalStateException("DB error (updateFare)", e);
         }
     }
 
     public boolean deleteFare(long id) {
-        String sql = "DELETE FROM fares WHERE id = ?";
+        String sql = """
+                WITH del AS (DELETE FROM fares WHERE id = ? RETURNING id), %s
+                SELECT count(*) FROM del
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setLong(1, id);
-            return ps.executeUpdate() == 1;
+            return CacheVersions.countOf(ps) == 1;
         } catch (Exception e) {
             throw new IllegalStateException("DB error (deleteFare)", e);
         }
     }
 
     public int deleteByTollboothId(String tollboothId) {
-        String sql = "DELETE FROM fares WHERE entry_tollbooth_id = ? OR exit_tollbooth_id = ?";
+        String sql = """
+                WITH del AS (
+                  DELETE FROM fares WHERE entry_tollbooth_id = ? OR exit_tollbooth_id = ? RETURNING id
+                ), %s
+                SELECT count(*) FROM del
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, tollboothId);
             ps.setString(2, tollboothId);
-            return ps.executeUpdate();
+            return (int) CacheVersions.countOf(ps);
         } catch (Exception e) {
             throw new IllegalStateException("DB error (deleteByTollboothId)", e);
         }
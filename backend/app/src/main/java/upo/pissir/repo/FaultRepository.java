@@ -12,6 +12,7 @@ import java.util.List;
 
 public class FaultRepository {
     private final DataSource ds;
+    private final DataSource readDs;
 
     public record FaultRow(
             long id,
@@ -28,7 +29,13 @@ public class FaultRepository {
     ) {}
 
     public FaultRepository(DataSource ds) {
+        this(ds, ds);
+    }
+
+    // readDs serves the dashboard listing (findAll), e.g. a ReplicaRoutingDataSource
+    public FaultRepository(DataSource ds, DataSource readDs) {
         this.ds = ds;
+        this.readDs = readDs;
     }
 
     public long createFault(
@@ -71,7 +78,7 @@ public class FaultRepository {
                 FROM device_faults
                 ORDER BY created_at DESC, id DESC
                 """;
-        try (Connection c = ds.getConnection();
+        try (Connection c = readDs.getConnection();
              PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             List<FaultRow> out = new ArrayList<>();
@@ -101,20 +108,36 @@ public class FaultRepository {
         }
     }
 
-    public boolean markResponded(long id, String backendAction, Instant respondedAt) {
+    // Marks the fault responded and queues the SERVICE_RESPONSE in mqtt_outbox atomically:
+    // the message exists if and only if the status change committed.
+    public boolean markRespondedWithMessage(
+            long id,
+            String backendAction,
+            Instant respondedAt,
+            String topic,
+            String payload,
+            int qos
+    ) {
         String sql = """
-                UPDATE device_faults
-                SET status = 'RESPONDED',
-                    backend_action = ?,
-                    responded_at = ?
-                WHERE id = ? AND status = 'OPEN'
-                """;
+                WITH upd AS (
+                    UPDATE device_faults
+                    SET status = 'RESPONDED',
+                        backend_action = ?,
+                        responded_at = ?
+                    WHERE id = ? AND status = 'OPEN'
+                    RETURNING id
+                ), %s
+                SELECT count(*) FROM outbox
+                """.formatted(OutboxRepository.enqueueCte("upd"));
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, backendAction);
             ps.setTimestamp(2, Timestamp.from(respondedAt));
             ps.setLong(3, id);
-            return ps.executeUpdate() == 1;
+            ps.setString(4, topic);
+            ps.setString(5, payload);
+            ps.setInt(6, qos);
+            return CacheVersions.countOf(ps) == 1;
         } catch (SQLException e) {
             throw new IllegalStateException("DB error (mark fault responded)", e);
         }
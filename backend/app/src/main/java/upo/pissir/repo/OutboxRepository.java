@@ -0,0 +1,108 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// MQTT messages written by the backend in the same statement/transaction as the state
+// change that produced them (see mqtt_outbox), drained by OutboxRelay.
+public class OutboxRepository {
+    private final DataSource ds;
+
+    public record OutboxRow(long id, String topic, String payload, int qos, int attempts) {}
+
+    // data-modifying CTE to append to a write: "WITH x AS (... RETURNING ...), <enqueue> SELECT ..."
+    // inserts one message (topic, payload, qos bound as the next three parameters) per row of `source`
+    static String enqueueCte(String source) {
+        return "outbox AS (INSERT INTO mqtt_outbox(topic, payload, qos) SELECT ?, ?, ? FROM " + source + " RETURNING id)";
+    }
+
+    public OutboxRepository(DataSource ds) {
+        this.ds = ds;
+    }
+
+    // Leases up to `limit` due messages: they become invisible to other relays (other replicas)
+    // for leaseSeconds, so a relay that dies mid-batch only delays its messages.
+    public List<OutboxRow> claimBatch(int limit, long leaseSeconds) {
+        String sql = """
+                UPDATE mqtt_outbox
+                SET next_attempt_at = now() + make_interval(secs => ?)
+                WHERE id IN (
+                    SELECT id FROM mqtt_outbox
+                    WHERE next_attempt_at <= now()
+                    ORDER BY id
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING id, topic, payload, qos, attempts
+                """;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, leaseSeconds);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<OutboxRow> out = new ArrayList<>();
+                while (rs.next()) {
+                    out.add(new OutboxRow(
+                            rs.getLong("id"),
+                            rs.getString("topic"),
+                            rs.getString("payload"),
+                            rs.getInt("qos"),
+                            rs.getInt("attempts")
+                    ));
+                }
+                // RETURNING does not keep the subquery order
+                out.sort(Comparator.comparingLong(OutboxRow::id));
+                return out;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (claim outbox batch)", e);
+        }
+    }
+
+    public int deleteSent(List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        String sql = "DELETE FROM mqtt_outbox WHERE id = ANY(?)";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setArray(1, c.createArrayOf("bigint", ids.toArray()));
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (delete sent outbox)", e);
+        }
+    }
+
+    public void markFailed(long id, String error, long retryInSeconds) {
+        String sql = """
+                UPDATE mqtt_outbox
+                SET attempts = attempts + 1,
+                    last_error = ?,
+                    next_attempt_at = now() + make_interval(secs => ?)
+                WHERE id = ?
+                """;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, error);
+            ps.setLong(2, retryInSeconds);
+            ps.setLong(3, id);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (mark outbox failed)", e);
+        }
+    }
+
+    public long countPending() {
+        String sql = "SELECT count(*) FROM mqtt_outbox";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            return CacheVersions.countOf(ps);
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (count outbox)", e);
+        }
+    }
+}
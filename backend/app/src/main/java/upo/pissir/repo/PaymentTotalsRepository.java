@@ -0,0 +1,98 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Running totals behind GET /api/payments/summary (payment_totals).
+// Every write that opens/pays a debt or collects a trip amount adds its delta in the same
+// statement; each total is split over SLOTS rows picked by backend pid, so concurrent
+// connections rarely wait on the same row, and reading it is a sum of SLOTS rows.
+public class PaymentTotalsRepository {
+    static final String OPEN_DEBT = "open_debt_cents";
+    static final String COLLECTED = "collected_cents";
+    // must match the slots seeded in schema.sql
+    static final int SLOTS = 16;
+
+    private final DataSource ds;
+
+    public record Totals(long openDebtCents, long collectedCents) {}
+
+    public PaymentTotalsRepository(DataSource ds) {
+        this.ds = ds;
+    }
+
+    // Statement adding (name, delta) rows to the totals; NULL deltas (SUM over no rows)
+    // leave the row untouched. Use as "totals AS (<this>)" or as the main statement.
+    static String addDeltas(String deltas) {
+        return "UPDATE payment_totals t SET value = t.value + d.delta"
+                + " FROM (" + deltas + ") d(name, delta)"
+                + " WHERE t.name = d.name AND t.slot = pg_backend_pid() % " + SLOTS
+                + " AND d.delta IS NOT NULL";
+    }
+
+    // Delta row for `name`: SUM(amount_cents) over the rows of `source`, optionally filtered
+    static String delta(String name, String expr, String source, String where) {
+        return "SELECT '" + name + "', SUM(" + expr + ")::bigint FROM " + source
+                + (where == null ? "" : " WHERE " + where);
+    }
+
+    public Totals read() {
+        String sql = """
+                SELECT COALESCE(SUM(value) FILTER (WHERE name = ?), 0),
+                       COALESCE(SUM(value) FILTER (WHERE name = ?), 0)
+                FROM payment_totals
+                """;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, OPEN_DEBT);
+            ps.setString(2, COLLECTED);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return new Totals(0L, 0L);
+                return new Totals(rs.getLong(1), rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (read payment totals)", e);
+        }
+    }
+
+    // Recomputes both totals from the tables and adds the drift to slot 0.
+    // Totals and sums are read by one statement (one snapshot), and the correction is a
+    // delta, so writes committing meanwhile are neither lost nor counted twice.
+    // Returns the drift that was applied.
+    public Totals reconcile() {
+        String driftSql = """
+                SELECT (SELECT COALESCE(SUM(amount_cents), 0) FROM telepass_debts WHERE status = 'OPEN')
+                     - (SELECT COALESCE(SUM(value), 0) FROM payment_totals WHERE name = ?),
+                       (SELECT COALESCE(SUM(amount_cents), 0) FROM trips WHERE paid = true AND amount_cents IS NOT NULL)
+                     - (SELECT COALESCE(SUM(value), 0) FROM payment_totals WHERE name = ?)
+                """;
+        String fixSql = "UPDATE payment_totals SET value = value + ? WHERE name = ? AND slot = 0";
+        try (Connection c = ds.getConnection()) {
+            Totals drift;
+            try (PreparedStatement ps = c.prepareStatement(driftSql)) {
+                ps.setString(1, OPEN_DEBT);
+                ps.setString(2, COLLECTED);
+                try (ResultSet rs = ps.executeQuery()) {
+                    drift = rs.next() ? new Totals(rs.getLong(1), rs.getLong(2)) : new Totals(0L, 0L);
+                }
+            }
+            if (drift.openDebtCents() != 0 || drift.collectedCents() != 0) {
+                try (PreparedStatement ps = c.prepareStatement(fixSql)) {
+                    ps.setLong(1, drift.openDebtCents());
+                    ps.setString(2, OPEN_DEBT);
+                    ps.addBatch();
+                    ps.setLong(1, drift.collectedCents());
+                    ps.setString(2, COLLECTED);
+                    ps.addBatch();
+                    ps.executeBatch();
+                }
+            }
+            return drift;
+        } catch (SQLException e) {
+            throw new IllegalStateException("DB error (reconcile payment totals)", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package upo.pissir.repo;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+// Hourly and daily per-route totals of closed trips (route_stats_hourly / route_stats_daily),
+// bucketed in UTC by entry_at like the report filters. Writers keep them current in the same
+// statement that closes or pays a trip; readers combine whole days, whole hours and raw trips
+// only for the partial hours at the edges of the requested range.
+final class RouteStatsRollup {
+    private RouteStatsRollup() {}
+
+    enum Source { DAILY, HOURLY, RAW }
+
+    // [start, end), null = unbounded
+    record Segment(Source source, Instant start, Instant end) {}
+
+    private static final String CHANNEL_EXPR = "CASE WHEN ticket_id IS NOT NULL THEN 'manual' ELSE 'telepass' END";
+
+    static String bucketExpr(Source source, String column) {
+        String unit = source == Source.DAILY ? "day" : "hour";
+        return "date_trunc('" + unit + "', " + column + " AT TIME ZONE 'UTC') AT TIME ZONE 'UTC'";
+    }
+
+    static String table(Source source) {
+        return source == Source.DAILY ? "route_stats_daily" : "route_stats_hourly";
+    }
+
+    // Delta rows for trips just closed by `source` (a CTE returning the updated trips row)
+    static String closedDeltas(String source) {
+        return "SELECT entry_at, entry_tollbooth_id, exit_tollbooth_id, " + CHANNEL_EXPR + " AS channel, paid, "
+                + "1 AS trips_count, COALESCE(amount_cents, 0) AS amount_sum_cents, "
+                + "CASE WHEN amount_cents IS NULL THEN 0 ELSE 1 END AS amount_count FROM " + source;
+    }
+
+    // Delta rows moving closed trips of `source` from the unpaid to the paid bucket
+    static String paidDeltas(String source) {
+        String cols = "entry_at, entry_tollbooth_id, exit_tollbooth_id, " + CHANNEL_EXPR + " AS channel";
+        String amount = "COALESCE(amount_cents, 0)";
+        String counted = "CASE WHEN amount_cents IS NULL THEN 0 ELSE 1 END";
+        return "SELECT " + cols + ", false AS paid, -1 AS trips_count, -" + amount + " AS amount_sum_cents, -"
+                + counted + " AS amount_count FROM " + source + " WHERE exit_tollbooth_id IS NOT NULL"
+                + " UNION ALL SELECT " + cols + ", true, 1, " + amount + ", " + counted + " FROM " + source
+                + " WHERE exit_tollbooth_id IS NOT NULL";
+    }
+
+    // data-modifying CTEs to append to a write: "WITH x AS (...), <upserts> <main statement>"
+    static String upsertCtes(String deltas) {
+        return upsertCte("rs_hourly", Source.HOURLY, deltas) + ", " + upsertCte("rs_daily", Source.DAILY, deltas);
+    }
+
+    private static String upsertCte(String name, Source source, String deltas) {
+        return name + " AS (INSERT INTO " + table(source) + " AS r"
+                + "(bucket_start, entry_tollbooth_id, exit_tollbooth_id, channel, paid, trips_count, amount_sum_cents, amount_count)"
+                + " SELECT " + bucketExpr(source, "d.entry_at")
+                + ", d.entry_tollbooth_id, d.exit_tollbooth_id, d.channel, d.paid, d.trips_count, d.amount_sum_cents, d.amount_count"
+                + " FROM (" + deltas + ") d"
+                + " ON CONFLICT (bucket_start, entry_tollbooth_id, exit_tollbooth_id, channel, paid) DO UPDATE"
+                + " SET trips_count = r.trips_count + EXCLUDED.trips_count,"
+                + " amount_sum_cents = r.amount_sum_cents + EXCLUDED.amount_sum_cents,"
+                + " amount_count = r.amount_count + EXCLUDED.amount_count)";
+    }
+
+    // Splits the report range [from, to] (inclusive, either end may be null) into whole UTC days,
+    // whole hours at the day edges and raw sub-hour remainders.
+    static List<Segment> plan(Instant from, Instant to) {
+        Instant start = from;
+        // entry_at has microsecond precision: "<= to" is "< to + 1µs"
+        Instant end = to == null ? null : to.plus(1, ChronoUnit.MICROS);
+        List<Segment> out = new ArrayList<>();
+
+        Instant dayStart = start == null ? null : ceil(start, ChronoUnit.DAYS);
+        Instant dayEnd = end == null ? null : floor(end, ChronoUnit.DAYS);
+        if (dayStart != null && dayEnd != null && !dayStart.isBefore(dayEnd)) {
+            planHours(out, start, end);
+            return out;
+        }
+        if (start != null && start.isBefore(dayStart)) {
+            planHours(out, start, dayStart);
+        }
+        out.add(new Segment(Source.DAILY, dayStart, dayEnd));
+        if (end != null && dayEnd.isBefore(end)) {
+            planHours(out, dayEnd, end);
+        }
+        return out;
+    }
+
+    private static void planHours(List<Segment> out, Instant start, Instant end) {
+        Instant hourStart = ceil(start, ChronoUnit.HOURS);
+        Instant hourEnd = floor(end, ChronoUnit.HOURS);
+        if (!hourStart.isBefore(hourEnd)) {
+            out.add(new Segment(Source.RAW, start, end));
+            return;
+        }
+        if (start.isBefore(hourStart)) {
+            out.add(new Segment(Source.RAW, start, hourStart));
+        }
+        out.add(new Segment(Source.HOURLY, hourStart, hourEnd));
+        if (hourEnd.isBefore(end)) {
+            out.add(new Segment(Source.RAW, hourEnd, end));
+        }
+    }
+
+    private static Instant floor(Instant t, ChronoUnit unit) {
+        return t.truncatedTo(unit);
+    }
+
+    private static Instant ceil(Instant t, ChronoUnit unit) {
+        Instant floor = t.truncatedTo(unit);
+        return floor.equals(t) ? t : floor.plus(1, unit);
+    }
+}
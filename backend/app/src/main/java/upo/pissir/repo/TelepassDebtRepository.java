@@ -20,9 +20,15 @@ public class TelepassDebtRepository {
 
     public void createDebt(String telepassId, long tripId, int amountCents, Instant createdAt) {
         String sql = """
-                INSERT INTO telepass_debts(telepass_id, trip_id, amount_cents, status, created_at)
-                VALUES (?, ?, ?, 'OPEN', ?)
-                """;
+                WITH debt AS (
+                    INSERT INTO telepass_debts(telepass_id, trip_id, amount_cents, status, created_at)
+                    VALUES (?, ?, ?, 'OPEN', ?)
+                    RETURNING amount_cents
+                ),
+                totals AS (%s)
+                SELECT count(*) FROM debt
+                """.formatted(PaymentTotalsRepository.addDeltas(
+                PaymentTotalsRepository.delta(PaymentTotalsRepository.OPEN_DEBT, "amount_cents", "debt", null)));
 
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
@@ -32,7 +38,7 @@ public class TelepassDebtRepository {
             ps.setInt(3, amountCents);
             ps.setObject(4, createdAt); // TIMESTAMPTZ
 
-            int rows = ps.executeUpdate();
+            long rows = CacheVersions.countOf(ps);
             if (rows != 1) {
                 System.out.println("WARN createDebt affected rows=" + rows +
                         " telepassId=" + telepassId + " tripId=" + tripId);
@@ -99,13 +105,19 @@ public class TelepassDebtRepository {
         }
     }
 
+    // Closes an open debt and takes its amount off the open debt total in the same statement
     public Long markDebtPaid(long debtId) {
         String sql = """
-                UPDATE telepass_debts
-                SET status = 'PAID'
-                WHERE id = ? AND status = 'OPEN'
-                RETURNING trip_id
-                """;
+                WITH upd AS (
+                    UPDATE telepass_debts
+                    SET status = 'PAID'
+                    WHERE id = ? AND status = 'OPEN'
+                    RETURNING trip_id, amount_cents
+                ),
+                totals AS (%s)
+                SELECT trip_id FROM upd
+                """.formatted(PaymentTotalsRepository.addDeltas(
+                PaymentTotalsRepository.delta(PaymentTotalsRepository.OPEN_DEBT, "-amount_cents", "upd", null)));
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setLong(1, debtId);
@@ -117,16 +129,4 @@ public class TelepassDebtRepository {
             throw new IllegalStateException("DB error (markDebtPaid)", e);
         }
     }
-
-    public long sumOpenDebtCents() {
-        String sql = "SELECT COALESCE(SUM(amount_cents), 0) FROM telepass_debts WHERE status='OPEN'";
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            if (!rs.next()) return 0L;
-            return rs.getLong(1);
-        } catch (SQLException e) {
-            throw new IllegalStateException("DB error (sumOpenDebtCents)", e);
-        }
-    }
 }
@@ -0,0 +1,64 @@
+package upo.pissir.repo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable snapshot of tollbooth positions with the pairwise distance table precomputed.
+// Distance is only defined between tollbooths on the same road with a known km marker.
+public final class TollboothGeometry {
+    public static final TollboothGeometry EMPTY = build(List.of());
+
+    private final Map<String, Integer> ordinals;
+    private final double[][] distanceKm;
+
+    private TollboothGeometry(Map<String, Integer> ordinals, double[][] distanceKm) {
+        this.ordinals = ordinals;
+        this.distanceKm = distanceKm;
+    }
+
+    public static TollboothGeometry build(List<TollboothRepository.TollboothRow> rows) {
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (TollboothRepository.TollboothRow row : rows) {
+            ordinals.putIfAbsent(row.id(), ordinals.size());
+        }
+        int n = ordinals.size();
+        TollboothRepository.TollboothRow[] byOrdinal = new TollboothRepository.TollboothRow[n];
+        for (TollboothRepository.TollboothRow row : rows) {
+            byOrdinal[ordinals.get(row.id())] = row;
+        }
+
+        double[][] distanceKm = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(distanceKm[i], Double.NaN);
+            for (int j = 0; j < n; j++) {
+                Double d = distanceKm(byOrdinal[i], byOrdinal[j]);
+                if (d != null) distanceKm[i][j] = d;
+            }
+        }
+        return new TollboothGeometry(Map.copyOf(ordinals), distanceKm);
+    }
+
+    // null when either tollbooth is unknown, they are on different roads or a marker is missing
+    public Double distanceKm(String fromTollboothId, String toTollboothId) {
+        if (fromTollboothId == null || toTollboothId == null) return null;
+        Integer i = ordinals.get(fromTollboothId);
+        Integer j = ordinals.get(toTollboothId);
+        if (i == null || j == null) return null;
+        double d = distanceKm[i][j];
+        return Double.isNaN(d) ? null : d;
+    }
+
+    // one pair, without building a table (see TollboothRepository.distanceKm)
+    static Double distanceKm(TollboothRepository.TollboothRow a, TollboothRepository.TollboothRow b) {
+        if (a == null || b == null) return null;
+        if (a.roadCode() == null || !a.roadCode().equals(b.roadCode())) return null;
+        if (a.kmMarker() == null || b.kmMarker() == null) return null;
+        return Math.abs(b.kmMarker() - a.kmMarker());
+    }
+
+    public int size() {
+        return ordinals.size();
+    }
+}
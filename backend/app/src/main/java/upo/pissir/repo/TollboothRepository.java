@@ -19,8 +19,28 @@ public class TollboothRepository {
             String description
     ) {}
 
+    // every tollbooth write also moves cache_versions.tollbooths (see CachedTollboothRepository)
+    private static final String BUMP_VERSION = CacheVersions.bumpCte("tollbooths");
+
     public TollboothRepository(DataSource ds) { this.ds = ds; }
 
+    public TollboothGeometry geometry() {
+        return TollboothGeometry.build(findAll());
+    }
+
+    // Uncached lookup for the exit path: reads only the two tollbooths
+    // (CachedTollboothRepository answers from its table instead)
+    public Double distanceKm(String fromTollboothId, String toTollboothId) {
+        if (fromTollboothId == null || toTollboothId == null) return null;
+        TollboothRow from = null;
+        TollboothRow to = null;
+        for (TollboothRow row : findByIds(fromTollboothId, toTollboothId)) {
+            if (row.id().equals(fromTollboothId)) from = row;
+            if (row.id().equals(toTollboothId)) to = row;
+        }
+        return TollboothGeometry.distanceKm(from, to);
+    }
+
     public List<TollboothRow> findAll() {
         String sql = """
                 SELECT id, road_code, km_marker, region, description
@@ -55,6 +75,26 @@ public class TollboothRepository {
         }
     }
 
+    public List<TollboothRow> findByIds(String id1, String id2) {
+        String sql = """
+                SELECT id, road_code, km_marker, region, description
+                FROM tollbooths
+                WHERE id IN (?, ?)
+                """;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, id1);
+            ps.setString(2, id2);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<TollboothRow> out = new ArrayList<>(2);
+                while (rs.next()) out.add(mapRow(rs));
+                return out;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("DB error (findByIds tollbooths)", e);
+        }
+    }
+
     public boolean exists(String id) {
         String sql = "SELECT 1 FROM tollbooths WHERE id = ?";
         try (Connection c = ds.getConnection();
@@ -70,9 +110,13 @@ public class TollboothRepository {
 
     public void create(String id, String roadCode, double kmMarker, String region, String description) {
         String sql = """
-                INSERT INTO tollbooths(id, road_code, km_marker, region, description)
-                VALUES (?, ?, ?, ?, ?)
-                """;
+                WITH ins AS (
+                  INSERT INTO tollbooths(id, road_code, km_marker, region, description)
+                  VALUES (?, ?, ?, ?, ?)
+                  RETURNING id
+                ), %s
+                SELECT count(*) FROM ins
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, id);
@@ -80,7 +124,7 @@ public class TollboothRepository {
             ps.setDouble(3, kmMarker);
             ps.setString(4, region);
             ps.setString(5, description);
-            ps.executeUpdate();
+            CacheVersions.countOf(ps);
         } catch (Exception e) {
             throw new IllegalStateException("DB error (create tollbooth)", e);
         }
@@ -88,10 +132,14 @@ public class TollboothRepository {
 
     public boolean update(String id, String roadCode, double kmMarker, String region, String description) {
         String sql = """
-                UPDATE tollbooths
-                SET road_code = ?, km_marker = ?, region = ?, description = ?
-                WHERE id = ?
-                """;
+                WITH upd AS (
+                  UPDATE tollbooths
+                  SET road_code = ?, km_marker = ?, region = ?, description = ?
+                  WHERE id = ?
+                  RETURNING id
+                ), %s
+                SELECT count(*) FROM upd
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, roadCode);
@@ -99,18 +147,21 @@ public class TollboothRepository {
             ps.setString(3, region);
             ps.setString(4, description);
             ps.setString(5, id);
-            return ps.executeUpdate() == 1;
+            return CacheVersions.countOf(ps) == 1;
         } catch (Exception e) {
             throw new IllegalStateException("DB error (update tollbooth)", e);
         }
     }
 
     public boolean delete(String id) {
-        String sql = "DELETE FROM tollbooths WHERE id = ?";
+        String sql = """
+                WITH del AS (DELETE FROM tollbooths WHERE id = ? RETURNING id), %s
+                SELECT count(*) FROM del
+                """.formatted(BUMP_VERSION);
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, id);
-            return ps.executeUpdate() == 1;
+            return CacheVersions.countOf(ps) == 1;
         } catch (Exception e) {
             throw new IllegalStateException("DB error (delete tollbooth)", e);
         }
@@ -0,0 +1,255 @@
+package upo.pissir.repo;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Group commit for trip writes: inserts and closes queued by concurrent callers
+// are flushed together as JDBC batches in a single transaction.
+public class TripBatchWriter {
+
+    // done completes with true when the statement changed a row (false: duplicate insert)
+    private sealed interface Op permits Insert, Close {
+        CompletableFuture<Boolean> done();
+        String name();
+    }
+
+    private record Insert(
+            String entryTollboothId,
+            String ticketId,
+            String telepassId,
+            String plate,
+            Instant entryAt,
+            String eventId,
+            CompletableFuture<Boolean> done
+    ) implements Op {
+        public String name() {
+            return ticketId != null ? "createTripManual" : "createTripTelepass";
+        }
+    }
+
+    private record Close(
+            long tripId,
+            Instant entryAt,
+            String exitTollboothId,
+            Instant exitAt,
+            int amountCents,
+            Double avgSpeedKmh,
+            boolean speeding,
+            boolean paid,
+            boolean createDebt,
+            String eventId,
+            CompletableFuture<Boolean> done
+    ) implements Op {
+        public String name() {
+            return "closeTrip";
+        }
+    }
+
+    private final DataSource ds;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private Thread flusher;
+    private volatile boolean running;
+
+    public TripBatchWriter(DataSource ds, int maxBatchSize, long maxDelayMs) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be >= 1");
+        }
+        this.ds = ds;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = Math.max(0L, maxDelayMs);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        flusher = new Thread(this::runFlusher, "trip-batch-writer");
+        flusher.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (!running) return;
+        running = false;
+        flusher.interrupt();
+        flusher.join(10_000);
+        Op late;
+        while ((late = queue.poll()) != null) {
+            late.done().completeExceptionally(new IllegalStateException("trip batch writer stopped"));
+        }
+    }
+
+    // exactly one of ticketId / telepassId is set; eventId as in TripRepository.INSERT_TRIP_SQL.
+    // Completes with false when the event id was already claimed and no trip was inserted.
+    public CompletableFuture<Boolean> insert(
+            String entryTollboothId,
+            String plate,
+            String ticketId,
+            String telepassId,
+            Instant entryAt,
+            String eventId
+    ) {
+        return enqueue(new Insert(entryTollboothId, ticketId, telepassId, plate, entryAt, eventId, new CompletableFuture<>()));
+    }
+
+    public CompletableFuture<Boolean> close(
+            long tripId,
+            Instant entryAt,
+            String exitTollboothId,
+            Instant exitAt,
+            int amountCents,
+            Double avgSpeedKmh,
+            boolean speeding,
+            boolean paid,
+            boolean createDebt,
+            String eventId
+    ) {
+        return enqueue(new Close(tripId, entryAt, exitTollboothId, exitAt, amountCents, avgSpeedKmh, speeding, paid, createDebt,
+                eventId, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Boolean> enqueue(Op op) {
+        if (!running) {
+            op.done().completeExceptionally(new IllegalStateException("trip batch writer not running"));
+            return op.done();
+        }
+        queue.add(op);
+        return op.done();
+    }
+
+    private void runFlusher() {
+        List<Op> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Op first = running ? queue.take() : queue.poll();
+                if (first == null) break;
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                // wait a little for late joiners only while the batch is not full
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (running && batch.size() < maxBatchSize) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Op next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // stop(): flush what is left, then exit
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Op> batch) {
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            boolean[] changed;
+            try {
+                changed = writeBatch(c, batch);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                c.setAutoCommit(true);
+                // isolate the failing row(s): retry one by one so a single bad event does not fail its neighbours
+                for (Op op : batch) {
+                    writeOne(c, op);
+                }
+                return;
+            }
+            for (int k = 0; k < batch.size(); k++) {
+                batch.get(k).done().complete(changed[k]);
+            }
+        } catch (SQLException e) {
+            for (Op op : batch) {
+                op.done().completeExceptionally(new IllegalStateException(op.name() + " failed", e));
+            }
+        }
+    }
+
+    // Per op of the batch: whether it changed a row
+    private static boolean[] writeBatch(Connection c, List<Op> batch) throws SQLException {
+        // inserts first: a close in the same batch always refers to a trip committed earlier
+        boolean[] changed = new boolean[batch.size()];
+        try (PreparedStatement insert = c.prepareStatement(TripRepository.INSERT_TRIP_SQL);
+             PreparedStatement close = c.prepareStatement(TripRepository.CLOSE_TRIP_SQL)) {
+            List<Integer> inserts = new ArrayList<>();
+            List<Integer> closes = new ArrayList<>();
+            for (int k = 0; k < batch.size(); k++) {
+                Op op = batch.get(k);
+                if (op instanceof Insert i) {
+                    bindInsert(insert, i);
+                    insert.addBatch();
+                    inserts.add(k);
+                } else if (op instanceof Close cl) {
+                    bindClose(close, cl);
+                    close.addBatch();
+                    closes.add(k);
+                }
+            }
+            if (!inserts.isEmpty()) {
+                int[] counts = insert.executeBatch();
+                for (int n = 0; n < inserts.size(); n++) {
+                    changed[inserts.get(n)] = changed(counts, n);
+                }
+            }
+            if (!closes.isEmpty()) {
+                int[] counts = close.executeBatch();
+                for (int n = 0; n < closes.size(); n++) {
+                    changed[closes.get(n)] = changed(counts, n);
+                }
+            }
+        }
+        return changed;
+    }
+
+    // 0 rows = event id already claimed (or trip no longer open); a driver without per-row
+    // counts reports SUCCESS_NO_INFO
+    private static boolean changed(int[] counts, int n) {
+        return n >= counts.length || counts[n] != 0;
+    }
+
+    private static void writeOne(Connection c, Op op) {
+        try {
+            boolean changed = true;
+            if (op instanceof Insert i) {
+                try (PreparedStatement ps = c.prepareStatement(TripRepository.INSERT_TRIP_SQL)) {
+                    bindInsert(ps, i);
+                    changed = ps.executeUpdate() > 0;
+                }
+            } else if (op instanceof Close cl) {
+                try (PreparedStatement ps = c.prepareStatement(TripRepository.CLOSE_TRIP_SQL)) {
+                    bindClose(ps, cl);
+                    changed = ps.executeUpdate() > 0;
+                }
+            }
+            op.done().complete(changed);
+        } catch (SQLException e) {
+            op.done().completeExceptionally(new IllegalStateException(op.name() + " failed", e));
+        }
+    }
+
+    private static void bindInsert(PreparedStatement ps, Insert i) throws SQLException {
+        TripRepository.bindInsertTrip(ps, i.entryTollboothId(), i.plate(), i.ticketId(), i.telepassId(), i.entryAt(), i.eventId());
+    }
+
+    private static void bindClose(PreparedStatement ps, Close cl) throws SQLException {
+        TripRepository.bindCloseTrip(ps, cl.tripId(), cl.entryAt(), cl.exitTollboothId(), cl.exitAt(), cl.amountCents(),
+                cl.avgSpeedKmh(), cl.speeding(), cl.paid(), cl.createDebt(), cl.eventId());
+    }
+}
@@ -3,14 +3,18 @@ package upo.pissir.repo;
 import upo.pissir.dto.TripResponse;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class TripRepository {
 
     private final DataSource ds;
+    private final TripBatchWriter batchWriter;
 
     public record ActiveTripRow(long id, String entryTollboothId, String plate, Instant entryAt) {}
     public record ActiveTripReportRow(
@@ -31,67 +35,93 @@ public class TripRepository {
             long avgAmountCents
     ) {}
 
+    // Opens a trip. With an event id the id is claimed in ingested_events by the same statement
+    // and the trip is inserted only if the claim succeeded, so a redelivered ENTRY_ACCEPTED
+    // (even after a restart or on another replica) inserts nothing; a null id skips the check.
+    static final String INSERT_TRIP_SQL = """
+            WITH ev AS (
+                INSERT INTO ingested_events(event_id)
+                SELECT ?::text WHERE ?::text IS NOT NULL
+                ON CONFLICT (event_id) DO NOTHING
+                RETURNING event_id
+            )
+            INSERT INTO trips(entry_tollbooth_id, ticket_id, telepass_id, plate, entry_at, currency, paid)
+            SELECT ?, ?, ?, ?, ?, 'EUR', false
+            WHERE ?::text IS NULL OR EXISTS (SELECT 1 FROM ev)
+            """;
+
+    // Closes the trip only while it is still open and adds it to the route stats rollups
+    // (entry_at is part of the key so only that trip's monthly partition is touched);
+    // when the last parameter is true the telepass debt is inserted from the updated row
+    // by the same statement, which also moves the payment totals. Like INSERT_TRIP_SQL, a
+    // non-null exit event id is claimed in ingested_events and the trip is closed only if the
+    // claim succeeded: of several replicas handling the same exit, exactly one applies it.
+    // An unpaid close adds 0 to the collected total, so the update count is > 0 exactly when
+    // the trip was closed.
+    static final String CLOSE_TRIP_SQL = """
+            WITH ev AS (
+                INSERT INTO ingested_events(event_id)
+                SELECT ?::text WHERE ?::text IS NOT NULL
+                ON CONFLICT (event_id) DO NOTHING
+                RETURNING event_id
+            ),
+            closed AS (
+                UPDATE trips
+                SET exit_tollbooth_id = ?,
+                    exit_at = ?,
+                    amount_cents = ?,
+                    currency = 'EUR',
+                    avg_speed_kmh = ?,
+                    speeding = ?,
+                    paid = ?
+                WHERE id = ? AND entry_at = ? AND exit_at IS NULL
+                  AND (?::text IS NULL OR EXISTS (SELECT 1 FROM ev))
+                RETURNING id, telepass_id, ticket_id, entry_tollbooth_id, exit_tollbooth_id, entry_at, amount_cents, paid, exit_at
+            ), %s,
+            debt AS (
+                INSERT INTO telepass_debts(telepass_id, trip_id, amount_cents, status, created_at)
+                SELECT telepass_id, id, amount_cents, 'OPEN', exit_at
+                FROM closed
+                WHERE ? AND telepass_id IS NOT NULL
+                RETURNING amount_cents
+            )
+            %s
+            """.formatted(
+            RouteStatsRollup.upsertCtes(RouteStatsRollup.closedDeltas("closed")),
+            PaymentTotalsRepository.addDeltas(
+                    PaymentTotalsRepository.delta(PaymentTotalsRepository.COLLECTED,
+                            "CASE WHEN paid THEN amount_cents ELSE 0 END", "closed", null)
+                            + " UNION ALL "
+                            + PaymentTotalsRepository.delta(PaymentTotalsRepository.OPEN_DEBT, "amount_cents", "debt", null)));
+
     public TripRepository(DataSource ds) {
-        this.ds = ds;
+        this(ds, null);
     }
 
-    public void createTripManual(String entryTollboothId, String plate, String ticketId, Instant entryAt) {
-        String sql = """
-            INSERT INTO trips(entry_tollbooth_id, ticket_id, plate, entry_at, currency, paid)
-            VALUES (?, ?, ?, ?, 'EUR', false)
-            """;
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, entryTollboothId);
-            ps.setString(2, ticketId);
-            ps.setString(3, plate);
-            ps.setTimestamp(4, Timestamp.from(entryAt));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            throw new IllegalStateException("createTripManual failed", e);
-        }
+    public TripRepository(DataSource ds, TripBatchWriter batchWriter) {
+        this.ds = ds;
+        this.batchWriter = batchWriter;
     }
 
-    public void createTripTelepass(String entryTollboothId, String plate, String telepassId, Instant entryAt) {
-        String sql = """
-            INSERT INTO trips(entry_tollbooth_id, telepass_id, plate, entry_at, currency, paid)
-            VALUES (?, ?, ?, ?, 'EUR', false)
-            """;
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, entryTollboothId);
-            ps.setString(2, telepassId);
-            ps.setString(3, plate);
-            ps.setTimestamp(4, Timestamp.from(entryAt));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            throw new IllegalStateException("createTripTelepass failed", e);
-        }
+    // false when eventId was already ingested: no trip was opened
+    public boolean createTripManual(String entryTollboothId, String plate, String ticketId, Instant entryAt, String eventId) {
+        return createTrip(entryTollboothId, plate, ticketId, null, entryAt, eventId);
     }
 
-    public Long findActiveTripIdByTicket(String ticketId) {
-        String sql = "SELECT id FROM trips WHERE ticket_id = ? AND exit_at IS NULL ORDER BY entry_at DESC LIMIT 1";
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, ticketId);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next() ? rs.getLong(1) : null;
-            }
-        } catch (SQLException e) {
-            throw new IllegalStateException("findActiveTripIdByTicket failed", e);
-        }
+    public boolean createTripTelepass(String entryTollboothId, String plate, String telepassId, Instant entryAt, String eventId) {
+        return createTrip(entryTollboothId, plate, null, telepassId, entryAt, eventId);
     }
 
-    public Long findActiveTripIdByTelepass(String telepassId) {
-        String sql = "SELECT id FROM trips WHERE telepass_id = ? AND exit_at IS NULL ORDER BY entry_at DESC LIMIT 1";
+    private boolean createTrip(String entryTollboothId, String plate, String ticketId, String telepassId, Instant entryAt, String eventId) {
+        if (batchWriter != null) {
+            return await(batchWriter.insert(entryTollboothId, plate, ticketId, telepassId, entryAt, eventId));
+        }
         try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, telepassId);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next() ? rs.getLong(1) : null;
-            }
+             PreparedStatement ps = c.prepareStatement(INSERT_TRIP_SQL)) {
+            bindInsertTrip(ps, entryTollboothId, plate, ticketId, telepassId, entryAt, eventId);
+            return ps.executeUpdate() > 0;
         } catch (SQLException e) {
-            throw new IllegalStateException("findActiveTripIdByTelepass failed", e);
+            throw new IllegalStateException(ticketId != null ? "createTripManual failed" : "createTripTelepass failed", e);
         }
     }
 
@@ -145,65 +175,95 @@ public class TripRepository {
         }
     }
 
-    public void closeTrip(
+    // false when nothing was closed: the trip was no longer open or eventId was already ingested
+    public boolean closeTrip(
             long tripId,
+            Instant entryAt,
             String exitTollboothId,
             Instant exitAt,
             int amountCents,
             Double avgSpeedKmh,
             boolean speeding,
-            boolean paid
+            boolean paid,
+            String eventId
     ) {
-        String sql = """
-            UPDATE trips
-            SET exit_tollbooth_id = ?,
-                exit_at = ?,
-                amount_cents = ?,
-                currency = 'EUR',
-                avg_speed_kmh = ?,
-                speeding = ?,
-                paid = ?
-            WHERE id = ?
-            """;
+        return closeTrip(tripId, entryAt, exitTollboothId, exitAt, amountCents, avgSpeedKmh, speeding, paid, false, eventId);
+    }
+
+    // Telepass exit: closes the trip and opens its debt in the same statement (atomic, one round trip)
+    public boolean closeTripWithDebt(
+            long tripId,
+            Instant entryAt,
+            String exitTollboothId,
+            Instant exitAt,
+            int amountCents,
+            Double avgSpeedKmh,
+            boolean speeding,
+            String eventId
+    ) {
+        return closeTrip(tripId, entryAt, exitTollboothId, exitAt, amountCents, avgSpeedKmh, speeding, false, true, eventId);
+    }
+
+    // Claims an event id on its own (an exit about to be parked); false = already ingested.
+    // A null id cannot be deduplicated and is always accepted.
+    public boolean claimEvent(String eventId) {
+        if (eventId == null) return true;
+        String sql = "INSERT INTO ingested_events(event_id) VALUES (?) ON CONFLICT (event_id) DO NOTHING";
         try (Connection c = ds.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, exitTollboothId);
-            ps.setTimestamp(2, Timestamp.from(exitAt));
-            ps.setInt(3, amountCents);
-            if (avgSpeedKmh == null) {
-                ps.setNull(4, Types.NUMERIC);
-            } else {
-                ps.setDouble(4, avgSpeedKmh);
-            }
-            ps.setBoolean(5, speeding);
-            ps.setBoolean(6, paid);
-            ps.setLong(7, tripId);
-            ps.executeUpdate();
+            ps.setString(1, eventId);
+            return ps.executeUpdate() > 0;
         } catch (SQLException e) {
-            throw new IllegalStateException("closeTrip failed", e);
+            throw new IllegalStateException("claimEvent failed", e);
         }
     }
 
-    public boolean markTripPaid(long tripId) {
-        String sql = "UPDATE trips SET paid = true WHERE id = ?";
+    private boolean closeTrip(
+            long tripId,
+            Instant entryAt,
+            String exitTollboothId,
+            Instant exitAt,
+            int amountCents,
+            Double avgSpeedKmh,
+            boolean speeding,
+            boolean paid,
+            boolean createDebt,
+            String eventId
+    ) {
+        if (batchWriter != null) {
+            return await(batchWriter.close(tripId, entryAt, exitTollboothId, exitAt, amountCents, avgSpeedKmh, speeding, paid,
+                    createDebt, eventId));
+        }
         try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setLong(1, tripId);
-            return ps.executeUpdate() == 1;
+             PreparedStatement ps = c.prepareStatement(CLOSE_TRIP_SQL)) {
+            bindCloseTrip(ps, tripId, entryAt, exitTollboothId, exitAt, amountCents, avgSpeedKmh, speeding, paid, createDebt, eventId);
+            return ps.executeUpdate() > 0;
         } catch (SQLException e) {
-            throw new IllegalStateException("markTripPaid failed", e);
+            throw new IllegalStateException("closeTrip failed", e);
         }
     }
 
-    public long sumCollectedCents() {
-        String sql = "SELECT COALESCE(SUM(amount_cents), 0) FROM trips WHERE paid = true AND amount_cents IS NOT NULL";
+    // Flips an unpaid trip to paid, moves it between the paid/unpaid rollup rows and adds
+    // its amount to the collected total. Returns false when the trip does not exist or was already paid.
+    public boolean markTripPaid(long tripId) {
+        String sql = """
+                WITH upd AS (
+                    UPDATE trips SET paid = true
+                    WHERE id = ? AND NOT paid
+                    RETURNING ticket_id, entry_tollbooth_id, exit_tollbooth_id, entry_at, amount_cents
+                ), %s,
+                totals AS (%s)
+                SELECT count(*) FROM upd
+                """.formatted(
+                RouteStatsRollup.upsertCtes(RouteStatsRollup.paidDeltas("upd")),
+                PaymentTotalsRepository.addDeltas(
+                        PaymentTotalsRepository.delta(PaymentTotalsRepository.COLLECTED, "amount_cents", "upd", null)));
         try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            if (!rs.next()) return 0L;
-            return rs.getLong(1);
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, tripId);
+            return CacheVersions.countOf(ps) == 1;
         } catch (SQLException e) {
-            throw new IllegalStateException("sumCollectedCents failed", e);
+            throw new IllegalStateException("markTripPaid failed", e);
         }
     }
 
@@ -214,6 +274,8 @@ public class TripRepository {
             String exitTollboothId,
             String channel,
             Boolean paid,
+            Instant afterEntryAt,
+            Long afterId,
             int limit
     ) {
         StringBuilder sql = new StringBuilder("""
@@ -224,7 +286,8 @@ public class TripRepository {
         List<Object> params = new ArrayList<>();
 
         appendReportFilters(sql, params, from, to, entryTollboothId, exitTollboothId, channel, paid);
-        sql.append(" ORDER BY entry_at DESC LIMIT ?");
+        appendSeek(sql, params, afterEntryAt, afterId);
+        sql.append(" ORDER BY entry_at DESC, id DESC LIMIT ?");
         params.add(limit);
 
         try (Connection c = ds.getConnection();
@@ -233,23 +296,7 @@ public class TripRepository {
             try (ResultSet rs = ps.executeQuery()) {
                 List<TripResponse> out = new ArrayList<>();
                 while (rs.next()) {
-                    Instant entryAt = toInstant(rs.getTimestamp("entry_at"));
-                    Instant exitAt = toInstant(rs.getTimestamp("exit_at"));
-                    out.add(new TripResponse(
-                            rs.getLong("id"),
-                            rs.getString("entry_tollbooth_id"),
-                            rs.getString("exit_tollbooth_id"),
-                            rs.getString("ticket_id"),
-                            rs.getString("telepass_id"),
-                            rs.getString("plate"),
-                            entryAt == null ? null : entryAt.toString(),
-                            exitAt == null ? null : exitAt.toString(),
-                            rs.getObject("amount_cents", Integer.class),
-                            rs.getString("currency"),
-                            rs.getObject("avg_speed_kmh", Double.class),
-                            rs.getBoolean("speeding"),
-                            rs.getBoolean("paid")
-                    ));
+                    out.add(mapTrip(rs));
                 }
                 return out;
             }
@@ -258,35 +305,118 @@ public class TripRepository {
         }
     }
 
-    public List<RouteStatsRow> findRouteStatsForReport(
+    // Streams every matching trip to the consumer through a server-side cursor: inside a
+    // transaction the PostgreSQL driver fetches fetchSize rows at a time instead of the whole
+    // result, so memory stays flat however large the export is. Returns the number of rows.
+    public long streamTripsForReport(
             Instant from,
             Instant to,
             String entryTollboothId,
             String exitTollboothId,
             String channel,
-            Boolean paid
+            Boolean paid,
+            int fetchSize,
+            TripConsumer consumer
     ) {
         StringBuilder sql = new StringBuilder("""
-                SELECT
-                    entry_tollbooth_id,
-                    exit_tollbooth_id,
-                    COUNT(*) AS trips_count,
-                    SUM(CASE WHEN paid THEN 1 ELSE 0 END) AS paid_trips_count,
-                    SUM(CASE WHEN NOT paid THEN 1 ELSE 0 END) AS unpaid_trips_count,
-                    COALESCE(SUM(amount_cents), 0) AS total_amount_cents,
-                    COALESCE(AVG(amount_cents)::bigint, 0) AS avg_amount_cents
+                SELECT id, entry_tollbooth_id, exit_tollbooth_id, ticket_id, telepass_id, plate, entry_at, exit_at, amount_cents, currency, avg_speed_kmh, speeding, paid
                 FROM trips
                 WHERE 1=1
                 """);
         List<Object> params = new ArrayList<>();
 
         appendReportFilters(sql, params, from, to, entryTollboothId, exitTollboothId, channel, paid);
-        sql.append(" AND exit_tollbooth_id IS NOT NULL");
-        sql.append(" GROUP BY entry_tollbooth_id, exit_tollbooth_id");
-        sql.append(" ORDER BY trips_count DESC, entry_tollbooth_id, exit_tollbooth_id");
+        sql.append(" ORDER BY entry_at, id");
+
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(fetchSize);
+                bindParams(ps, params);
+                long rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(mapTrip(rs));
+                        rows++;
+                    }
+                }
+                c.commit();
+                return rows;
+            } catch (SQLException | IOException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("streamTripsForReport failed", e);
+        }
+    }
+
+    public interface TripConsumer {
+        void accept(TripResponse trip) throws IOException;
+    }
+
+    // Served from the rollups: whole UTC days from route_stats_daily, whole hours at the edges
+    // from route_stats_hourly and only the sub-hour remainders of [from, to] from trips, so the
+    // cost depends on the number of routes and days, not on the number of trips.
+    public List<RouteStatsRow> findRouteStatsForReport(
+            Instant from,
+            Instant to,
+            String entryTollboothId,
+            String exitTollboothId,
+            String channel,
+            Boolean paid
+    ) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder union = new StringBuilder();
+        for (RouteStatsRollup.Segment segment : RouteStatsRollup.plan(from, to)) {
+            if (union.length() > 0) union.append(" UNION ALL ");
+            if (segment.source() == RouteStatsRollup.Source.RAW) {
+                union.append("""
+                        SELECT entry_tollbooth_id, exit_tollbooth_id, paid, 1 AS trips_count,
+                               COALESCE(amount_cents, 0) AS amount_sum_cents,
+                               CASE WHEN amount_cents IS NULL THEN 0 ELSE 1 END AS amount_count
+                        FROM trips
+                        WHERE exit_tollbooth_id IS NOT NULL AND entry_at >= ? AND entry_at < ?
+                        """);
+                params.add(Timestamp.from(segment.start()));
+                params.add(Timestamp.from(segment.end()));
+                appendReportFilters(union, params, null, null, entryTollboothId, exitTollboothId, channel, paid);
+            } else {
+                union.append("SELECT entry_tollbooth_id, exit_tollbooth_id, paid, trips_count, amount_sum_cents, amount_count FROM ")
+                        .append(RouteStatsRollup.table(segment.source()))
+                        .append(" WHERE 1=1");
+                if (segment.start() != null) {
+                    union.append(" AND bucket_start >= ?");
+                    params.add(Timestamp.from(segment.start()));
+                }
+                if (segment.end() != null) {
+                    union.append(" AND bucket_start < ?");
+                    params.add(Timestamp.from(segment.end()));
+                }
+                appendRollupFilters(union, params, entryTollboothId, exitTollboothId, channel, paid);
+            }
+        }
+
+        String sql = """
+                SELECT
+                    entry_tollbooth_id,
+                    exit_tollbooth_id,
+                    SUM(trips_count) AS trips_count,
+                    SUM(CASE WHEN paid THEN trips_count ELSE 0 END) AS paid_trips_count,
+                    SUM(CASE WHEN NOT paid THEN trips_count ELSE 0 END) AS unpaid_trips_count,
+                    COALESCE(SUM(amount_sum_cents), 0) AS total_amount_cents,
+                    COALESCE((SUM(amount_sum_cents)::numeric / NULLIF(SUM(amount_count), 0))::bigint, 0) AS avg_amount_cents
+                FROM (%s) s
+                GROUP BY entry_tollbooth_id, exit_tollbooth_id
+                HAVING SUM(trips_count) > 0
+                ORDER BY trips_count DESC, entry_tollbooth_id, exit_tollbooth_id
+                """.formatted(union);
 
         try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql.toString())) {
+             PreparedStatement ps = c.prepareStatement(sql)) {
             bindParams(ps, params);
             try (ResultSet rs = ps.executeQuery()) {
                 List<RouteStatsRow> out = new ArrayList<>();
@@ -312,6 +442,16 @@ public class TripRepository {
             String entryTollboothId,
             String channel,
             int limit
+    ) {
+        return findActiveTrips(entryTollboothId, channel, null, null, limit);
+    }
+
+    public List<ActiveTripReportRow> findActiveTrips(
+            String entryTollboothId,
+            String channel,
+            Instant afterEntryAt,
+            Long afterId,
+            int limit
     ) {
         StringBuilder sql = new StringBuilder("""
                 SELECT id, entry_tollbooth_id, ticket_id, telepass_id, plate, entry_at
@@ -329,8 +469,9 @@ public class TripRepository {
         } else if ("telepass".equals(channel)) {
             sql.append(" AND telepass_id IS NOT NULL");
         }
+        appendSeek(sql, params, afterEntryAt, afterId);
 
-        sql.append(" ORDER BY entry_at DESC LIMIT ?");
+        sql.append(" ORDER BY entry_at DESC, id DESC LIMIT ?");
         params.add(limit);
 
         try (Connection c = ds.getConnection();
@@ -355,6 +496,64 @@ public class TripRepository {
         }
     }
 
+    private static TripResponse mapTrip(ResultSet rs) throws SQLException {
+        Instant entryAt = toInstant(rs.getTimestamp("entry_at"));
+        Instant exitAt = toInstant(rs.getTimestamp("exit_at"));
+        return new TripResponse(
+                rs.getLong("id"),
+                rs.getString("entry_tollbooth_id"),
+                rs.getString("exit_tollbooth_id"),
+                rs.getString("ticket_id"),
+                rs.getString("telepass_id"),
+                rs.getString("plate"),
+                entryAt == null ? null : entryAt.toString(),
+                exitAt == null ? null : exitAt.toString(),
+                rs.getObject("amount_cents", Integer.class),
+                rs.getString("currency"),
+                rs.getObject("avg_speed_kmh", Double.class),
+                rs.getBoolean("speeding"),
+                rs.getBoolean("paid")
+        );
+    }
+
+    private static void appendRollupFilters(
+            StringBuilder sql,
+            List<Object> params,
+            String entryTollboothId,
+            String exitTollboothId,
+            String channel,
+            Boolean paid
+    ) {
+        if (entryTollboothId != null && !entryTollboothId.isBlank()) {
+            sql.append(" AND entry_tollbooth_id = ?");
+            params.add(entryTollboothId);
+        }
+        if (exitTollboothId != null && !exitTollboothId.isBlank()) {
+            sql.append(" AND exit_tollbooth_id = ?");
+            params.add(exitTollboothId);
+        }
+        if ("manual".equals(channel) || "telepass".equals(channel)) {
+            sql.append(" AND channel = ?");
+            params.add(channel);
+        }
+        if (paid != null) {
+            sql.append(" AND paid = ?");
+            params.add(paid);
+        }
+    }
+
+    // Keyset pagination: continue strictly after the last (entry_at, id) of the previous page.
+    // The row comparison matches ORDER BY entry_at DESC, id DESC and the (entry_at, id) indexes,
+    // so a deep page is an index seek instead of skipping OFFSET rows.
+    private static void appendSeek(StringBuilder sql, List<Object> params, Instant afterEntryAt, Long afterId) {
+        if (afterEntryAt == null || afterId == null) return;
+        // the redundant entry_at bound lets the planner prune later monthly partitions
+        sql.append(" AND entry_at <= ? AND (entry_at, id) < (?, ?)");
+        params.add(Timestamp.from(afterEntryAt));
+        params.add(Timestamp.from(afterEntryAt));
+        params.add(afterId);
+    }
+
     private static void appendReportFilters(
             StringBuilder sql,
             List<Object> params,
@@ -392,6 +591,66 @@ public class TripRepository {
         }
     }
 
+    static void bindInsertTrip(
+            PreparedStatement ps,
+            String entryTollboothId,
+            String plate,
+            String ticketId,
+            String telepassId,
+            Instant entryAt,
+            String eventId
+    ) throws SQLException {
+        ps.setString(1, eventId);
+        ps.setString(2, eventId);
+        ps.setString(3, entryTollboothId);
+        ps.setString(4, ticketId);
+        ps.setString(5, telepassId);
+        ps.setString(6, plate);
+        ps.setTimestamp(7, Timestamp.from(entryAt));
+        ps.setString(8, eventId);
+    }
+
+    static void bindCloseTrip(
+            PreparedStatement ps,
+            long tripId,
+            Instant entryAt,
+            String exitTollboothId,
+            Instant exitAt,
+            int amountCents,
+            Double avgSpeedKmh,
+            boolean speeding,
+            boolean paid,
+            boolean createDebt,
+            String eventId
+    ) throws SQLException {
+        ps.setString(1, eventId);
+        ps.setString(2, eventId);
+        ps.setString(3, exitTollboothId);
+        ps.setTimestamp(4, Timestamp.from(exitAt));
+        ps.setInt(5, amountCents);
+        if (avgSpeedKmh == null) {
+            ps.setNull(6, Types.NUMERIC);
+        } else {
+            ps.setDouble(6, avgSpeedKmh);
+        }
+        ps.setBoolean(7, speeding);
+        ps.setBoolean(8, paid);
+        ps.setLong(9, tripId);
+        ps.setTimestamp(10, Timestamp.from(entryAt));
+        ps.setString(11, eventId);
+        ps.setBoolean(12, createDebt);
+    }
+
+    // Blocks the caller until its batch has committed, so callers keep the synchronous contract
+    private static <T> T await(CompletableFuture<T> write) {
+        try {
+            return write.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("trip write failed", e.getCause());
+        }
+    }
+
     private static void bindParams(PreparedStatement ps, List<Object> params) throws SQLException {
         for (int i = 0; i < params.size(); i++) {
             ps.setObject(i + 1, params.get(i));
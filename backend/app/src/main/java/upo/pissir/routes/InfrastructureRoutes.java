@@ -1,6 +1,7 @@
 package upo.pissir.routes;
 
 import io.javalin.Javalin;
+import io.javalin.http.Context;
 import upo.pissir.auth.Auth;
 import upo.pissir.auth.AuthMiddleware;
 import upo.pissir.auth.Role;
@@ -11,14 +12,17 @@ import upo.pissir.dto.UpdateDeviceEnabledRequest;
 import upo.pissir.dto.UpdateFareRequest;
 import upo.pissir.dto.UpdateTollboothRequest;
 import upo.pissir.service.InfrastructureService;
+import upo.pissir.service.JsonSnapshot;
 
 public final class InfrastructureRoutes {
+    public static final String ETAG_HEADER = "ETag";
+
     private InfrastructureRoutes() {}
 
     public static void register(Javalin app, InfrastructureService service) {
         app.get("/api/infrastructure/tollbooths", ctx -> {
             Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
-            ctx.json(service.listTollbooths());
+            respondSnapshot(ctx, service.tollboothsSnapshot());
         });
 
         app.post("/api/infrastructure/tollbooths", ctx -> {
@@ -45,7 +49,7 @@ public final class InfrastructureRoutes {
 
         app.get("/api/infrastructure/fares", ctx -> {
             Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
-            ctx.json(service.listFares());
+            respondSnapshot(ctx, service.faresSnapshot());
         });
 
         app.post("/api/infrastructure/fares", ctx -> {
@@ -72,7 +76,7 @@ public final class InfrastructureRoutes {
 
         app.get("/api/infrastructure/devices", ctx -> {
             Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
-            ctx.json(service.listDevices(ctx.queryParam("tollboothId")));
+            respondSnapshot(ctx, service.devicesSnapshot(ctx.queryParam("tollboothId")));
         });
 
         app.post("/api/infrastructure/devices", ctx -> {
@@ -97,4 +101,17 @@ public final class InfrastructureRoutes {
             ctx.status(204);
         });
     }
+
+    // Pre-serialized body with a strong ETag; a matching If-None-Match gets 304 and no body.
+    // "no-cache" makes browsers revalidate every time instead of trusting a stale copy.
+    private static void respondSnapshot(Context ctx, JsonSnapshot snapshot) {
+        ctx.header(ETAG_HEADER, snapshot.etag());
+        ctx.header("Cache-Control", "private, no-cache");
+        if (snapshot.matches(ctx.header("If-None-Match"))) {
+            ctx.status(304);
+            return;
+        }
+        ctx.contentType("application/json");
+        ctx.result(snapshot.body());
+    }
 }
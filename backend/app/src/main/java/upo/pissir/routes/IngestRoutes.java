@@ -0,0 +1,19 @@
+package upo.pissir.routes;
+
+import io.javalin.Javalin;
+import upo.pissir.auth.Auth;
+import upo.pissir.auth.AuthMiddleware;
+import upo.pissir.auth.Role;
+import upo.pissir.service.BulkIngestService;
+
+public final class IngestRoutes {
+    private IngestRoutes() {}
+
+    public static void register(Javalin app, BulkIngestService bulkIngestService) {
+        // NDJSON body (one lane event per line), read as a stream: the batch is never held as a String
+        app.post("/api/ingest/events", ctx -> {
+            Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.ADMINISTRATOR);
+            ctx.json(bulkIngestService.ingest(ctx.bodyInputStream()));
+        });
+    }
+}
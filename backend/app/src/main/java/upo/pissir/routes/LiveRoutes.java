@@ -0,0 +1,56 @@
+package upo.pissir.routes;
+
+import io.javalin.Javalin;
+import io.javalin.http.sse.SseClient;
+import upo.pissir.auth.Auth;
+import upo.pissir.auth.AuthMiddleware;
+import upo.pissir.auth.Role;
+import upo.pissir.service.LiveFeed;
+
+import java.io.IOException;
+
+public final class LiveRoutes {
+    private LiveRoutes() {}
+
+    public static void register(Javalin app, LiveFeed liveFeed) {
+        // the SSE handler commits the response before running, so roles are checked up front
+        app.before("/api/live", ctx -> {
+            if ("OPTIONS".equals(ctx.method().name())) return;
+            Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
+        });
+
+        // text/event-stream: "snapshot" once, then "deltas" batches (see LiveFeed). Bearer header only,
+        // like the rest of /api: the web client reads it with fetch, not EventSource (docs/live-feed.md)
+        app.sse("/api/live", client -> {
+            client.keepAlive();
+            LiveFeed.Subscriber subscriber = new SseSubscriber(client);
+            client.onClose(() -> liveFeed.unsubscribe(subscriber));
+            liveFeed.subscribe(subscriber);
+        });
+    }
+
+    private record SseSubscriber(SseClient client) implements LiveFeed.Subscriber {
+        @Override
+        public void send(String event, String data) throws IOException {
+            client.sendEvent(event, data);
+            checkOpen();
+        }
+
+        @Override
+        public void keepAlive() throws IOException {
+            client.sendComment("keep-alive");
+            checkOpen();
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+
+        private void checkOpen() throws IOException {
+            if (client.terminated()) {
+                throw new IOException("client disconnected");
+            }
+        }
+    }
+}
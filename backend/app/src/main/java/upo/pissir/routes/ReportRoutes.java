@@ -1,28 +1,49 @@
 package upo.pissir.routes;
 
 import io.javalin.Javalin;
+import io.javalin.http.Context;
 import upo.pissir.auth.Auth;
 import upo.pissir.auth.AuthMiddleware;
 import upo.pissir.auth.Role;
+import upo.pissir.dto.PageResponse;
 import upo.pissir.service.ReportService;
 
 public final class ReportRoutes {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private ReportRoutes() {}
 
     public static void register(Javalin app, ReportService reportService) {
         app.get("/api/reports/trips", ctx -> {
             Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
-            ctx.json(reportService.listTrips(
+            respondPage(ctx, reportService.listTrips(
                     ctx.queryParam("from"),
                     ctx.queryParam("to"),
                     ctx.queryParam("entryTollboothId"),
                     ctx.queryParam("exitTollboothId"),
                     ctx.queryParam("channel"),
                     ctx.queryParam("paid"),
-                    ctx.queryParam("limit")
+                    ctx.queryParam("limit"),
+                    ctx.queryParam("cursor")
             ));
         });
 
+        app.get("/api/reports/trips/export", ctx -> {
+            Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
+            ReportService.TripExport export = reportService.prepareTripExport(
+                    ctx.queryParam("from"),
+                    ctx.queryParam("to"),
+                    ctx.queryParam("entryTollboothId"),
+                    ctx.queryParam("exitTollboothId"),
+                    ctx.queryParam("channel"),
+                    ctx.queryParam("paid"),
+                    ctx.queryParam("format")
+            );
+            ctx.contentType(export.format().contentType());
+            ctx.header("Content-Disposition", "attachment; filename=\"trips." + export.format().extension() + "\"");
+            reportService.exportTrips(export, ctx.outputStream());
+        });
+
         app.get("/api/reports/routes", ctx -> {
             Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
             ctx.json(reportService.listRouteStats(
@@ -37,11 +58,20 @@ public final class ReportRoutes {
 
         app.get("/api/reports/active-trips", ctx -> {
             Auth.requireAnyRole(ctx, AuthMiddleware.requireUser(ctx), Role.EMPLOYEE, Role.ADMINISTRATOR);
-            ctx.json(reportService.listActiveTrips(
+            respondPage(ctx, reportService.listActiveTrips(
                     ctx.queryParam("entryTollboothId"),
                     ctx.queryParam("channel"),
-                    ctx.queryParam("limit")
+                    ctx.queryParam("limit"),
+                    ctx.queryParam("cursor")
             ));
         });
     }
+
+    // Body stays a plain array (existing clients); the next page token travels in a header
+    private static void respondPage(Context ctx, PageResponse<?> page) {
+        if (page.nextCursor() != null) {
+            ctx.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        ctx.json(page.items());
+    }
 }
@@ -1,8 +1,10 @@
 package upo.pissir.routes;
 
 import io.javalin.Javalin;
+import upo.pissir.service.BulkIngestService;
 import upo.pissir.service.InfrastructureService;
 import upo.pissir.service.FaultService;
+import upo.pissir.service.LiveFeed;
 import upo.pissir.service.PaymentService;
 import upo.pissir.service.ReportService;
 import upo.pissir.service.TollQueryService;
@@ -16,12 +18,16 @@ public final class Routes {
             TollQueryService tollQueryService,
             PaymentService paymentService,
             ReportService reportService,
-            FaultService faultService
+            FaultService faultService,
+            LiveFeed liveFeed,
+            BulkIngestService bulkIngestService
     ) {
         InfrastructureRoutes.register(app, infrastructureService);
         TollRoutes.register(app, tollQueryService);
         PaymentRoutes.register(app, paymentService);
         ReportRoutes.register(app, reportService);
         FaultRoutes.register(app, faultService);
+        LiveRoutes.register(app, liveFeed);
+        IngestRoutes.register(app, bulkIngestService);
     }
 }
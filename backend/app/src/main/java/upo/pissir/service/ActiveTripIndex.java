@@ -0,0 +1,65 @@
+package upo.pissir.service;
+
+import upo.pissir.repo.TripRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory view of open trips keyed by ticketId / telepassId, used to answer
+// TOLLPRICE_REQUEST without SQL. Kept up to date by TollProcessingService from
+// ENTRY_ACCEPTED / EXIT_COMPLETED and warmed up from the DB at startup.
+// Complete only if this instance receives every entry/exit event (plain MQTT
+// subscriptions, as in MqttListenerService): a miss always falls back to SQL.
+public class ActiveTripIndex {
+
+    public record OpenTrip(String entryTollboothId, String plate, Instant entryAt) {}
+
+    private final Map<String, OpenTrip> byTicket = new ConcurrentHashMap<>();
+    private final Map<String, OpenTrip> byTelepass = new ConcurrentHashMap<>();
+
+    public void warmUp(List<TripRepository.ActiveTripReportRow> rows) {
+        for (TripRepository.ActiveTripReportRow row : rows) {
+            OpenTrip trip = new OpenTrip(row.entryTollboothId(), row.plate(), row.entryAt());
+            if (row.ticketId() != null) byTicket.merge(row.ticketId(), trip, ActiveTripIndex::latest);
+            if (row.telepassId() != null) byTelepass.merge(row.telepassId(), trip, ActiveTripIndex::latest);
+        }
+        System.out.println("Active trip index warmed up: tickets=" + byTicket.size() + " telepass=" + byTelepass.size());
+    }
+
+    public void putTicket(String ticketId, OpenTrip trip) {
+        byTicket.merge(ticketId, trip, ActiveTripIndex::latest);
+    }
+
+    public void putTelepass(String telepassId, OpenTrip trip) {
+        byTelepass.merge(telepassId, trip, ActiveTripIndex::latest);
+    }
+
+    public OpenTrip findByTicket(String ticketId) {
+        return byTicket.get(ticketId);
+    }
+
+    public OpenTrip findByTelepass(String telepassId) {
+        return byTelepass.get(telepassId);
+    }
+
+    public void removeTicket(String ticketId) {
+        byTicket.remove(ticketId);
+    }
+
+    public void removeTelepass(String telepassId) {
+        byTelepass.remove(telepassId);
+    }
+
+    public int size() {
+        return byTicket.size() + byTelepass.size();
+    }
+
+    // same rule as the SQL lookup (ORDER BY entry_at DESC): the most recent entry wins
+    private static OpenTrip latest(OpenTrip a, OpenTrip b) {
+        if (a.entryAt() == null) return b;
+        if (b.entryAt() == null) return a;
+        return b.entryAt().isBefore(a.entryAt()) ? a : b;
+    }
+}
@@ -0,0 +1,234 @@
+package upo.pissir.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import upo.pissir.dto.BulkEventLine;
+import upo.pissir.dto.BulkIngestResponse;
+import upo.pissir.dto.MqttEvent;
+import upo.pissir.json.Json;
+import upo.pissir.repo.BulkIngestRepository;
+import upo.pissir.repo.BulkIngestRepository.StagedEvent;
+import upo.pissir.repo.TollboothGeometry;
+import upo.pissir.repo.TollboothRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+// Backfill of lane events (POST /api/ingest/events): validates an NDJSON batch with the same
+// rules as the MQTT path, hands the valid events to BulkIngestRepository (one transaction) and
+// reports one outcome per line. Once committed, the trips still open / just closed are applied
+// to the in-memory views in event-time order. One batch runs at a time: a backfill holds a single
+// connection of the API pool instead of competing with itself for the rest.
+public class BulkIngestService {
+    public static final String INVALID = "invalid";
+
+    private static final ObjectReader LINE_READER = Json.MAPPER.readerFor(BulkEventLine.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    // Parse result: the events to load and the lines rejected before the DB
+    record Batch(List<StagedEvent> staged, List<BulkIngestResponse.Result> invalid, Map<Integer, String> eventIds) {}
+
+    private final BulkIngestRepository repo;
+    private final TollboothRepository tollboothRepo;
+    private final ActiveTripIndex activeTrips;
+    private final LiveFeed liveFeed;
+    private final int maxEvents;
+    private final Semaphore running = new Semaphore(1);
+
+    public BulkIngestService(
+            BulkIngestRepository repo,
+            TollboothRepository tollboothRepo,
+            ActiveTripIndex activeTrips,
+            LiveFeed liveFeed,
+            int maxEvents
+    ) {
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("maxEvents must be >= 1");
+        }
+        this.repo = repo;
+        this.tollboothRepo = tollboothRepo;
+        this.activeTrips = activeTrips;
+        this.liveFeed = liveFeed;
+        this.maxEvents = maxEvents;
+    }
+
+    public BulkIngestResponse ingest(InputStream body) {
+        if (!running.tryAcquire()) {
+            throw new IllegalStateException("bulk ingest already running");
+        }
+        try {
+            long start = System.nanoTime();
+            Batch batch = parse(new InputStreamReader(body, StandardCharsets.UTF_8));
+            List<BulkIngestRepository.Outcome> outcomes = repo.ingest(batch.staged());
+            applyToViews(batch.staged(), outcomes);
+            BulkIngestResponse response = respond(batch, outcomes, (System.nanoTime() - start) / 1_000_000L);
+            System.out.println("Bulk ingest: events=" + response.events() + " opened=" + response.opened()
+                    + " closed=" + response.closed() + " duplicates=" + response.duplicates()
+                    + " unmatched=" + response.unmatched() + " invalid=" + response.invalid()
+                    + " elapsedMs=" + response.elapsedMs());
+            return response;
+        } finally {
+            running.release();
+        }
+    }
+
+    // package-private for tests; line numbers are 1-based and count blank lines
+    Batch parse(Reader body) {
+        TollboothGeometry geometry = tollboothRepo == null ? TollboothGeometry.EMPTY : tollboothRepo.geometry();
+        List<StagedEvent> staged = new ArrayList<>();
+        List<BulkIngestResponse.Result> invalid = new ArrayList<>();
+        Map<Integer, String> eventIds = new HashMap<>();
+        int lineNo = 0;
+        int events = 0;
+        try (BufferedReader reader = new BufferedReader(body, 64 * 1024)) {
+            String raw;
+            while ((raw = reader.readLine()) != null) {
+                lineNo++;
+                if (raw.isBlank()) continue;
+                if (++events > maxEvents) {
+                    throw new IllegalArgumentException("too many events (max " + maxEvents + " per request)");
+                }
+                BulkEventLine line;
+                try {
+                    line = LINE_READER.readValue(raw);
+                } catch (IOException e) {
+                    invalid.add(new BulkIngestResponse.Result(lineNo, null, INVALID, null, "invalid JSON"));
+                    continue;
+                }
+                if (line.eventId() != null) eventIds.put(lineNo, line.eventId());
+                String error = validate(line);
+                if (error != null) {
+                    invalid.add(new BulkIngestResponse.Result(lineNo, line.eventId(), INVALID, null, error));
+                    continue;
+                }
+                staged.add(stage(lineNo, line, raw, geometry));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot read request body", e);
+        }
+        return new Batch(staged, invalid, eventIds);
+    }
+
+    // The checks TollProcessingService applies to the MQTT events, plus a mandatory timestamp:
+    // a backfilled event cannot default to "now"
+    static String validate(BulkEventLine line) {
+        boolean entry = "ENTRY_ACCEPTED".equals(line.type());
+        if (!entry && !"EXIT_COMPLETED".equals(line.type())) return "type must be ENTRY_ACCEPTED or EXIT_COMPLETED";
+        if (isBlank(line.tollboothId())) return "missing tollboothId";
+        if (!"manual".equals(line.channel()) && !"telepass".equals(line.channel())) return "channel must be manual or telepass";
+        if (isBlank(line.timestamp())) return "missing timestamp";
+        try {
+            Instant.parse(line.timestamp());
+        } catch (Exception e) {
+            return "invalid timestamp (ISO-8601 expected)";
+        }
+        boolean manual = "manual".equals(line.channel());
+        if (isBlank(manual ? line.ticketId() : line.telepassId())) {
+            return manual ? "missing ticketId" : "missing telepassId";
+        }
+        if (entry) {
+            return isBlank(line.plate()) ? "missing plate" : null;
+        }
+        if (isBlank(line.entryTollboothId()) || line.amountCents() == null) return "missing entryTollboothId/amountCents";
+        if (line.amountCents() < 0) return "amountCents must be >= 0";
+        return null;
+    }
+
+    private static StagedEvent stage(int lineNo, BulkEventLine line, String raw, TollboothGeometry geometry) {
+        boolean entry = "ENTRY_ACCEPTED".equals(line.type());
+        String kind = entry ? BulkIngestRepository.ENTRY : BulkIngestRepository.EXIT;
+        String passId = "manual".equals(line.channel()) ? line.ticketId() : line.telepassId();
+        // the topic the lane would have published on: a batch replaying MQTT traffic dedups against it
+        String topic = "highway/" + line.tollboothId() + "/" + kind + "/" + line.channel() + "/events";
+        return new StagedEvent(
+                lineNo,
+                kind,
+                line.tollboothId(),
+                line.channel(),
+                passId,
+                line.plate(),
+                Instant.parse(line.timestamp()),
+                entry ? null : line.entryTollboothId(),
+                entry ? null : line.amountCents(),
+                entry ? null : geometry.distanceKm(line.entryTollboothId(), line.tollboothId()),
+                MqttEvent.dedupKey(line.eventId(), topic, line.timestamp(), passId),
+                raw
+        );
+    }
+
+    // Trips opened and closed inside the batch never show up as active
+    private void applyToViews(List<StagedEvent> staged, List<BulkIngestRepository.Outcome> outcomes) {
+        if (activeTrips == null && liveFeed == null) return;
+        Map<Integer, BulkIngestRepository.Outcome> byLine = new HashMap<>(outcomes.size() * 2);
+        for (BulkIngestRepository.Outcome o : outcomes) byLine.put(o.line(), o);
+        Set<Long> openedHere = new HashSet<>();
+        Set<Long> closedHere = new HashSet<>();
+        for (StagedEvent e : staged) {
+            BulkIngestRepository.Outcome o = byLine.get(e.line());
+            if (o == null || o.tripId() == null) continue;
+            if (BulkIngestRepository.OPENED.equals(o.outcome())) openedHere.add(o.tripId());
+            if (BulkIngestRepository.CLOSED.equals(o.outcome())) closedHere.add(o.tripId());
+        }
+
+        List<StagedEvent> ordered = new ArrayList<>(staged);
+        ordered.sort(Comparator.comparing(StagedEvent::timestamp).thenComparingInt(StagedEvent::line));
+        for (StagedEvent e : ordered) {
+            BulkIngestRepository.Outcome o = byLine.get(e.line());
+            if (o == null || o.tripId() == null) continue;
+            boolean manual = "manual".equals(e.channel());
+            if (BulkIngestRepository.OPENED.equals(o.outcome()) && !closedHere.contains(o.tripId())) {
+                if (activeTrips != null) {
+                    ActiveTripIndex.OpenTrip trip = new ActiveTripIndex.OpenTrip(e.tollboothId(), e.plate(), e.timestamp());
+                    if (manual) activeTrips.putTicket(e.passId(), trip);
+                    else activeTrips.putTelepass(e.passId(), trip);
+                }
+                if (liveFeed != null) liveFeed.tripOpened(e.channel(), e.passId(), e.tollboothId(), e.plate(), e.timestamp());
+            } else if (BulkIngestRepository.CLOSED.equals(o.outcome()) && !openedHere.contains(o.tripId())) {
+                if (activeTrips != null) {
+                    if (manual) activeTrips.removeTicket(e.passId());
+                    else activeTrips.removeTelepass(e.passId());
+                }
+                if (liveFeed != null) liveFeed.tripClosed(e.channel(), e.passId(), e.tollboothId(), e.timestamp(), e.amountCents());
+            }
+        }
+    }
+
+    private static BulkIngestResponse respond(Batch batch, List<BulkIngestRepository.Outcome> outcomes, long elapsedMs) {
+        List<BulkIngestResponse.Result> results = new ArrayList<>(outcomes.size() + batch.invalid().size());
+        int opened = 0;
+        int closed = 0;
+        int duplicates = 0;
+        int unmatched = 0;
+        for (BulkIngestRepository.Outcome o : outcomes) {
+            switch (o.outcome()) {
+                case BulkIngestRepository.OPENED -> opened++;
+                case BulkIngestRepository.CLOSED -> closed++;
+                case BulkIngestRepository.DUPLICATE -> duplicates++;
+                case BulkIngestRepository.UNMATCHED -> unmatched++;
+                default -> { }
+            }
+            results.add(new BulkIngestResponse.Result(o.line(), batch.eventIds().get(o.line()), o.outcome(), o.tripId(), null));
+        }
+        results.addAll(batch.invalid());
+        results.sort(Comparator.comparingInt(BulkIngestResponse.Result::line));
+        return new BulkIngestResponse(results.size(), opened, closed, duplicates, unmatched, batch.invalid().size(),
+                elapsedMs, results);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+}
@@ -0,0 +1,211 @@
+package upo.pissir.service;
+
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.json.Json;
+import upo.pissir.repo.DeadLetterRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Short reorder window for EXIT_COMPLETED events that overtake their ENTRY_ACCEPTED (the two
+// travel on different topics). An unmatched exit is parked by channel + pass id and replayed by
+// TollProcessingService when the entry lands; one still parked after windowMs gets a last lookup
+// through the ExpiryHandler, then goes to the dead-letter table instead of being lost. Expiry is a timing wheel: one slot per tickMs, a
+// parked exit sits in the slot windowMs ahead, so each tick only touches the exits expiring then.
+// With a RetryExecutor the last lookup runs on the ingest worker that owns the pass, not on the wheel.
+public class ExitReorderBuffer {
+
+    public record Stats(long parked, long replayed, long deadLettered, int size) {}
+
+    public record Parked(String exitTollboothId, String channel, String passId, ExitCompletedEvent event, Instant receivedAt) {}
+
+    // Last attempt for an expiring exit; true = applied after all, nothing to dead-letter
+    public interface ExpiryHandler {
+        boolean retry(Parked parked);
+    }
+
+    // Runs work in order with the other events of partitionKey (the pass id); false = not accepted
+    public interface RetryExecutor {
+        boolean submit(String partitionKey, Runnable work);
+    }
+
+    private final DeadLetterRepository deadLetters;
+    private final long tickMs;
+    private final int ticksPerWindow;
+    private final int capacity;
+    private final Map<String, Parked> parked = new ConcurrentHashMap<>();
+
+    // wheel, guarded by itself
+    private final List<List<Parked>> slots;
+    private int cursor;
+
+    private final AtomicLong parkedCount = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private volatile ExpiryHandler expiryHandler;
+    private volatile RetryExecutor retryExecutor;
+    private ScheduledExecutorService ticker;
+
+    public ExitReorderBuffer(DeadLetterRepository deadLetters, long windowMs, long tickMs, int capacity) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("windowMs must be >= 0");
+        }
+        if (tickMs < 1) {
+            throw new IllegalArgumentException("tickMs must be >= 1");
+        }
+        this.deadLetters = deadLetters;
+        this.tickMs = tickMs;
+        this.ticksPerWindow = (int) Math.max(1L, (windowMs + tickMs - 1) / tickMs);
+        // windowMs 0 disables parking: unmatched exits are dead-lettered right away
+        this.capacity = windowMs == 0 ? 0 : Math.max(0, capacity);
+        this.slots = new ArrayList<>(ticksPerWindow + 1);
+        for (int i = 0; i <= ticksPerWindow; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    public void onExpiry(ExpiryHandler handler) {
+        this.expiryHandler = handler;
+    }
+
+    public void retryOn(RetryExecutor executor) {
+        this.retryExecutor = executor;
+    }
+
+    public void start() {
+        if (capacity == 0) return;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "exit-reorder-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tickSafely, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Exits still waiting are dead-lettered: after a restart nothing would replay them
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        for (Parked p : List.copyOf(parked.values())) {
+            if (parked.remove(key(p.channel(), p.passId()), p)) {
+                deadLetter(p, "shutdown");
+            }
+        }
+    }
+
+    // Called for an exit without an open trip
+    public void park(String exitTollboothId, String channel, String passId, ExitCompletedEvent event) {
+        Parked p = new Parked(exitTollboothId, channel, passId, event, Instant.now());
+        if (capacity == 0) {
+            deadLetter(p, "no_entry");
+            return;
+        }
+        if (parked.size() >= capacity) {
+            deadLetter(p, "reorder_buffer_full");
+            return;
+        }
+        Parked previous = parked.put(key(channel, passId), p);
+        synchronized (slots) {
+            slots.get((cursor + ticksPerWindow) % slots.size()).add(p);
+        }
+        parkedCount.incrementAndGet();
+        if (previous != null) {
+            // a second unmatched exit for the same pass: the older one can no longer be matched
+            deadLetter(previous, "superseded");
+        }
+    }
+
+    // The parked exit for this pass (removed), or null; called once its entry has been written
+    public Parked take(String channel, String passId) {
+        if (parked.isEmpty()) return null;
+        Parked p = parked.remove(key(channel, passId));
+        if (p != null) replayed.incrementAndGet();
+        return p;
+    }
+
+    public Stats stats() {
+        return new Stats(parkedCount.get(), replayed.get(), deadLettered.get(), parked.size());
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (Exception e) {
+            System.out.println("Exit reorder tick failed: " + e.getMessage());
+        }
+    }
+
+    // package-private for tests: advances the wheel one slot and expires what was parked there
+    void tick() {
+        List<Parked> due;
+        synchronized (slots) {
+            cursor = (cursor + 1) % slots.size();
+            List<Parked> slot = slots.get(cursor);
+            if (slot.isEmpty()) return;
+            due = new ArrayList<>(slot);
+            slot.clear();
+        }
+        for (Parked p : due) {
+            // removal by identity: a replayed or superseded exit is no longer in the map
+            if (parked.remove(key(p.channel(), p.passId()), p)) {
+                expire(p);
+            }
+        }
+    }
+
+    // Off the wheel thread when possible: a lookup racing the pass's own worker could miss an
+    // entry still being written, and one slow query would hold up the expiry of every pass
+    private void expire(Parked p) {
+        RetryExecutor executor = retryExecutor;
+        if (executor == null) {
+            retryOrDeadLetter(p);
+            return;
+        }
+        if (!executor.submit(p.passId(), () -> retryOrDeadLetter(p))) {
+            deadLetter(p, "no_entry");
+        }
+    }
+
+    private void retryOrDeadLetter(Parked p) {
+        if (!retried(p)) {
+            deadLetter(p, "no_entry");
+        }
+    }
+
+    private boolean retried(Parked p) {
+        ExpiryHandler handler = expiryHandler;
+        if (handler == null) return false;
+        try {
+            if (!handler.retry(p)) return false;
+            replayed.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            System.out.println("Exit reorder retry failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void deadLetter(Parked p, String reason) {
+        deadLettered.incrementAndGet();
+        System.out.println("EXIT_COMPLETED dead-lettered: reason=" + reason + " channel=" + p.channel()
+                + " passId=" + p.passId() + " " + stats());
+        try {
+            deadLetters.insert("EXIT_COMPLETED", p.exitTollboothId(), p.channel(), p.passId(),
+                    Json.toJson(p.event()), reason, p.receivedAt());
+        } catch (Exception e) {
+            System.out.println("Dead letter write failed: " + e.getMessage() + " payload=" + Json.toJson(p.event()));
+        }
+    }
+
+    private static String key(String channel, String passId) {
+        return channel + ":" + passId;
+    }
+}
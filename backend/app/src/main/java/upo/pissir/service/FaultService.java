@@ -1,9 +1,10 @@
 package upo.pissir.service;
 
+import upo.pissir.dto.DeviceFaultEvent;
 import upo.pissir.dto.FaultReplyRequest;
 import upo.pissir.dto.FaultResponse;
 import upo.pissir.json.Json;
-import upo.pissir.mqtt.MqttPublisher;
+import upo.pissir.mqtt.OutboxRelay;
 import upo.pissir.repo.FaultRepository;
 
 import java.time.Instant;
@@ -17,11 +18,17 @@ public class FaultService {
     private static final Set<String> ALLOWED_ACTIONS = Set.of("ACK", "TECHNICIAN_DISPATCHED", "RESET_REQUESTED");
 
     private final FaultRepository faultRepo;
-    private final MqttPublisher mqttPublisher;
+    private final OutboxRelay outboxRelay;
+    private final LiveFeed liveFeed;
 
-    public FaultService(FaultRepository faultRepo, MqttPublisher mqttPublisher) {
+    public FaultService(FaultRepository faultRepo, OutboxRelay outboxRelay) {
+        this(faultRepo, outboxRelay, null);
+    }
+
+    public FaultService(FaultRepository faultRepo, OutboxRelay outboxRelay, LiveFeed liveFeed) {
         this.faultRepo = faultRepo;
-        this.mqttPublisher = mqttPublisher;
+        this.outboxRelay = outboxRelay;
+        this.liveFeed = liveFeed;
     }
 
     public List<FaultResponse> listFaults() {
@@ -30,11 +37,11 @@ public class FaultService {
                 .toList();
     }
 
-    public long recordFault(String tollboothId, String direction, String channel, Map<String, Object> body) {
-        String code = normalizeString(body.get("code"));
-        String message = normalizeString(body.get("message"));
-        String severity = normalizeUpper(body.get("severity"));
-        Instant createdAt = parseInstant(normalizeString(body.get("timestamp")));
+    public long recordFault(String tollboothId, String direction, String channel, DeviceFaultEvent fault) {
+        String code = normalizeString(fault.code());
+        String message = normalizeString(fault.message());
+        String severity = normalizeUpper(fault.severity());
+        Instant createdAt = parseInstant(normalizeString(fault.timestamp()));
 
         if (tollboothId == null || tollboothId.isBlank()) {
             throw new IllegalArgumentException("fault tollboothId is required");
@@ -51,7 +58,12 @@ public class FaultService {
         if (!ALLOWED_SEVERITIES.contains(severity)) {
             throw new IllegalArgumentException("fault severity must be WARN or ERROR");
         }
-        return faultRepo.createFault(tollboothId, direction, channel, code, message, severity, createdAt);
+        long id = faultRepo.createFault(tollboothId, direction, channel, code, message, severity, createdAt);
+        if (liveFeed != null) {
+            liveFeed.faultRecorded(new FaultResponse(id, tollboothId, direction, channel, code, message, severity,
+                    "OPEN", null, createdAt.toString(), null));
+        }
+        return id;
     }
 
     public FaultResponse respondToFault(long faultId, FaultReplyRequest req) {
@@ -85,13 +97,17 @@ public class FaultService {
         payload.put("action", action);
         payload.put("message", message);
 
-        mqttPublisher.publish(serviceTopic(fault), Json.toJson(payload), 1);
-
-        if (!faultRepo.markResponded(faultId, action, Instant.now())) {
+        // the SERVICE_RESPONSE is queued in the outbox with the status change; the broker is
+        // reached by the relay, so this request does not wait for (or fail with) MQTT
+        if (!faultRepo.markRespondedWithMessage(faultId, action, Instant.now(), serviceTopic(fault), Json.toJson(payload), 1)) {
             throw new IllegalStateException("fault already responded");
         }
-        FaultRepository.FaultRow updated = faultRepo.findById(faultId);
-        return toResponse(updated);
+        if (outboxRelay != null) {
+            outboxRelay.wakeUp();
+        }
+        FaultResponse updated = toResponse(faultRepo.findById(faultId));
+        if (liveFeed != null) liveFeed.faultResponded(updated);
+        return updated;
     }
 
     private static String serviceTopic(FaultRepository.FaultRow fault) {
@@ -16,15 +16,42 @@ public class InfrastructureService {
     private final TollboothRepository tollboothRepo;
     private final FareRepository fareRepo;
     private final DeviceRepository deviceRepo;
+    // GET bodies of the three collections; every write below invalidates them
+    private final JsonSnapshotCache snapshots;
 
     public InfrastructureService(TollboothRepository tollboothRepo, FareRepository fareRepo) {
         this(tollboothRepo, fareRepo, null);
     }
 
     public InfrastructureService(TollboothRepository tollboothRepo, FareRepository fareRepo, DeviceRepository deviceRepo) {
+        this(tollboothRepo, fareRepo, deviceRepo, new JsonSnapshotCache(0));
+    }
+
+    public InfrastructureService(
+            TollboothRepository tollboothRepo,
+            FareRepository fareRepo,
+            DeviceRepository deviceRepo,
+            JsonSnapshotCache snapshots
+    ) {
         this.tollboothRepo = tollboothRepo;
         this.fareRepo = fareRepo;
         this.deviceRepo = deviceRepo;
+        this.snapshots = snapshots;
+    }
+
+    public JsonSnapshot tollboothsSnapshot() {
+        return snapshots.get("tollbooths", this::listTollbooths);
+    }
+
+    public JsonSnapshot faresSnapshot() {
+        return snapshots.get("fares", this::listFares);
+    }
+
+    public JsonSnapshot devicesSnapshot(String tollboothId) {
+        ensureDeviceRepoConfigured();
+        String normalizedTollbooth = normalize(tollboothId);
+        return snapshots.get("devices:" + (normalizedTollbooth == null ? "" : normalizedTollbooth),
+                () -> listDevices(normalizedTollbooth));
     }
 
     public List<TollboothResponse> listTollbooths() {
@@ -52,9 +79,13 @@ public class InfrastructureService {
         if (tollboothRepo.exists(id)) {
             throw new IllegalStateException("tollbooth already exists");
         }
-        tollboothRepo.create(id, roadCode, kmMarker, region, description);
-        if (deviceRepo != null) {
-            deviceRepo.createMandatoryForTollbooth(id);
+        try {
+            tollboothRepo.create(id, roadCode, kmMarker, region, description);
+            if (deviceRepo != null) {
+                deviceRepo.createMandatoryForTollbooth(id);
+            }
+        } finally {
+            snapshots.invalidate();
         }
     }
 
@@ -79,6 +110,7 @@ public class InfrastructureService {
         if (!tollboothRepo.update(normalizedId, roadCode, kmMarker, region, description)) {
             throw new IllegalStateException("tollbooth not found");
         }
+        snapshots.invalidate();
     }
 
     public int deleteTollbooth(String id) {
@@ -88,11 +120,15 @@ public class InfrastructureService {
         if (!tollboothRepo.exists(id)) {
             throw new IllegalStateException("tollbooth not found");
         }
-        int removedFares = fareRepo.deleteByTollboothId(id);
-        if (!tollboothRepo.delete(id)) {
-            throw new IllegalStateException("tollbooth not found");
+        try {
+            int removedFares = fareRepo.deleteByTollboothId(id);
+            if (!tollboothRepo.delete(id)) {
+                throw new IllegalStateException("tollbooth not found");
+            }
+            return removedFares;
+        } finally {
+            snapshots.invalidate();
         }
-        return removedFares;
     }
 
     public List<FareRepository.FareRow> listFares() {
@@ -108,7 +144,9 @@ public class InfrastructureService {
         if (req.amountCents() < 0) {
             throw new IllegalArgumentException("amountCents must be >= 0");
         }
-        return fareRepo.createFare(req.entryTollboothId(), req.exitTollboothId(), req.amountCents());
+        long id = fareRepo.createFare(req.entryTollboothId(), req.exitTollboothId(), req.amountCents());
+        snapshots.invalidate();
+        return id;
     }
 
     public void updateFare(long fareId, Integer amountCents) {
@@ -121,6 +159,7 @@ public class InfrastructureService {
         if (!fareRepo.updateFare(fareId, amountCents)) {
             throw new IllegalStateException("fare not found");
         }
+        snapshots.invalidate();
     }
 
     public void deleteFare(long fareId) {
@@ -130,6 +169,7 @@ public class InfrastructureService {
         if (!fareRepo.deleteFare(fareId)) {
             throw new IllegalStateException("fare not found");
         }
+        snapshots.invalidate();
     }
 
     public List<DeviceResponse> listDevices(String tollboothId) {
@@ -162,7 +202,9 @@ public class InfrastructureService {
         if (!"manual".equals(channel) && !"telepass".equals(channel) && !"camera".equals(channel)) {
             throw new IllegalArgumentException("channel must be manual, telepass or camera");
         }
-        return deviceRepo.create(tollboothId, direction, channel, enabled);
+        long id = deviceRepo.create(tollboothId, direction, channel, enabled);
+        snapshots.invalidate();
+        return id;
     }
 
     public void setDeviceEnabled(long deviceId, Boolean enabled) {
@@ -176,6 +218,7 @@ public class InfrastructureService {
         if (!deviceRepo.updateEnabled(deviceId, enabled)) {
             throw new IllegalStateException("device not found");
         }
+        snapshots.invalidate();
     }
 
     public void deleteDevice(long deviceId) {
@@ -186,6 +229,7 @@ public class InfrastructureService {
         if (!deviceRepo.delete(deviceId)) {
             throw new IllegalStateException("device not found");
         }
+        snapshots.invalidate();
     }
 
     private void ensureDeviceRepoConfigured() {
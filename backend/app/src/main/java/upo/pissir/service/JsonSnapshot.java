@@ -0,0 +1,17 @@
+package upo.pissir.service;
+
+// A response body serialized once and served as-is; etag is a strong validator derived
+// from the bytes, so replicas holding the same data hand out the same tag.
+public record JsonSnapshot(byte[] body, String etag) {
+
+    // If-None-Match: "*" or a comma-separated list of (possibly weak) entity tags
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        for (String raw : ifNoneMatch.split(",")) {
+            String tag = raw.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if ("*".equals(tag) || etag.equals(tag)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+package upo.pissir.service;
+
+import upo.pissir.json.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Pre-serialized JSON bodies keyed by request (collection + filter). invalidate() after a local
+// write drops every snapshot at once; maxAgeMs bounds how long a change made through another
+// backend replica can stay invisible (0 = rebuild only on invalidate).
+public class JsonSnapshotCache {
+    // keys include client-supplied filters: past this many the cache starts over
+    private static final int MAX_ENTRIES = 1024;
+
+    private record Entry(JsonSnapshot snapshot, long generation, long builtAtMs) {}
+
+    private final long maxAgeMs;
+    private final LongSupplier clockMs;
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public JsonSnapshotCache(long maxAgeMs) {
+        this(maxAgeMs, System::currentTimeMillis);
+    }
+
+    JsonSnapshotCache(long maxAgeMs, LongSupplier clockMs) {
+        this.maxAgeMs = Math.max(0L, maxAgeMs);
+        this.clockMs = clockMs;
+    }
+
+    public JsonSnapshot get(String key, Supplier<?> loader) {
+        Entry e = entries.get(key);
+        if (fresh(e)) return e.snapshot();
+        // generation read before loading: a write landing during the load makes this entry
+        // stale immediately instead of hiding the change
+        long gen = generation.get();
+        byte[] body = Json.toJson(loader.get()).getBytes(StandardCharsets.UTF_8);
+        Entry built = new Entry(new JsonSnapshot(body, etagOf(body)), gen, clockMs.getAsLong());
+        if (entries.size() >= MAX_ENTRIES) entries.clear();
+        entries.put(key, built);
+        return built.snapshot();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    private boolean fresh(Entry e) {
+        if (e == null || e.generation() != generation.get()) return false;
+        return maxAgeMs == 0 || clockMs.getAsLong() - e.builtAtMs() < maxAgeMs;
+    }
+
+    private static String etagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
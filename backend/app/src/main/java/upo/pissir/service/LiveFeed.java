@@ -0,0 +1,297 @@
+package upo.pissir.service;
+
+import upo.pissir.dto.FaultResponse;
+import upo.pissir.dto.LiveTripResponse;
+import upo.pissir.json.Json;
+import upo.pissir.repo.TripRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-process fan-out of trip and fault changes to the dashboards connected to GET /api/live.
+// Changes update an in-memory view (open trips, open faults) and are coalesced per key; every
+// flushMs the pending deltas are serialized once and queued to each subscriber, so N dashboards
+// cost one encoding and N writes instead of N polling queries. A new subscriber first receives
+// a snapshot of the view. Like ActiveTripIndex, it only sees changes handled by this instance.
+public class LiveFeed {
+    public static final String SNAPSHOT_EVENT = "snapshot";
+    public static final String DELTAS_EVENT = "deltas";
+
+    // One connected dashboard (an SSE client in production)
+    public interface Subscriber {
+        void send(String event, String data) throws Exception;
+
+        void keepAlive() throws Exception;
+
+        void close();
+    }
+
+    // type: trip.opened | trip.closed | fault.recorded | fault.responded
+    public record Delta(String type, String key, Object data) {}
+
+    public record Snapshot(List<LiveTripResponse> activeTrips, List<FaultResponse> openFaults) {}
+
+    private record Message(String event, String data) {}
+
+    private static final Message KEEP_ALIVE = new Message(null, null);
+
+    private final long flushMs;
+    private final int maxPendingPerSubscriber;
+    private final long keepAliveMs;
+    private final Executor senders;
+
+    // view + pending deltas, guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, LiveTripResponse> activeTrips = new LinkedHashMap<>();
+    private final Map<String, FaultResponse> openFaults = new LinkedHashMap<>();
+    private Map<String, Delta> pending = new LinkedHashMap<>();
+
+    private final Map<Subscriber, Outbox> subscribers = new ConcurrentHashMap<>();
+    private long lastBroadcastMs = System.currentTimeMillis();
+    private ScheduledExecutorService flusher;
+
+    public LiveFeed(long flushMs, int maxPendingPerSubscriber, long keepAliveSeconds) {
+        this(flushMs, maxPendingPerSubscriber, keepAliveSeconds, Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "live-feed-send");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    // package-private: tests deliver on the calling thread
+    LiveFeed(long flushMs, int maxPendingPerSubscriber, long keepAliveSeconds, Executor senders) {
+        if (flushMs < 1) {
+            throw new IllegalArgumentException("flushMs must be >= 1");
+        }
+        if (maxPendingPerSubscriber < 1) {
+            throw new IllegalArgumentException("maxPendingPerSubscriber must be >= 1");
+        }
+        this.flushMs = flushMs;
+        this.maxPendingPerSubscriber = maxPendingPerSubscriber;
+        this.keepAliveMs = Math.max(1L, keepAliveSeconds) * 1000L;
+        this.senders = senders;
+    }
+
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "live-feed-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        for (Subscriber s : List.copyOf(subscribers.keySet())) {
+            unsubscribe(s);
+            s.close();
+        }
+        if (senders instanceof ExecutorService es) {
+            es.shutdownNow();
+        }
+    }
+
+    public void warmUp(List<TripRepository.ActiveTripReportRow> trips, List<FaultResponse> faults) {
+        synchronized (lock) {
+            for (TripRepository.ActiveTripReportRow row : trips) {
+                String channel = row.ticketId() != null ? "manual" : "telepass";
+                String passId = row.ticketId() != null ? row.ticketId() : row.telepassId();
+                activeTrips.put(tripKey(channel, passId), new LiveTripResponse(passId, channel, row.entryTollboothId(),
+                        row.plate(), toString(row.entryAt()), null, null, null));
+            }
+            for (FaultResponse fault : faults) {
+                if ("OPEN".equals(fault.status())) {
+                    openFaults.put(faultKey(fault.id()), fault);
+                }
+            }
+            System.out.println("Live feed warmed up: activeTrips=" + activeTrips.size() + " openFaults=" + openFaults.size());
+        }
+    }
+
+    public void tripOpened(String channel, String passId, String entryTollboothId, String plate, Instant entryAt) {
+        LiveTripResponse trip = new LiveTripResponse(passId, channel, entryTollboothId, plate, toString(entryAt), null, null, null);
+        String key = tripKey(channel, passId);
+        synchronized (lock) {
+            activeTrips.put(key, trip);
+            queue(new Delta("trip.opened", key, trip));
+        }
+    }
+
+    public void tripClosed(String channel, String passId, String exitTollboothId, Instant exitAt, int amountCents) {
+        String key = tripKey(channel, passId);
+        synchronized (lock) {
+            LiveTripResponse open = activeTrips.remove(key);
+            LiveTripResponse trip = new LiveTripResponse(passId, channel,
+                    open == null ? null : open.entryTollboothId(),
+                    open == null ? null : open.plate(),
+                    open == null ? null : open.entryAt(),
+                    exitTollboothId, toString(exitAt), amountCents);
+            queue(new Delta("trip.closed", key, trip));
+        }
+    }
+
+    public void faultRecorded(FaultResponse fault) {
+        String key = faultKey(fault.id());
+        synchronized (lock) {
+            openFaults.put(key, fault);
+            queue(new Delta("fault.recorded", key, fault));
+        }
+    }
+
+    public void faultResponded(FaultResponse fault) {
+        String key = faultKey(fault.id());
+        synchronized (lock) {
+            openFaults.remove(key);
+            queue(new Delta("fault.responded", key, fault));
+        }
+    }
+
+    // The snapshot is queued before the subscriber becomes visible to flush(), so it always
+    // arrives first; deltas already contained in it may be repeated afterwards (they are idempotent).
+    public void subscribe(Subscriber subscriber) {
+        synchronized (lock) {
+            Outbox outbox = new Outbox(subscriber);
+            Snapshot snapshot = new Snapshot(new ArrayList<>(activeTrips.values()), new ArrayList<>(openFaults.values()));
+            outbox.offer(new Message(SNAPSHOT_EVENT, Json.toJson(snapshot)));
+            subscribers.put(subscriber, outbox);
+            // the snapshot may already have failed on an inline sender
+            if (outbox.dropped) subscribers.remove(subscriber);
+        }
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.out.println("Live feed flush failed: " + e.getMessage());
+        }
+    }
+
+    // package-private for tests
+    void flush() {
+        Map<String, Delta> batch = null;
+        synchronized (lock) {
+            if (!pending.isEmpty()) {
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (batch != null) {
+            lastBroadcastMs = now;
+            if (!subscribers.isEmpty()) {
+                broadcast(new Message(DELTAS_EVENT, Json.toJson(new ArrayList<>(batch.values()))));
+            }
+        } else if (now - lastBroadcastMs >= keepAliveMs) {
+            lastBroadcastMs = now;
+            broadcast(KEEP_ALIVE);
+        }
+    }
+
+    private void broadcast(Message message) {
+        for (Outbox outbox : subscribers.values()) {
+            outbox.offer(message);
+        }
+    }
+
+    // latest change per key wins, moved to the end of the batch
+    private void queue(Delta delta) {
+        pending.remove(delta.key());
+        pending.put(delta.key(), delta);
+    }
+
+    private void drop(Outbox outbox, String reason) {
+        outbox.dropped = true;
+        if (subscribers.remove(outbox.subscriber) != null) {
+            System.out.println("Live feed subscriber dropped: " + reason);
+        }
+        outbox.subscriber.close();
+    }
+
+    private static String tripKey(String channel, String passId) {
+        return "trip:" + channel + ":" + passId;
+    }
+
+    private static String faultKey(long id) {
+        return "fault:" + id;
+    }
+
+    private static String toString(Instant instant) {
+        return instant == null ? null : instant.toString();
+    }
+
+    // Per-subscriber queue drained by one sender task at a time: a slow dashboard only delays
+    // itself, and is disconnected (it reconnects and gets a fresh snapshot) once it falls
+    // maxPendingPerSubscriber messages behind.
+    private final class Outbox {
+        private final Subscriber subscriber;
+        private final ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean dropped;
+
+        private Outbox(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(Message message) {
+            if (dropped) return;
+            if (size.incrementAndGet() > maxPendingPerSubscriber) {
+                drop(this, "too slow");
+                return;
+            }
+            queue.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Message m;
+                while ((m = queue.poll()) != null) {
+                    size.decrementAndGet();
+                    if (m.event() == null) {
+                        subscriber.keepAlive();
+                    } else {
+                        subscriber.send(m.event(), m.data());
+                    }
+                }
+            } catch (Exception e) {
+                drop(this, String.valueOf(e.getMessage()));
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // a message offered after the last poll but before draining was reset
+            if (!queue.isEmpty()) schedule();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package upo.pissir.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+// Position after the last row of a page, for lists ordered by (entry_at DESC, id DESC).
+// Clients get it as an opaque token and send it back as ?cursor= to read the next page.
+record PageCursor(Instant entryAt, long id) {
+
+    String encode() {
+        String raw = entryAt.getEpochSecond() + "." + entryAt.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.US_ASCII);
+            int colon = raw.indexOf(':');
+            int dot = raw.indexOf('.');
+            if (dot < 0 || colon < dot) {
+                throw new IllegalArgumentException("cursor is invalid");
+            }
+            Instant entryAt = Instant.ofEpochSecond(
+                    Long.parseLong(raw.substring(0, dot)),
+                    Long.parseLong(raw.substring(dot + 1, colon))
+            );
+            return new PageCursor(entryAt, Long.parseLong(raw.substring(colon + 1)));
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            throw new IllegalArgumentException("cursor is invalid");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package upo.pissir.service;
 
 import upo.pissir.dto.PaymentResponse;
+import upo.pissir.repo.PaymentTotalsRepository;
 import upo.pissir.repo.TelepassDebtRepository;
 import upo.pissir.repo.TripRepository;
 
@@ -10,10 +11,12 @@ import java.util.Map;
 public class PaymentService {
     private final TelepassDebtRepository debtRepo;
     private final TripRepository tripRepo;
+    private final PaymentTotalsRepository totalsRepo;
 
-    public PaymentService(TelepassDebtRepository debtRepo, TripRepository tripRepo) {
+    public PaymentService(TelepassDebtRepository debtRepo, TripRepository tripRepo, PaymentTotalsRepository totalsRepo) {
         this.debtRepo = debtRepo;
         this.tripRepo = tripRepo;
+        this.totalsRepo = totalsRepo;
     }
 
     public List<PaymentResponse> listDebtsByTelepass(String telepassId) {
@@ -41,13 +44,13 @@ public class PaymentService {
         return toResponse(row);
     }
 
+    // Reads the running totals kept by the write paths, not a scan of debts/trips
     public Map<String, Object> summary() {
-        long openDebtCents = debtRepo.sumOpenDebtCents();
-        long collectedCents = tripRepo.sumCollectedCents();
+        PaymentTotalsRepository.Totals totals = totalsRepo.read();
         return Map.of(
                 "currency", "EUR",
-                "openDebtCents", openDebtCents,
-                "collectedCents", collectedCents
+                "openDebtCents", totals.openDebtCents(),
+                "collectedCents", totals.collectedCents()
         );
     }
 
@@ -0,0 +1,59 @@
+package upo.pissir.service;
+
+import upo.pissir.repo.PaymentTotalsRepository;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Periodically recomputes the payment totals from telepass_debts/trips and corrects any drift
+// (writes that bypassed the repositories, trips partitions removed by the retention job).
+public class PaymentTotalsReconciler {
+    private final PaymentTotalsRepository totalsRepo;
+    private final long intervalSeconds;
+    private ScheduledExecutorService scheduler;
+
+    public PaymentTotalsReconciler(PaymentTotalsRepository totalsRepo, long intervalSeconds) {
+        this.totalsRepo = totalsRepo;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public void start() {
+        if (intervalSeconds <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-totals-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            System.out.println("Payment totals reconciliation failed: " + e.getMessage());
+        }
+    }
+
+    // Returns true when a drift was found (and corrected)
+    public boolean runOnce() {
+        PaymentTotalsRepository.Totals drift = totalsRepo.reconcile();
+        if (drift.openDebtCents() == 0 && drift.collectedCents() == 0) {
+            return false;
+        }
+        System.out.println("Payment totals corrected: openDebtCents" + signed(drift.openDebtCents())
+                + " collectedCents" + signed(drift.collectedCents()));
+        return true;
+    }
+
+    private static String signed(long cents) {
+        return cents < 0 ? String.valueOf(cents) : "+" + cents;
+    }
+}
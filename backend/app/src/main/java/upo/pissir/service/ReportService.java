@@ -1,16 +1,20 @@
 package upo.pissir.service;
 
 import upo.pissir.dto.ActiveTripResponse;
+import upo.pissir.dto.PageResponse;
 import upo.pissir.dto.RouteStatsResponse;
 import upo.pissir.dto.TripResponse;
 import upo.pissir.repo.TripRepository;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.Duration;
 import java.util.List;
 
 public class ReportService {
     private final TripRepository tripRepo;
+    private final int exportFetchSize;
 
     private record ReportFilter(
             Instant from,
@@ -23,28 +27,93 @@ public class ReportService {
     ) {}
 
     public ReportService(TripRepository tripRepo) {
+        this(tripRepo, 1000);
+    }
+
+    public ReportService(TripRepository tripRepo, int exportFetchSize) {
+        if (exportFetchSize < 1) {
+            throw new IllegalArgumentException("exportFetchSize must be >= 1");
+        }
         this.tripRepo = tripRepo;
+        this.exportFetchSize = exportFetchSize;
     }
 
-    public List<TripResponse> listTrips(
+    public PageResponse<TripResponse> listTrips(
             String fromRaw,
             String toRaw,
             String entryTollboothId,
             String exitTollboothId,
             String channelRaw,
             String paidRaw,
-            String limitRaw
+            String limitRaw,
+            String cursorRaw
     ) {
         ReportFilter filter = parseFilter(fromRaw, toRaw, entryTollboothId, exitTollboothId, channelRaw, paidRaw, limitRaw);
-        return tripRepo.findTripsForReport(
+        PageCursor after = PageCursor.decode(cursorRaw);
+        // one extra row tells whether a next page exists
+        List<TripResponse> rows = tripRepo.findTripsForReport(
                 filter.from(),
                 filter.to(),
                 filter.entryTollboothId(),
                 filter.exitTollboothId(),
                 filter.channel(),
                 filter.paid(),
-                filter.limit()
+                after == null ? null : after.entryAt(),
+                after == null ? null : after.id(),
+                filter.limit() + 1
         );
+        if (rows.size() <= filter.limit()) {
+            return new PageResponse<>(rows, null);
+        }
+        List<TripResponse> page = rows.subList(0, filter.limit());
+        TripResponse last = page.get(page.size() - 1);
+        return new PageResponse<>(page, new PageCursor(Instant.parse(last.entryAt()), last.id()).encode());
+    }
+
+    // Validates the filters; call before the response is committed so errors can still be a 400
+    public TripExport prepareTripExport(
+            String fromRaw,
+            String toRaw,
+            String entryTollboothId,
+            String exitTollboothId,
+            String channelRaw,
+            String paidRaw,
+            String formatRaw
+    ) {
+        ReportFilter filter = parseFilter(fromRaw, toRaw, entryTollboothId, exitTollboothId, channelRaw, paidRaw, null);
+        return new TripExport(filter, TripExportWriter.Format.parse(formatRaw));
+    }
+
+    // Same filters as listTrips but without the limit, oldest first, streamed row by row
+    public long exportTrips(TripExport export, OutputStream out) throws IOException {
+        ReportFilter filter = export.filter;
+        try (TripExportWriter writer = export.format().open(out)) {
+            return tripRepo.streamTripsForReport(
+                    filter.from(),
+                    filter.to(),
+                    filter.entryTollboothId(),
+                    filter.exitTollboothId(),
+                    filter.channel(),
+                    filter.paid(),
+                    exportFetchSize,
+                    writer::write
+            );
+        }
+    }
+
+    // validated export request: filters stay private to the service, the route only needs the format
+    public static final class TripExport {
+        private final ReportFilter filter;
+        private final TripExportWriter.Format format;
+
+        private TripExport(ReportFilter filter, TripExportWriter.Format format) {
+            this.filter = filter;
+            this.format = format;
+        }
+
+        public TripExportWriter.Format format() {
+            return format;
+        }
     }
 
     public List<RouteStatsResponse> listRouteStats(
@@ -78,10 +147,11 @@ public class ReportService {
                 .toList();
     }
 
-    public List<ActiveTripResponse> listActiveTrips(
+    public PageResponse<ActiveTripResponse> listActiveTrips(
             String entryTollboothIdRaw,
             String channelRaw,
-            String limitRaw
+            String limitRaw,
+            String cursorRaw
     ) {
         String entryTollboothId = normalize(entryTollboothIdRaw);
         String channel = normalize(channelRaw);
@@ -100,12 +170,27 @@ public class ReportService {
         if (limit < 1 || limit > 500) {
             throw new IllegalArgumentException("limit must be between 1 and 500");
         }
+        PageCursor after = PageCursor.decode(cursorRaw);
+
+        List<TripRepository.ActiveTripReportRow> rows = tripRepo.findActiveTrips(
+                entryTollboothId,
+                channel,
+                after == null ? null : after.entryAt(),
+                after == null ? null : after.id(),
+                limit + 1
+        );
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            TripRepository.ActiveTripReportRow last = rows.get(limit - 1);
+            nextCursor = new PageCursor(last.entryAt(), last.id()).encode();
+        }
 
         Instant now = Instant.now();
-        return tripRepo.findActiveTrips(entryTollboothId, channel, limit)
-                .stream()
+        List<ActiveTripResponse> items = rows.stream()
                 .map(row -> toActiveTripResponse(row, now))
                 .toList();
+        return new PageResponse<>(items, nextCursor);
     }
 
     private ReportFilter parseFilter(
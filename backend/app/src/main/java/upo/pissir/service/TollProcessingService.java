@@ -1,21 +1,23 @@
 package upo.pissir.service;
 
-import upo.pissir.json.Json;
+import upo.pissir.dto.EntryAcceptedEvent;
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.dto.TollPriceRequestEvent;
 import upo.pissir.repo.FareRepository;
-import upo.pissir.repo.TelepassDebtRepository;
 import upo.pissir.repo.TollboothRepository;
 import upo.pissir.repo.TripRepository;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Map;
 
 public class TollProcessingService {
 
     private final FareRepository fareRepo;
     private final TripRepository tripRepo;
-    private final TelepassDebtRepository debtRepo;
     private final TollboothRepository tollboothRepo;
+    private final ActiveTripIndex activeTrips;
+    private final LiveFeed liveFeed;
+    private final ExitReorderBuffer exitReorder;
 
     public record TollPriceResolved(
             String entryTollboothId,
@@ -26,116 +28,236 @@ public class TollProcessingService {
             String currency
     ) {}
 
+    public TollProcessingService(FareRepository fareRepo, TripRepository tripRepo, TollboothRepository tollboothRepo) {
+        this(fareRepo, tripRepo, tollboothRepo, null);
+    }
+
+    public TollProcessingService(
+            FareRepository fareRepo,
+            TripRepository tripRepo,
+            TollboothRepository tollboothRepo,
+            ActiveTripIndex activeTrips
+    ) {
+        this(fareRepo, tripRepo, tollboothRepo, activeTrips, null);
+    }
+
     public TollProcessingService(
             FareRepository fareRepo,
             TripRepository tripRepo,
-            TelepassDebtRepository debtRepo,
-            TollboothRepository tollboothRepo
+            TollboothRepository tollboothRepo,
+            ActiveTripIndex activeTrips,
+            LiveFeed liveFeed
+    ) {
+        this(fareRepo, tripRepo, tollboothRepo, activeTrips, liveFeed, null);
+    }
+
+    public TollProcessingService(
+            FareRepository fareRepo,
+            TripRepository tripRepo,
+            TollboothRepository tollboothRepo,
+            ActiveTripIndex activeTrips,
+            LiveFeed liveFeed,
+            ExitReorderBuffer exitReorder
     ) {
         this.fareRepo = fareRepo;
         this.tripRepo = tripRepo;
-        this.debtRepo = debtRepo;
         this.tollboothRepo = tollboothRepo;
+        this.activeTrips = activeTrips;
+        this.liveFeed = liveFeed;
+        this.exitReorder = exitReorder;
+        if (exitReorder != null) {
+            exitReorder.onExpiry(this::closeExpired);
+        }
+    }
+
+    public void onEntryAccepted(String entryTollboothId, String channel, EntryAcceptedEvent evt) {
+        onEntryAccepted(entryTollboothId, channel, evt, evt.eventId());
     }
 
-    public void onEntryAccepted(String entryTollboothId, String channel, Map<String, Object> body) {
-        Instant ts = parseTimestamp(body);
-        String plate = Json.getString(body, "plate");
+    // eventId (when not null) is recorded with the trip: a redelivered copy inserts nothing
+    public void onEntryAccepted(String entryTollboothId, String channel, EntryAcceptedEvent evt, String eventId) {
+        Instant ts = parseTimestamp(evt.timestamp());
+        String plate = evt.plate();
 
         if ("manual".equals(channel)) {
-            String ticketId = Json.getString(body, "ticketId");
+            String ticketId = evt.ticketId();
             if (plate == null || ticketId == null) {
                 System.out.println("Invalid ENTRY_ACCEPTED manual: missing plate/ticketId");
                 return;
             }
-            tripRepo.createTripManual(entryTollboothId, plate, ticketId, ts);
+            if (!tripRepo.createTripManual(entryTollboothId, plate, ticketId, ts, eventId)) {
+                duplicateEntry(channel, ticketId, eventId);
+                return;
+            }
+            if (activeTrips != null) {
+                activeTrips.putTicket(ticketId, new ActiveTripIndex.OpenTrip(entryTollboothId, plate, ts));
+            }
+            if (liveFeed != null) liveFeed.tripOpened(channel, ticketId, entryTollboothId, plate, ts);
+            replayParkedExit(channel, ticketId);
             return;
         }
 
         if ("telepass".equals(channel)) {
-            String telepassId = Json.getString(body, "telepassId");
+            String telepassId = evt.telepassId();
             if (plate == null || telepassId == null) {
                 System.out.println("Invalid ENTRY_ACCEPTED telepass: missing plate/telepassId");
                 return;
             }
-            tripRepo.createTripTelepass(entryTollboothId, plate, telepassId, ts);
+            if (!tripRepo.createTripTelepass(entryTollboothId, plate, telepassId, ts, eventId)) {
+                duplicateEntry(channel, telepassId, eventId);
+                return;
+            }
+            if (activeTrips != null) {
+                activeTrips.putTelepass(telepassId, new ActiveTripIndex.OpenTrip(entryTollboothId, plate, ts));
+            }
+            if (liveFeed != null) liveFeed.tripOpened(channel, telepassId, entryTollboothId, plate, ts);
+            replayParkedExit(channel, telepassId);
             return;
         }
 
         System.out.println("ENTRY_ACCEPTED ignored: channel=" + channel);
     }
 
-    public void onExitCompleted(String exitTollboothId, String channel, Map<String, Object> body) {
-        Instant ts = parseTimestamp(body);
-        String entryTollboothId = Json.getString(body, "entryTollboothId");
-        Integer amountCents = Json.getInt(body, "amountCents");
+    // eventId already in ingested_events (restart, another replica): the trip exists, or was already
+    // closed, so the in-memory views and the parked exits must not see a second opening
+    private static void duplicateEntry(String channel, String passId, String eventId) {
+        System.out.println("Duplicate ENTRY_ACCEPTED ignored: channel=" + channel + " passId=" + passId + " eventId=" + eventId);
+    }
+
+    public void onExitCompleted(String exitTollboothId, String channel, ExitCompletedEvent evt) {
+        onExitCompleted(exitTollboothId, channel, evt, evt.eventId());
+    }
+
+    // eventId (when not null) is claimed with the close, or before parking: every replica receives
+    // every exit, and a redelivery may outlive RecentEventIds, so only the first copy is applied
+    public void onExitCompleted(String exitTollboothId, String channel, ExitCompletedEvent evt, String eventId) {
+        applyExit(exitTollboothId, channel, evt, eventId, true);
+    }
+
+    // true when the trip was closed; park = false only for the last attempt of an expiring exit
+    private boolean applyExit(String exitTollboothId, String channel, ExitCompletedEvent evt, String eventId, boolean park) {
+        Instant ts = parseTimestamp(evt.timestamp());
+        String entryTollboothId = evt.entryTollboothId();
+        Integer amountCents = evt.amountCents();
 
         if (entryTollboothId == null || amountCents == null) {
             System.out.println("Invalid EXIT_COMPLETED: missing entryTollboothId/amountCents");
-            return;
+            return false;
         }
 
         if ("manual".equals(channel)) {
-            String ticketId = Json.getString(body, "ticketId");
+            String ticketId = evt.ticketId();
             if (ticketId == null) {
                 System.out.println("Invalid EXIT_COMPLETED manual: missing ticketId");
-                return;
+                return false;
             }
-            Long tripId = tripRepo.findActiveTripIdByTicket(ticketId);
-            if (tripId == null) {
-                System.out.println("No active trip for ticketId=" + ticketId);
-                return;
+            if (activeTrips != null) activeTrips.removeTicket(ticketId);
+            TripRepository.ActiveTripRow trip = tripRepo.findActiveTripByTicket(ticketId);
+            if (trip == null) {
+                if (park) unmatchedExit(exitTollboothId, channel, ticketId, evt, eventId);
+                return false;
             }
-            TripMetrics metrics = computeTripMetrics(entryTollboothId, exitTollboothId, body);
-            tripRepo.closeTrip(tripId, exitTollboothId, ts, amountCents, metrics.avgSpeedKmh(), metrics.speeding(), true);
-            return;
+            TripMetrics metrics = computeTripMetrics(entryTollboothId, exitTollboothId, trip.entryAt(), ts);
+            if (!tripRepo.closeTrip(trip.id(), trip.entryAt(), exitTollboothId, ts, amountCents, metrics.avgSpeedKmh(),
+                    metrics.speeding(), true, eventId)) {
+                notClosed(channel, ticketId, eventId);
+                return false;
+            }
+            if (liveFeed != null) liveFeed.tripClosed(channel, ticketId, exitTollboothId, ts, amountCents);
+            return true;
         }
 
         if ("telepass".equals(channel)) {
-            String telepassId = Json.getString(body, "telepassId");
+            String telepassId = evt.telepassId();
             if (telepassId == null) {
                 System.out.println("Invalid EXIT_COMPLETED telepass: missing telepassId");
-                return;
+                return false;
             }
-            Long tripId = tripRepo.findActiveTripIdByTelepass(telepassId);
-            if (tripId == null) {
-                System.out.println("No active trip for telepassId=" + telepassId);
-                return;
+            if (activeTrips != null) activeTrips.removeTelepass(telepassId);
+            TripRepository.ActiveTripRow trip = tripRepo.findActiveTripByTelepass(telepassId);
+            if (trip == null) {
+                if (park) unmatchedExit(exitTollboothId, channel, telepassId, evt, eventId);
+                return false;
             }
-            TripMetrics metrics = computeTripMetrics(entryTollboothId, exitTollboothId, body);
-            tripRepo.closeTrip(tripId, exitTollboothId, ts, amountCents, metrics.avgSpeedKmh(), metrics.speeding(), false);
-            debtRepo.createDebt(telepassId, tripId, amountCents, ts);
-            return;
+            TripMetrics metrics = computeTripMetrics(entryTollboothId, exitTollboothId, trip.entryAt(), ts);
+            if (!tripRepo.closeTripWithDebt(trip.id(), trip.entryAt(), exitTollboothId, ts, amountCents, metrics.avgSpeedKmh(),
+                    metrics.speeding(), eventId)) {
+                notClosed(channel, telepassId, eventId);
+                return false;
+            }
+            if (liveFeed != null) liveFeed.tripClosed(channel, telepassId, exitTollboothId, ts, amountCents);
+            return true;
         }
 
         System.out.println("EXIT_COMPLETED ignored: channel=" + channel);
+        return false;
+    }
+
+    // The close lost the event id claim (applied by another copy) or the trip was closed meanwhile
+    private static void notClosed(String channel, String passId, String eventId) {
+        System.out.println("EXIT_COMPLETED not applied, trip already closed: channel=" + channel + " passId=" + passId
+                + " eventId=" + eventId);
+    }
+
+    // The exit may have overtaken its entry (different topics): park it for a short window.
+    // An exit whose id is already claimed was applied before (trip closed by an earlier copy or
+    // by another replica) and is dropped instead of ending up as a bogus no_entry dead letter.
+    private void unmatchedExit(String exitTollboothId, String channel, String passId, ExitCompletedEvent evt, String eventId) {
+        if (!tripRepo.claimEvent(eventId)) {
+            System.out.println("Duplicate EXIT_COMPLETED ignored: channel=" + channel + " passId=" + passId + " eventId=" + eventId);
+            return;
+        }
+        if (exitReorder == null) {
+            System.out.println("No active trip for " + ("manual".equals(channel) ? "ticketId=" : "telepassId=") + passId);
+            return;
+        }
+        System.out.println("No active trip for " + channel + " passId=" + passId + ", exit parked");
+        exitReorder.park(exitTollboothId, channel, passId, evt);
+    }
+
+    // Same pass id -> same ingest worker, so the replay runs in order with the pass's later events.
+    // The parked exit's id is already claimed: replays close without claiming it again.
+    private void replayParkedExit(String channel, String passId) {
+        if (exitReorder == null) return;
+        ExitReorderBuffer.Parked parked = exitReorder.take(channel, passId);
+        if (parked != null) {
+            System.out.println("Replaying parked EXIT_COMPLETED for " + channel + " passId=" + passId);
+            applyExit(parked.exitTollboothId(), parked.channel(), parked.event(), null, true);
+        }
+    }
+
+    // Last lookup before an expiring exit is dead-lettered: its entry may have been written by
+    // another replica, whose copy of this exit lost the claim to ours. Runs on the pass's ingest
+    // worker (ExitReorderBuffer.retryOn), like replayParkedExit.
+    private boolean closeExpired(ExitReorderBuffer.Parked parked) {
+        return applyExit(parked.exitTollboothId(), parked.channel(), parked.event(), null, false);
     }
 
-    public int computeTollPrice(Map<String, Object> body) {
-        String entry = Json.getString(body, "entryTollboothId");
-        String exit = Json.getString(body, "exitTollboothId");
+    public int computeTollPrice(TollPriceRequestEvent req) {
+        String entry = req.entryTollboothId();
+        String exit = req.exitTollboothId();
         if (entry == null || exit == null) return 0;
 
-        Integer cents = fareRepo.findFareCents(entry, exit);
-        return cents == null ? 0 : cents;
+        int cents = fareRepo.fareCents(entry, exit);
+        return cents == FareRepository.NO_FARE ? 0 : cents;
     }
 
-    public TollPriceResolved resolveTollPrice(Map<String, Object> body) {
-        String exit = Json.getString(body, "exitTollboothId");
+    public TollPriceResolved resolveTollPrice(TollPriceRequestEvent req) {
+        String exit = req.exitTollboothId();
         if (exit == null || exit.isBlank()) {
             return new TollPriceResolved(null, null, null, null, 0, "EUR");
         }
 
-        String entry = Json.getString(body, "entryTollboothId");
-        TripRepository.ActiveTripRow activeTrip = resolveActiveTrip(body);
+        String entry = req.entryTollboothId();
+        ActiveTripIndex.OpenTrip activeTrip = resolveActiveTrip(req);
         if ((entry == null || entry.isBlank()) && activeTrip != null) {
             entry = activeTrip.entryTollboothId();
         }
 
         int amount = 0;
         if (entry != null && !entry.isBlank()) {
-            Integer cents = fareRepo.findFareCents(entry, exit);
-            amount = cents == null ? 0 : cents;
+            int cents = fareRepo.fareCents(entry, exit);
+            amount = cents == FareRepository.NO_FARE ? 0 : cents;
         }
 
         String plate = activeTrip == null ? null : activeTrip.plate();
@@ -143,43 +265,41 @@ public class TollProcessingService {
         return new TollPriceResolved(entry, exit, plate, entryAt, amount, "EUR");
     }
 
-    private TripRepository.ActiveTripRow resolveActiveTrip(Map<String, Object> body) {
-        String ticketId = Json.getString(body, "ticketId");
+    // memory first (no SQL on the exit gate latency path), DB on a miss
+    private ActiveTripIndex.OpenTrip resolveActiveTrip(TollPriceRequestEvent req) {
+        String ticketId = req.ticketId();
         if (ticketId != null && !ticketId.isBlank()) {
-            return tripRepo.findActiveTripByTicket(ticketId);
+            ActiveTripIndex.OpenTrip hit = activeTrips == null ? null : activeTrips.findByTicket(ticketId);
+            return hit != null ? hit : toOpenTrip(tripRepo.findActiveTripByTicket(ticketId));
         }
 
-        String telepassId = Json.getString(body, "telepassId");
+        String telepassId = req.telepassId();
         if (telepassId != null && !telepassId.isBlank()) {
-            return tripRepo.findActiveTripByTelepass(telepassId);
+            ActiveTripIndex.OpenTrip hit = activeTrips == null ? null : activeTrips.findByTelepass(telepassId);
+            return hit != null ? hit : toOpenTrip(tripRepo.findActiveTripByTelepass(telepassId));
         }
 
         return null;
     }
 
-    private TripMetrics computeTripMetrics(String entryTollboothId, String exitTollboothId, Map<String, Object> body) {
+    private static ActiveTripIndex.OpenTrip toOpenTrip(TripRepository.ActiveTripRow row) {
+        return row == null ? null : new ActiveTripIndex.OpenTrip(row.entryTollboothId(), row.plate(), row.entryAt());
+    }
+
+    private TripMetrics computeTripMetrics(String entryTollboothId, String exitTollboothId, Instant entryAt, Instant exitAt) {
         if (tollboothRepo == null) {
             return new TripMetrics(null, false);
         }
-        TollboothRepository.TollboothRow entry = tollboothRepo.findById(entryTollboothId);
-        TollboothRepository.TollboothRow exit = tollboothRepo.findById(exitTollboothId);
-        if (entry == null || exit == null) {
-            return new TripMetrics(null, false);
-        }
-        if (entry.roadCode() == null || exit.roadCode() == null || !entry.roadCode().equals(exit.roadCode())) {
-            return new TripMetrics(null, false);
-        }
-        if (entry.kmMarker() == null || exit.kmMarker() == null) {
+        // in-memory distance table when the tollbooth cache is on, otherwise a two-row lookup
+        Double distanceKm = tollboothRepo.distanceKm(entryTollboothId, exitTollboothId);
+        if (distanceKm == null) {
             return new TripMetrics(null, false);
         }
 
-        Instant exitAt = parseTimestamp(body);
-        Instant entryAt = resolveEntryAt(body);
         if (entryAt == null || !exitAt.isAfter(entryAt)) {
             return new TripMetrics(null, false);
         }
 
-        double distanceKm = Math.abs(exit.kmMarker() - entry.kmMarker());
         double hours = (exitAt.toEpochMilli() - entryAt.toEpochMilli()) / 3_600_000d;
         if (hours <= 0d) {
             return new TripMetrics(null, false);
@@ -189,26 +309,11 @@ public class TollProcessingService {
         return new TripMetrics(avgSpeed, avgSpeed > 130d);
     }
 
-    private Instant resolveEntryAt(Map<String, Object> body) {
-        String ticketId = Json.getString(body, "ticketId");
-        if (ticketId != null && !ticketId.isBlank()) {
-            TripRepository.ActiveTripRow row = tripRepo.findActiveTripByTicket(ticketId);
-            return row == null ? null : row.entryAt();
-        }
-        String telepassId = Json.getString(body, "telepassId");
-        if (telepassId != null && !telepassId.isBlank()) {
-            TripRepository.ActiveTripRow row = tripRepo.findActiveTripByTelepass(telepassId);
-            return row == null ? null : row.entryAt();
-        }
-        return null;
-    }
-
     private static double round2(double value) {
         return BigDecimal.valueOf(value).setScale(2, java.math.RoundingMode.HALF_UP).doubleValue();
     }
 
-    private Instant parseTimestamp(Map<String, Object> body) {
-        String ts = Json.getString(body, "timestamp");
+    private Instant parseTimestamp(String ts) {
         try {
             return ts == null ? Instant.now() : Instant.parse(ts);
         } catch (Exception e) {
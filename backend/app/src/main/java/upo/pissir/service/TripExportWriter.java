@@ -0,0 +1,145 @@
+package upo.pissir.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import upo.pissir.dto.TripResponse;
+import upo.pissir.json.Json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Writes trips one at a time to an output stream (the HTTP response): nothing is kept
+// besides the encoder buffer. close() flushes but leaves the underlying stream open.
+public interface TripExportWriter extends Closeable {
+
+    void write(TripResponse trip) throws IOException;
+
+    enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv; charset=utf-8", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format parse(String raw) {
+            if (raw == null || raw.isBlank()) return NDJSON;
+            return switch (raw.trim().toLowerCase()) {
+                case "ndjson", "jsonl" -> NDJSON;
+                case "csv" -> CSV;
+                default -> throw new IllegalArgumentException("format must be ndjson or csv");
+            };
+        }
+
+        public TripExportWriter open(OutputStream out) throws IOException {
+            return this == CSV ? new Csv(out) : new Ndjson(out);
+        }
+    }
+
+    // one JSON object per line, same fields as GET /api/reports/trips
+    final class Ndjson implements TripExportWriter {
+        private final JsonGenerator gen;
+
+        Ndjson(OutputStream out) throws IOException {
+            gen = Json.MAPPER.getFactory().createGenerator(out);
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(TripResponse trip) throws IOException {
+            gen.writeStartObject();
+            gen.writeNumberField("id", trip.id());
+            gen.writeStringField("entryTollboothId", trip.entryTollboothId());
+            gen.writeStringField("exitTollboothId", trip.exitTollboothId());
+            gen.writeStringField("ticketId", trip.ticketId());
+            gen.writeStringField("telepassId", trip.telepassId());
+            gen.writeStringField("plate", trip.plate());
+            gen.writeStringField("entryAt", trip.entryAt());
+            gen.writeStringField("exitAt", trip.exitAt());
+            if (trip.amountCents() == null) {
+                gen.writeNullField("amountCents");
+            } else {
+                gen.writeNumberField("amountCents", trip.amountCents());
+            }
+            gen.writeStringField("currency", trip.currency());
+            if (trip.avgSpeedKmh() == null) {
+                gen.writeNullField("avgSpeedKmh");
+            } else {
+                gen.writeNumberField("avgSpeedKmh", trip.avgSpeedKmh());
+            }
+            gen.writeBooleanField("speeding", trip.speeding());
+            gen.writeBooleanField("paid", trip.paid());
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            gen.close();
+        }
+    }
+
+    // RFC 4180: header row, CRLF line ends, fields quoted only when needed
+    final class Csv implements TripExportWriter {
+        private static final String HEADER = "id,entryTollboothId,exitTollboothId,ticketId,telepassId,plate,"
+                + "entryAt,exitAt,amountCents,currency,avgSpeedKmh,speeding,paid\r\n";
+
+        private final Writer w;
+
+        Csv(OutputStream out) throws IOException {
+            w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+            w.write(HEADER);
+        }
+
+        @Override
+        public void write(TripResponse trip) throws IOException {
+            w.write(Long.toString(trip.id()));
+            field(trip.entryTollboothId());
+            field(trip.exitTollboothId());
+            field(trip.ticketId());
+            field(trip.telepassId());
+            field(trip.plate());
+            field(trip.entryAt());
+            field(trip.exitAt());
+            field(trip.amountCents() == null ? null : trip.amountCents().toString());
+            field(trip.currency());
+            field(trip.avgSpeedKmh() == null ? null : trip.avgSpeedKmh().toString());
+            field(Boolean.toString(trip.speeding()));
+            field(Boolean.toString(trip.paid()));
+            w.write("\r\n");
+        }
+
+        private void field(String value) throws IOException {
+            w.write(',');
+            if (value == null) return;
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                w.write(value);
+                return;
+            }
+            w.write('"');
+            w.write(value.replace("\"", "\"\""));
+            w.write('"');
+        }
+
+        @Override
+        public void close() throws IOException {
+            w.flush();
+        }
+    }
+}
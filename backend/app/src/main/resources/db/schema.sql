@@ -75,8 +75,10 @@ CREATE INDEX IF NOT EXISTS idx_device_faults_status ON device_faults(status);
 -- =========================
 -- Trips (viaggi)
 -- =========================
+-- partizionata per mese su entry_at (le partizioni mensili sono create da TripPartitions,
+-- trips_default raccoglie le righe fuori dai mesi esistenti)
 CREATE TABLE IF NOT EXISTS trips (
-  id BIGSERIAL PRIMARY KEY,
+  id BIGSERIAL,
 
   -- ricavati dai topic/payload MQTT
   entry_tollbooth_id TEXT NOT NULL,
@@ -106,12 +108,20 @@ CREATE TABLE IF NOT EXISTS trips (
   CONSTRAINT chk_amount_cents_nonnegative CHECK (amount_cents IS NULL OR amount_cents >= 0),
   CONSTRAINT chk_trip_identifier_present CHECK (
     ticket_id IS NOT NULL OR telepass_id IS NOT NULL
-  )
-);
+  ),
+
+  -- la chiave di partizione deve far parte della primary key
+  PRIMARY KEY (id, entry_at)
+) PARTITION BY RANGE (entry_at);
 
 ALTER TABLE trips ADD COLUMN IF NOT EXISTS avg_speed_kmh NUMERIC(8,2);
 ALTER TABLE trips ADD COLUMN IF NOT EXISTS speeding BOOLEAN NOT NULL DEFAULT FALSE;
 
+CREATE TABLE IF NOT EXISTS trips_default PARTITION OF trips DEFAULT;
+
+-- migrazione da trips non partizionata: TripPartitions la rinomina in trips_legacy prima
+-- di questo script e ne copia le righe in trips subito dopo (solo se la rinomina è avvenuta)
+
 -- Indici per lookup rapido dei trip "attivi" (exit_at IS NULL)
 CREATE INDEX IF NOT EXISTS idx_trips_ticket_active
   ON trips(ticket_id)
@@ -125,6 +135,74 @@ CREATE INDEX IF NOT EXISTS idx_trips_telepass_active
 CREATE INDEX IF NOT EXISTS idx_trips_entry_exit
   ON trips(entry_tollbooth_id, exit_tollbooth_id);
 
+-- Paginazione keyset dei report: ORDER BY entry_at DESC, id DESC con seek su (entry_at, id)
+CREATE INDEX IF NOT EXISTS idx_trips_entry_at_id
+  ON trips(entry_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_trips_tollbooth_entry_at_id
+  ON trips(entry_tollbooth_id, entry_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_trips_active_entry_at_id
+  ON trips(entry_at DESC, id DESC)
+  WHERE exit_at IS NULL;
+
+-- =========================
+-- Route stats rollup (statistiche per tratta pre-aggregate)
+-- =========================
+-- totali dei viaggi chiusi per ora/giorno UTC di entry_at, aggiornati dallo stesso
+-- statement che chiude o paga un viaggio (vedi RouteStatsRollup)
+CREATE TABLE IF NOT EXISTS route_stats_hourly (
+  bucket_start TIMESTAMPTZ NOT NULL,
+  entry_tollbooth_id TEXT NOT NULL,
+  exit_tollbooth_id TEXT NOT NULL,
+  channel TEXT NOT NULL,
+  paid BOOLEAN NOT NULL,
+  trips_count BIGINT NOT NULL DEFAULT 0,
+  amount_sum_cents BIGINT NOT NULL DEFAULT 0,
+  amount_count BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (bucket_start, entry_tollbooth_id, exit_tollbooth_id, channel, paid)
+);
+
+CREATE TABLE IF NOT EXISTS route_stats_daily (
+  bucket_start TIMESTAMPTZ NOT NULL,
+  entry_tollbooth_id TEXT NOT NULL,
+  exit_tollbooth_id TEXT NOT NULL,
+  channel TEXT NOT NULL,
+  paid BOOLEAN NOT NULL,
+  trips_count BIGINT NOT NULL DEFAULT 0,
+  amount_sum_cents BIGINT NOT NULL DEFAULT 0,
+  amount_count BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (bucket_start, entry_tollbooth_id, exit_tollbooth_id, channel, paid)
+);
+
+-- popolamento iniziale dai viaggi esistenti, solo se il rollup è ancora vuoto
+INSERT INTO route_stats_hourly(bucket_start, entry_tollbooth_id, exit_tollbooth_id, channel, paid, trips_count, amount_sum_cents, amount_count)
+SELECT date_trunc('hour', entry_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC',
+       entry_tollbooth_id,
+       exit_tollbooth_id,
+       CASE WHEN ticket_id IS NOT NULL THEN 'manual' ELSE 'telepass' END,
+       paid,
+       COUNT(*),
+       COALESCE(SUM(amount_cents), 0),
+       COUNT(amount_cents)
+FROM trips
+WHERE exit_tollbooth_id IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM route_stats_hourly)
+GROUP BY 1, 2, 3, 4, 5;
+
+INSERT INTO route_stats_daily(bucket_start, entry_tollbooth_id, exit_tollbooth_id, channel, paid, trips_count, amount_sum_cents, amount_count)
+SELECT date_trunc('day', bucket_start AT TIME ZONE 'UTC') AT TIME ZONE 'UTC',
+       entry_tollbooth_id,
+       exit_tollbooth_id,
+       channel,
+       paid,
+       SUM(trips_count),
+       SUM(amount_sum_cents),
+       SUM(amount_count)
+FROM route_stats_hourly
+WHERE NOT EXISTS (SELECT 1 FROM route_stats_daily)
+GROUP BY 1, 2, 3, 4, 5;
+
 -- =========================
 -- Fares (tariffe)
 -- =========================
@@ -145,6 +223,36 @@ CREATE TABLE IF NOT EXISTS fares (
 CREATE INDEX IF NOT EXISTS idx_fares_entry_exit
   ON fares(entry_tollbooth_id, exit_tollbooth_id);
 
+-- versione delle tabelle in cache: incrementata ad ogni modifica di tariffe/caselli,
+-- le repliche del backend la confrontano per ricaricare le cache in memoria
+CREATE TABLE IF NOT EXISTS cache_versions (
+  name TEXT PRIMARY KEY,
+  version BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO cache_versions(name, version)
+VALUES ('fares', 0), ('tollbooths', 0)
+ON CONFLICT (name) DO NOTHING;
+
+-- =========================
+-- Outbox MQTT (messaggi generati dal backend)
+-- =========================
+-- scritti nella stessa transazione della modifica di stato che li genera,
+-- pubblicati da OutboxRelay e cancellati solo dopo l'ack del broker
+CREATE TABLE IF NOT EXISTS mqtt_outbox (
+  id BIGSERIAL PRIMARY KEY,
+  topic TEXT NOT NULL,
+  payload TEXT NOT NULL,
+  qos SMALLINT NOT NULL DEFAULT 1,
+  attempts INTEGER NOT NULL DEFAULT 0,
+  last_error TEXT NULL,
+  next_attempt_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  CONSTRAINT chk_mqtt_outbox_qos CHECK (qos IN (0, 1, 2))
+);
+
+CREATE INDEX IF NOT EXISTS idx_mqtt_outbox_due ON mqtt_outbox(next_attempt_at, id);
+
 -- =========================
 -- Telepass Debts (debiti)
 -- =========================
@@ -152,7 +260,7 @@ CREATE TABLE IF NOT EXISTS telepass_debts (
   id BIGSERIAL PRIMARY KEY,
 
   telepass_id TEXT NOT NULL,
-  trip_id BIGINT NOT NULL REFERENCES trips(id) ON DELETE CASCADE,
+  trip_id BIGINT NOT NULL,
 
   amount_cents INTEGER NOT NULL,
   currency TEXT NOT NULL DEFAULT 'EUR',
@@ -164,11 +272,47 @@ CREATE TABLE IF NOT EXISTS telepass_debts (
   CONSTRAINT chk_debt_status CHECK (status IN ('OPEN', 'PAID'))
 );
 
+-- niente FK verso trips: su una tabella partizionata richiederebbe anche entry_at e
+-- impedirebbe di staccare le partizioni archiviate
+ALTER TABLE telepass_debts DROP CONSTRAINT IF EXISTS telepass_debts_trip_id_fkey;
+
 CREATE INDEX IF NOT EXISTS idx_telepass_debts_telepass_id ON telepass_debts(telepass_id);
 CREATE INDEX IF NOT EXISTS idx_telepass_debts_trip_id ON telepass_debts(trip_id);
 CREATE INDEX IF NOT EXISTS idx_telepass_debts_telepass_status
   ON telepass_debts(telepass_id, status);
 
+-- =========================
+-- Payment totals (totali per /api/payments/summary)
+-- =========================
+-- aggiornati dagli stessi statement che aprono/pagano un debito o incassano un viaggio
+-- (vedi PaymentTotalsRepository); ogni totale è diviso su 16 slot scelti per backend pid
+-- per non serializzare le scritture concorrenti su una sola riga
+CREATE TABLE IF NOT EXISTS payment_totals (
+  name TEXT NOT NULL,
+  slot SMALLINT NOT NULL,
+  value BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (name, slot)
+);
+
+-- popolamento iniziale: lo slot 0 parte dai totali attuali, solo alla prima creazione
+INSERT INTO payment_totals(name, slot, value)
+SELECT 'open_debt_cents', 0, COALESCE(SUM(amount_cents), 0)
+FROM telepass_debts
+WHERE status = 'OPEN'
+ON CONFLICT (name, slot) DO NOTHING;
+
+INSERT INTO payment_totals(name, slot, value)
+SELECT 'collected_cents', 0, COALESCE(SUM(amount_cents), 0)
+FROM trips
+WHERE paid = true AND amount_cents IS NOT NULL
+ON CONFLICT (name, slot) DO NOTHING;
+
+INSERT INTO payment_totals(name, slot, value)
+SELECT n.name, s.slot, 0
+FROM (VALUES ('open_debt_cents'), ('collected_cents')) AS n(name)
+CROSS JOIN generate_series(1, 15) AS s(slot)
+ON CONFLICT (name, slot) DO NOTHING;
+
 INSERT INTO fares(entry_tollbooth_id, exit_tollbooth_id, amount_cents)
 VALUES
   ('VC_Est', 'MI_Ovest', 720),
@@ -176,3 +320,36 @@ VALUES
   ('MI_Ovest', 'VC_Est', 720),
   ('MI_Est', 'VC_Est',   650)
 ON CONFLICT (entry_tollbooth_id, exit_tollbooth_id) DO NOTHING;
+
+-- =========================
+-- Ingested events (deduplica dei redelivery MQTT QoS1)
+-- =========================
+-- event_id degli ENTRY_ACCEPTED e EXIT_COMPLETED già applicati: l'insert (o la chiusura) del
+-- viaggio e quello dell'id sono lo stesso statement, un duplicato non crea un secondo viaggio e
+-- un'uscita già applicata (da un'altra replica o da un redelivery) non finisce in dead letter.
+-- Le righe più vecchie di INGEST_EVENT_ID_RETENTION_HOURS sono rimosse da TripPartitionMaintenance
+CREATE TABLE IF NOT EXISTS ingested_events (
+  event_id TEXT PRIMARY KEY,
+  received_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingested_events_received_at ON ingested_events(received_at);
+
+-- =========================
+-- Dead letter (eventi MQTT non applicabili)
+-- =========================
+-- es. EXIT_COMPLETED senza ingresso corrispondente entro EXIT_REORDER_WINDOW_MS:
+-- il payload originale resta qui per la riconciliazione manuale dell'incasso
+CREATE TABLE IF NOT EXISTS dead_letter_events (
+  id BIGSERIAL PRIMARY KEY,
+  event_type TEXT NOT NULL,
+  tollbooth_id TEXT NOT NULL,
+  channel TEXT NOT NULL,
+  pass_id TEXT NULL,
+  payload TEXT NOT NULL,
+  reason TEXT NOT NULL,
+  received_at TIMESTAMPTZ NOT NULL,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_dead_letter_events_created_at ON dead_letter_events(created_at DESC);
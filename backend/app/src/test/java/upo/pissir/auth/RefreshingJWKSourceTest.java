@@ -0,0 +1,96 @@
+package upo.pissir.auth;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefreshingJWKSourceTest {
+
+    @Test
+    void loadsLocalJwksFileByPathAndFileUrl() throws Exception {
+        Path file = Files.createTempFile("jwks", ".json");
+        try {
+            Files.writeString(file, jwksJson("k1"));
+
+            RefreshingJWKSource byPath = new RefreshingJWKSource(
+                    RefreshingJWKSource.loaderFor(file.toString(), 1000, 1000), 300, 0);
+            assertTrue(byPath.refresh());
+            assertEquals(1, byPath.current().getKeys().size());
+
+            RefreshingJWKSource byUrl = new RefreshingJWKSource(
+                    RefreshingJWKSource.loaderFor(file.toUri().toString(), 1000, 1000), 300, 0);
+            assertTrue(byUrl.refresh());
+            assertEquals(1, byUrl.current().getKeys().size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void failedRefreshKeepsLastGoodKeys() throws Exception {
+        JWKSet good = JWKSet.parse(jwksJson("k1"));
+        ArrayDeque<Object> results = new ArrayDeque<>(List.of(good, new IllegalStateException("keycloak down"),
+                JWKSet.parse("{\"keys\":[]}")));
+        RefreshingJWKSource source = new RefreshingJWKSource(() -> {
+            Object next = results.removeFirst();
+            if (next instanceof Exception e) throw e;
+            return (JWKSet) next;
+        }, 300, 0);
+
+        assertTrue(source.refresh());
+        assertFalse(source.refresh());
+        assertFalse(source.refresh());
+        assertSame(good, source.current());
+    }
+
+    @Test
+    void unreachableSourceAtBootDoesNotThrow() {
+        RefreshingJWKSource source = new RefreshingJWKSource(() -> {
+            throw new java.io.IOException("connection refused");
+        }, 300, 0);
+        try {
+            source.start();
+            assertNull(source.current());
+        } finally {
+            source.stop();
+        }
+    }
+
+    @Test
+    void jitterStaysWithinTwentyPercent() {
+        for (int i = 0; i < 200; i++) {
+            long s = RefreshingJWKSource.jittered(300);
+            assertTrue(s >= 240 && s <= 360, "jittered=" + s);
+        }
+    }
+
+    private static String jwksJson(String kid) throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        RSAPublicKey key = (RSAPublicKey) gen.generateKeyPair().getPublic();
+        return "{\"keys\":[{\"kty\":\"RSA\",\"use\":\"sig\",\"alg\":\"RS256\",\"kid\":\"" + kid + "\","
+                + "\"n\":\"" + b64(key.getModulus()) + "\",\"e\":\"" + b64(key.getPublicExponent()) + "\"}]}";
+    }
+
+    private static String b64(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = java.util.Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,91 @@
+package upo.pissir.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TokenCacheTest {
+    private static final Instant NOW = Instant.parse("2026-01-01T10:00:00Z");
+    private static final AuthUser ALICE = new AuthUser("s-1", "alice", List.of("EMPLOYEE"));
+
+    @Test
+    void hitUntilTokenExpires() {
+        MutableClock clock = new MutableClock(NOW);
+        TokenCache cache = new TokenCache(10, clock);
+
+        cache.put("tok-a", ALICE, NOW.plusSeconds(300));
+        assertSame(ALICE, cache.get("tok-a"));
+
+        clock.now = NOW.plusSeconds(300);
+        assertNull(cache.get("tok-a"));
+
+        TokenCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0, stats.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        TokenCache cache = new TokenCache(2, new MutableClock(NOW));
+        cache.put("tok-a", ALICE, NOW.plusSeconds(60));
+        cache.put("tok-b", ALICE, NOW.plusSeconds(60));
+        cache.get("tok-a");
+        cache.put("tok-c", ALICE, NOW.plusSeconds(60));
+
+        assertSame(ALICE, cache.get("tok-a"));
+        assertNull(cache.get("tok-b"));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    void tokensWithoutFutureExpiryAreNotCached() {
+        TokenCache cache = new TokenCache(10, new MutableClock(NOW));
+        cache.put("no-exp", ALICE, null);
+        cache.put("expired", ALICE, NOW.minusSeconds(1));
+
+        assertNull(cache.get("no-exp"));
+        assertNull(cache.get("expired"));
+    }
+
+    @Test
+    void zeroSizeDisablesCache() {
+        TokenCache cache = new TokenCache(0, new MutableClock(NOW));
+        cache.put("tok-a", ALICE, NOW.plus(Duration.ofMinutes(5)));
+
+        assertNull(cache.get("tok-a"));
+        assertEquals(0, cache.stats().size());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package upo.pissir.db;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PoolMetricsTest {
+
+    @Test
+    void recordsWaitTimeoutsAndUsagePerPool() {
+        PoolMetrics metrics = new PoolMetrics();
+        IMetricsTracker ingest = metrics.create("ingest", new FixedPoolStats(8, 2));
+        IMetricsTracker reporting = metrics.create("reporting", new FixedPoolStats(3, 3));
+
+        ingest.recordConnectionAcquiredNanos(1_000);
+        ingest.recordConnectionAcquiredNanos(3_000);
+        ingest.recordConnectionUsageMillis(4);
+        reporting.recordConnectionTimeout();
+
+        List<PoolMetrics.Stats> stats = metrics.stats();
+        assertEquals(List.of("ingest", "reporting"), stats.stream().map(PoolMetrics.Stats::pool).toList());
+
+        PoolMetrics.Stats i = stats.get(0);
+        assertEquals(2, i.acquired());
+        assertEquals(2.0, i.avgWaitMicros());
+        assertEquals(3.0, i.maxWaitMicros());
+        assertEquals(4.0, i.avgUsageMillis());
+        assertEquals(8, i.max());
+        assertEquals(2, i.active());
+
+        PoolMetrics.Stats r = stats.get(1);
+        assertEquals(1, r.timeouts());
+        assertEquals(0, r.acquired());
+        assertEquals(3, r.active());
+    }
+
+    private static final class FixedPoolStats extends PoolStats {
+        private final int max;
+        private final int active;
+
+        private FixedPoolStats(int max, int active) {
+            super(0L);
+            this.max = max;
+            this.active = active;
+        }
+
+        @Override
+        protected void update() {
+            maxConnections = max;
+            activeConnections = active;
+            idleConnections = max - active;
+            totalConnections = max;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package upo.pissir.db;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaRoutingDataSourceTest {
+
+    @Test
+    void readsFollowTheLagGuard() throws Exception {
+        DataSource primary = named("primary", false);
+        DataSource replica = named("replica", false);
+        AtomicLong lag = new AtomicLong(0);
+        ReplicaRoutingDataSource reads = new ReplicaRoutingDataSource(primary, replica, 5000, (p, r) -> lag.get());
+
+        // before the first probe nothing is known about the replica
+        assertEquals("primary", reads.getConnection().toString());
+
+        reads.check();
+        assertEquals("replica", reads.getConnection().toString());
+
+        lag.set(6000);
+        reads.check();
+        assertEquals("primary", reads.getConnection().toString());
+        assertEquals(6000, reads.stats().lagMs());
+
+        lag.set(100);
+        reads.check();
+        assertTrue(reads.stats().onReplica());
+        assertEquals(1, reads.stats().replicaReads());
+        assertEquals(2, reads.stats().primaryReads());
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() throws Exception {
+        ReplicaRoutingDataSource reads = new ReplicaRoutingDataSource(named("primary", false), named("replica", true), 5000,
+                (p, r) -> 0L);
+        reads.check();
+        assertTrue(reads.stats().onReplica());
+
+        // the probe passed but the pool fails: served by the primary and routed there until the next probe
+        assertEquals("primary", reads.getConnection().toString());
+        assertFalse(reads.stats().onReplica());
+        assertEquals(1, reads.stats().fallbacks());
+
+        ReplicaRoutingDataSource probeFails = new ReplicaRoutingDataSource(named("primary", false), named("replica", false),
+                5000, (p, r) -> {
+                    throw new SQLException("connection refused");
+                });
+        probeFails.check();
+        assertEquals("primary", probeFails.getConnection().toString());
+    }
+
+    @Test
+    void standbyWithDroppedWalReceiverIsNotCaughtUp() throws Exception {
+        // the receiver is gone: the standby replayed all it received (receive = replay lsn) but is
+        // behind the primary's current position, last transaction replayed a minute ago
+        DataSource primary = rows("primary", new Object[]{"0/5000000"});
+        DataSource replica = rows("replica", new Object[]{true, false, 60_000d});
+        ReplicaRoutingDataSource reads = new ReplicaRoutingDataSource(primary, replica, 5000, ReplicaRoutingDataSource.PG_LAG);
+
+        reads.check();
+
+        assertFalse(reads.stats().onReplica());
+        assertEquals(60_000, reads.stats().lagMs());
+
+        // replayed past the primary's position: caught up whatever the last transaction's age
+        ReplicaRoutingDataSource caughtUp = new ReplicaRoutingDataSource(primary,
+                rows("replica", new Object[]{true, true, 600_000d}), 5000, ReplicaRoutingDataSource.PG_LAG);
+        caughtUp.check();
+        assertTrue(caughtUp.stats().onReplica());
+        assertEquals(0, caughtUp.stats().lagMs());
+    }
+
+    @Test
+    void lagOfABehindStandbyWithNothingReplayedIsUnknown() {
+        assertThrows(SQLException.class, () -> ReplicaRoutingDataSource.lagMs(true, false, null));
+        assertDoesNotThrow(() -> assertEquals(0L, ReplicaRoutingDataSource.lagMs(false, false, null)));
+    }
+
+    // DataSource whose single-row queries return `row` (columns 1..n), whatever the SQL
+    private static DataSource rows(String name, Object[] row) {
+        Object[] last = new Object[1];
+        InvocationHandler resultSet = (p, m, a) -> switch (m.getName()) {
+            case "next" -> true;
+            case "getString", "getBoolean", "getDouble" -> last[0] = row[(Integer) a[0] - 1];
+            case "wasNull" -> last[0] == null;
+            default -> null;
+        };
+        InvocationHandler statement = (p, m, a) -> "executeQuery".equals(m.getName())
+                ? Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, resultSet)
+                : null;
+        InvocationHandler connection = (p, m, a) -> switch (m.getName()) {
+            case "prepareStatement" -> Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, statement);
+            case "toString" -> name;
+            default -> null;
+        };
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> "getConnection".equals(method.getName())
+                        ? Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, connection)
+                        : null);
+    }
+
+    // DataSource whose connections print as its name
+    private static DataSource named(String name, boolean failing) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (!"getConnection".equals(method.getName())) return null;
+                    if (failing) throw new SQLException(name + " down");
+                    return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                            (p, m, a) -> "toString".equals(m.getName()) ? name : null);
+                });
+    }
+}
@@ -0,0 +1,60 @@
+package upo.pissir.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionLimiterTest {
+
+    @Test
+    void rejectsBeyondLimitAfterTimeout() {
+        AdmissionLimiter limiter = new AdmissionLimiter(2, 10);
+
+        assertTrue(limiter.tryEnter());
+        assertTrue(limiter.tryEnter());
+        assertFalse(limiter.tryEnter());
+
+        AdmissionLimiter.Stats stats = limiter.stats();
+        assertEquals(2, stats.admitted());
+        assertEquals(1, stats.rejected());
+        assertEquals(2, stats.inFlight());
+        assertEquals(0, stats.waiting());
+    }
+
+    @Test
+    void leaveAdmitsAWaitingRequest() throws Exception {
+        AdmissionLimiter limiter = new AdmissionLimiter(1, 5000);
+        assertTrue(limiter.tryEnter());
+
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean admitted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            admitted.set(limiter.tryEnter());
+            done.countDown();
+        });
+        waiter.start();
+        while (limiter.stats().waiting() == 0) {
+            Thread.sleep(1);
+        }
+
+        limiter.leave();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(admitted.get());
+        assertEquals(1, limiter.stats().inFlight());
+
+        limiter.leave();
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void rejectsInvalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionLimiter(0, 100));
+    }
+}
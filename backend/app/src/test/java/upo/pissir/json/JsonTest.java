@@ -0,0 +1,62 @@
+package upo.pissir.json;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.dto.DeviceFaultEvent;
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.dto.MqttEvent;
+import upo.pissir.dto.TollPriceRequestEvent;
+import upo.pissir.dto.UnknownEvent;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonTest {
+
+    @Test
+    void readMqttEventDecodesTypedExitWhateverTheFieldOrder() {
+        MqttEvent event = Json.readMqttEvent(bytes("""
+                {"timestamp":"2026-03-07T10:40:00Z","entryTollboothId":"VC_Est","amountCents":"720",
+                 "telepassId":"TP-1","type":"EXIT_COMPLETED","extra":{"ignored":true}}"""));
+
+        ExitCompletedEvent exit = assertInstanceOf(ExitCompletedEvent.class, event);
+        assertEquals("VC_Est", exit.entryTollboothId());
+        assertEquals(720, exit.amountCents());
+        assertEquals("TP-1", exit.passId());
+        assertNull(exit.ticketId());
+    }
+
+    @Test
+    void readMqttEventDecodesTollPriceRequestAndFault() {
+        TollPriceRequestEvent req = assertInstanceOf(TollPriceRequestEvent.class, Json.readMqttEvent(bytes("""
+                {"type":"TOLLPRICE_REQUEST","correlationId":"c-1","replyTopic":"r","exitTollboothId":"MI_Ovest","ticketId":"TCK-1"}""")));
+        assertEquals("c-1", req.correlationId());
+        assertEquals("TCK-1", req.passId());
+
+        DeviceFaultEvent fault = assertInstanceOf(DeviceFaultEvent.class, Json.readMqttEvent(bytes("""
+                {"type":"DEVICE_FAULT","code":"CAMERA_UNAVAILABLE","message":"camera down","severity":"ERROR"}""")));
+        assertEquals("ERROR", fault.severity());
+    }
+
+    @Test
+    void readMqttEventMapsUnknownOrMissingType() {
+        UnknownEvent unknown = assertInstanceOf(UnknownEvent.class, Json.readMqttEvent(bytes("{\"type\":\"HELLO\",\"a\":1}")));
+        assertEquals("HELLO", unknown.type());
+
+        UnknownEvent untyped = assertInstanceOf(UnknownEvent.class, Json.readMqttEvent(bytes("{\"plate\":\"AB123CD\"}")));
+        assertNull(untyped.type());
+    }
+
+    @Test
+    void readMqttEventRejectsMalformedPayload() {
+        assertThrows(IllegalArgumentException.class, () -> Json.readMqttEvent(bytes("{not json")));
+        assertThrows(IllegalArgumentException.class, () -> Json.readMqttEvent(bytes("null")));
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package upo.pissir.mqtt;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.dto.DeviceFaultEvent;
+import upo.pissir.dto.EntryAcceptedEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestPipelineTest {
+
+    @Test
+    void sameKeyKeepsSubmissionOrder() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(new IngestConfig(4, 64, 0, 0, 0));
+        pipeline.start();
+
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            pipeline.submit("TCK-1", () -> seen.add(n));
+        }
+        pipeline.stop(5_000);
+
+        assertEquals(200, seen.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, seen.get(i));
+        }
+    }
+
+    @Test
+    void differentKeysRunInParallel() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(new IngestConfig(2, 8, 0, 0, 0));
+        pipeline.start();
+
+        // find two keys owned by different workers
+        String first = "TP-0";
+        String second = null;
+        for (int i = 1; second == null; i++) {
+            if (pipeline.partitionOf("TP-" + i) != pipeline.partitionOf(first)) {
+                second = "TP-" + i;
+            }
+        }
+
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        Runnable waitForOther = () -> {
+            bothRunning.countDown();
+            try {
+                bothRunning.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        pipeline.submit(first, waitForOther);
+        pipeline.submit(second, waitForOther);
+
+        assertTrue(bothRunning.await(2, TimeUnit.SECONDS));
+        pipeline.stop(5_000);
+    }
+
+    @Test
+    void statsCountFailuresAndRejections() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(new IngestConfig(1, 8, 0, 0, 0));
+        pipeline.start();
+
+        pipeline.submit("a", () -> {});
+        pipeline.submit("a", () -> {
+            throw new IllegalStateException("boom");
+        });
+        pipeline.stop(5_000);
+        assertFalse(pipeline.submit("a", () -> {}));
+
+        IngestPipeline.Stats stats = pipeline.stats();
+        assertEquals(2L, stats.submitted());
+        assertEquals(1L, stats.processed());
+        assertEquals(1L, stats.failed());
+        assertEquals(1L, stats.rejected());
+        assertEquals(0, stats.queued());
+    }
+
+    @Test
+    void partitionKeyPrefersPassId() {
+        TopicParser.Parsed parsed = TopicParser.parse("highway/VC_Est/entry/manual/events");
+
+        assertEquals("TCK-1", MqttListenerService.partitionKey(parsed, new EntryAcceptedEvent(null, "AB123CD", "TCK-1", null, null)));
+        assertEquals("TP-9", MqttListenerService.partitionKey(parsed, new EntryAcceptedEvent(null, "AB123CD", " ", "TP-9", null)));
+        assertEquals("VC_Est", MqttListenerService.partitionKey(parsed, new DeviceFaultEvent(null, "X", "down", "WARN")));
+    }
+}
@@ -0,0 +1,136 @@
+package upo.pissir.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttPublisherTest {
+
+    @Test
+    void inFlightNeverExceedsWindowAndAcksCompleteFutures() throws Exception {
+        HeldTransport transport = new HeldTransport();
+        MqttPublisher publisher = new MqttPublisher(null,
+                new PublisherConfig(2, 16, PublisherConfig.OverflowPolicy.BLOCK, 0, 0));
+        publisher.start(transport);
+
+        CompletableFuture<Void> first = publisher.publishAsync("t/1", "{}", 1);
+        publisher.publishAsync("t/2", "{}", 1);
+        publisher.publishAsync("t/3", "{}", 1);
+
+        waitUntil(() -> transport.pending.size() == 2);
+        Thread.sleep(50);
+        assertEquals(2, transport.pending.size());
+        assertEquals(2, publisher.stats().inFlight());
+
+        transport.pending.get(0).onSuccess(null);
+        first.get(1, TimeUnit.SECONDS);
+        waitUntil(() -> transport.pending.size() == 3);
+
+        transport.pending.get(1).onSuccess(null);
+        transport.pending.get(2).onSuccess(null);
+        publisher.stop();
+
+        assertEquals(3, publisher.stats().acked());
+        assertEquals(0, publisher.stats().inFlight());
+    }
+
+    @Test
+    void dropPolicyRejectsWhenQueueIsFull() throws Exception {
+        HeldTransport transport = new HeldTransport();
+        MqttPublisher publisher = new MqttPublisher(null,
+                new PublisherConfig(1, 1, PublisherConfig.OverflowPolicy.DROP, 0, 0));
+        publisher.start(transport);
+
+        publisher.publishAsync("t/1", "{}", 1);
+        waitUntil(() -> transport.pending.size() == 1);
+        publisher.publishAsync("t/2", "{}", 1); // taken by the sender, waiting for a window slot
+        waitUntil(() -> publisher.stats().queued() == 0);
+        publisher.publishAsync("t/3", "{}", 1); // fills the queue
+
+        CompletableFuture<Void> rejected = publisher.publishAsync("t/4", "{}", 1);
+        assertTrue(rejected.isCompletedExceptionally());
+        assertThrows(IllegalStateException.class, () -> publisher.publish("t/5", "{}", 1));
+        assertEquals(2, publisher.stats().dropped());
+        assertEquals(3, publisher.stats().enqueued());
+
+        for (int i = 0; i < 3; i++) {
+            int sent = i + 1;
+            waitUntil(() -> transport.pending.size() == sent);
+            transport.pending.get(i).onSuccess(null);
+        }
+        publisher.stop();
+    }
+
+    @Test
+    void brokerFailureCompletesExceptionallyAndFreesTheSlot() throws Exception {
+        HeldTransport transport = new HeldTransport();
+        MqttPublisher publisher = new MqttPublisher(null,
+                new PublisherConfig(1, 4, PublisherConfig.OverflowPolicy.BLOCK, 0, 0));
+        publisher.start(transport);
+
+        CompletableFuture<Void> failed = publisher.publishAsync("t/1", "{}", 1);
+        CompletableFuture<Void> next = publisher.publishAsync("t/2", "{}", 1);
+        waitUntil(() -> transport.pending.size() == 1);
+        transport.pending.get(0).onFailure(null, new RuntimeException("boom"));
+
+        assertThrows(ExecutionException.class, () -> failed.get(1, TimeUnit.SECONDS));
+        waitUntil(() -> transport.pending.size() == 2);
+        transport.pending.get(1).onSuccess(null);
+        next.get(1, TimeUnit.SECONDS);
+        publisher.stop();
+
+        assertEquals(1, publisher.stats().failed());
+        assertEquals(1, publisher.stats().acked());
+    }
+
+    @Test
+    void rejectsWhenDisconnected() throws Exception {
+        HeldTransport transport = new HeldTransport();
+        transport.connected = false;
+        MqttPublisher publisher = new MqttPublisher(null,
+                new PublisherConfig(1, 4, PublisherConfig.OverflowPolicy.BLOCK, 0, 0));
+        publisher.start(transport);
+
+        assertThrows(IllegalStateException.class, () -> publisher.publish("t/1", "{}", 1));
+        assertTrue(publisher.publishAsync("t/1", "{}", 1).isCompletedExceptionally());
+        publisher.stop();
+
+        assertEquals(0, publisher.stats().enqueued());
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("condition not met in time");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    // keeps delivery callbacks so the test decides when the "broker" acks
+    private static final class HeldTransport implements MqttPublisher.Transport {
+        private final List<IMqttActionListener> pending = new CopyOnWriteArrayList<>();
+        private volatile boolean connected = true;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void publish(String topic, MqttMessage message, IMqttActionListener callback) {
+            pending.add(callback);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package upo.pissir.mqtt;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.repo.OutboxRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutboxRelayTest {
+
+    @Test
+    void deletesAckedMessagesAndReschedulesFailedOnes() throws Exception {
+        FakeOutboxRepository repo = new FakeOutboxRepository();
+        repo.due.add(new OutboxRepository.OutboxRow(1L, "highway/A/exit/manual/service", "{}", 1, 0));
+        repo.due.add(new OutboxRepository.OutboxRow(2L, "highway/B/exit/manual/service", "{}", 1, 3));
+        repo.due.add(new OutboxRepository.OutboxRow(3L, "highway/C/exit/manual/service", "{}", 1, 0));
+        FakePublisher publisher = new FakePublisher("highway/B/exit/manual/service");
+
+        OutboxRelay relay = new OutboxRelay(repo, publisher, 10, 1_000, 60);
+        relay.drain();
+
+        assertEquals(List.of("highway/A/exit/manual/service", "highway/B/exit/manual/service", "highway/C/exit/manual/service"),
+                publisher.topics);
+        assertEquals(List.of(1L, 3L), repo.deleted);
+        assertEquals(List.of(2L), repo.failedIds);
+        assertEquals(List.of(8L), repo.retryDelays);
+        assertEquals(2, relay.sentCount());
+        assertEquals(1, relay.failedCount());
+    }
+
+    @Test
+    void backoffDoublesUpToTheCap() {
+        OutboxRelay relay = new OutboxRelay(new FakeOutboxRepository(), new FakePublisher(null), 10, 1_000, 60);
+
+        assertEquals(1, relay.backoffSeconds(0));
+        assertEquals(16, relay.backoffSeconds(4));
+        assertEquals(60, relay.backoffSeconds(6));
+        assertEquals(60, relay.backoffSeconds(40));
+    }
+
+    private static final class FakeOutboxRepository extends OutboxRepository {
+        private final List<OutboxRow> due = new ArrayList<>();
+        private final List<Long> deleted = new ArrayList<>();
+        private final List<Long> failedIds = new ArrayList<>();
+        private final List<Long> retryDelays = new ArrayList<>();
+
+        private FakeOutboxRepository() {
+            super(null);
+        }
+
+        @Override
+        public List<OutboxRow> claimBatch(int limit, long leaseSeconds) {
+            List<OutboxRow> out = new ArrayList<>(due.subList(0, Math.min(limit, due.size())));
+            due.removeAll(out);
+            return out;
+        }
+
+        @Override
+        public int deleteSent(List<Long> ids) {
+            deleted.addAll(ids);
+            return ids.size();
+        }
+
+        @Override
+        public void markFailed(long id, String error, long retryInSeconds) {
+            failedIds.add(id);
+            retryDelays.add(retryInSeconds);
+        }
+    }
+
+    private static final class FakePublisher extends MqttPublisher {
+        private final String failingTopic;
+        private final List<String> topics = new ArrayList<>();
+
+        private FakePublisher(String failingTopic) {
+            super(null);
+            this.failingTopic = failingTopic;
+        }
+
+        @Override
+        public CompletableFuture<Void> publishAsync(String topic, String jsonPayload, int qos) {
+            topics.add(topic);
+            return topic.equals(failingTopic)
+                    ? CompletableFuture.failedFuture(new IllegalStateException("broker down"))
+                    : CompletableFuture.completedFuture(null);
+        }
+    }
+}
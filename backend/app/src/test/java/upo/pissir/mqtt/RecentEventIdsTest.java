@@ -0,0 +1,54 @@
+package upo.pissir.mqtt;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.dto.EntryAcceptedEvent;
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.dto.TollPriceRequestEvent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentEventIdsTest {
+
+    @Test
+    void repeatedKeyIsDuplicateUntilEvictedOrForgotten() {
+        RecentEventIds ids = new RecentEventIds(2);
+
+        assertTrue(ids.firstSeen("a"));
+        assertFalse(ids.firstSeen("a"));
+
+        ids.forget("a");
+        assertTrue(ids.firstSeen("a"));
+
+        assertTrue(ids.firstSeen("b"));
+        assertTrue(ids.firstSeen("c"));
+        // "a" was the eldest and has been evicted
+        assertTrue(ids.firstSeen("a"));
+
+        assertEquals(1, ids.stats().duplicates());
+        assertEquals(2, ids.stats().size());
+    }
+
+    @Test
+    void nullKeyAndZeroCapacityAreNeverDuplicates() {
+        RecentEventIds ids = new RecentEventIds(0);
+        assertTrue(ids.firstSeen("a"));
+        assertTrue(ids.firstSeen("a"));
+        assertTrue(new RecentEventIds(8).firstSeen(null));
+    }
+
+    @Test
+    void dedupKeyPrefersPublisherEventId() {
+        String topic = "highway/VC_Est/entry/manual/events";
+        EntryAcceptedEvent withId = new EntryAcceptedEvent("2026-03-07T10:00:00Z", "AB123CD", "TCK-1", null, "evt-1");
+        EntryAcceptedEvent withoutId = new EntryAcceptedEvent("2026-03-07T10:00:00Z", "AB123CD", "TCK-1", null, null);
+        ExitCompletedEvent noTimestamp = new ExitCompletedEvent(null, "VC_Est", 720, null, "TP-1", null, null);
+
+        assertEquals("evt-1", withId.dedupKey(topic));
+        assertEquals(topic + "|2026-03-07T10:00:00Z|TCK-1", withoutId.dedupKey(topic));
+        assertNull(noTimestamp.dedupKey(topic));
+        assertNull(new TollPriceRequestEvent(null, null, null, null, null, null, null).dedupKey(topic));
+    }
+}
@@ -0,0 +1,36 @@
+package upo.pissir.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FareMatrixTest {
+
+    @Test
+    void looksUpDirectedFares() {
+        FareMatrix matrix = FareMatrix.build(List.of(
+                new FareRepository.FareRow(1, "VC_Est", "MI_Ovest", 720, "EUR"),
+                new FareRepository.FareRow(2, "MI_Ovest", "VC_Est", 710, "EUR"),
+                new FareRepository.FareRow(3, "VC_Est", "MI_Est", 650, "EUR")
+        ), 7);
+
+        assertEquals(720, matrix.fareCents("VC_Est", "MI_Ovest"));
+        assertEquals(710, matrix.fareCents("MI_Ovest", "VC_Est"));
+        assertEquals(650, matrix.fareCents("VC_Est", "MI_Est"));
+        assertEquals(7L, matrix.version());
+    }
+
+    @Test
+    void missingPairsReturnNoFare() {
+        FareMatrix matrix = FareMatrix.build(List.of(
+                new FareRepository.FareRow(1, "VC_Est", "MI_Ovest", 720, "EUR")
+        ), 0);
+
+        assertEquals(FareMatrix.NO_FARE, matrix.fareCents("MI_Ovest", "VC_Est"));
+        assertEquals(FareMatrix.NO_FARE, matrix.fareCents("VC_Est", "TO_Nord"));
+        assertEquals(FareMatrix.NO_FARE, matrix.fareCents(null, "MI_Ovest"));
+        assertEquals(FareMatrix.NO_FARE, FareMatrix.build(List.of(), 0).fareCents("A", "B"));
+    }
+}
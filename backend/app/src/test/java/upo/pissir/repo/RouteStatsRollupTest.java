@@ -0,0 +1,54 @@
+package upo.pissir.repo;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.repo.RouteStatsRollup.Segment;
+import upo.pissir.repo.RouteStatsRollup.Source;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RouteStatsRollupTest {
+
+    @Test
+    void unboundedRangeReadsOnlyDailyRollup() {
+        assertEquals(List.of(new Segment(Source.DAILY, null, null)), RouteStatsRollup.plan(null, null));
+    }
+
+    @Test
+    void splitsRangeIntoRawHoursDaysHoursRaw() {
+        List<Segment> plan = RouteStatsRollup.plan(
+                Instant.parse("2026-03-01T22:15:00Z"),
+                Instant.parse("2026-03-04T02:30:00Z")
+        );
+
+        assertEquals(List.of(
+                new Segment(Source.RAW, at("2026-03-01T22:15:00Z"), at("2026-03-01T23:00:00Z")),
+                new Segment(Source.HOURLY, at("2026-03-01T23:00:00Z"), at("2026-03-02T00:00:00Z")),
+                new Segment(Source.DAILY, at("2026-03-02T00:00:00Z"), at("2026-03-04T00:00:00Z")),
+                new Segment(Source.HOURLY, at("2026-03-04T00:00:00Z"), at("2026-03-04T02:00:00Z")),
+                new Segment(Source.RAW, at("2026-03-04T02:00:00Z"), at("2026-03-04T02:30:00.000001Z"))
+        ), plan);
+    }
+
+    @Test
+    void rangeInsideOneHourIsRawOnly() {
+        assertEquals(
+                List.of(new Segment(Source.RAW, at("2026-03-01T10:05:00Z"), at("2026-03-01T10:50:00.000001Z"))),
+                RouteStatsRollup.plan(at("2026-03-01T10:05:00Z"), at("2026-03-01T10:50:00Z"))
+        );
+    }
+
+    @Test
+    void openEndedRangeUsesDailyUpToNow() {
+        assertEquals(List.of(
+                new Segment(Source.HOURLY, at("2026-03-01T23:00:00Z"), at("2026-03-02T00:00:00Z")),
+                new Segment(Source.DAILY, at("2026-03-02T00:00:00Z"), null)
+        ), RouteStatsRollup.plan(at("2026-03-01T23:00:00Z"), null));
+    }
+
+    private static Instant at(String raw) {
+        return Instant.parse(raw);
+    }
+}
@@ -0,0 +1,44 @@
+package upo.pissir.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TollboothGeometryTest {
+
+    private final TollboothGeometry geometry = TollboothGeometry.build(List.of(
+            new TollboothRepository.TollboothRow("VC_Est", "A4", 53.4, "Piemonte", null),
+            new TollboothRepository.TollboothRow("MI_Ovest", "A4", 126.1, "Lombardia", null),
+            new TollboothRepository.TollboothRow("AT_Est", "A21", 32.7, "Piemonte", null),
+            new TollboothRepository.TollboothRow("NEW", "A4", null, "Lombardia", null)
+    ));
+
+    @Test
+    void distanceIsSymmetricOnSameRoad() {
+        assertEquals(72.7, geometry.distanceKm("VC_Est", "MI_Ovest"), 1e-9);
+        assertEquals(72.7, geometry.distanceKm("MI_Ovest", "VC_Est"), 1e-9);
+        assertEquals(0.0, geometry.distanceKm("VC_Est", "VC_Est"), 1e-9);
+    }
+
+    @Test
+    void distanceUndefinedAcrossRoadsOrWithoutMarker() {
+        assertNull(geometry.distanceKm("VC_Est", "AT_Est"));
+        assertNull(geometry.distanceKm("VC_Est", "NEW"));
+        assertNull(geometry.distanceKm("VC_Est", "UNKNOWN"));
+        assertNull(geometry.distanceKm(null, "VC_Est"));
+    }
+
+    @Test
+    void pairDistanceMatchesTheTable() {
+        TollboothRepository.TollboothRow vc = new TollboothRepository.TollboothRow("VC_Est", "A4", 53.4, "Piemonte", null);
+        TollboothRepository.TollboothRow mi = new TollboothRepository.TollboothRow("MI_Ovest", "A4", 126.1, "Lombardia", null);
+        TollboothRepository.TollboothRow at = new TollboothRepository.TollboothRow("AT_Est", "A21", 32.7, "Piemonte", null);
+
+        assertEquals(geometry.distanceKm("VC_Est", "MI_Ovest"), TollboothGeometry.distanceKm(vc, mi), 1e-9);
+        assertNull(TollboothGeometry.distanceKm(vc, at));
+        assertNull(TollboothGeometry.distanceKm(vc, null));
+    }
+}
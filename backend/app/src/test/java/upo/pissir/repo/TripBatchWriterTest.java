@@ -0,0 +1,257 @@
+package upo.pissir.repo;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TripBatchWriterTest {
+    private static final Instant ENTRY_AT = Instant.parse("2026-03-07T10:00:00Z");
+    private static final Instant EXIT_AT = Instant.parse("2026-03-07T11:00:00Z");
+
+    @Test
+    void futuresCompleteOnlyOnceTheBatchIsCommitted() throws Exception {
+        FakeDb db = new FakeDb();
+        db.commitGate = new CountDownLatch(1);
+        TripBatchWriter writer = new TripBatchWriter(db.dataSource(), 64, 50);
+        writer.start();
+        try {
+            List<CompletableFuture<Boolean>> done = List.of(
+                    insert(writer, "e-1"),
+                    insert(writer, "e-2"),
+                    writer.close(7L, ENTRY_AT, "MI_Ovest", EXIT_AT, 720, 72.7, false, true, false, "x-1"));
+
+            assertTrue(db.commitReached.await(5, TimeUnit.SECONDS));
+            assertTrue(done.stream().noneMatch(CompletableFuture::isDone));
+
+            db.commitGate.countDown();
+            for (CompletableFuture<Boolean> f : done) {
+                assertTrue(f.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, db.commits);
+            assertEquals(List.of("e-1", "e-2", "x-1"), db.committed);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void failingRowCompletesExceptionallyAloneAndTheRestCommits() throws Exception {
+        FakeDb db = new FakeDb();
+        db.failingEvent = "e-bad";
+        TripBatchWriter writer = new TripBatchWriter(db.dataSource(), 64, 50);
+        writer.start();
+        try {
+            CompletableFuture<Boolean> first = insert(writer, "e-1");
+            CompletableFuture<Boolean> bad = insert(writer, "e-bad");
+            CompletableFuture<Boolean> last = insert(writer, "e-3");
+
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertTrue(last.get(5, TimeUnit.SECONDS));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+            assertEquals(1, db.rollbacks);
+            assertEquals(List.of("e-1", "e-3"), db.committed);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void duplicateInsertCompletesWithFalse() throws Exception {
+        FakeDb db = new FakeDb();
+        db.claimedEvent = "e-dup";
+        TripBatchWriter writer = new TripBatchWriter(db.dataSource(), 64, 50);
+        writer.start();
+        try {
+            CompletableFuture<Boolean> fresh = insert(writer, "e-1");
+            CompletableFuture<Boolean> dup = insert(writer, "e-dup");
+
+            assertTrue(fresh.get(5, TimeUnit.SECONDS));
+            assertFalse(dup.get(5, TimeUnit.SECONDS));
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void closeThatChangesNothingCompletesWithFalse() throws Exception {
+        FakeDb db = new FakeDb();
+        db.claimedEvent = "x-dup";
+        TripBatchWriter writer = new TripBatchWriter(db.dataSource(), 64, 50);
+        writer.start();
+        try {
+            CompletableFuture<Boolean> closed = writer.close(7L, ENTRY_AT, "MI_Ovest", EXIT_AT, 720, null, false, true, false, "x-1");
+            CompletableFuture<Boolean> dup = writer.close(8L, ENTRY_AT, "MI_Ovest", EXIT_AT, 720, null, false, true, false, "x-dup");
+
+            assertTrue(closed.get(5, TimeUnit.SECONDS));
+            assertFalse(dup.get(5, TimeUnit.SECONDS));
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void stopDrainsTheQueuedWorkBeforeReturning() throws Exception {
+        FakeDb db = new FakeDb();
+        db.connectionGate = new CountDownLatch(1);
+        TripBatchWriter writer = new TripBatchWriter(db.dataSource(), 64, 0);
+        writer.start();
+
+        CompletableFuture<Boolean> inFlight = insert(writer, "e-1");
+        // the flusher holds e-1 and waits for a connection: the next ones stay queued
+        assertTrue(db.connectionRequested.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued1 = insert(writer, "e-2");
+        CompletableFuture<Boolean> queued2 = writer.close(7L, ENTRY_AT, "MI_Ovest", EXIT_AT, 720, null, false, false, true, "x-1");
+
+        Thread stopper = new Thread(() -> {
+            try {
+                writer.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopper.start();
+        // stop() has flagged the writer and is waiting for the flusher before e-1 gets its connection
+        while (stopper.getState() != Thread.State.TIMED_WAITING) {
+            Thread.onSpinWait();
+        }
+        db.connectionGate.countDown();
+        stopper.join(10_000);
+
+        assertFalse(stopper.isAlive());
+        assertTrue(inFlight.isDone() && queued1.isDone() && queued2.isDone());
+        assertTrue(inFlight.get() && queued1.get() && queued2.get());
+        assertEquals(List.of("e-1", "e-2", "x-1"), db.committed);
+        // after stop() new work is refused instead of being queued forever
+        assertThrows(ExecutionException.class, () -> insert(writer, "e-late").get(5, TimeUnit.SECONDS));
+    }
+
+    private static CompletableFuture<Boolean> insert(TripBatchWriter writer, String eventId) {
+        return writer.insert("VC_Est", "AB123CD", "T-" + eventId, null, ENTRY_AT, eventId);
+    }
+
+    // JDBC without a database, one connection at a time (the flusher is single-threaded).
+    // Rows are keyed by their first parameter, the event id in both INSERT_TRIP_SQL and CLOSE_TRIP_SQL;
+    // batched rows become visible in committed only on commit.
+    private static final class FakeDb {
+        String failingEvent;
+        String claimedEvent;
+        CountDownLatch connectionGate;
+        CountDownLatch commitGate;
+        final CountDownLatch connectionRequested = new CountDownLatch(1);
+        final CountDownLatch commitReached = new CountDownLatch(1);
+        final List<String> committed = new ArrayList<>();
+        final List<String> pending = new ArrayList<>();
+        volatile int commits;
+        volatile int rollbacks;
+        boolean autoCommit = true;
+
+        DataSource dataSource() {
+            return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, args) -> "getConnection".equals(method.getName()) ? connection() : null);
+        }
+
+        private Connection connection() {
+            connectionRequested.countDown();
+            if (connectionGate != null) awaitUninterruptibly(connectionGate);
+            InvocationHandler handler = (p, m, a) -> switch (m.getName()) {
+                case "prepareStatement" -> statement();
+                case "setAutoCommit" -> {
+                    autoCommit = (Boolean) a[0];
+                    yield null;
+                }
+                case "commit" -> {
+                    commitReached.countDown();
+                    if (commitGate != null) awaitUninterruptibly(commitGate);
+                    synchronized (committed) {
+                        committed.addAll(pending);
+                    }
+                    pending.clear();
+                    commits++;
+                    yield null;
+                }
+                case "rollback" -> {
+                    pending.clear();
+                    rollbacks++;
+                    yield null;
+                }
+                case "getAutoCommit" -> autoCommit;
+                default -> null;
+            };
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+
+        private PreparedStatement statement() {
+            String[] key = new String[1];
+            List<String> batch = new ArrayList<>();
+            InvocationHandler handler = (p, m, a) -> switch (m.getName()) {
+                case "setString" -> {
+                    if ((Integer) a[0] == 1) key[0] = (String) a[1];
+                    yield null;
+                }
+                case "addBatch" -> {
+                    batch.add(key[0]);
+                    yield null;
+                }
+                case "executeBatch" -> {
+                    if (batch.contains(failingEvent)) throw new SQLException("constraint violation");
+                    pending.addAll(batch);
+                    int[] counts = new int[batch.size()];
+                    Arrays.fill(counts, 1);
+                    for (int k = 0; k < batch.size(); k++) {
+                        if (batch.get(k).equals(claimedEvent)) counts[k] = 0;
+                    }
+                    batch.clear();
+                    yield counts;
+                }
+                case "executeUpdate" -> {
+                    if (key[0].equals(failingEvent)) throw new SQLException("constraint violation");
+                    if (key[0].equals(claimedEvent)) yield 0;
+                    if (autoCommit) {
+                        synchronized (committed) {
+                            committed.add(key[0]);
+                        }
+                    } else {
+                        pending.add(key[0]);
+                    }
+                    yield 1;
+                }
+                default -> null;
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
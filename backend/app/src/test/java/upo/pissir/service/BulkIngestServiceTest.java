@@ -0,0 +1,137 @@
+package upo.pissir.service;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.dto.BulkIngestResponse;
+import upo.pissir.repo.BulkIngestRepository;
+import upo.pissir.repo.TollboothRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkIngestServiceTest {
+
+    private static final String ENTRY = """
+            {"type":"ENTRY_ACCEPTED","tollboothId":"VC_Est","channel":"manual","timestamp":"2026-03-07T10:00:00Z","plate":"AB123CD","ticketId":"T-1","eventId":"e-1"}""";
+    private static final String EXIT = """
+            {"type":"EXIT_COMPLETED","tollboothId":"MI_Ovest","channel":"manual","timestamp":"2026-03-07T11:00:00Z","entryTollboothId":"VC_Est","amountCents":720,"ticketId":"T-1","eventId":"e-2"}""";
+    private static final String TELEPASS_ENTRY = """
+            {"type":"ENTRY_ACCEPTED","tollboothId":"MI_Ovest","channel":"telepass","timestamp":"2026-03-07T10:30:00Z","plate":"ZZ999ZZ","telepassId":"TP-9"}""";
+
+    @Test
+    void parseStagesValidLinesAndRejectsTheRest() {
+        BulkIngestService service = new BulkIngestService(new FakeBulkIngestRepository(), new FakeTollboothRepository(),
+                null, null, 10);
+        String body = String.join("\n",
+                ENTRY,
+                "",
+                EXIT,
+                "{not json",
+                "{\"type\":\"EXIT_COMPLETED\",\"tollboothId\":\"MI_Ovest\",\"channel\":\"manual\",\"timestamp\":\"2026-03-07T11:00:00Z\",\"ticketId\":\"T-2\"}",
+                "{\"type\":\"ENTRY_ACCEPTED\",\"tollboothId\":\"VC_Est\",\"channel\":\"telepass\",\"plate\":\"AB123CD\",\"telepassId\":\"TP-1\"}",
+                TELEPASS_ENTRY);
+
+        BulkIngestService.Batch batch = service.parse(new StringReader(body));
+
+        assertEquals(3, batch.staged().size());
+        BulkIngestRepository.StagedEvent entry = batch.staged().get(0);
+        assertEquals(1, entry.line());
+        assertEquals(BulkIngestRepository.ENTRY, entry.kind());
+        assertEquals("T-1", entry.passId());
+        assertEquals("e-1", entry.eventKey());
+        assertEquals(Instant.parse("2026-03-07T10:00:00Z"), entry.timestamp());
+
+        BulkIngestRepository.StagedEvent exit = batch.staged().get(1);
+        assertEquals(3, exit.line());
+        assertEquals(720, exit.amountCents());
+        assertEquals(72.7, exit.distanceKm(), 0.0001);
+
+        // without eventId: the key the MQTT path derives from topic, timestamp and pass id
+        assertEquals("highway/MI_Ovest/entry/telepass/events|2026-03-07T10:30:00Z|TP-9", batch.staged().get(2).eventKey());
+
+        assertEquals(List.of(4, 5, 6), batch.invalid().stream().map(BulkIngestResponse.Result::line).toList());
+        assertEquals("invalid JSON", batch.invalid().get(0).error());
+        assertEquals("missing entryTollboothId/amountCents", batch.invalid().get(1).error());
+        assertEquals("missing timestamp", batch.invalid().get(2).error());
+    }
+
+    @Test
+    void rejectsBatchesAboveTheLimit() {
+        BulkIngestService service = new BulkIngestService(new FakeBulkIngestRepository(), null, null, null, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> service.parse(new StringReader(ENTRY + "\n" + EXIT)));
+    }
+
+    @Test
+    void reportsOutcomesPerLineAndSkipsTripsOpenedAndClosedInTheBatch() {
+        FakeBulkIngestRepository repo = new FakeBulkIngestRepository();
+        repo.outcomes.add(new BulkIngestRepository.Outcome(1, BulkIngestRepository.OPENED, 10L));
+        repo.outcomes.add(new BulkIngestRepository.Outcome(2, BulkIngestRepository.CLOSED, 10L));
+        repo.outcomes.add(new BulkIngestRepository.Outcome(3, BulkIngestRepository.OPENED, 11L));
+        ActiveTripIndex index = new ActiveTripIndex();
+        BulkIngestService service = new BulkIngestService(repo, null, index, null, 10);
+
+        BulkIngestResponse out = service.ingest(body(ENTRY, EXIT, TELEPASS_ENTRY, "[]"));
+
+        assertEquals(4, out.events());
+        assertEquals(2, out.opened());
+        assertEquals(1, out.closed());
+        assertEquals(1, out.invalid());
+        assertEquals("e-2", out.results().get(1).eventId());
+        assertEquals(10L, out.results().get(1).tripId());
+        assertEquals(BulkIngestService.INVALID, out.results().get(3).outcome());
+        assertNull(index.findByTicket("T-1"));
+        assertNotNull(index.findByTelepass("TP-9"));
+    }
+
+    @Test
+    void csvRowQuotesTextAndLeavesNullsEmpty() {
+        BulkIngestRepository.StagedEvent e = new BulkIngestRepository.StagedEvent(7, "exit", "MI_Ovest", "manual", "T-1",
+                null, Instant.parse("2026-03-07T11:00:00Z"), "VC_Est", 720, null, "k", "{\"a\":\"b,c\"}");
+        StringBuilder sb = new StringBuilder();
+
+        BulkIngestRepository.appendCsvRow(sb, e);
+
+        assertEquals("7,\"exit\",\"MI_Ovest\",\"manual\",\"T-1\",,\"2026-03-07T11:00:00Z\",\"VC_Est\",720,,\"k\","
+                + "\"{\"\"a\"\":\"\"b,c\"\"}\"\n", sb.toString());
+    }
+
+    private static ByteArrayInputStream body(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class FakeBulkIngestRepository extends BulkIngestRepository {
+        private final List<Outcome> outcomes = new ArrayList<>();
+
+        private FakeBulkIngestRepository() {
+            super(null);
+        }
+
+        @Override
+        public List<Outcome> ingest(List<StagedEvent> events) {
+            return outcomes;
+        }
+    }
+
+    private static final class FakeTollboothRepository extends TollboothRepository {
+        private FakeTollboothRepository() {
+            super(null);
+        }
+
+        @Override
+        public List<TollboothRow> findAll() {
+            return List.of(
+                    new TollboothRow("VC_Est", "A4", 53.4, "Piemonte", "Casello Vercelli Est"),
+                    new TollboothRow("MI_Ovest", "A4", 126.1, "Lombardia", "Casello Milano Ovest")
+            );
+        }
+    }
+}
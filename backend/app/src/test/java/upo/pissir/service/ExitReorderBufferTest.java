@@ -0,0 +1,96 @@
+package upo.pissir.service;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.dto.ExitCompletedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExitReorderBufferTest {
+
+    private static ExitCompletedEvent exit(String telepassId) {
+        return new ExitCompletedEvent("2026-03-07T10:40:00Z", "VC_Est", 720, null, telepassId, null, null);
+    }
+
+    @Test
+    void unmatchedExitIsDeadLetteredWhenItsSlotComesRound() {
+        TollProcessingServiceTest.FakeDeadLetterRepository deadLetters = new TollProcessingServiceTest.FakeDeadLetterRepository();
+        // 300 ms window, 100 ms ticks: expires on the third tick
+        ExitReorderBuffer buffer = new ExitReorderBuffer(deadLetters, 300, 100, 16);
+
+        buffer.park("MI_Ovest", "telepass", "TP-1", exit("TP-1"));
+        buffer.tick();
+        buffer.tick();
+        assertEquals(List.of(), deadLetters.reasons);
+
+        buffer.tick();
+        assertEquals(List.of("no_entry:TP-1"), deadLetters.reasons);
+        assertNull(buffer.take("telepass", "TP-1"));
+        assertEquals(new ExitReorderBuffer.Stats(1, 0, 1, 0), buffer.stats());
+    }
+
+    @Test
+    void takenExitDoesNotExpire() {
+        TollProcessingServiceTest.FakeDeadLetterRepository deadLetters = new TollProcessingServiceTest.FakeDeadLetterRepository();
+        ExitReorderBuffer buffer = new ExitReorderBuffer(deadLetters, 100, 100, 16);
+
+        buffer.park("MI_Ovest", "telepass", "TP-1", exit("TP-1"));
+        ExitReorderBuffer.Parked parked = buffer.take("telepass", "TP-1");
+        assertNotNull(parked);
+        assertEquals("MI_Ovest", parked.exitTollboothId());
+
+        buffer.tick();
+        buffer.tick();
+        assertEquals(List.of(), deadLetters.reasons);
+    }
+
+    @Test
+    void expiryRetryIsHandedToTheExecutorUnderThePassId() {
+        TollProcessingServiceTest.FakeDeadLetterRepository deadLetters = new TollProcessingServiceTest.FakeDeadLetterRepository();
+        ExitReorderBuffer buffer = new ExitReorderBuffer(deadLetters, 100, 100, 16);
+        List<String> keys = new ArrayList<>();
+        List<Runnable> queued = new ArrayList<>();
+        List<String> retried = new ArrayList<>();
+        buffer.onExpiry(p -> retried.add(p.passId()));
+        buffer.retryOn((key, work) -> keys.add(key) && queued.add(work));
+
+        buffer.park("MI_Ovest", "telepass", "TP-1", exit("TP-1"));
+        buffer.tick();
+        // nothing ran on the wheel thread
+        assertEquals(List.of("TP-1"), keys);
+        assertEquals(List.of(), retried);
+
+        queued.get(0).run();
+        assertEquals(List.of("TP-1"), retried);
+        assertEquals(List.of(), deadLetters.reasons);
+
+        // a refused submission is dead-lettered at once
+        buffer.retryOn((key, work) -> false);
+        buffer.park("MI_Ovest", "telepass", "TP-2", exit("TP-2"));
+        buffer.tick();
+        assertEquals(List.of("no_entry:TP-2"), deadLetters.reasons);
+    }
+
+    @Test
+    void overflowSupersededAndDisabledWindowGoStraightToDeadLetter() {
+        TollProcessingServiceTest.FakeDeadLetterRepository deadLetters = new TollProcessingServiceTest.FakeDeadLetterRepository();
+        ExitReorderBuffer buffer = new ExitReorderBuffer(deadLetters, 1000, 100, 1);
+
+        buffer.park("MI_Ovest", "telepass", "TP-1", exit("TP-1"));
+        buffer.park("MI_Ovest", "telepass", "TP-2", exit("TP-2"));
+        assertEquals(List.of("reorder_buffer_full:TP-2"), deadLetters.reasons);
+
+        ExitReorderBuffer same = new ExitReorderBuffer(deadLetters, 1000, 100, 4);
+        same.park("MI_Ovest", "telepass", "TP-3", exit("TP-3"));
+        same.park("AT_Est", "telepass", "TP-3", exit("TP-3"));
+        assertEquals("superseded:TP-3", deadLetters.reasons.get(1));
+        assertEquals("AT_Est", same.take("telepass", "TP-3").exitTollboothId());
+
+        new ExitReorderBuffer(deadLetters, 0, 100, 4).park("MI_Ovest", "manual", "TCK-1", exit(null));
+        assertEquals("no_entry:TCK-1", deadLetters.reasons.get(2));
+    }
+}
@@ -1,45 +1,45 @@
 package upo.pissir.service;
 
 import org.junit.jupiter.api.Test;
+import upo.pissir.dto.DeviceFaultEvent;
 import upo.pissir.dto.FaultReplyRequest;
 import upo.pissir.dto.FaultResponse;
-import upo.pissir.mqtt.MqttPublisher;
 import upo.pissir.repo.FaultRepository;
 
 import java.time.Instant;
 import java.util.List;
-import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class FaultServiceTest {
 
     @Test
     void recordFaultRejectsInvalidSeverity() {
-        FaultService service = new FaultService(new FakeFaultRepository(), new FakeMqttPublisher());
+        FaultService service = new FaultService(new FakeFaultRepository(), null);
 
         assertThrows(IllegalArgumentException.class, () -> service.recordFault(
                 "MI_Ovest",
                 "exit",
                 "telepass",
-                Map.of("code", "CAMERA_UNAVAILABLE", "message", "camera down", "severity", "INFO")
+                new DeviceFaultEvent(null, "CAMERA_UNAVAILABLE", "camera down", "INFO")
         ));
     }
 
     @Test
-    void respondPublishesMessageAndMarksFault() {
+    void respondQueuesMessageAndMarksFault() {
         FakeFaultRepository repo = new FakeFaultRepository();
         repo.row = new FaultRepository.FaultRow(
                 7L, "MI_Ovest", "exit", "telepass", "CAMERA_UNAVAILABLE", "camera down",
                 "ERROR", "OPEN", null, Instant.parse("2026-03-07T10:00:00Z"), null
         );
-        FakeMqttPublisher publisher = new FakeMqttPublisher();
-        FaultService service = new FaultService(repo, publisher);
+        FaultService service = new FaultService(repo, null);
 
         FaultResponse out = service.respondToFault(7L, new FaultReplyRequest("ACK", "Technician notified"));
 
-        assertEquals("highway/MI_Ovest/exit/telepass/service", publisher.lastTopic);
+        assertEquals("highway/MI_Ovest/exit/telepass/service", repo.lastOutboxTopic);
+        assertTrue(repo.lastOutboxPayload.contains("\"type\":\"SERVICE_RESPONSE\""));
         assertEquals(7L, repo.lastRespondedId);
         assertEquals("ACK", repo.lastBackendAction);
         assertEquals("RESPONDED", out.status());
@@ -53,7 +53,7 @@ class FaultServiceTest {
                 8L, "MI_Ovest", "exit", "telepass", "CAMERA_UNAVAILABLE", "camera down",
                 "ERROR", "RESPONDED", "ACK", Instant.parse("2026-03-07T10:00:00Z"), Instant.parse("2026-03-07T10:05:00Z")
         );
-        FaultService service = new FaultService(repo, new FakeMqttPublisher());
+        FaultService service = new FaultService(repo, null);
 
         assertThrows(IllegalStateException.class,
                 () -> service.respondToFault(8L, new FaultReplyRequest("ACK", "Already handled")));
@@ -63,6 +63,8 @@ class FaultServiceTest {
         private FaultRow row;
         private long lastRespondedId = -1L;
         private String lastBackendAction;
+        private String lastOutboxTopic;
+        private String lastOutboxPayload;
 
         private FakeFaultRepository() {
             super(null);
@@ -85,28 +87,18 @@ class FaultServiceTest {
         }
 
         @Override
-        public boolean markResponded(long id, String backendAction, Instant respondedAt) {
+        public boolean markRespondedWithMessage(long id, String backendAction, Instant respondedAt,
+                                                String topic, String payload, int qos) {
             if (row == null || row.id() != id || !"OPEN".equals(row.status())) {
                 return false;
             }
             lastRespondedId = id;
             lastBackendAction = backendAction;
+            lastOutboxTopic = topic;
+            lastOutboxPayload = payload;
             row = new FaultRow(row.id(), row.tollboothId(), row.direction(), row.channel(), row.code(), row.message(),
                     row.severity(), "RESPONDED", backendAction, row.createdAt(), respondedAt);
             return true;
         }
     }
-
-    private static final class FakeMqttPublisher extends MqttPublisher {
-        private String lastTopic;
-
-        private FakeMqttPublisher() {
-            super(null);
-        }
-
-        @Override
-        public void publish(String topic, String jsonPayload, int qos) {
-            lastTopic = topic;
-        }
-    }
 }
@@ -8,7 +8,10 @@ import upo.pissir.repo.DeviceRepository;
 import upo.pissir.repo.FareRepository;
 import upo.pissir.repo.TollboothRepository;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -114,6 +117,23 @@ class InfrastructureServiceTest {
         assertThrows(IllegalStateException.class, () -> service.setDeviceEnabled(42L, true));
     }
 
+    @Test
+    void faresSnapshotIsReusedUntilAFareChanges() {
+        FakeFareRepository fareRepo = new FakeFareRepository();
+        InfrastructureService service = new InfrastructureService(new FakeTollboothRepository(), fareRepo);
+
+        JsonSnapshot first = service.faresSnapshot();
+        assertEquals(first, service.faresSnapshot());
+        assertEquals(1, fareRepo.findAllCalls);
+
+        service.updateFare(1L, 900);
+        fareRepo.amount = 900;
+        JsonSnapshot second = service.faresSnapshot();
+        assertEquals(2, fareRepo.findAllCalls);
+        assertNotEquals(first.etag(), second.etag());
+        assertTrue(second.matches(second.etag()));
+    }
+
     private static final class FakeTollboothRepository extends TollboothRepository {
         private final boolean existsResult;
         private String lastUpdatedId;
@@ -159,11 +179,19 @@ class InfrastructureServiceTest {
         private int lastUpdatedAmount = -1;
         private long lastDeletedId = -1;
         private boolean deleteCalled = false;
+        private int findAllCalls = 0;
+        private int amount = 720;
 
         private FakeFareRepository() {
             super(null);
         }
 
+        @Override
+        public List<FareRow> findAll() {
+            findAllCalls++;
+            return List.of(new FareRow(1L, "VC_Est", "MI_Ovest", amount, "EUR"));
+        }
+
         @Override
         public boolean updateFare(long id, int amountCents) {
             lastUpdatedId = id;
@@ -0,0 +1,70 @@
+package upo.pissir.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonSnapshotCacheTest {
+
+    @Test
+    void serializesOnceUntilInvalidated() {
+        JsonSnapshotCache cache = new JsonSnapshotCache(0);
+        AtomicInteger loads = new AtomicInteger();
+
+        JsonSnapshot first = cache.get("k", () -> {
+            loads.incrementAndGet();
+            return List.of("a", "b");
+        });
+        JsonSnapshot again = cache.get("k", () -> {
+            loads.incrementAndGet();
+            return List.of("a", "b");
+        });
+
+        assertSame(first, again);
+        assertEquals(1, loads.get());
+        assertEquals("[\"a\",\"b\"]", new String(first.body(), StandardCharsets.UTF_8));
+
+        cache.invalidate();
+        JsonSnapshot rebuilt = cache.get("k", () -> {
+            loads.incrementAndGet();
+            return List.of("a", "b");
+        });
+        assertEquals(2, loads.get());
+        // same content, same strong ETag
+        assertEquals(first.etag(), rebuilt.etag());
+    }
+
+    @Test
+    void rebuildsAfterMaxAge() {
+        AtomicLong now = new AtomicLong(1_000);
+        JsonSnapshotCache cache = new JsonSnapshotCache(500, now::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("k", () -> loads.incrementAndGet());
+        now.addAndGet(499);
+        cache.get("k", () -> loads.incrementAndGet());
+        now.addAndGet(1);
+        cache.get("k", () -> loads.incrementAndGet());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void ifNoneMatchHandlesListsWeakTagsAndWildcard() {
+        JsonSnapshot s = new JsonSnapshot(new byte[0], "\"abc\"");
+
+        assertTrue(s.matches("\"abc\""));
+        assertTrue(s.matches("\"x\", W/\"abc\""));
+        assertTrue(s.matches("*"));
+        assertFalse(s.matches("\"abd\""));
+        assertFalse(s.matches(null));
+    }
+}
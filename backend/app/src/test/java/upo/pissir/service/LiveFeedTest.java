@@ -0,0 +1,128 @@
+package upo.pissir.service;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.dto.FaultResponse;
+import upo.pissir.json.Json;
+import upo.pissir.repo.TripRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveFeedTest {
+    private static final Instant T0 = Instant.parse("2026-01-01T08:00:00Z");
+
+    @Test
+    void subscriberGetsSnapshotFirstThenCoalescedDeltas() {
+        LiveFeed feed = new LiveFeed(250, 16, 15, Runnable::run);
+        feed.warmUp(List.of(new TripRepository.ActiveTripReportRow(1L, "VC_Est", "T-1", null, "AB123CD", T0)), List.of());
+        RecordingSubscriber sub = new RecordingSubscriber();
+        feed.subscribe(sub);
+
+        feed.tripOpened("telepass", "TP-9", "MI_Est", "XY999ZZ", T0.plusSeconds(60));
+        feed.tripClosed("telepass", "TP-9", "VC_Est", T0.plusSeconds(3600), 650);
+        feed.faultRecorded(fault(7L, "OPEN"));
+        feed.flush();
+
+        assertEquals(List.of(LiveFeed.SNAPSHOT_EVENT, LiveFeed.DELTAS_EVENT), sub.events);
+        Map<String, Object> snapshot = Json.parseToMap(sub.data.get(0));
+        assertEquals(1, ((List<?>) snapshot.get("activeTrips")).size());
+
+        List<?> deltas = readList(sub.data.get(1));
+        assertEquals(2, deltas.size());
+        assertEquals("trip.closed", ((Map<?, ?>) deltas.get(0)).get("type"));
+        assertEquals("fault.recorded", ((Map<?, ?>) deltas.get(1)).get("type"));
+    }
+
+    @Test
+    void snapshotReflectsOpenTripsAndFaultsOnly() {
+        LiveFeed feed = new LiveFeed(250, 16, 15, Runnable::run);
+        feed.tripOpened("manual", "T-1", "VC_Est", "AB123CD", T0);
+        feed.tripOpened("manual", "T-2", "VC_Est", "EF456GH", T0);
+        feed.tripClosed("manual", "T-1", "MI_Ovest", T0.plusSeconds(1800), 720);
+        feed.faultRecorded(fault(1L, "OPEN"));
+        feed.faultResponded(fault(1L, "RESPONDED"));
+
+        RecordingSubscriber sub = new RecordingSubscriber();
+        feed.subscribe(sub);
+
+        Map<String, Object> snapshot = Json.parseToMap(sub.data.get(0));
+        List<?> trips = (List<?>) snapshot.get("activeTrips");
+        assertEquals(1, trips.size());
+        assertEquals("T-2", ((Map<?, ?>) trips.get(0)).get("passId"));
+        assertTrue(((List<?>) snapshot.get("openFaults")).isEmpty());
+    }
+
+    @Test
+    void failingSubscriberIsDropped() {
+        LiveFeed feed = new LiveFeed(250, 16, 15, Runnable::run);
+        RecordingSubscriber ok = new RecordingSubscriber();
+        RecordingSubscriber broken = new RecordingSubscriber();
+        feed.subscribe(ok);
+        feed.subscribe(broken);
+        broken.failing = true;
+
+        feed.faultRecorded(fault(3L, "OPEN"));
+        feed.flush();
+
+        assertEquals(1, feed.subscriberCount());
+        assertTrue(broken.closed);
+        assertEquals(2, ok.events.size());
+    }
+
+    @Test
+    void slowSubscriberIsDroppedWhenBacklogIsFull() {
+        List<Runnable> parked = new ArrayList<>();
+        LiveFeed feed = new LiveFeed(250, 2, 15, parked::add);
+        RecordingSubscriber slow = new RecordingSubscriber();
+        feed.subscribe(slow);
+
+        feed.faultRecorded(fault(1L, "OPEN"));
+        feed.flush();
+        feed.faultRecorded(fault(2L, "OPEN"));
+        feed.flush();
+
+        assertEquals(0, feed.subscriberCount());
+        assertTrue(slow.closed);
+    }
+
+    private static List<?> readList(String json) {
+        try {
+            return Json.MAPPER.readValue(json, List.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FaultResponse fault(long id, String status) {
+        return new FaultResponse(id, "VC_Est", "entry", "manual", "E01", "gate stuck", "ERROR", status, null,
+                T0.toString(), null);
+    }
+
+    private static final class RecordingSubscriber implements LiveFeed.Subscriber {
+        private final List<String> events = new ArrayList<>();
+        private final List<String> data = new ArrayList<>();
+        private boolean failing = false;
+        private boolean closed = false;
+
+        @Override
+        public void send(String event, String payload) throws Exception {
+            if (failing) throw new java.io.IOException("broken pipe");
+            events.add(event);
+            data.add(payload);
+        }
+
+        @Override
+        public void keepAlive() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package upo.pissir.service;
 
 import org.junit.jupiter.api.Test;
 import upo.pissir.dto.PaymentResponse;
+import upo.pissir.repo.PaymentTotalsRepository;
 import upo.pissir.repo.TelepassDebtRepository;
 import upo.pissir.repo.TripRepository;
 
@@ -17,7 +18,7 @@ class PaymentServiceTest {
 
     @Test
     void listDebtsByTelepassReturnsRows() {
-        PaymentService service = new PaymentService(new FakeDebtRepo(), new FakeTripRepo());
+        PaymentService service = new PaymentService(new FakeDebtRepo(), new FakeTripRepo(), new FakeTotalsRepo());
 
         List<PaymentResponse> rows = service.listDebtsByTelepass("TP-01");
         assertEquals(1, rows.size());
@@ -28,7 +29,7 @@ class PaymentServiceTest {
     void payDebtMarksDebtAndTrip() {
         FakeDebtRepo debtRepo = new FakeDebtRepo();
         FakeTripRepo tripRepo = new FakeTripRepo();
-        PaymentService service = new PaymentService(debtRepo, tripRepo);
+        PaymentService service = new PaymentService(debtRepo, tripRepo, new FakeTotalsRepo());
 
         PaymentResponse paid = service.payDebt(1L);
         assertEquals("PAID", paid.status());
@@ -37,13 +38,13 @@ class PaymentServiceTest {
 
     @Test
     void payDebtValidatesId() {
-        PaymentService service = new PaymentService(new FakeDebtRepo(), new FakeTripRepo());
+        PaymentService service = new PaymentService(new FakeDebtRepo(), new FakeTripRepo(), new FakeTotalsRepo());
         assertThrows(IllegalArgumentException.class, () -> service.payDebt(0));
     }
 
     @Test
     void summaryReturnsAggregates() {
-        PaymentService service = new PaymentService(new FakeDebtRepo(), new FakeTripRepo());
+        PaymentService service = new PaymentService(new FakeDebtRepo(), new FakeTripRepo(), new FakeTotalsRepo());
         Map<String, Object> summary = service.summary();
 
         assertEquals("EUR", summary.get("currency"));
@@ -74,11 +75,6 @@ class PaymentServiceTest {
         public DebtRow findById(long debtId) {
             return debtId == row.id() ? row : null;
         }
-
-        @Override
-        public long sumOpenDebtCents() {
-            return 100L;
-        }
     }
 
     private static final class FakeTripRepo extends TripRepository {
@@ -93,10 +89,16 @@ class PaymentServiceTest {
             markPaidCalled = true;
             return true;
         }
+    }
+
+    private static final class FakeTotalsRepo extends PaymentTotalsRepository {
+        private FakeTotalsRepo() {
+            super(null);
+        }
 
         @Override
-        public long sumCollectedCents() {
-            return 500L;
+        public Totals read() {
+            return new Totals(100L, 500L);
         }
     }
 }
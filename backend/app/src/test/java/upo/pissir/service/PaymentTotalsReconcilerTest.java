@@ -0,0 +1,53 @@
+package upo.pissir.service;
+
+import org.junit.jupiter.api.Test;
+import upo.pissir.repo.PaymentTotalsRepository;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymentTotalsReconcilerTest {
+
+    @Test
+    void runOnceReportsWhetherDriftWasCorrected() {
+        FakeTotalsRepo repo = new FakeTotalsRepo(List.of(
+                new PaymentTotalsRepository.Totals(0L, 0L),
+                new PaymentTotalsRepository.Totals(-250L, 0L)
+        ));
+        PaymentTotalsReconciler reconciler = new PaymentTotalsReconciler(repo, 0);
+
+        assertFalse(reconciler.runOnce());
+        assertTrue(reconciler.runOnce());
+        assertEquals(2, repo.calls);
+    }
+
+    @Test
+    void startWithoutIntervalSchedulesNothing() {
+        FakeTotalsRepo repo = new FakeTotalsRepo(List.of());
+        PaymentTotalsReconciler reconciler = new PaymentTotalsReconciler(repo, 0);
+
+        reconciler.start();
+        reconciler.stop();
+        assertEquals(0, repo.calls);
+    }
+
+    private static final class FakeTotalsRepo extends PaymentTotalsRepository {
+        private final ArrayDeque<Totals> drifts;
+        private int calls = 0;
+
+        private FakeTotalsRepo(List<Totals> drifts) {
+            super(null);
+            this.drifts = new ArrayDeque<>(drifts);
+        }
+
+        @Override
+        public Totals reconcile() {
+            calls++;
+            return drifts.removeFirst();
+        }
+    }
+}
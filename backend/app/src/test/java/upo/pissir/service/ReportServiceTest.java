@@ -5,11 +5,18 @@ import upo.pissir.dto.RouteStatsResponse;
 import upo.pissir.dto.TripResponse;
 import upo.pissir.repo.TripRepository;
 import upo.pissir.dto.ActiveTripResponse;
+import upo.pissir.dto.PageResponse;
+import upo.pissir.json.Json;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ReportServiceTest {
@@ -19,9 +26,10 @@ class ReportServiceTest {
         FakeTripRepository tripRepo = new FakeTripRepository();
         ReportService service = new ReportService(tripRepo);
 
-        service.listTrips(null, null, null, null, null, null, null);
+        service.listTrips(null, null, null, null, null, null, null, null);
 
-        assertEquals(100, tripRepo.lastLimit);
+        // page size + 1 look-ahead row to detect a next page
+        assertEquals(101, tripRepo.lastLimit);
     }
 
     @Test
@@ -29,9 +37,9 @@ class ReportServiceTest {
         ReportService service = new ReportService(new FakeTripRepository());
 
         assertThrows(IllegalArgumentException.class,
-                () -> service.listTrips(null, null, null, null, null, null, "0"));
+                () -> service.listTrips(null, null, null, null, null, null, "0", null));
         assertThrows(IllegalArgumentException.class,
-                () -> service.listTrips(null, null, null, null, null, null, "501"));
+                () -> service.listTrips(null, null, null, null, null, null, "501", null));
     }
 
     @Test
@@ -39,7 +47,7 @@ class ReportServiceTest {
         ReportService service = new ReportService(new FakeTripRepository());
 
         assertThrows(IllegalArgumentException.class,
-                () -> service.listTrips(null, null, null, null, "foo", null, null));
+                () -> service.listTrips(null, null, null, null, "foo", null, null, null));
     }
 
     @Test
@@ -54,6 +62,7 @@ class ReportServiceTest {
                         null,
                         null,
                         null,
+                        null,
                         null
                 ));
     }
@@ -96,9 +105,9 @@ class ReportServiceTest {
         FakeTripRepository tripRepo = new FakeTripRepository();
         ReportService service = new ReportService(tripRepo);
 
-        service.listActiveTrips(null, null, null);
+        service.listActiveTrips(null, null, null, null);
 
-        assertEquals(100, tripRepo.lastActiveLimit);
+        assertEquals(101, tripRepo.lastActiveLimit);
     }
 
     @Test
@@ -106,7 +115,7 @@ class ReportServiceTest {
         ReportService service = new ReportService(new FakeTripRepository());
 
         assertThrows(IllegalArgumentException.class,
-                () -> service.listActiveTrips(null, "foo", null));
+                () -> service.listActiveTrips(null, "foo", null, null));
     }
 
     @Test
@@ -124,7 +133,7 @@ class ReportServiceTest {
         );
         ReportService service = new ReportService(tripRepo);
 
-        List<ActiveTripResponse> out = service.listActiveTrips("VC_Est", "manual", "50");
+        List<ActiveTripResponse> out = service.listActiveTrips("VC_Est", "manual", "50", null).items();
 
         assertEquals(1, out.size());
         ActiveTripResponse row = out.get(0);
@@ -133,10 +142,97 @@ class ReportServiceTest {
         assertEquals("TCK-001", row.passId());
         assertEquals("manual", row.channel());
         assertEquals("AB123CD", row.plate());
-        assertEquals(50, tripRepo.lastActiveLimit);
+        assertEquals(51, tripRepo.lastActiveLimit);
         assertEquals("manual", tripRepo.lastActiveChannel);
     }
 
+    @Test
+    void fullPageReturnsCursorForTheNextOne() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        tripRepo.tripRows = List.of(
+                trip(30L, "2026-03-01T12:00:00.123456Z"),
+                trip(20L, "2026-03-01T11:00:00Z"),
+                trip(10L, "2026-03-01T10:00:00Z")
+        );
+        ReportService service = new ReportService(tripRepo);
+
+        PageResponse<TripResponse> first = service.listTrips(null, null, null, null, null, null, "2", null);
+        assertEquals(2, first.items().size());
+        assertNotNull(first.nextCursor());
+
+        service.listTrips(null, null, null, null, null, null, "2", first.nextCursor());
+        assertEquals(Instant.parse("2026-03-01T11:00:00Z"), tripRepo.lastAfterEntryAt);
+        assertEquals(20L, tripRepo.lastAfterId);
+
+        tripRepo.tripRows = List.of(trip(10L, "2026-03-01T10:00:00Z"));
+        assertNull(service.listTrips(null, null, null, null, null, null, "2", first.nextCursor()).nextCursor());
+    }
+
+    @Test
+    void cursorKeepsMicrosecondPrecision() {
+        PageCursor cursor = new PageCursor(Instant.parse("2026-03-01T12:00:00.123456Z"), 42L);
+
+        assertEquals(cursor, PageCursor.decode(cursor.encode()));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not-a-cursor"));
+    }
+
+    private static TripResponse trip(long id, String entryAt) {
+        return new TripResponse(id, "VC_Est", null, "TCK-" + id, null, null, entryAt, null, null, "EUR", null, false, false);
+    }
+
+    @Test
+    void exportStreamsNdjsonLines() throws Exception {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        tripRepo.exportRows = List.of(
+                new TripResponse(1L, "VC_Est", "MI_Ovest", "TCK-1", null, "AB123CD",
+                        "2026-03-01T10:00:00Z", "2026-03-01T10:40:00Z", 720, "EUR", 109.5, false, true),
+                new TripResponse(2L, "VC_Est", null, null, "TP-1", null,
+                        "2026-03-01T11:00:00Z", null, null, "EUR", null, false, false)
+        );
+        ReportService service = new ReportService(tripRepo, 250);
+
+        ReportService.TripExport export = service.prepareTripExport(null, null, null, null, "manual", null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = service.exportTrips(export, out);
+
+        assertEquals(2, rows);
+        assertEquals(250, tripRepo.lastFetchSize);
+        assertEquals("manual", tripRepo.lastChannel);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("application/x-ndjson", export.format().contentType());
+        assertEquals(720, Json.parseToMap(lines[0]).get("amountCents"));
+        assertEquals("AB123CD", Json.parseToMap(lines[0]).get("plate"));
+        assertNull(Json.parseToMap(lines[1]).get("exitTollboothId"));
+    }
+
+    @Test
+    void exportWritesCsvWithHeaderAndQuoting() throws Exception {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        tripRepo.exportRows = List.of(
+                new TripResponse(3L, "VC_Est", "MI_Ovest", "TCK-3", null, "AB,\"1\"",
+                        "2026-03-01T10:00:00Z", "2026-03-01T10:40:00Z", 720, "EUR", null, false, true)
+        );
+        ReportService service = new ReportService(tripRepo);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.exportTrips(service.prepareTripExport(null, null, null, null, null, null, "csv"), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals("id,entryTollboothId,exitTollboothId,ticketId,telepassId,plate,"
+                + "entryAt,exitAt,amountCents,currency,avgSpeedKmh,speeding,paid", lines[0]);
+        assertEquals("3,VC_Est,MI_Ovest,TCK-3,,\"AB,\"\"1\"\"\",2026-03-01T10:00:00Z,2026-03-01T10:40:00Z,720,EUR,,false,true",
+                lines[1]);
+    }
+
+    @Test
+    void exportRejectsUnknownFormat() {
+        ReportService service = new ReportService(new FakeTripRepository());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.prepareTripExport(null, null, null, null, null, null, "xml"));
+    }
+
     private static final class FakeTripRepository extends TripRepository {
         private int lastLimit = -1;
         private int lastActiveLimit = -1;
@@ -147,6 +243,11 @@ class ReportServiceTest {
         private String lastActiveChannel;
         private List<RouteStatsRow> routeRows = List.of();
         private List<ActiveTripReportRow> activeRows = List.of();
+        private List<TripResponse> exportRows = List.of();
+        private List<TripResponse> tripRows = List.of();
+        private Instant lastAfterEntryAt;
+        private Long lastAfterId;
+        private int lastFetchSize = -1;
 
         private FakeTripRepository() {
             super(null);
@@ -160,14 +261,41 @@ class ReportServiceTest {
                 String exitTollboothId,
                 String channel,
                 Boolean paid,
+                Instant afterEntryAt,
+                Long afterId,
                 int limit
         ) {
+            this.lastAfterEntryAt = afterEntryAt;
+            this.lastAfterId = afterId;
             this.lastFrom = from;
             this.lastTo = to;
             this.lastChannel = channel;
             this.lastPaid = paid;
             this.lastLimit = limit;
-            return List.of();
+            return tripRows.subList(0, Math.min(limit, tripRows.size()));
+        }
+
+        @Override
+        public long streamTripsForReport(
+                Instant from,
+                Instant to,
+                String entryTollboothId,
+                String exitTollboothId,
+                String channel,
+                Boolean paid,
+                int fetchSize,
+                TripConsumer consumer
+        ) {
+            this.lastChannel = channel;
+            this.lastFetchSize = fetchSize;
+            try {
+                for (TripResponse row : exportRows) {
+                    consumer.accept(row);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return exportRows.size();
         }
 
         @Override
@@ -187,7 +315,8 @@ class ReportServiceTest {
         }
 
         @Override
-        public List<ActiveTripReportRow> findActiveTrips(String entryTollboothId, String channel, int limit) {
+        public List<ActiveTripReportRow> findActiveTrips(String entryTollboothId, String channel,
+                                                         Instant afterEntryAt, Long afterId, int limit) {
             this.lastActiveChannel = channel;
             this.lastActiveLimit = limit;
             return activeRows;
@@ -1,14 +1,17 @@
 package upo.pissir.service;
 
 import org.junit.jupiter.api.Test;
+import upo.pissir.dto.EntryAcceptedEvent;
+import upo.pissir.dto.ExitCompletedEvent;
+import upo.pissir.dto.TollPriceRequestEvent;
+import upo.pissir.repo.DeadLetterRepository;
 import upo.pissir.repo.FareRepository;
-import upo.pissir.repo.TelepassDebtRepository;
 import upo.pissir.repo.TollboothRepository;
 import upo.pissir.repo.TripRepository;
 
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -20,12 +23,10 @@ class TollProcessingServiceTest {
         TollProcessingService service = new TollProcessingService(
                 new FakeFareRepository(720),
                 new FakeTripRepository(),
-                new FakeDebtRepo(),
                 new FakeTollboothRepository()
         );
-        Map<String, Object> req = new HashMap<>();
-        req.put("entryTollboothId", "VC_Est");
-        req.put("exitTollboothId", "MI_Ovest");
+        TollPriceRequestEvent req = new TollPriceRequestEvent(
+                null, null, null, "VC_Est", "MI_Ovest", null, null);
 
         TollProcessingService.TollPriceResolved out = service.resolveTollPrice(req);
 
@@ -45,12 +46,10 @@ class TollProcessingServiceTest {
         TollProcessingService service = new TollProcessingService(
                 new FakeFareRepository(720),
                 tripRepo,
-                new FakeDebtRepo(),
                 new FakeTollboothRepository()
         );
-        Map<String, Object> req = new HashMap<>();
-        req.put("ticketId", "TCK-1");
-        req.put("exitTollboothId", "MI_Ovest");
+        TollPriceRequestEvent req = new TollPriceRequestEvent(
+                null, null, null, null, "MI_Ovest", "TCK-1", null);
 
         TollProcessingService.TollPriceResolved out = service.resolveTollPrice(req);
 
@@ -69,12 +68,10 @@ class TollProcessingServiceTest {
         TollProcessingService service = new TollProcessingService(
                 new FakeFareRepository(450),
                 tripRepo,
-                new FakeDebtRepo(),
                 new FakeTollboothRepository()
         );
-        Map<String, Object> req = new HashMap<>();
-        req.put("telepassId", "TP-1");
-        req.put("exitTollboothId", "VC_Est");
+        TollPriceRequestEvent req = new TollPriceRequestEvent(
+                null, null, null, null, "VC_Est", null, "TP-1");
 
         TollProcessingService.TollPriceResolved out = service.resolveTollPrice(req);
 
@@ -88,12 +85,10 @@ class TollProcessingServiceTest {
         TollProcessingService service = new TollProcessingService(
                 new FakeFareRepository(null),
                 new FakeTripRepository(),
-                new FakeDebtRepo(),
                 new FakeTollboothRepository()
         );
-        Map<String, Object> req = new HashMap<>();
-        req.put("ticketId", "NOT_FOUND");
-        req.put("exitTollboothId", "MI_Ovest");
+        TollPriceRequestEvent req = new TollPriceRequestEvent(
+                null, null, null, null, "MI_Ovest", "NOT_FOUND", null);
 
         TollProcessingService.TollPriceResolved out = service.resolveTollPrice(req);
 
@@ -105,29 +100,17 @@ class TollProcessingServiceTest {
     @Test
     void onExitCompletedComputesAverageSpeedWhenRoadMatches() {
         FakeTripRepository tripRepo = new FakeTripRepository();
-        tripRepo.tripId = 99L;
         tripRepo.ticketRow = new TripRepository.ActiveTripRow(
-                99L,
-                "VC_Est",
-                "AB123CD",
-                Instant.parse("2026-03-07T10:00:00Z")
-        );
-        FakeTollboothRepository tollboothRepo = new FakeTollboothRepository();
-        tollboothRepo.entry = new TollboothRepository.TollboothRow("VC_Est", "A4", 53.4, "Piemonte", "entry");
-        tollboothRepo.exit = new TollboothRepository.TollboothRow("MI_Ovest", "A4", 126.1, "Lombardia", "exit");
+                99L, "VC_Est", "AB123CD", Instant.parse("2026-03-07T10:00:00Z"));
 
         TollProcessingService service = new TollProcessingService(
                 new FakeFareRepository(720),
                 tripRepo,
-                new FakeDebtRepo(),
-                tollboothRepo
+                new FakeTollboothRepository()
         );
 
-        Map<String, Object> body = new HashMap<>();
-        body.put("entryTollboothId", "VC_Est");
-        body.put("ticketId", "TCK-1");
-        body.put("amountCents", 720);
-        body.put("timestamp", "2026-03-07T10:40:00Z");
+        ExitCompletedEvent body = new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, "TCK-1", null, null, null);
 
         service.onExitCompleted("MI_Ovest", "manual", body);
 
@@ -139,29 +122,17 @@ class TollProcessingServiceTest {
     @Test
     void onExitCompletedDoesNotComputeAverageSpeedWhenRoadDoesNotMatch() {
         FakeTripRepository tripRepo = new FakeTripRepository();
-        tripRepo.tripId = 100L;
         tripRepo.ticketRow = new TripRepository.ActiveTripRow(
-                100L,
-                "VC_Est",
-                "AB123CD",
-                Instant.parse("2026-03-07T10:00:00Z")
-        );
-        FakeTollboothRepository tollboothRepo = new FakeTollboothRepository();
-        tollboothRepo.entry = new TollboothRepository.TollboothRow("VC_Est", "A4", 53.4, "Piemonte", "entry");
-        tollboothRepo.exit = new TollboothRepository.TollboothRow("AT_Est", "A21", 30.2, "Piemonte", "exit");
+                100L, "VC_Est", "AB123CD", Instant.parse("2026-03-07T10:00:00Z"));
 
         TollProcessingService service = new TollProcessingService(
                 new FakeFareRepository(720),
                 tripRepo,
-                new FakeDebtRepo(),
-                tollboothRepo
+                new FakeTollboothRepository()
         );
 
-        Map<String, Object> body = new HashMap<>();
-        body.put("entryTollboothId", "VC_Est");
-        body.put("ticketId", "TCK-2");
-        body.put("amountCents", 720);
-        body.put("timestamp", "2026-03-07T10:40:00Z");
+        ExitCompletedEvent body = new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, "TCK-2", null, null, null);
 
         service.onExitCompleted("AT_Est", "manual", body);
 
@@ -170,6 +141,230 @@ class TollProcessingServiceTest {
         assertEquals(false, tripRepo.lastSpeeding);
     }
 
+    @Test
+    void onExitCompletedTelepassClosesTripWithDebt() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        tripRepo.telepassRow = new TripRepository.ActiveTripRow(
+                101L, "VC_Est", "ZZ999YY", Instant.parse("2026-03-07T10:00:00Z"));
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository()
+        );
+
+        ExitCompletedEvent body = new ExitCompletedEvent(
+                "2026-03-07T10:20:00Z", "VC_Est", 720, null, "TP-1", null, null);
+
+        service.onExitCompleted("MI_Ovest", "telepass", body);
+
+        assertEquals(101L, tripRepo.closedTripId);
+        assertEquals(true, tripRepo.lastDebtCreated);
+        assertEquals(218.1, tripRepo.lastAvgSpeedKmh);
+        assertEquals(true, tripRepo.lastSpeeding);
+    }
+
+    @Test
+    void onExitCompletedWithoutActiveTripDoesNotClose() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository()
+        );
+
+        ExitCompletedEvent body = new ExitCompletedEvent(
+                null, "VC_Est", 720, null, "TP-404", null, null);
+
+        service.onExitCompleted("MI_Ovest", "telepass", body);
+
+        assertEquals(-1L, tripRepo.closedTripId);
+    }
+
+    @Test
+    void exitBeforeEntryIsParkedAndReplayedWhenEntryLands() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        FakeDeadLetterRepository deadLetters = new FakeDeadLetterRepository();
+        ExitReorderBuffer reorder = new ExitReorderBuffer(deadLetters, 1000, 100, 16);
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                null,
+                null,
+                reorder
+        );
+
+        service.onExitCompleted("MI_Ovest", "manual", new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, "TCK-9", null, null, null));
+        assertEquals(-1L, tripRepo.closedTripId);
+        assertEquals(1, reorder.stats().size());
+
+        // the entry is written: from now on the repository finds the open trip
+        tripRepo.ticketRow = new TripRepository.ActiveTripRow(
+                9L, "VC_Est", "AB123CD", Instant.parse("2026-03-07T10:00:00Z"));
+        service.onEntryAccepted("VC_Est", "manual", new EntryAcceptedEvent(
+                "2026-03-07T10:00:00Z", "AB123CD", "TCK-9", null, null));
+
+        assertEquals(9L, tripRepo.closedTripId);
+        assertEquals(0, reorder.stats().size());
+        assertEquals(1, reorder.stats().replayed());
+        assertEquals(0, deadLetters.reasons.size());
+    }
+
+    @Test
+    void exitAlreadyAppliedElsewhereIsDroppedNotDeadLettered() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        // another replica (or an earlier copy) closed the trip and claimed the exit id
+        tripRepo.claimed.add("exit-1");
+        FakeDeadLetterRepository deadLetters = new FakeDeadLetterRepository();
+        ExitReorderBuffer reorder = new ExitReorderBuffer(deadLetters, 1000, 100, 16);
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                null,
+                null,
+                reorder
+        );
+
+        service.onExitCompleted("MI_Ovest", "telepass", new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, null, "TP-1", null, "exit-1"));
+
+        assertEquals(0, reorder.stats().size());
+        for (int i = 0; i < 20; i++) reorder.tick();
+        assertEquals(0, deadLetters.reasons.size());
+    }
+
+    @Test
+    void expiringExitClosesTripWrittenMeanwhileInsteadOfDeadLettering() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        FakeDeadLetterRepository deadLetters = new FakeDeadLetterRepository();
+        ExitReorderBuffer reorder = new ExitReorderBuffer(deadLetters, 200, 100, 16);
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                null,
+                null,
+                reorder
+        );
+        service.onExitCompleted("MI_Ovest", "telepass", new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, null, "TP-3", null, "exit-3"));
+        assertEquals(1, reorder.stats().size());
+
+        // the entry was inserted by another replica: this one never replays the exit on entry
+        tripRepo.telepassRow = new TripRepository.ActiveTripRow(
+                33L, "VC_Est", "AB123CD", Instant.parse("2026-03-07T10:00:00Z"));
+        for (int i = 0; i < 3; i++) reorder.tick();
+
+        assertEquals(33L, tripRepo.closedTripId);
+        assertEquals(0, deadLetters.reasons.size());
+    }
+
+    @Test
+    void expiringExitWhoseCloseChangesNothingIsDeadLettered() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        FakeDeadLetterRepository deadLetters = new FakeDeadLetterRepository();
+        ExitReorderBuffer reorder = new ExitReorderBuffer(deadLetters, 200, 100, 16);
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                null,
+                null,
+                reorder
+        );
+        service.onExitCompleted("MI_Ovest", "telepass", new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, null, "TP-4", null, "exit-4"));
+
+        tripRepo.telepassRow = new TripRepository.ActiveTripRow(
+                44L, "VC_Est", "AB123CD", Instant.parse("2026-03-07T10:00:00Z"));
+        tripRepo.closeChangesNothing = true;
+        for (int i = 0; i < 3; i++) reorder.tick();
+
+        assertEquals(-1L, tripRepo.closedTripId);
+        assertEquals(List.of("no_entry:TP-4"), deadLetters.reasons);
+        assertEquals(0L, reorder.stats().replayed());
+    }
+
+    @Test
+    void duplicateEntryLeavesIndexAndParkedExitAlone() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        tripRepo.duplicateEntry = true;
+        ActiveTripIndex index = new ActiveTripIndex();
+        ExitReorderBuffer reorder = new ExitReorderBuffer(new FakeDeadLetterRepository(), 1000, 100, 16);
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                index,
+                null,
+                reorder
+        );
+        service.onExitCompleted("MI_Ovest", "telepass", new ExitCompletedEvent(
+                "2026-03-07T10:40:00Z", "VC_Est", 720, null, "TP-5", null, null));
+
+        service.onEntryAccepted("VC_Est", "telepass", new EntryAcceptedEvent(
+                "2026-03-07T10:00:00Z", "AB123CD", null, "TP-5", "evt-5"), "evt-5");
+
+        assertEquals("evt-5", tripRepo.lastEventId);
+        assertNull(index.findByTelepass("TP-5"));
+        // still parked: the duplicate entry must not replay the exit against no trip
+        assertEquals(1, reorder.stats().size());
+        assertEquals(0, reorder.stats().replayed());
+        assertEquals(-1L, tripRepo.closedTripId);
+    }
+
+    @Test
+    void resolveTollPriceUsesActiveTripIndexFilledOnEntry() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        ActiveTripIndex index = new ActiveTripIndex();
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                index
+        );
+
+        EntryAcceptedEvent entry = new EntryAcceptedEvent(
+                "2026-03-07T10:00:00Z", "AB123CD", "TCK-7", null, "evt-7");
+        service.onEntryAccepted("VC_Est", "manual", entry);
+        // the event id travels with the insert (ingested_events guard)
+        assertEquals("evt-7", tripRepo.lastEventId);
+
+        TollPriceRequestEvent req = new TollPriceRequestEvent(
+                null, null, null, null, "MI_Ovest", "TCK-7", null);
+        TollProcessingService.TollPriceResolved out = service.resolveTollPrice(req);
+
+        // the fake repo has no active trip: the answer can only come from the index
+        assertEquals("VC_Est", out.entryTollboothId());
+        assertEquals("AB123CD", out.plate());
+        assertEquals("2026-03-07T10:00:00Z", out.entryAt().toString());
+        assertEquals(720, out.amountCents());
+    }
+
+    @Test
+    void onExitCompletedEvictsActiveTripIndex() {
+        FakeTripRepository tripRepo = new FakeTripRepository();
+        tripRepo.telepassRow = new TripRepository.ActiveTripRow(
+                102L, "VC_Est", "ZZ999YY", Instant.parse("2026-03-07T10:00:00Z"));
+        ActiveTripIndex index = new ActiveTripIndex();
+        index.putTelepass("TP-2", new ActiveTripIndex.OpenTrip("VC_Est", "ZZ999YY", Instant.parse("2026-03-07T10:00:00Z")));
+        TollProcessingService service = new TollProcessingService(
+                new FakeFareRepository(720),
+                tripRepo,
+                new FakeTollboothRepository(),
+                index
+        );
+
+        ExitCompletedEvent body = new ExitCompletedEvent(
+                "2026-03-07T11:00:00Z", "VC_Est", 720, null, "TP-2", null, null);
+        service.onExitCompleted("MI_Ovest", "telepass", body);
+
+        assertEquals(102L, tripRepo.closedTripId);
+        assertNull(index.findByTelepass("TP-2"));
+    }
+
     private static final class FakeFareRepository extends FareRepository {
         private final Integer fare;
 
@@ -184,60 +379,95 @@ class TollProcessingServiceTest {
         }
     }
 
+    private static final class FakeTollboothRepository extends TollboothRepository {
+        private FakeTollboothRepository() {
+            super(null);
+        }
+
+        // only the uncached two-row lookup: findAll() (no DataSource here) would fail the test
+        @Override
+        public List<TollboothRow> findByIds(String id1, String id2) {
+            return Stream.of(
+                    new TollboothRow("VC_Est", "A4", 53.4, "Piemonte", "Casello Vercelli Est"),
+                    new TollboothRow("MI_Ovest", "A4", 126.1, "Lombardia", "Casello Milano Ovest"),
+                    new TollboothRow("AT_Est", "A21", 30.2, "Piemonte", "Casello Asti Est")
+            ).filter(r -> r.id().equals(id1) || r.id().equals(id2)).toList();
+        }
+    }
+
+    static final class FakeDeadLetterRepository extends DeadLetterRepository {
+        final List<String> reasons = new java.util.ArrayList<>();
+
+        FakeDeadLetterRepository() {
+            super(null);
+        }
+
+        @Override
+        public void insert(String eventType, String tollboothId, String channel, String passId, String payload,
+                           String reason, Instant receivedAt) {
+            reasons.add(reason + ":" + passId);
+        }
+    }
+
     private static final class FakeTripRepository extends TripRepository {
         private ActiveTripRow ticketRow;
         private ActiveTripRow telepassRow;
-        private Long tripId;
         private long closedTripId = -1L;
         private Double lastAvgSpeedKmh;
         private boolean lastSpeeding;
+        private boolean lastDebtCreated;
+        private String lastEventId;
+        // the event id is already in ingested_events: no row inserted
+        private boolean duplicateEntry;
+        // the close matched no open trip (closed meanwhile, or its event id already claimed)
+        private boolean closeChangesNothing;
+        private final java.util.Set<String> claimed = new java.util.HashSet<>();
 
         private FakeTripRepository() {
             super(null);
         }
 
         @Override
-        public Long findActiveTripIdByTicket(String ticketId) {
-            return tripId;
-        }
-
-        @Override
-        public void closeTrip(long tripId, String exitTollboothId, Instant exitAt, int amountCents, Double avgSpeedKmh, boolean speeding, boolean paid) {
+        public boolean closeTrip(long tripId, Instant entryAt, String exitTollboothId, Instant exitAt, int amountCents, Double avgSpeedKmh, boolean speeding, boolean paid, String eventId) {
+            if (closeChangesNothing) return false;
             this.closedTripId = tripId;
             this.lastAvgSpeedKmh = avgSpeedKmh;
             this.lastSpeeding = speeding;
+            return true;
         }
 
         @Override
-        public ActiveTripRow findActiveTripByTicket(String ticketId) {
-            return ticketRow;
+        public boolean closeTripWithDebt(long tripId, Instant entryAt, String exitTollboothId, Instant exitAt, int amountCents, Double avgSpeedKmh, boolean speeding, String eventId) {
+            if (!closeTrip(tripId, entryAt, exitTollboothId, exitAt, amountCents, avgSpeedKmh, speeding, false, eventId)) return false;
+            this.lastDebtCreated = true;
+            return true;
         }
 
         @Override
-        public ActiveTripRow findActiveTripByTelepass(String telepassId) {
-            return telepassRow;
+        public boolean createTripManual(String entryTollboothId, String plate, String ticketId, Instant entryAt, String eventId) {
+            this.lastEventId = eventId;
+            return !duplicateEntry;
         }
-    }
 
-    private static final class FakeDebtRepo extends TelepassDebtRepository {
-        private FakeDebtRepo() {
-            super(null);
+        @Override
+        public boolean createTripTelepass(String entryTollboothId, String plate, String telepassId, Instant entryAt, String eventId) {
+            this.lastEventId = eventId;
+            return !duplicateEntry;
         }
-    }
 
-    private static final class FakeTollboothRepository extends TollboothRepository {
-        private TollboothRow entry;
-        private TollboothRow exit;
+        @Override
+        public boolean claimEvent(String eventId) {
+            return eventId == null || claimed.add(eventId);
+        }
 
-        private FakeTollboothRepository() {
-            super(null);
+        @Override
+        public ActiveTripRow findActiveTripByTicket(String ticketId) {
+            return ticketRow;
         }
 
         @Override
-        public TollboothRow findById(String id) {
-            if (entry != null && entry.id().equals(id)) return entry;
-            if (exit != null && exit.id().equals(id)) return exit;
-            return null;
+        public ActiveTripRow findActiveTripByTelepass(String telepassId) {
+            return telepassRow;
         }
     }
 }
@@ -2,17 +2,20 @@ package upo.pissir.camera.json;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import java.util.Map;
 
 public final class Json {
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    // built once: readers are immutable and thread-safe
+    private static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, Object>>() {});
 
     private Json() {}
 
     public static Map<String, Object> parseToMap(String json) {
         try {
-            return MAPPER.readValue(json, new TypeReference<>() {});
+            return MAP_READER.readValue(json);
         } catch (Exception e) {
             throw new IllegalArgumentException("Invalid JSON payload", e);
         }
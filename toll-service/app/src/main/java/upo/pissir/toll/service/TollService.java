@@ -352,6 +352,8 @@ public class TollService {
         Map<String, Object> evt = new HashMap<>();
         evt.put("timestamp", Instant.now().toString());
         evt.put("type", "ENTRY_ACCEPTED");
+        // same id on every QoS1 redelivery: the server drops the copies
+        evt.put("eventId", UUID.randomUUID().toString());
         evt.put("plate", plate);
 
         if ("manual".equals(channel)) {
@@ -367,6 +369,7 @@ public class TollService {
         Map<String, Object> evt = new HashMap<>();
         evt.put("timestamp", Instant.now().toString());
         evt.put("type", "EXIT_COMPLETED");
+        evt.put("eventId", UUID.randomUUID().toString());
         evt.put("entryTollboothId", entryTollboothId);
         evt.put("amountCents", amountCents);
         evt.put("ticketId", ticketId);
@@ -378,6 +381,7 @@ public class TollService {
         Map<String, Object> evt = new HashMap<>();
         evt.put("timestamp", Instant.now().toString());
         evt.put("type", "EXIT_COMPLETED");
+        evt.put("eventId", UUID.randomUUID().toString());
         evt.put("entryTollboothId", entryTollboothId);
         evt.put("amountCents", amountCents);
         evt.put("telepassId", telepassId);
@@ -0,0 +1,140 @@
+import { refreshToken, getKeycloak } from "@/auth/keycloak";
+
+// GET /api/live (text/event-stream) read with fetch instead of EventSource: EventSource cannot
+// send the Authorization header the backend requires, and a token in the query string would end
+// up in access logs and browser history. See docs/live-feed.md.
+
+export type LiveTrip = {
+  passId: string;
+  channel: "manual" | "telepass";
+  entryTollboothId: string | null;
+  plate: string | null;
+  entryAt: string | null;
+  exitTollboothId: string | null;
+  exitAt: string | null;
+  amountCents: number | null;
+};
+
+export type LiveFault = {
+  id: number;
+  tollboothId: string;
+  direction: "entry" | "exit";
+  channel: "manual" | "telepass" | "camera";
+  code: string;
+  message: string;
+  severity: "WARN" | "ERROR";
+  status: "OPEN" | "RESPONDED";
+  backendAction: string | null;
+  createdAt: string;
+  respondedAt: string | null;
+};
+
+export type LiveSnapshot = {
+  activeTrips: LiveTrip[];
+  openFaults: LiveFault[];
+};
+
+export type LiveDelta =
+  | { type: "trip.opened" | "trip.closed"; key: string; data: LiveTrip }
+  | { type: "fault.recorded" | "fault.responded"; key: string; data: LiveFault };
+
+export type LiveHandlers = {
+  // first message of every (re)connection: the full view, to replace what was shown
+  onSnapshot: (snapshot: LiveSnapshot) => void;
+  onDeltas: (deltas: LiveDelta[]) => void;
+  onStatus?: (connected: boolean) => void;
+};
+
+const MIN_RETRY_MS = 1000;
+const MAX_RETRY_MS = 30000;
+
+// Keeps the stream open (reconnecting with backoff) until the returned function is called
+export function subscribeLive(handlers: LiveHandlers): () => void {
+  const abort = new AbortController();
+  void run(handlers, abort.signal);
+  return () => abort.abort();
+}
+
+async function run(handlers: LiveHandlers, signal: AbortSignal) {
+  let retryMs = MIN_RETRY_MS;
+  let retryAuth = false;
+  while (!signal.aborted) {
+    try {
+      const res = await open(signal, retryAuth);
+      if (res.status === 401 && !retryAuth) {
+        // expired between refresh and request: retry once at once with a forced refresh
+        retryAuth = true;
+        continue;
+      }
+      retryAuth = false;
+      if (res.ok && res.body) {
+        await consume(res.body, handlers, () => {
+          retryMs = MIN_RETRY_MS;
+          handlers.onStatus?.(true);
+        });
+      }
+    } catch {
+      // network error or abort: fall through to the retry
+      retryAuth = false;
+    }
+    handlers.onStatus?.(false);
+    if (signal.aborted) return;
+    await sleep(retryMs, signal);
+    retryMs = Math.min(retryMs * 2, MAX_RETRY_MS);
+  }
+}
+
+async function open(signal: AbortSignal, forceRefresh: boolean): Promise<Response> {
+  const kc = getKeycloak();
+  await refreshToken(forceRefresh ? 0 : 30);
+  const headers: Record<string, string> = { Accept: "text/event-stream" };
+  if (kc.token) headers.Authorization = `Bearer ${kc.token}`;
+  return fetch(`${import.meta.env.VITE_API_BASE_URL}/api/live`, { headers, signal, cache: "no-store" });
+}
+
+// Minimal text/event-stream parser: "event:" and "data:" fields, ":" comments (keep-alives),
+// a blank line ends the message
+async function consume(body: ReadableStream<Uint8Array>, handlers: LiveHandlers, onSnapshot: () => void) {
+  const reader = body.pipeThrough(new TextDecoderStream()).getReader();
+  let buffer = "";
+  let event = "message";
+  let data: string[] = [];
+  for (;;) {
+    const { value, done } = await reader.read();
+    if (done) return;
+    buffer += value;
+    let nl: number;
+    while ((nl = buffer.indexOf("\n")) >= 0) {
+      const line = buffer.slice(0, nl).replace(/\r$/, "");
+      buffer = buffer.slice(nl + 1);
+      if (line === "") {
+        if (data.length > 0) dispatch(event, data.join("\n"), handlers, onSnapshot);
+        event = "message";
+        data = [];
+      } else if (line.startsWith("event:")) {
+        event = line.slice(6).trim();
+      } else if (line.startsWith("data:")) {
+        data.push(line.slice(5).replace(/^ /, ""));
+      }
+    }
+  }
+}
+
+function dispatch(event: string, data: string, handlers: LiveHandlers, onSnapshot: () => void) {
+  if (event === "snapshot") {
+    onSnapshot();
+    handlers.onSnapshot(JSON.parse(data) as LiveSnapshot);
+  } else if (event === "deltas") {
+    handlers.onDeltas(JSON.parse(data) as LiveDelta[]);
+  }
+}
+
+function sleep(ms: number, signal: AbortSignal): Promise<void> {
+  return new Promise((resolve) => {
+    const timer = setTimeout(resolve, ms);
+    signal.addEventListener("abort", () => {
+      clearTimeout(timer);
+      resolve();
+    }, { once: true });
+  });
+}